@@ -25,6 +25,7 @@ import msi.gama.precompiler.GamlAnnotations.skill;
 import msi.gama.precompiler.IConcept;
 import msi.gama.runtime.IScope;
 import msi.gama.runtime.exceptions.GamaRuntimeException;
+import msi.gama.util.GamaListFactory;
 import msi.gama.util.IList;
 import msi.gama.util.matrix.GamaObjectMatrix;
 import msi.gama.util.matrix.IMatrix;
@@ -257,6 +258,48 @@ public class SQLSkill extends Skill {
 		// ------------------------------------------------------------------------------------------
 	}
 
+	/*
+	 * Insert a list of rows in a single transaction, with a prepared statement executed by batches
+	 *
+	 * @syntax do insertAll with: [into:: table_name, columns:column_list, values:list_of_value_lists];
+	 *
+	 * @return an integer: the number of inserted rows
+	 */
+	@action (
+			name = "insertAll",
+			args = { @arg (
+					name = "params",
+					type = IType.MAP,
+					optional = false,
+					doc = @doc ("Connection parameters")),
+					@arg (
+							name = "into",
+							type = IType.STRING,
+							optional = false,
+							doc = @doc ("Table name")),
+					@arg (
+							name = "columns",
+							type = IType.LIST,
+							optional = true,
+							doc = @doc ("List of column name of table (all the columns of the table if empty)")),
+					@arg (
+							name = "values",
+							type = IType.LIST,
+							optional = false,
+							doc = @doc ("List of rows to insert into the table, each row being a list of values. Columns and rows must have same size")) },
+			doc = @doc (
+					value = "Inserts all the rows at once: the rows are sent to the database by batches, in a single transaction (if an error occurs, no row is inserted)",
+					returns = "the number of inserted rows"))
+	public int insertAll(final IScope scope) throws GamaRuntimeException {
+		final String table_name = (String) scope.getArg("into", IType.STRING);
+		final IList<Object> cols = (IList<Object>) scope.getArg("columns", IType.LIST);
+		final IList<Object> rows = (IList<Object>) scope.getArg("values", IType.LIST);
+		final int rec_no = SqlUtils.createConnectionObject(scope).insertAllDB(scope, table_name,
+				cols == null ? GamaListFactory.create() : cols, rows);
+		DEBUG.OUT("Insert of " + rec_no + " rows into " + table_name + " was run");
+		return rec_no;
+	}
+
 	/*
 	 * Make a connection to BDMS and execute the select statement
 	 *
@@ -52,6 +52,11 @@ class MSSQLConnection extends SqlConnection {
 		super(venderName, url, port, dbName, userName, password, transformed);
 	}
 
+	@Override
+	protected String getGeometryParameter() {
+		return WKT2GEO + "(?, " + SRID + ")";
+	}
+
 	@Override
 	public Connection connectDB()
 			throws ClassNotFoundException, InstantiationException, SQLException, IllegalAccessException {
@@ -49,6 +49,11 @@ class MySqlConnection extends SqlConnection {
 		super(venderName, url, port, dbName, userName, password, transformed);
 	}
 
+	@Override
+	protected String getGeometryParameter() {
+		return WKT2GEO + "(?)";
+	}
+
 	@Override
 	public Connection connectDB()
 			throws ClassNotFoundException, InstantiationException, SQLException, IllegalAccessException {
@@ -10,21 +10,28 @@
  **********************************************************************************************/
 package msi.gama.database.sql;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 import org.opengis.referencing.FactoryException;
 
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKTReader;
 
 import msi.gama.common.geometry.Envelope3D;
 import msi.gama.common.preferences.GamaPreferences;
+import msi.gama.metamodel.shape.IShape;
 import msi.gama.metamodel.topology.projection.IProjection;
 import msi.gama.metamodel.topology.projection.Projection;
 import msi.gama.runtime.IScope;
@@ -61,6 +68,7 @@ public abstract class SqlConnection {
 	static final String YEAR = "YEAR"; // Postgres, MySQL(yyyy)
 	static final String TIME = "TIME"; // MySQL ('00:00:00')
 	static final String NULLVALUE = "NULL";
+	static final int BATCH_SIZE = 1000;
 
 	static final String MYSQLDriver = "com.mysql.jdbc.Driver";
 	static final String MSSQLDriver = "net.sourceforge.jtds.jdbc.Driver";
@@ -183,6 +191,49 @@ public abstract class SqlConnection {
 	public abstract Connection connectDB()
 			throws ClassNotFoundException, InstantiationException, SQLException, IllegalAccessException;
 
+	/*
+	 * Get a connection to BDMS from the pool of connections (closing it gives it back to the pool)
+	 */
+	public Connection getConnection()
+			throws ClassNotFoundException, InstantiationException, SQLException, IllegalAccessException {
+		return SqlConnectionPool.getConnection(this);
+	}
+
+	/*
+	 * The key of the connections to the same database in the pool of connections. The password is only present as a
+	 * hash, so that the key can be kept in memory without revealing it
+	 */
+	String getPoolKey() {
+		return getDescription() + "|" + userName + "|" + hash(password) + "|" + extension;
+	}
+
+	/*
+	 * The database connected to, without the credentials
+	 */
+	String getDescription() {
+		return vender + "|" + url + "|" + port + "|" + dbName;
+	}
+
+	private static String hash(final String s) {
+		if (s == null) { return ""; }
+		try {
+			final byte[] digest = MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8));
+			final StringBuilder sb = new StringBuilder(digest.length * 2);
+			for (final byte b : digest) {
+				sb.append(Character.forDigit(b >> 4 & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return sb.toString();
+		} catch (final NoSuchAlgorithmException e) {
+			// Every Java platform supports SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/*
+	 * The parameter (question mark) used in prepared statements for a geometry given as a WKT string
+	 */
+	protected abstract String getGeometryParameter();
+
 	/*
 	 * @Method:resultSet2IList(ResultSetMetaData rsmd, ResultSet rs)
 	 *
@@ -238,7 +289,7 @@ public abstract class SqlConnection {
 	 * @return IList<IList<Object>>
 	 */
 	public IList<? super IList<? super IList>> selectDB(final IScope scope, final String selectComm) {
-		try (Connection conn = connectDB();) {
+		try (Connection conn = getConnection();) {
 			return selectDB(scope, conn, selectComm);
 		} catch (final Exception e) {
 			throw GamaRuntimeException.error("SQLConnection.selectDB: " + e.toString(), scope);
@@ -333,7 +384,7 @@ public abstract class SqlConnection {
 	public int executeUpdateDB(final IScope scope, final String updateComm) throws GamaRuntimeException {
 
 		int n = 0;
-		try (Connection conn = connectDB(); final Statement st = conn.createStatement();) {
+		try (Connection conn = getConnection(); final Statement st = conn.createStatement();) {
 
 			// if ( DEBUG ) {
 			// DEBUG.OUT("Update Command:" + updateComm);
@@ -515,7 +566,7 @@ public abstract class SqlConnection {
 	public int insertDB(final IScope scope, final String table_name, final IList<Object> cols,
 			final IList<Object> values) throws GamaRuntimeException {
 		int rec_no = -1;
-		try (Connection conn = connectDB();) {
+		try (Connection conn = getConnection();) {
 			rec_no = insertDB(scope, conn, table_name, cols, values);
 		} catch (final Exception e) {
 			throw GamaRuntimeException.error("SQLConnection.insertBD " + e.toString(), scope);
@@ -552,7 +603,7 @@ public abstract class SqlConnection {
 	public int insertDB(final IScope scope, final String table_name, final IList<Object> values)
 			throws GamaRuntimeException {
 		int rec_no = -1;
-		try (Connection conn = connectDB();) {
+		try (Connection conn = getConnection();) {
 			rec_no = insertDB(scope, conn, table_name, values);
 		} catch (final Exception e) {
 			throw GamaRuntimeException.error("SQLConnection.insertBD " + e.toString(), scope);
@@ -560,6 +611,128 @@ public abstract class SqlConnection {
 		return rec_no;
 	}
 
+	/*
+	 * @Method: insertAllDB(Connection conn, String table_name, IList<Object> cols, IList<Object> rows)
+	 *
+	 * @Description: Inserts all the rows into the table in a single transaction, using a prepared statement executed
+	 * by batches of BATCH_SIZE rows
+	 *
+	 * @param cols: names of the columns (if empty, all the columns of the table in their order)
+	 *
+	 * @param rows: list of rows, each one being a list of values with the same size as cols
+	 *
+	 * @return the number of inserted rows
+	 *
+	 * @throws GamaRuntimeException: if a database access error occurs (in this case, no row is inserted)
+	 */
+	public int insertAllDB(final IScope scope, final Connection conn, final String table_name,
+			final IList<Object> cols, final IList<Object> rows) throws GamaRuntimeException {
+		if (rows.isEmpty()) { return 0; }
+		int rec_no = 0;
+		try {
+			final List<String> colNames = new ArrayList<>();
+			final List<Boolean> isGeometry = new ArrayList<>();
+			final String colStr = cols.isEmpty() ? "*" : String.join(",", (List) cols);
+			try (final Statement st = conn.createStatement();
+					ResultSet rs = st.executeQuery("SELECT " + colStr + " FROM " + table_name + " WHERE 1=0");) {
+				final ResultSetMetaData rsmd = rs.getMetaData();
+				final IList<Object> types = getColumnTypeName(rsmd);
+				for (int i = 1; i <= rsmd.getColumnCount(); i++) {
+					colNames.add(cols.isEmpty() ? rsmd.getColumnName(i) : (String) cols.get(i - 1));
+					isGeometry.add(GEOMETRYTYPE.equals(types.get(i - 1)));
+				}
+			}
+			final int col_no = colNames.size();
+			// A column also receives geometries when the first row contains a geometry for it
+			final IList<Object> firstRow = (IList<Object>) rows.get(0);
+			for (int i = 0; i < col_no && i < firstRow.size(); i++) {
+				final Object value = firstRow.get(i);
+				if (value instanceof IShape || value instanceof Geometry) {
+					isGeometry.set(i, true);
+				}
+			}
+			final StringBuilder insertStr = new StringBuilder("INSERT INTO ").append(table_name).append("(")
+					.append(String.join(",", colNames)).append(") VALUES(");
+			for (int i = 0; i < col_no; i++) {
+				insertStr.append(i == 0 ? "" : ",").append(isGeometry.get(i) ? getGeometryParameter() : "?");
+			}
+			insertStr.append(")");
+			if (DEBUG.IS_ON()) {
+				DEBUG.OUT("SQLConnection.insertAllDB.STR:" + insertStr);
+			}
+
+			final boolean autoCommit = conn.getAutoCommit();
+			conn.setAutoCommit(false);
+			try (final PreparedStatement pstmt = conn.prepareStatement(insertStr.toString());) {
+				final IProjection saveGis = transformed && isGeometry.contains(true) ? getSavingGisProjection(scope) : null;
+				int pending = 0;
+				for (final Object r : rows) {
+					final IList<Object> row = (IList<Object>) r;
+					if (row.size() != col_no) {
+						throw new IndexOutOfBoundsException("Size of columns list and values list are not equal");
+					}
+					for (int i = 0; i < col_no; i++) {
+						final Object value = row.get(i);
+						if (value == null) {
+							pstmt.setNull(i + 1, Types.NULL);
+						} else if (isGeometry.get(i)) {
+							Geometry geo = value instanceof IShape ? ((IShape) value).getInnerGeometry()
+									: value instanceof Geometry ? (Geometry) value : new WKTReader().read(value.toString());
+							if (saveGis != null) {
+								geo = saveGis.inverseTransform(geo);
+							}
+							pstmt.setString(i + 1, geo.toText());
+						} else {
+							pstmt.setObject(i + 1, value);
+						}
+					}
+					pstmt.addBatch();
+					if (++pending == BATCH_SIZE) {
+						rec_no += count(pstmt.executeBatch());
+						pending = 0;
+					}
+				}
+				if (pending > 0) {
+					rec_no += count(pstmt.executeBatch());
+				}
+				conn.commit();
+			} catch (final Exception e) {
+				conn.rollback();
+				throw e;
+			} finally {
+				conn.setAutoCommit(autoCommit);
+			}
+		} catch (final GamaRuntimeException e) {
+			throw e;
+		} catch (final Exception e) {
+			throw GamaRuntimeException.error("SQLConnection.insertAllDB " + e.toString(), scope);
+		}
+		return rec_no;
+	}
+
+	/*
+	 * Insert all the rows into table
+	 */
+	public int insertAllDB(final IScope scope, final String table_name, final IList<Object> cols,
+			final IList<Object> rows) throws GamaRuntimeException {
+		try (Connection conn = getConnection();) {
+			return insertAllDB(scope, conn, table_name, cols, rows);
+		} catch (final GamaRuntimeException e) {
+			throw e;
+		} catch (final Exception e) {
+			throw GamaRuntimeException.error("SQLConnection.insertAllDB " + e.toString(), scope);
+		}
+	}
+
+	private static int count(final int[] results) {
+		int n = 0;
+		for (final int r : results) {
+			// Some drivers do not give the number of rows
+			n += r == Statement.SUCCESS_NO_INFO ? 1 : Math.max(r, 0);
+		}
+		return n;
+	}
+
 	/*
 	 * @Method: executeQueryDB(Connection conn,String queryStr, IList<Object> condition_value)
 	 *
@@ -637,7 +810,7 @@ public abstract class SqlConnection {
 	public IList<Object> executeQueryDB(final IScope scope, final String queryStr, final IList<Object> condition_values)
 			throws GamaRuntimeException {
 		IList<Object> result;
-		try (Connection conn = connectDB();) {
+		try (Connection conn = getConnection();) {
 			result = executeQueryDB(scope, conn, queryStr, condition_values);
 			// set value for each condition
 		} catch (final Exception e) {
@@ -706,7 +879,7 @@ public abstract class SqlConnection {
 	public int executeUpdateDB(final IScope scope, final String queryStr, final IList<Object> condition_values)
 			throws GamaRuntimeException {
 		int row_count = -1;
-		try (Connection conn = connectDB();) {
+		try (Connection conn = getConnection();) {
 			row_count = executeUpdateDB(scope, conn, queryStr, condition_values);
 
 			// set value for each condition
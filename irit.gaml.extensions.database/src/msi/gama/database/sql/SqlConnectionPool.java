@@ -0,0 +1,206 @@
+/*********************************************************************************************
+ *
+ *
+ * 'SqlConnectionPool.java', in plugin 'irit.gaml.extensions.database', is part of the source code of the GAMA modeling
+ * and simulation platform. (c) 2007-2014 UMI 209 UMMISCO IRD/UPMC & Partners
+ *
+ * Visit https://code.google.com/p/gama-platform/ for license information and developers contact.
+ *
+ *
+ **********************************************************************************************/
+package msi.gama.database.sql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import msi.gama.kernel.experiment.ITopLevelAgent;
+import msi.gama.runtime.IScope;
+import ummisco.gama.dev.utils.DEBUG;
+
+/*
+ * A pool of the JDBC connections opened by the SqlConnection objects, keyed by their connection parameters (vendor,
+ * url, port, database, user, hash of the password and extension). Closing a connection obtained from the pool gives it back to the
+ * pool, so that the actions of the SQL skill, which create a SqlConnection at each call, do not open a new connection
+ * to the database each time. The connections that stay unused for more than IDLE_TIMEOUT milliseconds are closed, and
+ * all the idle connections are closed when an experiment that has used the pool is disposed.
+ */
+public class SqlConnectionPool {
+
+	static final int MAX_IDLE_CONNECTIONS = 4;
+	static final long IDLE_TIMEOUT = 60000;
+
+	private static class IdleConnection {
+		final Connection connection;
+		final long releaseTime;
+
+		IdleConnection(final Connection connection) {
+			this.connection = connection;
+			this.releaseTime = System.currentTimeMillis();
+		}
+	}
+
+	private static final Map<String, Deque<IdleConnection>> IDLE = new HashMap<>();
+
+	// The experiments that close the idle connections when they are disposed
+	private static final Set<ITopLevelAgent> REGISTERED = Collections.newSetFromMap(new WeakHashMap<>());
+
+	/*
+	 * Makes the experiment of the scope close the idle connections when it is disposed
+	 */
+	public static void closeAllWhenDisposed(final IScope scope) {
+		final ITopLevelAgent experiment = scope == null ? null : scope.getExperiment();
+		if (experiment == null) { return; }
+		synchronized (REGISTERED) {
+			if (!REGISTERED.add(experiment)) { return; }
+		}
+		experiment.postDisposeAction(s -> {
+			synchronized (REGISTERED) {
+				REGISTERED.remove(experiment);
+			}
+			closeAll();
+			return null;
+		});
+	}
+
+	/*
+	 * Returns a connection to the database described by the SqlConnection: an idle one if it exists, a new one
+	 * otherwise. It must be closed after use (which puts it back in the pool).
+	 */
+	public static Connection getConnection(final SqlConnection sqlConn)
+			throws ClassNotFoundException, InstantiationException, SQLException, IllegalAccessException {
+		final String key = sqlConn.getPoolKey();
+		Connection conn = null;
+		synchronized (IDLE) {
+			evictExpired();
+			final Deque<IdleConnection> idle = IDLE.get(key);
+			while (conn == null && idle != null && !idle.isEmpty()) {
+				final Connection c = idle.pollFirst().connection;
+				if (!c.isClosed()) {
+					conn = c;
+				}
+			}
+		}
+		if (conn == null) {
+			conn = sqlConn.connectDB();
+			if (DEBUG.IS_ON()) {
+				DEBUG.OUT("SqlConnectionPool: new connection to " + sqlConn.getDescription());
+			}
+		}
+		return pooled(key, conn);
+	}
+
+	/*
+	 * Closes all the idle connections
+	 */
+	public static void closeAll() {
+		synchronized (IDLE) {
+			for (final Deque<IdleConnection> idle : IDLE.values()) {
+				for (final IdleConnection c : idle) {
+					close(c.connection);
+				}
+			}
+			IDLE.clear();
+		}
+	}
+
+	private static void release(final String key, final Connection conn) {
+		try {
+			if (conn.isClosed()) { return; }
+			// A transaction left open is cancelled, so that the next user gets a connection in its default state
+			if (!conn.getAutoCommit()) {
+				conn.rollback();
+				conn.setAutoCommit(true);
+			} else {
+				rollbackStatement(conn);
+			}
+		} catch (final SQLException e) {
+			close(conn);
+			return;
+		}
+		synchronized (IDLE) {
+			evictExpired();
+			final Deque<IdleConnection> idle = IDLE.computeIfAbsent(key, k -> new ArrayDeque<>());
+			if (idle.size() < MAX_IDLE_CONNECTIONS) {
+				idle.addFirst(new IdleConnection(conn));
+				return;
+			}
+		}
+		close(conn);
+	}
+
+	/*
+	 * Cancels the transaction begun by an SQL statement (e.g. 'BEGIN TRANSACTION'), which the driver does not know
+	 * about. Most databases accept, or only warn about, a rollback outside of a transaction: the errors are ignored
+	 */
+	private static void rollbackStatement(final Connection conn) {
+		try (Statement st = conn.createStatement()) {
+			st.execute("ROLLBACK");
+		} catch (final SQLException e) {}
+	}
+
+	private static void evictExpired() {
+		final long limit = System.currentTimeMillis() - IDLE_TIMEOUT;
+		for (final Iterator<Deque<IdleConnection>> it = IDLE.values().iterator(); it.hasNext();) {
+			final Deque<IdleConnection> idle = it.next();
+			// The oldest connections are at the end
+			while (!idle.isEmpty() && idle.peekLast().releaseTime < limit) {
+				close(idle.pollLast().connection);
+			}
+			if (idle.isEmpty()) {
+				it.remove();
+			}
+		}
+	}
+
+	private static void close(final Connection conn) {
+		try {
+			conn.close();
+		} catch (final SQLException e) {}
+	}
+
+	/*
+	 * Wraps the connection so that closing it gives it back to the pool
+	 */
+	private static Connection pooled(final String key, final Connection conn) {
+		final InvocationHandler handler = new InvocationHandler() {
+			boolean closed = false;
+
+			@Override
+			public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+				switch (method.getName()) {
+					case "close":
+						if (!closed) {
+							closed = true;
+							release(key, conn);
+						}
+						return null;
+					case "isClosed":
+						return closed || conn.isClosed();
+					default:
+						if (closed) { throw new SQLException("Connection already closed"); }
+						try {
+							return method.invoke(conn, args);
+						} catch (final InvocationTargetException e) {
+							throw e.getCause();
+						}
+				}
+			}
+		};
+		return (Connection) Proxy.newProxyInstance(SqlConnectionPool.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, handler);
+	}
+
+}
@@ -71,6 +71,7 @@ public class SqlUtils {
 		}
 		// AD: Added to be sure to remember the parameters
 		sqlConn.setParams(params);
+		SqlConnectionPool.closeAllWhenDisposed(scope);
 		return sqlConn;
 	}
 
@@ -57,6 +57,11 @@ class SqliteConnection extends SqlConnection {
 		this.extension = extension;
 	}
 
+	@Override
+	protected String getGeometryParameter() {
+		return WKT2GEO + "(?)";
+	}
+
 	@Override
 	public Connection connectDB()
 			throws ClassNotFoundException, InstantiationException, SQLException, IllegalAccessException {
@@ -257,6 +257,28 @@ public class GamaPreferences {
 		public static final Pref<Boolean> CORE_EXPAND_PARAMS =
 				create("pref_experiment_expand_params", "Auto expand Parameters Categories", false, IType.BOOL, true)
 						.in(NAME, EXECUTION);
+		public static final Pref<Integer> CORE_MEMORIZE_INTERVAL = create("pref_memorize_interval",
+				"Number of steps between two complete states memorized by 'memorize' experiments (the other steps only keep the changes)",
+				20, IType.INT, true).between(1, null).in(NAME, EXECUTION);
+		public static final Pref<Integer> CORE_MEMORIZE_STEPS = create("pref_memorize_steps",
+				"Max. number of steps memorized by 'memorize' experiments (0 for no limit)", 0, IType.INT, true)
+						.between(0, null).in(NAME, EXECUTION);
+		public static final Pref<Integer> CORE_MEMORIZE_MEMORY = create("pref_memorize_memory",
+				"Memory (in MB) used by the steps memorized by 'memorize' experiments before moving them to disk", 256,
+				IType.INT, true).between(0, null).in(NAME, EXECUTION);
+		/**
+		 * Files saved by the simulations
+		 */
+		public static final String SAVE = "Saving files";
+		public static final Pref<Boolean> CORE_SAVE_BUFFERED = create("pref_save_buffered",
+				"Keep the text and CSV files written by 'save' open and write them in the background at the end of each cycle",
+				true, IType.BOOL, true).in(NAME, SAVE).activates("pref_save_wait", "pref_save_buffer");
+		public static final Pref<Boolean> CORE_SAVE_WAIT = create("pref_save_wait",
+				"Wait, at the end of each cycle, until the saved files are written (otherwise, they are written while the next cycle runs)",
+				true, IType.BOOL, true).in(NAME, SAVE);
+		public static final Pref<Integer> CORE_SAVE_BUFFER_SIZE = create("pref_save_buffer",
+				"Max. amount of text (in KB) waiting to be written before the simulations wait for the files to be written",
+				16384, IType.INT, true).between(64, null).in(NAME, SAVE);
 		/**
 		 * Concurrency
 		 */
@@ -293,6 +315,9 @@ public class GamaPreferences {
 		public static final Pref<Boolean> CORE_MEMORY_ACTION = create("pref_memory_action",
 				"If true, when running out of memory, GAMA will try to close the experiment, otherwise it exits", true,
 				IType.BOOL, true).in(NAME, MEMORY);
+		public static final Pref<Integer> CORE_PATH_CACHE_SIZE = create("pref_path_cache_size",
+				"Max. size (in edges) of the shortest paths kept in memory by each graph (0 for no limit)", 1000000,
+				IType.INT, true).between(0, null).in(NAME, MEMORY);
 		/**
 		 * Errors & warnings
 		 */
@@ -474,6 +499,12 @@ public class GamaPreferences {
 		public static final String OPTIMIZATIONS = "Optimizations";
 		public static final Pref<Boolean> CONSTANT_OPTIMIZATION = create("pref_optimize_constant_expressions",
 				"Optimize constant expressions (experimental)", false, IType.BOOL, true).in(NAME, OPTIMIZATIONS);
+		public static final Pref<Boolean> EXPRESSION_COMPILATION = create("pref_optimize_expressions",
+				"Compile the arithmetic and comparison expressions that are frequently evaluated", true, IType.BOOL,
+				true).in(NAME, OPTIMIZATIONS);
+		public static final Pref<Boolean> ITERATOR_FUSION = create("pref_optimize_iterators",
+				"Evaluate the chains of iterators (e.g. '(agents where ...) sum_of ...') without building intermediate lists",
+				true, IType.BOOL, true).in(NAME, OPTIMIZATIONS);
 		public static final Pref<Boolean> AGENT_OPTIMIZATION =
 				create("pref_optimize_agent_memory", "Optimize agents memory", true, IType.BOOL, true).in(NAME,
 						OPTIMIZATIONS);
@@ -485,6 +516,12 @@ public class GamaPreferences {
 		public static final Pref<Boolean> PATH_COMPUTATION_OPTIMIZATION = create("pref_optimize_path_computation",
 				"Optimize the path computation operators and goto action (but with possible 'jump' issues)", false,
 				IType.BOOL, true).in(NAME, OPTIMIZATIONS);
+		public static final Pref<Boolean> PATH_TREES_OPTIMIZATION = create("pref_optimize_path_trees",
+				"Share the computation of the paths towards the destinations used by many agents (path_between and goto on graphs)",
+				false, IType.BOOL, true).in(NAME, OPTIMIZATIONS);
+		public static final Pref<Boolean> FLOYD_WARSHALL_MAPPED = create("pref_floyd_warshall_mapped",
+				"Keep the matrices of the Floyd-Warshall algorithm in a temporary file mapped in memory (for large graphs)",
+				false, IType.BOOL, true).in(NAME, OPTIMIZATIONS);
 		public static final Pref<Boolean> QUADTREE_OPTIMIZATION = create("pref_optimize_quadtree",
 				"Optimize spatial queries: add agents only when necessary in the quadtree (still experimental)", false,
 				IType.BOOL, true).in(NAME, OPTIMIZATIONS);
@@ -102,6 +102,15 @@ public class FileUtils {
 	// resources.
 	// Should be able to catch most of the calls to relative resources as well
 	static public String constructAbsoluteFilePath(final IScope scope, final String filePath, final boolean mustExist) {
+		final String path = findAbsoluteFilePath(scope, filePath, mustExist);
+		// A file about to be read must contain the text saved in it by the simulations
+		if (mustExist && path != null) {
+			OutputChannels.sync(scope, new File(path));
+		}
+		return path;
+	}
+
+	private static String findAbsoluteFilePath(final IScope scope, final String filePath, final boolean mustExist) {
 		String fp;
 		if (filePath.startsWith(HOME)) {
 			fp = filePath.replaceFirst(HOME, USER_HOME);
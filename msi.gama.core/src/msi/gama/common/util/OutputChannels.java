@@ -0,0 +1,387 @@
+/*******************************************************************************************************
+ *
+ * msi.gama.common.util.OutputChannels.java, in plugin msi.gama.core, is part of the source code of the GAMA modeling
+ * and simulation platform (v. 1.8)
+ *
+ * (c) 2007-2018 UMI 209 UMMISCO IRD/SU & Partners
+ *
+ * Visit https://github.com/gama-platform/gama for license information and contacts.
+ *
+ ********************************************************************************************************/
+package msi.gama.common.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import msi.gama.common.preferences.GamaPreferences;
+import msi.gama.kernel.experiment.ITopLevelAgent;
+import msi.gama.runtime.GAMA;
+import msi.gama.runtime.IScope;
+import msi.gama.runtime.exceptions.GamaRuntimeException;
+import msi.gama.runtime.exceptions.GamaRuntimeException.GamaRuntimeFileException;
+
+/**
+ * Buffers the text appended to files by the simulations (see the 'save' statement), instead of opening, appending to
+ * and closing the files at each call. The text appended to a file during a cycle is accumulated in memory and handed,
+ * at the end of the cycle, to a background thread that writes it to the file (kept open between the cycles). Each
+ * simulation (or experiment) has its own writer thread, so that it only waits for the files it writes. The texts given
+ * to the writer threads for a file are always written in the order in which they have been given, whatever the thread
+ * that writes them.
+ *
+ * The preferences define whether the simulations wait, at the end of each cycle, for their files to be written (so
+ * that they are complete when the next cycle starts) and how much text a simulation can leave to its writer thread
+ * before waiting for it (back-pressure). The files are closed when the simulations (or experiments) that wrote them
+ * are disposed.
+ */
+public class OutputChannels {
+
+	/**
+	 * A file written through the writer threads
+	 */
+	static class Channel {
+		final File file;
+		// The owners that write in this file (accessed while holding the lock of CHANNELS)
+		final Set<Owner> owners = new HashSet<>();
+		// The text appended since the last time the channel was given to a writer thread
+		final StringBuilder pending = new StringBuilder();
+		// Whether the contents of the file must be erased before writing the pending text
+		boolean truncate;
+		// Whether the file exists from the point of view of the simulations (null if unknown)
+		Boolean exists;
+		// The texts given to the writer threads, not yet written
+		final Queue<Chunk> submitted = new ConcurrentLinkedQueue<>();
+		// The lock held while writing the file
+		final Object io = new Object();
+		Writer out;
+		IOException error;
+
+		Channel(final File file) {
+			this.file = file;
+		}
+	}
+
+	/**
+	 * A text to write in a file, and the owner that has given it to its writer thread
+	 */
+	static class Chunk {
+		final String text;
+		final boolean truncate;
+		final Owner owner;
+
+		Chunk(final String text, final boolean truncate, final Owner owner) {
+			this.text = text;
+			this.truncate = truncate;
+			this.owner = owner;
+		}
+	}
+
+	/**
+	 * A top-level agent (simulation or experiment) that writes files, with its writer thread
+	 */
+	static class Owner {
+		final ExecutorService writer;
+		// The number of characters given to the writer threads and not yet written
+		final AtomicLong queued = new AtomicLong();
+		// The files written by the agent (accessed while holding the lock of CHANNELS)
+		final Set<Channel> channels = new HashSet<>();
+
+		Owner(final String name) {
+			writer = Executors.newSingleThreadExecutor(r -> {
+				final Thread t = new Thread(r, "GAMA file writer of " + name);
+				t.setDaemon(true);
+				return t;
+			});
+		}
+	}
+
+	private static final Map<String, Channel> CHANNELS = new HashMap<>();
+	private static final Map<ITopLevelAgent, Owner> OWNERS = new WeakHashMap<>();
+
+	/**
+	 * Whether the files saved by the simulation running in this scope are buffered
+	 */
+	public static boolean isActive(final IScope scope) {
+		return GamaPreferences.Runtime.CORE_SAVE_BUFFERED.getValue() && getOwner(scope) != null;
+	}
+
+	/**
+	 * Whether the file exists, taking into account the text that has not yet been written
+	 */
+	public static boolean exists(final IScope scope, final File file) {
+		final Channel c = channel(owner(scope), file);
+		synchronized (c) {
+			if (c.exists == null) {
+				c.exists = file.exists();
+			}
+			return c.exists;
+		}
+	}
+
+	/**
+	 * Erases the contents of the file (including the text that has not yet been written)
+	 */
+	public static void truncate(final IScope scope, final File file) {
+		final Channel c = channel(owner(scope), file);
+		synchronized (c) {
+			c.pending.setLength(0);
+			c.truncate = true;
+			c.exists = false;
+		}
+	}
+
+	/**
+	 * Appends the text to the file. The text is written by the writer thread at the latest at the end of the cycle
+	 */
+	public static void append(final IScope scope, final File file, final CharSequence text) {
+		final Owner o = owner(scope);
+		final Channel c = channel(o, file);
+		final int max = maxQueued();
+		synchronized (c) {
+			checkError(scope, c);
+			c.pending.append(text);
+			c.exists = true;
+			// Large amounts of text are written without waiting for the end of the cycle
+			if (c.pending.length() >= max / 4) {
+				submit(o, c);
+			}
+		}
+		if (o.queued.get() > max) {
+			waitForWriter(scope, o);
+		}
+	}
+
+	/**
+	 * Gives the text appended to the files of the simulation running in this scope to its writer thread and, if
+	 * asked, waits until it is written
+	 */
+	public static void flush(final IScope scope, final boolean wait) {
+		final Owner o;
+		synchronized (OWNERS) {
+			o = OWNERS.get(getOwner(scope));
+		}
+		if (o != null) {
+			flush(scope, o, wait);
+		}
+	}
+
+	private static void flush(final IScope scope, final Owner o, final boolean wait) {
+		for (final Channel c : channelsOf(o)) {
+			synchronized (c) {
+				checkError(scope, c);
+				submit(o, c);
+			}
+		}
+		if (wait) {
+			waitForWriter(scope, o);
+		}
+	}
+
+	/**
+	 * Writes the text appended to the file, if any, and waits until it is written
+	 */
+	public static void sync(final IScope scope, final File file) {
+		final Channel c;
+		synchronized (CHANNELS) {
+			if (CHANNELS.isEmpty()) { return; }
+			c = CHANNELS.get(file.getAbsolutePath());
+		}
+		if (c == null) { return; }
+		synchronized (c) {
+			checkError(scope, c);
+			if (c.pending.length() > 0 || c.truncate) {
+				c.submitted.add(new Chunk(c.pending.toString(), c.truncate, null));
+				c.pending.setLength(0);
+				c.truncate = false;
+			}
+		}
+		// The texts given to the writer threads are written by this thread if they have not been written yet
+		write(c);
+		synchronized (c) {
+			checkError(scope, c);
+		}
+	}
+
+	/**
+	 * Writes the text appended by the top-level agent and closes the files that no other top-level agent writes
+	 */
+	static void close(final IScope scope, final ITopLevelAgent agent) {
+		final Owner o;
+		synchronized (OWNERS) {
+			o = OWNERS.remove(agent);
+		}
+		if (o == null) { return; }
+		final List<Channel> closed = new ArrayList<>();
+		synchronized (CHANNELS) {
+			for (final Channel c : o.channels) {
+				c.owners.remove(o);
+				if (c.owners.isEmpty()) {
+					closed.add(c);
+					CHANNELS.remove(c.file.getAbsolutePath());
+				}
+			}
+		}
+		try {
+			flush(scope, o, false);
+		} catch (final GamaRuntimeException e) {
+			GAMA.reportError(scope, e, false);
+		}
+		for (final Channel c : closed) {
+			o.writer.execute(() -> {
+				synchronized (c.io) {
+					try {
+						if (c.out != null) {
+							c.out.close();
+						}
+					} catch (final IOException e) {}
+					c.out = null;
+				}
+			});
+		}
+		try {
+			waitForWriter(scope, o);
+		} catch (final GamaRuntimeException e) {
+			GAMA.reportError(scope, e, false);
+		}
+		synchronized (CHANNELS) {
+			o.channels.clear();
+		}
+		o.writer.shutdown();
+	}
+
+	private static int maxQueued() {
+		return Math.max(1, GamaPreferences.Runtime.CORE_SAVE_BUFFER_SIZE.getValue()) * 1024;
+	}
+
+	private static ITopLevelAgent getOwner(final IScope scope) {
+		if (scope == null) { return null; }
+		final ITopLevelAgent owner = scope.getSimulation();
+		return owner != null ? owner : scope.getExperiment();
+	}
+
+	/**
+	 * Returns the owner corresponding to the top-level agent of the scope. The first time, the agent is asked to flush
+	 * its files at the end of each of its cycles and to close them when it is disposed
+	 */
+	private static Owner owner(final IScope scope) {
+		final ITopLevelAgent agent = getOwner(scope);
+		final Owner o;
+		synchronized (OWNERS) {
+			final Owner existing = OWNERS.get(agent);
+			if (existing != null) { return existing; }
+			o = new Owner(agent.getName());
+			OWNERS.put(agent, o);
+		}
+		agent.postEndAction(s -> {
+			flush(s, o, GamaPreferences.Runtime.CORE_SAVE_WAIT.getValue());
+			return null;
+		});
+		agent.postDisposeAction(s -> {
+			close(s, agent);
+			return null;
+		});
+		return o;
+	}
+
+	private static Channel channel(final Owner o, final File file) {
+		synchronized (CHANNELS) {
+			final Channel c = CHANNELS.computeIfAbsent(file.getAbsolutePath(), p -> new Channel(file));
+			c.owners.add(o);
+			o.channels.add(c);
+			return c;
+		}
+	}
+
+	private static List<Channel> channelsOf(final Owner o) {
+		synchronized (CHANNELS) {
+			return new ArrayList<>(o.channels);
+		}
+	}
+
+	/**
+	 * Gives the pending text of the channel to the writer thread of the owner. Must be called while holding the lock
+	 * of the channel
+	 */
+	private static void submit(final Owner o, final Channel c) {
+		if (c.pending.length() == 0 && !c.truncate) { return; }
+		final Chunk chunk = new Chunk(c.pending.toString(), c.truncate, o);
+		c.pending.setLength(0);
+		c.truncate = false;
+		o.queued.addAndGet(chunk.text.length());
+		c.submitted.add(chunk);
+		o.writer.execute(() -> write(c));
+	}
+
+	/**
+	 * Writes, in order, the texts given to the writer threads for this file. As the file is locked while they are
+	 * written, the texts given before this call are all written when it returns
+	 */
+	private static void write(final Channel c) {
+		synchronized (c.io) {
+			Chunk chunk;
+			while ((chunk = c.submitted.poll()) != null) {
+				try {
+					if (chunk.truncate && c.out != null) {
+						c.out.close();
+						c.out = null;
+					}
+					if (c.out == null) {
+						c.out = new BufferedWriter(new FileWriter(c.file, !chunk.truncate));
+					}
+					c.out.write(chunk.text);
+					c.out.flush();
+				} catch (final IOException e) {
+					synchronized (c) {
+						c.error = e;
+					}
+				} finally {
+					if (chunk.owner != null) {
+						chunk.owner.queued.addAndGet(-chunk.text.length());
+					}
+				}
+			}
+		}
+	}
+
+	private static void waitForWriter(final IScope scope, final Owner o) {
+		try {
+			// The writer thread executes the tasks in order: when this one is done, all the previous ones are done
+			o.writer.submit(() -> {}).get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (final ExecutionException e) {
+			throw GamaRuntimeException.create(e.getCause(), scope);
+		}
+		for (final Channel c : channelsOf(o)) {
+			synchronized (c) {
+				checkError(scope, c);
+			}
+		}
+	}
+
+	/**
+	 * Reports (once) the last error that occurred when writing the file
+	 */
+	private static void checkError(final IScope scope, final Channel c) {
+		if (c.error == null) { return; }
+		final IOException e = c.error;
+		c.error = null;
+		throw GamaRuntimeFileException.create(e, scope);
+	}
+
+}
@@ -76,7 +76,8 @@ public class ActionExecuter {
 		if (size == 0) { return; }
 		final IExecutable[] array = actions[type].toArray(new IExecutable[size]);
 		for (final IExecutable action : array) {
-			if (!scope.interrupted()) {
+			// The dispose actions are executed even if the simulation has been interrupted
+			if (type == DISPOSE || !scope.interrupted()) {
 				action.executeOn(scope);
 			}
 		}
@@ -34,7 +34,9 @@ import msi.gama.runtime.exceptions.GamaRuntimeException;
 import msi.gama.util.GamaListFactory;
 import msi.gama.util.IList;
 import msi.gama.util.IMap;
+import msi.gaml.descriptions.AttributeSlots;
 import msi.gaml.descriptions.ModelDescription;
+import msi.gaml.descriptions.SpeciesDescription;
 import msi.gaml.operators.Cast;
 import msi.gaml.species.ISpecies;
 import msi.gaml.types.IType;
@@ -72,6 +74,13 @@ public abstract class AbstractAgent implements IAgent {
 	private final int index;
 	protected volatile boolean dead = false;
 	protected volatile boolean dying = false;
+	// The values of the attributes stored in slots rather than in the attributes of the geometry (see
+	// AttributeSlots). Allocated when the first of them is set
+	private int[] ints;
+	private double[] floats;
+	private boolean[] bools;
+	// The slots that have been set, one bit per slot
+	private long[] assigned;
 
 	public AbstractAgent(final int index) {
 		this.index = index;
@@ -199,7 +208,7 @@ public abstract class AbstractAgent implements IAgent {
 	@Override
 	public void setExtraAttributes(final Map<String, Object> map) {
 		if (map == null) { return; }
-		getOrCreateAttributes().putAll(map);
+		map.forEach(this::setAttribute);
 	}
 	//
 	// @Override
@@ -212,24 +221,123 @@ public abstract class AbstractAgent implements IAgent {
 		return getGeometry().getOrCreateAttributes();
 	}
 
+	/**
+	 * Returns the layout of the attributes stored in slots for the species of this agent
+	 */
+	public AttributeSlots getAttributeSlots() {
+		final IPopulation<? extends IAgent> pop = getPopulation();
+		final ISpecies species = pop == null ? null : pop.getSpecies();
+		final SpeciesDescription desc = species == null ? null : species.getDescription();
+		return desc == null ? AttributeSlots.EMPTY : desc.getAttributeSlots();
+	}
+
+	/**
+	 * Returns the value of the attribute stored in the slot passed (see {@link AttributeSlots})
+	 */
+	public Object getSlotValue(final int slot) {
+		final int i = AttributeSlots.index(slot);
+		switch (AttributeSlots.kind(slot)) {
+			case AttributeSlots.INT:
+				return ints == null ? 0 : ints[i];
+			case AttributeSlots.FLOAT:
+				return floats == null ? 0d : floats[i];
+			default:
+				return bools == null ? false : bools[i];
+		}
+	}
+
+	/**
+	 * Whether the attributes stored in slots have been set at least once
+	 */
+	public boolean hasSlotValues() {
+		return ints != null;
+	}
+
+	/**
+	 * Whether the attribute stored in the slot passed has been set at least once
+	 */
+	public boolean isSlotAssigned(final int slot) {
+		return assigned != null && (assigned[slot >>> 6] & 1L << slot) != 0;
+	}
+
+	/**
+	 * Stores the value of an attribute in the slot passed. The value is normally already cast to the type of the
+	 * attribute; otherwise it is cast here
+	 */
+	public void setSlotValue(final int slot, final Object value) {
+		if (ints == null) {
+			final AttributeSlots slots = getAttributeSlots();
+			final int f = slots.count(AttributeSlots.FLOAT);
+			final int b = slots.count(AttributeSlots.BOOL);
+			final int n = slots.count(AttributeSlots.INT);
+			floats = new double[f];
+			bools = new boolean[b];
+			assigned = new long[(Math.max(n, Math.max(f, b)) << 2 >>> 6) + 1];
+			ints = new int[n];
+		}
+		final int i = AttributeSlots.index(slot);
+		switch (AttributeSlots.kind(slot)) {
+			case AttributeSlots.INT:
+				ints[i] = value instanceof Number ? ((Number) value).intValue() : Cast.asInt(getScope(), value);
+				break;
+			case AttributeSlots.FLOAT:
+				floats[i] =
+						value instanceof Number ? ((Number) value).doubleValue() : Cast.asFloat(getScope(), value);
+				break;
+			default:
+				bools[i] = value instanceof Boolean ? (Boolean) value : Cast.asBool(getScope(), value);
+		}
+		assigned[slot >>> 6] |= 1L << slot;
+	}
+
 	@Override
 	public boolean hasAttribute(final String key) {
+		final int slot = getAttributeSlots().slotOf(key);
+		if (slot != AttributeSlots.NONE) { return isSlotAssigned(slot); }
 		return getGeometry().hasAttribute(key);
 	}
 
 	@Override
 	public void forEachAttribute(final BiConsumerWithPruning<String, Object> visitor) {
-		getGeometry().forEachAttribute(visitor);
+		if (!hasSlotValues()) {
+			getGeometry().forEachAttribute(visitor);
+			return;
+		}
+		final boolean[] pruned = { false };
+		getGeometry().forEachAttribute((k, v) -> {
+			pruned[0] = !visitor.process(k, v);
+			return !pruned[0];
+		});
+		if (pruned[0]) { return; }
+		final AttributeSlots slots = getAttributeSlots();
+		for (int kind = AttributeSlots.INT; kind <= AttributeSlots.BOOL; kind++) {
+			final String[] names = slots.names(kind);
+			for (int i = 0; i < names.length; i++) {
+				final int slot = i << 2 | kind;
+				// The slot may have been left by an attribute redefined in a sub-species
+				if (slots.slotOf(names[i]) == slot && isSlotAssigned(slot)
+						&& !visitor.process(names[i], getSlotValue(slot))) {
+					return;
+				}
+			}
+		}
 	}
 
 	@Override
 	public Object getAttribute(final String key) {
+		final int slot = getAttributeSlots().slotOf(key);
+		if (slot != AttributeSlots.NONE) { return getSlotValue(slot); }
 		return getGeometry().getAttribute(key);
 	}
 
 	@Override
 	public void setAttribute(final String name, final Object val) {
-		getOrCreateAttributes().put(name, val);
+		final int slot = getAttributeSlots().slotOf(name);
+		if (slot != AttributeSlots.NONE) {
+			setSlotValue(slot, val);
+		} else {
+			getOrCreateAttributes().put(name, val);
+		}
 	}
 
 	@Override
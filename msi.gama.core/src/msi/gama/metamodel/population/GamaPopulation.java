@@ -48,6 +48,7 @@ import msi.gama.metamodel.shape.GamaPoint;
 import msi.gama.metamodel.shape.GamaShape;
 import msi.gama.metamodel.shape.ILocation;
 import msi.gama.metamodel.shape.IShape;
+import msi.gama.metamodel.topology.ISpatialIndex;
 import msi.gama.metamodel.topology.ITopology;
 import msi.gama.metamodel.topology.continuous.ContinuousTopology;
 import msi.gama.metamodel.topology.filter.IAgentFilter;
@@ -114,6 +115,9 @@ public class GamaPopulation<T extends IAgent> extends GamaList<T> implements IPo
 	protected int currentAgentIndex;
 	private final int hashCode;
 	private final boolean isInitOverriden, isStepOverriden;
+	// Whether the moves of the agents are applied to the spatial index at the end of each step (see facet
+	// 'rebuild_spatial_index')
+	private boolean rebuildsSpatialIndex;
 	private final MirrorPopulationManagement mirrorManagement;
 
 	/**
@@ -208,7 +212,17 @@ public class GamaPopulation<T extends IAgent> extends GamaList<T> implements IPo
 			mirrorManagement.executeOn(scope);
 		}
 		getSpecies().getArchitecture().preStep(scope, this);
-		return stepAgents(scope);
+		if (!rebuildsSpatialIndex) { return stepAgents(scope); }
+		final ISpatialIndex index = topology.getSpatialIndex();
+		if (!(index instanceof ISpatialIndex.Compound)) { return stepAgents(scope); }
+		// The moves of the agents are applied to the spatial index once the step is over
+		final ISpatialIndex.Compound compound = (ISpatialIndex.Compound) index;
+		compound.beginStep(this);
+		try {
+			return stepAgents(scope);
+		} finally {
+			compound.endStep(this);
+		}
 
 	}
 
@@ -531,6 +545,8 @@ public class GamaPopulation<T extends IAgent> extends GamaList<T> implements IPo
 			topology = new GraphTopology(scope, this.getHost(), g);
 		} else {
 			topology = new ContinuousTopology(scope, this.getHost());
+			final IExpression rebuild = species.getFacet("rebuild_spatial_index");
+			rebuildsSpatialIndex = rebuild != null && Cast.asBool(scope, rebuild.value(scope));
 		}
 
 	}
@@ -585,6 +601,13 @@ public class GamaPopulation<T extends IAgent> extends GamaList<T> implements IPo
 			}
 
 		}
+		exp = species.getFacet("neighbors_cache_radius");
+		if (exp != null) {
+			final int radius = Cast.asInt(scope, exp.value(scope));
+			if (radius > 0) {
+				((GamaSpatialMatrix) result.getPlaces()).precomputeNeighborhood(radius);
+			}
+		}
 		// Reverts the modification of the world envelope (see #1953 and #1939)
 		//
 		// final Envelope3D env =
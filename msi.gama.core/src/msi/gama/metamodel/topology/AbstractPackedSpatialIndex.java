@@ -0,0 +1,401 @@
+/*******************************************************************************************************
+ *
+ * msi.gama.metamodel.topology.AbstractPackedSpatialIndex.java, in plugin msi.gama.core, is part of the source code of
+ * the GAMA modeling and simulation platform (v. 1.8)
+ *
+ * (c) 2007-2018 UMI 209 UMMISCO IRD/SU & Partners
+ *
+ * Visit https://github.com/gama-platform/gama for license information and contacts.
+ *
+ ********************************************************************************************************/
+
+package msi.gama.metamodel.topology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.google.common.collect.Ordering;
+import com.vividsolutions.jts.geom.Envelope;
+
+import msi.gama.common.geometry.Envelope3D;
+import msi.gama.metamodel.agent.IAgent;
+import msi.gama.metamodel.shape.ILocation;
+import msi.gama.metamodel.shape.IShape;
+import msi.gama.metamodel.topology.filter.IAgentFilter;
+import msi.gama.runtime.IScope;
+import msi.gama.util.Collector;
+import msi.gama.util.GamaListFactory;
+import msi.gama.util.ICollector;
+
+/**
+ * Common implementation of the spatial indexes that store their agents in packed arrays (one array of agents and one
+ * array of doubles holding, for each of them, the (minx, miny, maxx, maxy) coordinates of its envelope) instead of
+ * maps. Subclasses only decide how these arrays are organized (leaves of a quadtree, cells of a uniform grid...).
+ *
+ * When the index is parallel, its operations are protected by a read/write lock.
+ */
+public abstract class AbstractPackedSpatialIndex implements ISpatialIndex.Bulk, ISpatialIndex.Nearest {
+
+	final boolean parallel;
+	private final ReentrantReadWriteLock lock;
+
+	protected AbstractPackedSpatialIndex(final boolean parallel) {
+		this.parallel = parallel;
+		lock = parallel ? new ReentrantReadWriteLock() : null;
+	}
+
+	/**
+	 * Adds the agent with the envelope (x1, y1, x2, y2) to the index
+	 */
+	protected abstract void add(double x1, double y1, double x2, double y2, IAgent a);
+
+	/**
+	 * Removes the agent, stored with the envelope (x1, y1, x2, y2), from the index
+	 */
+	protected abstract void delete(double x1, double y1, double x2, double y2, IAgent a);
+
+	/**
+	 * Clears the index and loads the n agents in all, whose envelopes are packed in coords. If bounds is not null, the
+	 * index adopts them
+	 */
+	protected abstract void load(Envelope bounds, int n, double[] coords, IAgent[] all);
+
+	/**
+	 * Collects the agents whose envelopes intersect the rectangle (x1, y1, x2, y2). If source is not null, the ones
+	 * whose envelopes are farther than dist from it are rejected.
+	 */
+	protected abstract void collect(double x1, double y1, double x2, double y2, Envelope source, double dist,
+			Collection<IAgent> result);
+
+	/**
+	 * Collects all the agents present in the index
+	 */
+	protected abstract void collectAll(Collection<IAgent> result);
+
+	protected abstract void clear();
+
+	/**
+	 * Explores the buckets of the index by increasing distance to the source of the search (see
+	 * {@link NearestNeighbours})
+	 */
+	protected abstract void explore(NearestNeighbours search);
+
+	/**
+	 * Offers to the search the entries of a bucket
+	 */
+	static void offer(final IAgent[] agents, final double[] envelopes, final int size,
+			final NearestNeighbours search) {
+		for (int i = 0, j = 0; i < size; i++, j += 4) {
+			search.offer(agents[i], envelopes[j], envelopes[j + 1], envelopes[j + 2], envelopes[j + 3]);
+		}
+	}
+
+	protected void readLock() {
+		if (lock != null) {
+			lock.readLock().lock();
+		}
+	}
+
+	protected void readUnlock() {
+		if (lock != null) {
+			lock.readLock().unlock();
+		}
+	}
+
+	protected void writeLock() {
+		if (lock != null) {
+			lock.writeLock().lock();
+		}
+	}
+
+	protected void writeUnlock() {
+		if (lock != null) {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void dispose() {
+		writeLock();
+		try {
+			clear();
+		} finally {
+			writeUnlock();
+		}
+	}
+
+	@Override
+	public void insert(final IAgent agent) {
+		if (agent == null) { return; }
+		final IShape g = agent.getGeometry();
+		if (g == null) { return; }
+		if (g.isPoint()) {
+			// Avoids the creation of an envelope
+			final ILocation p = g.getLocation();
+			writeLock();
+			try {
+				add(p.getX(), p.getY(), p.getX(), p.getY(), agent);
+			} finally {
+				writeUnlock();
+			}
+			return;
+		}
+		final Envelope3D env = g.getEnvelope();
+		if (env == null) { return; }
+		writeLock();
+		try {
+			add(env.getMinX(), env.getMinY(), env.getMaxX(), env.getMaxY(), agent);
+		} finally {
+			writeUnlock();
+			env.dispose();
+		}
+	}
+
+	@Override
+	public void remove(final Envelope3D previous, final IAgent agent) {
+		final Envelope3D current = previous == null ? agent.getEnvelope() : previous;
+		if (current == null) { return; }
+		writeLock();
+		try {
+			delete(current.getMinX(), current.getMinY(), current.getMaxX(), current.getMaxY(), agent);
+		} finally {
+			writeUnlock();
+			current.dispose();
+		}
+	}
+
+	@Override
+	public void bulkLoad(final Envelope bounds, final Iterable<? extends IAgent> agents) {
+		final List<IAgent> loaded = new ArrayList<>();
+		final double[] coords = pack(agents, loaded);
+		final int n = loaded.size();
+		writeLock();
+		try {
+			load(bounds, n, coords, loaded.toArray(new IAgent[n]));
+		} finally {
+			writeUnlock();
+		}
+	}
+
+	/**
+	 * Collects the live agents in the list passed and returns their envelopes packed in one array
+	 */
+	static double[] pack(final Iterable<? extends IAgent> agents, final List<IAgent> result) {
+		double[] coords = new double[256];
+		int n = 0;
+		for (final IAgent a : agents) {
+			if (a == null || a.dead()) {
+				continue;
+			}
+			final IShape g = a.getGeometry();
+			if (g == null) {
+				continue;
+			}
+			if (n + 4 > coords.length) {
+				coords = Arrays.copyOf(coords, coords.length * 2);
+			}
+			if (g.isPoint()) {
+				// Avoids the creation of an envelope
+				final ILocation p = g.getLocation();
+				coords[n++] = p.getX();
+				coords[n++] = p.getY();
+				coords[n++] = p.getX();
+				coords[n++] = p.getY();
+			} else {
+				final Envelope3D env = g.getEnvelope();
+				if (env == null) {
+					continue;
+				}
+				coords[n++] = env.getMinX();
+				coords[n++] = env.getMinY();
+				coords[n++] = env.getMaxX();
+				coords[n++] = env.getMaxY();
+				env.dispose();
+			}
+			result.add(a);
+		}
+		return coords;
+	}
+
+	/**
+	 * A lower bound of the distance between the source envelope and the packed envelope of an agent. Agents farther
+	 * than the requested distance according to it can be rejected without computing their exact distance
+	 */
+	static double minDistance(final Envelope source, final double minx, final double miny, final double maxx,
+			final double maxy) {
+		final double dx = minx > source.getMaxX() ? minx - source.getMaxX()
+				: source.getMinX() > maxx ? source.getMinX() - maxx : 0d;
+		final double dy = miny > source.getMaxY() ? miny - source.getMaxY()
+				: source.getMinY() > maxy ? source.getMinY() - maxy : 0d;
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * Appends an entry to the packed arrays of a bucket (leaf, cell...) and returns the arrays, which may have been
+	 * reallocated. The size of the bucket is not updated
+	 */
+	static IAgent[] append(final IAgent[] agents, final int size, final IAgent a) {
+		final IAgent[] result =
+				agents == null ? new IAgent[8] : size == agents.length ? Arrays.copyOf(agents, size * 2) : agents;
+		result[size] = a;
+		return result;
+	}
+
+	static double[] append(final double[] envelopes, final int size, final double x1, final double y1,
+			final double x2, final double y2) {
+		final double[] result = envelopes == null ? new double[32]
+				: size * 4 == envelopes.length ? Arrays.copyOf(envelopes, size * 8) : envelopes;
+		final int j = size * 4;
+		result[j] = x1;
+		result[j + 1] = y1;
+		result[j + 2] = x2;
+		result[j + 3] = y2;
+		return result;
+	}
+
+	/**
+	 * Removes the agent from the packed arrays of a bucket, preserving the order of the remaining entries. Returns
+	 * whether it was found.
+	 */
+	static boolean delete(final IAgent[] agents, final double[] envelopes, final int size, final IAgent a) {
+		for (int i = 0; i < size; i++) {
+			if (agents[i] == a) {
+				final int remaining = size - i - 1;
+				if (remaining > 0) {
+					System.arraycopy(agents, i + 1, agents, i, remaining);
+					System.arraycopy(envelopes, (i + 1) * 4, envelopes, i * 4, remaining * 4);
+				}
+				agents[size - 1] = null;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Collects the entries of a bucket that intersect the rectangle (x1, y1, x2, y2) and, if source is not null, are
+	 * not farther than dist from it
+	 */
+	static void collect(final IAgent[] agents, final double[] envelopes, final int size, final double x1,
+			final double y1, final double x2, final double y2, final Envelope source, final double dist,
+			final Collection<IAgent> result) {
+		for (int i = 0, j = 0; i < size; i++, j += 4) {
+			final double ex1 = envelopes[j], ey1 = envelopes[j + 1], ex2 = envelopes[j + 2], ey2 = envelopes[j + 3];
+			if (ex1 > x2 || ex2 < x1 || ey1 > y2 || ey2 < y1) {
+				continue;
+			}
+			if (source != null && minDistance(source, ex1, ey1, ex2, ey2) > dist) {
+				continue;
+			}
+			result.add(agents[i]);
+		}
+	}
+
+	protected Collection<IAgent> findIntersects(final IScope scope, final IShape source, final Envelope r,
+			final double dist, final IAgentFilter filter) {
+		// Adresses Issue 722 by explicitly shuffling the results with GAMA
+		// random procedures and removing duplicates
+		try (final ICollector<IAgent> list = Collector.getOrderedSet()) {
+			readLock();
+			try {
+				collect(r.getMinX() - dist, r.getMinY() - dist, r.getMaxX() + dist, r.getMaxY() + dist,
+						dist == 0d ? null : r, dist, list);
+			} finally {
+				readUnlock();
+			}
+			if (list.isEmpty()) { return GamaListFactory.create(); }
+			filter.filter(scope, source, list);
+			list.shuffleInPlaceWith(scope.getRandom());
+			return list.items();
+		}
+	}
+
+	@Override
+	public Collection<IAgent> allAtDistance(final IScope scope, final IShape source, final double dist,
+			final IAgentFilter f) {
+		final Envelope3D env = source.getEnvelope();
+		try {
+			final Collection<IAgent> result = findIntersects(scope, source, env, dist, f);
+			if (result.isEmpty()) { return GamaListFactory.create(); }
+			result.removeIf(each -> source.euclidianDistanceTo(each) > dist);
+			return result;
+		} finally {
+			env.dispose();
+		}
+	}
+
+	@Override
+	public Collection<IAgent> firstAtDistance(final IScope scope, final IShape source, final double dist,
+			final IAgentFilter f, final int number, final Collection<IAgent> alreadyChosen) {
+		final Envelope3D env = source.getEnvelope();
+		try {
+			final Collection<IAgent> in_square = findIntersects(scope, source, env, dist, f);
+			in_square.removeAll(alreadyChosen);
+			if (in_square.isEmpty()) { return GamaListFactory.create(); }
+			if (in_square.size() <= number) { return in_square; }
+			final Ordering<IShape> ordering = Ordering.natural().onResultOf(input -> source.euclidianDistanceTo(input));
+			return ordering.leastOf(in_square, number);
+		} finally {
+			env.dispose();
+		}
+	}
+
+	@Override
+	public IAgent firstAtDistance(final IScope scope, final IShape source, final double dist, final IAgentFilter f) {
+		final Envelope3D env = source.getEnvelope();
+		try {
+			final Collection<IAgent> in_square = findIntersects(scope, source, env, dist, f);
+			if (in_square.isEmpty()) { return null; }
+			double min_distance = dist;
+			IAgent min_agent = null;
+			for (final IAgent a : in_square) {
+				final double dd = source.euclidianDistanceTo(a);
+				if (dd < min_distance) {
+					min_distance = dd;
+					min_agent = a;
+				}
+			}
+			return min_agent;
+		} finally {
+			env.dispose();
+		}
+	}
+
+	@Override
+	public void nearest(final NearestNeighbours search) {
+		readLock();
+		try {
+			explore(search);
+		} finally {
+			readUnlock();
+		}
+	}
+
+	@Override
+	public Collection<IAgent> allInEnvelope(final IScope scope, final IShape source, final Envelope envelope,
+			final IAgentFilter f, final boolean contained) {
+		return findIntersects(scope, source, envelope, 0d, f);
+	}
+
+	@Override
+	public Collection<IAgent> allAgents() {
+		try (final ICollector<IAgent> result = Collector.getOrderedSet()) {
+			readLock();
+			try {
+				collectAll(result);
+			} finally {
+				readUnlock();
+			}
+			return result.items();
+		}
+	}
+
+	@Override
+	public boolean isParallel() {
+		return parallel;
+	}
+
+}
@@ -225,10 +225,7 @@ public abstract class AbstractTopology implements ITopology {
 	}
 
 	public void updateAgentBase(final Envelope3D previous, final IAgent agent) {
-		if (previous != null && !previous.isNull()) {
-			getSpatialIndex().remove(previous, agent);
-		}
-		getSpatialIndex().insert(agent);
+		getSpatialIndex().update(previous, agent);
 	}
 
 	@Override
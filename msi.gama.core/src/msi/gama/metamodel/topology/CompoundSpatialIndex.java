@@ -13,10 +13,8 @@ package msi.gama.metamodel.topology;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.List;
 import java.util.Map;
 
-import com.google.common.collect.Ordering;
 import com.vividsolutions.jts.geom.Envelope;
 
 import msi.gama.common.geometry.Envelope3D;
@@ -36,6 +34,85 @@ public class CompoundSpatialIndex extends Object implements ISpatialIndex.Compou
 	private final ICollector<ISpatialIndex> uniqueIndexes;
 	private GamaQuadTree rootIndex;
 	final protected double[] steps;
+	// The populations whose index is updated once per step (see addRebuiltEachStep())
+	private Map<IPopulation<? extends IAgent>, DeferredMoves> deferredMoves;
+
+	/**
+	 * Gathers the moves of the agents of a population while it is stepping, and applies them at once when the step is
+	 * over: either one by one if few agents have moved, or by rebuilding the whole index otherwise. The queries made
+	 * during the step first apply the moves gathered before them
+	 */
+	private class DeferredMoves {
+
+		final ISpatialIndex.Bulk index;
+		// The envelopes the agents had before their first move in the step
+		final Map<IAgent, Envelope3D> moved;
+		volatile boolean active;
+
+		DeferredMoves(final ISpatialIndex.Bulk index) {
+			this.index = index;
+			moved = index.isParallel() ? GamaMapFactory.concurrentMap() : GamaMapFactory.create();
+		}
+
+		void moved(final Envelope3D previous, final IAgent agent) {
+			final Envelope3D first = previous == null || previous.isNull() ? Envelope3D.EMPTY : previous;
+			if (moved.putIfAbsent(agent, first) != null && first != Envelope3D.EMPTY) {
+				first.dispose();
+			}
+		}
+
+		/**
+		 * Returns the envelope under which the agent is still stored in the index if it has moved during the step
+		 * (null otherwise). The agent is forgotten.
+		 */
+		Envelope3D forget(final IAgent agent) {
+			final Envelope3D first = moved.remove(agent);
+			return first == Envelope3D.EMPTY ? null : first;
+		}
+
+		/**
+		 * Applies the moves gathered so far one by one, the population still stepping. Called before the queries made
+		 * during the step, so that they find the agents where they are
+		 */
+		synchronized void apply() {
+			if (moved.isEmpty()) { return; }
+			for (final IAgent agent : new ArrayList<>(moved.keySet())) {
+				final Envelope3D previous = moved.remove(agent);
+				if (previous == null) {
+					continue;
+				}
+				if (previous != Envelope3D.EMPTY) {
+					index.remove(previous, agent);
+				}
+				if (!agent.dead()) {
+					index.insert(agent);
+				}
+			}
+		}
+
+		void flush(final IPopulation<? extends IAgent> pop) {
+			active = false;
+			if (moved.isEmpty()) { return; }
+			if (moved.size() * 4 < pop.size()) {
+				moved.forEach((agent, previous) -> {
+					if (previous != Envelope3D.EMPTY) {
+						index.remove(previous, agent);
+					}
+					if (!agent.dead()) {
+						index.insert(agent);
+					}
+				});
+			} else {
+				moved.forEach((agent, previous) -> {
+					if (previous != Envelope3D.EMPTY) {
+						previous.dispose();
+					}
+				});
+				index.bulkLoad(null, pop);
+			}
+			moved.clear();
+		}
+	}
 
 	public CompoundSpatialIndex(final Envelope bounds, final boolean parallel) {
 		rootIndex = GamaQuadTree.create(bounds, parallel);
@@ -74,12 +151,65 @@ public class CompoundSpatialIndex extends Object implements ISpatialIndex.Compou
 			rootIndex.remove(previous, agent);
 			return;
 		}
+		final DeferredMoves deferred = findDeferredMoves(agent);
+		if (deferred != null) {
+			// The agent may still be stored under the envelope it had before moving
+			final Envelope3D first = deferred.forget(agent);
+			if (first != null) {
+				if (previous != null) {
+					previous.dispose();
+				}
+				deferred.index.remove(first, agent);
+				return;
+			}
+		}
 		final ISpatialIndex si = findSpatialIndex(agent.getPopulation());
 		if (si != null) {
 			si.remove(previous, agent);
 		}
 	}
 
+	@Override
+	public void update(final Envelope3D previous, final IAgent agent) {
+		if (disposed) { return; }
+		if (agent == null) { return; }
+		final DeferredMoves deferred = findDeferredMoves(agent);
+		if (deferred != null) {
+			deferred.moved(previous, agent);
+			return;
+		}
+		ISpatialIndex.Compound.super.update(previous, agent);
+	}
+
+	/**
+	 * Applies the moves gathered in the population, or in all the populations that are stepping if it has no deferred
+	 * moves (the query then looks in all the indexes)
+	 */
+	private void applyDeferredMoves(final IPopulation<? extends IAgent> pop) {
+		if (deferredMoves == null) { return; }
+		final DeferredMoves deferred = pop == null ? null : deferredMoves.get(pop);
+		if (deferred != null) {
+			if (deferred.active) {
+				deferred.apply();
+			}
+			return;
+		}
+		for (final DeferredMoves d : deferredMoves.values()) {
+			if (d.active) {
+				d.apply();
+			}
+		}
+	}
+
+	/**
+	 * Returns the deferred moves of the population of the agent, if they are currently gathered
+	 */
+	private DeferredMoves findDeferredMoves(final IAgent agent) {
+		if (deferredMoves == null) { return null; }
+		final DeferredMoves deferred = deferredMoves.get(agent.getPopulation());
+		return deferred == null || !deferred.active ? null : deferred;
+	}
+
 	private Collection<IAgent> firstAtDistance(final IScope scope, final IShape source, final IAgentFilter filter,
 			final ISpatialIndex index, final int number, final Collection<IAgent> alreadyChosen) {
 		try (final ICollector<IAgent> closestEnt = Collector.getList()) {
@@ -106,77 +236,60 @@ public class CompoundSpatialIndex extends Object implements ISpatialIndex.Compou
 		return null;
 	}
 
-	private Collection<IAgent> firstAtDistance(final IScope scope, final IShape source, final IAgentFilter filter,
-			final int number, final Collection<IAgent> alreadyChosen) {
-		if (disposed) { return null; }
-		final List<IAgent> shapes = new ArrayList<>(alreadyChosen);
-		for (final double step : steps) {
-			for (final ISpatialIndex si : getAllSpatialIndexes()) {
-				final Collection<IAgent> firsts = si.firstAtDistance(scope, source, step, filter, number, shapes);
-				shapes.addAll(firsts);
-			}
-			if (shapes.size() >= number) {
-				break;
+	/**
+	 * Offers to the search the agents of the index that may be among the closest ones. The indexes that do not support
+	 * best-first searches are queried within increasing distances
+	 */
+	private void nearest(final NearestNeighbours search, final ISpatialIndex index, final IAgentFilter filter,
+			final Collection<IAgent> alreadyChosen) {
+		if (index instanceof ISpatialIndex.Nearest) {
+			((ISpatialIndex.Nearest) index).nearest(search);
+		} else if (search.capacity == 1) {
+			search.offer(firstAtDistance(search.scope, search.source, filter, index));
+		} else {
+			for (final IAgent a : firstAtDistance(search.scope, search.source, filter, index, search.capacity,
+					alreadyChosen)) {
+				search.offer(a);
 			}
 		}
-
-		if (shapes.size() <= number) { return shapes; }
-		scope.getRandom().shuffleInPlace(shapes);
-		final Ordering<IShape> ordering = Ordering.natural().onResultOf(input -> source.euclidianDistanceTo(input));
-		return ordering.leastOf(shapes, number);
 	}
 
-	private IAgent firstAtDistance(final IScope scope, final IShape source, final IAgentFilter filter) {
-		if (disposed) { return null; }
-		try (final Collector.AsList<IAgent> shapes = Collector.getList()) {
-			for (final double step : steps) {
-				for (final ISpatialIndex si : getAllSpatialIndexes()) {
-					final IAgent first = si.firstAtDistance(scope, source, step, filter);
-					if (first != null) {
-						shapes.add(first);
-					}
-				}
-				if (!shapes.isEmpty()) {
-					break;
-				}
-			}
-			if (shapes.items().size() == 1) { return shapes.items().get(0); }
-			// Adresses Issue 722 by shuffling the returned list using GAMA random
-			// procedure
-			shapes.shuffleInPlaceWith(scope.getRandom());
-			double min_dist = Double.MAX_VALUE;
-			IAgent min_agent = null;
-			for (final IAgent s : shapes) {
-				final double dd = source.euclidianDistanceTo(s);
-				if (dd < min_dist) {
-					min_dist = dd;
-					min_agent = s;
-				}
+	/**
+	 * Starts a search of the closest agents in the index of the population of the filter or, if there is none, in all
+	 * the indexes. A distance of 0 means that the search is not bounded.
+	 */
+	private NearestNeighbours nearest(final IScope scope, final IShape source, final double dist,
+			final IAgentFilter f, final int number, final Collection<IAgent> alreadyChosen) {
+		final NearestNeighbours search = NearestNeighbours.start(scope, source, f, number,
+				dist > 0d ? dist : Double.POSITIVE_INFINITY, alreadyChosen);
+		final IPopulation<? extends IAgent> pop = f.getPopulation(scope);
+		applyDeferredMoves(pop);
+		final ISpatialIndex id = pop == null ? null : findSpatialIndex(pop);
+		if (id != null) {
+			nearest(search, id, f, alreadyChosen);
+		} else {
+			for (final ISpatialIndex si : getAllSpatialIndexes()) {
+				nearest(search, si, f, alreadyChosen);
 			}
-			return min_agent;
 		}
-
+		return search;
 	}
 
 	@Override
 	public Collection<IAgent> firstAtDistance(final IScope scope, final IShape source, final double dist,
 			final IAgentFilter f, final int number, final Collection<IAgent> alreadyChosen) {
-		// TODO -- Verify : dist not taken into account here. Normal ?
-		final IPopulation<? extends IAgent> pop = f.getPopulation(scope);
-		if (pop == null) { return firstAtDistance(scope, source, f, number, alreadyChosen); }
-		final ISpatialIndex id = findSpatialIndex(pop);
-		if (id != null) { return firstAtDistance(scope, source, f, id, number, alreadyChosen); }
-		return firstAtDistance(scope, source, f, number, alreadyChosen);
+		if (disposed) { return null; }
+		try (final NearestNeighbours search = nearest(scope, source, dist, f, number, alreadyChosen)) {
+			return search.result();
+		}
 	}
 
 	@Override
 	public IAgent firstAtDistance(final IScope scope, final IShape source, final double dist, final IAgentFilter f) {
-		// TODO -- Verify : dist not taken into account here. Normal ?
-		final IPopulation<? extends IAgent> pop = f.getPopulation(scope);
-		if (pop == null) { return firstAtDistance(scope, source, f); }
-		final ISpatialIndex id = findSpatialIndex(pop);
-		if (id != null) { return firstAtDistance(scope, source, f, id); }
-		return firstAtDistance(scope, source, f);
+		if (disposed) { return null; }
+		try (final NearestNeighbours search = nearest(scope, source, dist, f, 1, null)) {
+			return search.closest();
+		}
 	}
 
 	@Override
@@ -184,7 +297,9 @@ public class CompoundSpatialIndex extends Object implements ISpatialIndex.Compou
 			final IAgentFilter f) {
 		if (disposed) { return Collections.EMPTY_LIST; }
 		if (unique) { return rootIndex.allAtDistance(scope, source, dist, f); }
-		final ISpatialIndex id = findSpatialIndex(f.getPopulation(scope));
+		final IPopulation<? extends IAgent> pop = f.getPopulation(scope);
+		applyDeferredMoves(pop);
+		final ISpatialIndex id = findSpatialIndex(pop);
 		if (id == rootIndex) {
 			try (final ICollector<IAgent> agents = Collector.getOrderedSet()) {
 				for (final ISpatialIndex si : getAllSpatialIndexes()) {
@@ -201,7 +316,9 @@ public class CompoundSpatialIndex extends Object implements ISpatialIndex.Compou
 			final IAgentFilter f, final boolean contained) {
 		if (disposed) { return Collections.EMPTY_LIST; }
 		if (unique) { return rootIndex.allInEnvelope(scope, source, envelope, f, contained); }
-		final ISpatialIndex id = findSpatialIndex(f.getPopulation(scope));
+		final IPopulation<? extends IAgent> pop = f.getPopulation(scope);
+		applyDeferredMoves(pop);
+		final ISpatialIndex id = findSpatialIndex(pop);
 		if (id == rootIndex) {
 			try (final ICollector<IAgent> agents = Collector.getOrderedSet()) {
 				for (final ISpatialIndex si : getAllSpatialIndexes()) {
@@ -226,6 +343,35 @@ public class CompoundSpatialIndex extends Object implements ISpatialIndex.Compou
 		unique = false;
 	}
 
+	@Override
+	public void addRebuiltEachStep(final ISpatialIndex.Bulk index, final IPopulation<? extends IAgent> pop) {
+		if (disposed) { return; }
+		if (index == null) { return; }
+		add(index, pop);
+		if (deferredMoves == null) {
+			deferredMoves = GamaMapFactory.create();
+		}
+		deferredMoves.put(pop, new DeferredMoves(index));
+	}
+
+	@Override
+	public void beginStep(final IPopulation<? extends IAgent> pop) {
+		if (disposed || deferredMoves == null) { return; }
+		final DeferredMoves deferred = deferredMoves.get(pop);
+		if (deferred != null) {
+			deferred.active = true;
+		}
+	}
+
+	@Override
+	public void endStep(final IPopulation<? extends IAgent> pop) {
+		if (disposed || deferredMoves == null) { return; }
+		final DeferredMoves deferred = deferredMoves.get(pop);
+		if (deferred != null) {
+			deferred.flush(pop);
+		}
+	}
+
 	@Override
 	public void remove(final IPopulation<? extends IAgent> species) {
 		if (disposed) { return; }
@@ -233,6 +379,9 @@ public class CompoundSpatialIndex extends Object implements ISpatialIndex.Compou
 		if (index != null) {
 			uniqueIndexes.remove(index);
 		}
+		if (deferredMoves != null) {
+			deferredMoves.remove(species);
+		}
 	}
 
 	@Override
@@ -240,6 +389,9 @@ public class CompoundSpatialIndex extends Object implements ISpatialIndex.Compou
 		if (spatialIndexes != null) {
 			spatialIndexes.clear();
 		}
+		if (deferredMoves != null) {
+			deferredMoves.clear();
+		}
 		uniqueIndexes.clear();
 		rootIndex = null;
 		disposed = true;
@@ -256,6 +408,14 @@ public class CompoundSpatialIndex extends Object implements ISpatialIndex.Compou
 		for (final IAgent a : agents) {
 			tree.insert(a);
 		}
+		// The indexes dedicated to some species are rebuilt with the new bounds as well
+		if (spatialIndexes != null) {
+			for (final ISpatialIndex index : spatialIndexes.values()) {
+				if (index instanceof ISpatialIndex.Bulk) {
+					((ISpatialIndex.Bulk) index).bulkLoad(envelope, index.allAgents());
+				}
+			}
+		}
 
 	}
 
@@ -282,6 +442,9 @@ public class CompoundSpatialIndex extends Object implements ISpatialIndex.Compou
 				add(index, species);
 			}
 		});
+		if (other.deferredMoves != null) {
+			other.deferredMoves.forEach((species, deferred) -> addRebuiltEachStep(deferred.index, species));
+		}
 		other.dispose();
 	}
 
@@ -0,0 +1,302 @@
+/*******************************************************************************************************
+ *
+ * msi.gama.metamodel.topology.GamaPackedQuadTree.java, in plugin msi.gama.core, is part of the source code of the
+ * GAMA modeling and simulation platform (v. 1.8)
+ *
+ * (c) 2007-2018 UMI 209 UMMISCO IRD/SU & Partners
+ *
+ * Visit https://github.com/gama-platform/gama for license information and contacts.
+ *
+ ********************************************************************************************************/
+
+package msi.gama.metamodel.topology;
+
+import java.util.Collection;
+import java.util.concurrent.ForkJoinTask;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+import msi.gama.metamodel.agent.IAgent;
+import msi.gama.runtime.concurrent.GamaExecutorService;
+
+/**
+ * A variant of {@link GamaQuadTree} where the leaves do not store their agents in maps, but in packed arrays (see
+ * {@link AbstractPackedSpatialIndex}). Queries scan these arrays sequentially instead of walking map entries, and most
+ * candidates can be rejected on their packed coordinates without touching their geometry. The tree can also be rebuilt
+ * at once from a set of agents (see {@link #bulkLoad(Envelope, Iterable)}).
+ *
+ * Can be chosen for a species using the facet 'spatial_index: "packed_quadtree"'.
+ */
+public class GamaPackedQuadTree extends AbstractPackedSpatialIndex {
+
+	final static int maxCapacity = 100;
+	// Number of entries above which the quadrants of a node are bulk-loaded in parallel
+	final static int PARALLEL_LOAD_THRESHOLD = 10000;
+	double minSize;
+	PackedNode root;
+
+	public static GamaPackedQuadTree create(final Envelope envelope, final boolean parallel) {
+		return new GamaPackedQuadTree(envelope, parallel);
+	}
+
+	private GamaPackedQuadTree(final Envelope bounds, final boolean parallel) {
+		super(parallel);
+		setBounds(bounds);
+	}
+
+	private void setBounds(final Envelope bounds) {
+		// As in GamaQuadTree, all computations are made in 2D
+		minSize = bounds.getWidth() / 100d;
+		root = new PackedNode(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY());
+	}
+
+	@Override
+	protected void clear() {
+		root.dispose();
+	}
+
+	@Override
+	protected void add(final double x1, final double y1, final double x2, final double y2, final IAgent a) {
+		root.add(x1, y1, x2, y2, a);
+	}
+
+	@Override
+	protected void delete(final double x1, final double y1, final double x2, final double y2, final IAgent a) {
+		root.remove(x1, y1, x2, y2, a);
+	}
+
+	@Override
+	protected void load(final Envelope bounds, final int n, final double[] coords, final IAgent[] all) {
+		root.dispose();
+		if (bounds != null) {
+			setBounds(bounds);
+		} else {
+			root = new PackedNode(root.minX, root.minY, root.maxX, root.maxY);
+		}
+		final int[] ids = new int[n];
+		for (int i = 0; i < n; i++) {
+			ids[i] = i;
+		}
+		root.load(ids, n, coords, all);
+	}
+
+	@Override
+	protected void collect(final double x1, final double y1, final double x2, final double y2,
+			final Envelope source, final double dist, final Collection<IAgent> result) {
+		root.findIntersects(x1, y1, x2, y2, source, dist, result);
+	}
+
+	@Override
+	protected void collectAll(final Collection<IAgent> result) {
+		root.collect(result);
+	}
+
+	@Override
+	protected void explore(final NearestNeighbours search) {
+		search.push(root, root.minX, root.minY, root.maxX, root.maxY);
+		PackedNode node;
+		while ((node = (PackedNode) search.next()) != null) {
+			if (node.nodes != null) {
+				for (final PackedNode child : node.nodes) {
+					search.push(child, child.minX, child.minY, child.maxX, child.maxY);
+				}
+			} else {
+				offer(node.agents, node.envelopes, node.size, search);
+			}
+		}
+	}
+
+	private class PackedNode {
+
+		final double minX, minY, maxX, maxY, halfX, halfY;
+		final boolean canSplit;
+		PackedNode[] nodes;
+		// ** Addresses part of Issue 722 -- Need to keep the agents ordered
+		// (by insertion order) **
+		IAgent[] agents;
+		double[] envelopes;
+		int size;
+
+		PackedNode(final double minX, final double minY, final double maxX, final double maxY) {
+			this.minX = minX;
+			this.minY = minY;
+			this.maxX = maxX;
+			this.maxY = maxY;
+			halfX = minX + (maxX - minX) / 2;
+			halfY = minY + (maxY - minY) / 2;
+			canSplit = maxX - minX > minSize && maxY - minY > minSize;
+		}
+
+		void dispose() {
+			agents = null;
+			envelopes = null;
+			size = 0;
+			if (nodes != null) {
+				for (final PackedNode n : nodes) {
+					n.dispose();
+				}
+				nodes = null;
+			}
+		}
+
+		boolean intersects(final double x1, final double y1, final double x2, final double y2) {
+			return !(x1 > maxX || x2 < minX || y1 > maxY || y2 < minY);
+		}
+
+		int quadrant(final double x, final double y) {
+			final boolean north = y >= minY && y < halfY;
+			final boolean west = x >= minX && x < halfX;
+			return north ? west ? GamaQuadTree.NW : GamaQuadTree.NE : west ? GamaQuadTree.SW : GamaQuadTree.SE;
+		}
+
+		void add(final double x1, final double y1, final double x2, final double y2, final IAgent a) {
+			if (nodes == null) {
+				if (!canSplit || size < maxCapacity) {
+					append(x1, y1, x2, y2, a);
+					return;
+				}
+				split();
+			}
+			if (x1 == x2 && y1 == y2) {
+				nodes[quadrant(x1, y1)].add(x1, y1, x2, y2, a);
+			} else {
+				for (final PackedNode node : nodes) {
+					if (node.intersects(x1, y1, x2, y2)) {
+						node.add(x1, y1, x2, y2, a);
+					}
+				}
+			}
+		}
+
+		private void append(final double x1, final double y1, final double x2, final double y2, final IAgent a) {
+			envelopes = AbstractPackedSpatialIndex.append(envelopes, size, x1, y1, x2, y2);
+			agents = AbstractPackedSpatialIndex.append(agents, size++, a);
+		}
+
+		void remove(final double x1, final double y1, final double x2, final double y2, final IAgent a) {
+			if (nodes == null) {
+				if (agents != null && AbstractPackedSpatialIndex.delete(agents, envelopes, size, a)) {
+					size--;
+				}
+			} else if (x1 == x2 && y1 == y2) {
+				nodes[quadrant(x1, y1)].remove(x1, y1, x2, y2, a);
+			} else {
+				for (final PackedNode node : nodes) {
+					if (node.intersects(x1, y1, x2, y2)) {
+						node.remove(x1, y1, x2, y2, a);
+					}
+				}
+			}
+		}
+
+		private void createNodes() {
+			nodes = new PackedNode[] { new PackedNode(minX, minY, halfX, halfY),
+					new PackedNode(halfX, minY, maxX, halfY), new PackedNode(minX, halfY, halfX, maxY),
+					new PackedNode(halfX, halfY, maxX, maxY) };
+		}
+
+		private void split() {
+			createNodes();
+			final IAgent[] a = agents;
+			final double[] e = envelopes;
+			final int n = size;
+			agents = null;
+			envelopes = null;
+			size = 0;
+			for (int i = 0; i < n; i++) {
+				if (a[i] != null && !a[i].dead()) {
+					final int j = i * 4;
+					add(e[j], e[j + 1], e[j + 2], e[j + 3], a[i]);
+				}
+			}
+		}
+
+		/**
+		 * Bulk-loads the entries designated by the n first indices in ids. Their order is preserved in the leaves
+		 */
+		void load(final int[] ids, final int n, final double[] coords, final IAgent[] all) {
+			if (n <= maxCapacity || !canSplit) {
+				agents = new IAgent[Math.max(n, 8)];
+				envelopes = new double[agents.length * 4];
+				for (int i = 0; i < n; i++) {
+					final int id = ids[i];
+					System.arraycopy(coords, id * 4, envelopes, i * 4, 4);
+					agents[i] = all[id];
+				}
+				size = n;
+				return;
+			}
+			createNodes();
+			if (parallel && n >= PARALLEL_LOAD_THRESHOLD && GamaExecutorService.AGENT_PARALLEL_EXECUTOR != null) {
+				// The quadrants are loaded concurrently, each with its own selection of entries
+				final ForkJoinTask<?>[] tasks = new ForkJoinTask[4];
+				for (int q = 0; q < 4; q++) {
+					final PackedNode node = nodes[q];
+					final int[] sub = new int[n];
+					final int m = select(q, ids, n, coords, sub);
+					tasks[q] = ForkJoinTask.adapt(() -> node.load(sub, m, coords, all));
+				}
+				if (ForkJoinTask.inForkJoinPool()) {
+					ForkJoinTask.invokeAll(tasks);
+				} else {
+					GamaExecutorService.AGENT_PARALLEL_EXECUTOR
+							.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+				}
+				return;
+			}
+			final int[] sub = new int[n];
+			for (int q = 0; q < 4; q++) {
+				final int m = select(q, ids, n, coords, sub);
+				nodes[q].load(sub, m, coords, all);
+			}
+		}
+
+		/**
+		 * Copies in sub the indices, among the n first ones in ids, of the entries that belong to the quadrant q.
+		 * Returns their number
+		 */
+		private int select(final int q, final int[] ids, final int n, final double[] coords, final int[] sub) {
+			final PackedNode node = nodes[q];
+			int m = 0;
+			for (int i = 0; i < n; i++) {
+				final int id = ids[i];
+				final int j = id * 4;
+				final double x1 = coords[j], y1 = coords[j + 1], x2 = coords[j + 2], y2 = coords[j + 3];
+				if (x1 == x2 && y1 == y2 ? quadrant(x1, y1) == q : node.intersects(x1, y1, x2, y2)) {
+					sub[m++] = id;
+				}
+			}
+			return m;
+		}
+
+		/**
+		 * Collects the agents whose envelopes intersect the rectangle (x1, y1, x2, y2). If source is not null, the ones
+		 * whose envelopes are farther than dist from it are rejected.
+		 */
+		void findIntersects(final double x1, final double y1, final double x2, final double y2,
+				final Envelope source, final double dist, final Collection<IAgent> result) {
+			if (!intersects(x1, y1, x2, y2)) { return; }
+			if (nodes != null) {
+				for (final PackedNode node : nodes) {
+					node.findIntersects(x1, y1, x2, y2, source, dist, result);
+				}
+				return;
+			}
+			AbstractPackedSpatialIndex.collect(agents, envelopes, size, x1, y1, x2, y2, source, dist, result);
+		}
+
+		void collect(final Collection<IAgent> result) {
+			if (nodes != null) {
+				for (final PackedNode node : nodes) {
+					node.collect(result);
+				}
+				return;
+			}
+			for (int i = 0; i < size; i++) {
+				result.add(agents[i]);
+			}
+		}
+
+	}
+
+}
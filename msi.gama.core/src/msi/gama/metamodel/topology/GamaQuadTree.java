@@ -41,7 +41,7 @@ import msi.gaml.operators.Maths;
  * @version $Id: QuadTree.java 717 2010-11-21 12:30:57Z rawcoder $
  */
 @SuppressWarnings ({ "unchecked", "rawtypes" })
-public class GamaQuadTree implements ISpatialIndex {
+public class GamaQuadTree implements ISpatialIndex.Nearest {
 
 	public static final int NW = 0;
 	public static final int NE = 1;
@@ -190,6 +190,15 @@ public class GamaQuadTree implements ISpatialIndex {
 		}
 	}
 
+	@Override
+	public void nearest(final NearestNeighbours search) {
+		search.push(root, root.bounds.getMinX(), root.bounds.getMinY(), root.bounds.getMaxX(), root.bounds.getMaxY());
+		QuadNode node;
+		while ((node = (QuadNode) search.next()) != null) {
+			node.nearest(search);
+		}
+	}
+
 	private class QuadNode {
 
 		final Envelope bounds;
@@ -334,6 +343,24 @@ public class GamaQuadTree implements ISpatialIndex {
 			}
 		}
 
+		void nearest(final NearestNeighbours search) {
+			final IMap<IAgent, Envelope3D> objects = this.objects;
+			if (objects != null) {
+				objects.forEach((a, env) -> {
+					if (env != null) {
+						search.offer(a, env.getMinX(), env.getMinY(), env.getMaxX(), env.getMaxY());
+					}
+				});
+			}
+			final QuadNode[] nodes = this.nodes;
+			if (nodes != null) {
+				for (final QuadNode node : nodes) {
+					final Envelope b = node.bounds;
+					search.push(node, b.getMinX(), b.getMinY(), b.getMaxX(), b.getMaxY());
+				}
+			}
+		}
+
 		public void findIntersects(final Envelope r, final Collection<IAgent> result) {
 			if (bounds.intersects(r)) {
 				if (objects != null) {
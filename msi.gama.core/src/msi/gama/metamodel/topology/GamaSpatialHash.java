@@ -0,0 +1,291 @@
+/*******************************************************************************************************
+ *
+ * msi.gama.metamodel.topology.GamaSpatialHash.java, in plugin msi.gama.core, is part of the source code of the GAMA
+ * modeling and simulation platform (v. 1.8)
+ *
+ * (c) 2007-2018 UMI 209 UMMISCO IRD/SU & Partners
+ *
+ * Visit https://github.com/gama-platform/gama for license information and contacts.
+ *
+ ********************************************************************************************************/
+
+package msi.gama.metamodel.topology;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+import msi.gama.metamodel.agent.IAgent;
+import msi.gama.metamodel.shape.IShape;
+import msi.gama.metamodel.topology.filter.IAgentFilter;
+import msi.gama.runtime.IScope;
+
+/**
+ * A spatial index that divides the environment into a uniform grid of square cells (a "spatial hash"), each cell
+ * storing the agents whose envelopes intersect it in packed arrays (see {@link AbstractPackedSpatialIndex}). Agents
+ * located outside of the bounds are stored in the border cells. For dense populations of point agents queried with a
+ * fixed radius, a query only visits the few cells covered by the radius, without any tree walk.
+ *
+ * The size of the cells can be fixed (facet 'spatial_index_cell_size' of species). Otherwise, it is adapted to the most
+ * frequent distance used in 'at_distance' queries.
+ *
+ * Can be chosen for a species using the facet 'spatial_index: "spatial_hash"'.
+ */
+public class GamaSpatialHash extends AbstractPackedSpatialIndex {
+
+	// Maximum number of cells, whatever the size required
+	final static int MAX_CELLS = 1 << 20;
+	// Number of cells along the largest dimension of the environment when the size of the cells is not known
+	final static int DEFAULT_DIVISIONS = 100;
+	// Number of 'at_distance' queries after which the size of the cells is reconsidered, when it is not fixed
+	final static int ADAPTATION_PERIOD = 1000;
+	// Only one query out of SAMPLING is recorded, so that parallel queries rarely compete for the statistics
+	final static int SAMPLING = 16;
+
+	final boolean fixedCellSize;
+	double minX, minY, maxX, maxY, cellSize;
+	int cols, rows;
+	IAgent[][] agents;
+	double[][] envelopes;
+	int[] sizes;
+
+	// The distances used by the sampled queries since the last adaptation, and their frequencies
+	private final double[] distances = new double[8];
+	private final int[] frequencies = new int[8];
+	private final AtomicInteger queries = new AtomicInteger();
+	private int samples;
+	private volatile double pendingCellSize;
+
+	/**
+	 * Creates a spatial hash covering the envelope. If cellSize is not strictly positive, the size of the cells is
+	 * adapted to the queries
+	 */
+	public static GamaSpatialHash create(final Envelope envelope, final double cellSize, final boolean parallel) {
+		return new GamaSpatialHash(envelope, cellSize, parallel);
+	}
+
+	private GamaSpatialHash(final Envelope bounds, final double cellSize, final boolean parallel) {
+		super(parallel);
+		fixedCellSize = cellSize > 0;
+		layout(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY(), fixedCellSize ? cellSize
+				: Math.max(bounds.getWidth(), bounds.getHeight()) / DEFAULT_DIVISIONS);
+	}
+
+	/**
+	 * (Re)creates empty cells covering the bounds passed
+	 */
+	private void layout(final double x1, final double y1, final double x2, final double y2, final double size) {
+		minX = x1;
+		minY = y1;
+		maxX = x2;
+		maxY = y2;
+		final double w = Math.max(x2 - x1, Double.MIN_VALUE);
+		final double h = Math.max(y2 - y1, Double.MIN_VALUE);
+		double s = size > 0 ? size : Math.max(w, h);
+		if (w / s * (h / s) > MAX_CELLS) {
+			s = Math.sqrt(w * h / MAX_CELLS);
+		}
+		cellSize = s;
+		cols = Math.max(1, (int) Math.ceil(w / s));
+		rows = Math.max(1, (int) Math.ceil(h / s));
+		agents = new IAgent[cols * rows][];
+		envelopes = new double[cols * rows][];
+		sizes = new int[cols * rows];
+	}
+
+	private int col(final double x) {
+		final int c = (int) ((x - minX) / cellSize);
+		return c < 0 ? 0 : c >= cols ? cols - 1 : c;
+	}
+
+	private int row(final double y) {
+		final int r = (int) ((y - minY) / cellSize);
+		return r < 0 ? 0 : r >= rows ? rows - 1 : r;
+	}
+
+	@Override
+	protected void clear() {
+		layout(minX, minY, maxX, maxY, cellSize);
+	}
+
+	@Override
+	protected void add(final double x1, final double y1, final double x2, final double y2, final IAgent a) {
+		if (pendingCellSize > 0) {
+			rehash(pendingCellSize);
+		}
+		final int c2 = col(x2), r2 = row(y2);
+		for (int r = row(y1); r <= r2; r++) {
+			for (int c = col(x1); c <= c2; c++) {
+				final int i = r * cols + c;
+				envelopes[i] = append(envelopes[i], sizes[i], x1, y1, x2, y2);
+				agents[i] = append(agents[i], sizes[i]++, a);
+			}
+		}
+	}
+
+	@Override
+	protected void delete(final double x1, final double y1, final double x2, final double y2, final IAgent a) {
+		final int c2 = col(x2), r2 = row(y2);
+		for (int r = row(y1); r <= r2; r++) {
+			for (int c = col(x1); c <= c2; c++) {
+				final int i = r * cols + c;
+				if (agents[i] != null && delete(agents[i], envelopes[i], sizes[i], a)) {
+					sizes[i]--;
+				}
+			}
+		}
+	}
+
+	@Override
+	protected void load(final Envelope bounds, final int n, final double[] coords, final IAgent[] all) {
+		final double size = pendingCellSize > 0 ? pendingCellSize : cellSize;
+		pendingCellSize = 0;
+		if (bounds != null) {
+			layout(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY(), size);
+		} else {
+			layout(minX, minY, maxX, maxY, size);
+		}
+		for (int i = 0, j = 0; i < n; i++, j += 4) {
+			add(coords[j], coords[j + 1], coords[j + 2], coords[j + 3], all[i]);
+		}
+	}
+
+	/**
+	 * Redistributes the agents present in the index into cells of the given size
+	 */
+	private void rehash(final double size) {
+		pendingCellSize = 0;
+		final IAgent[][] oldAgents = agents;
+		final double[][] oldEnvelopes = envelopes;
+		final int[] oldSizes = sizes;
+		layout(minX, minY, maxX, maxY, size);
+		// Agents covering several cells must only be added once
+		final Set<IAgent> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (int i = 0; i < oldAgents.length; i++) {
+			final IAgent[] a = oldAgents[i];
+			final double[] e = oldEnvelopes[i];
+			for (int k = 0, j = 0; k < oldSizes[i]; k++, j += 4) {
+				if (e[j] == e[j + 2] && e[j + 1] == e[j + 3] || seen.add(a[k])) {
+					add(e[j], e[j + 1], e[j + 2], e[j + 3], a[k]);
+				}
+			}
+		}
+	}
+
+	@Override
+	protected void collect(final double x1, final double y1, final double x2, final double y2,
+			final Envelope source, final double dist, final Collection<IAgent> result) {
+		final int c1 = col(x1), c2 = col(x2), r2 = row(y2);
+		for (int r = row(y1); r <= r2; r++) {
+			for (int c = c1; c <= c2; c++) {
+				final int i = r * cols + c;
+				if (sizes[i] > 0) {
+					collect(agents[i], envelopes[i], sizes[i], x1, y1, x2, y2, source, dist, result);
+				}
+			}
+		}
+	}
+
+	@Override
+	protected void collectAll(final Collection<IAgent> result) {
+		for (int i = 0; i < agents.length; i++) {
+			for (int k = 0; k < sizes[i]; k++) {
+				result.add(agents[i][k]);
+			}
+		}
+	}
+
+	/**
+	 * The cells are explored by rings of increasing width around the cells covered by the source. As the agents
+	 * outside of the bounds are stored in the border cells, i.e. as if they were projected on the bounds (which does
+	 * not increase distances), the agents of the ring r cannot be closer to the source than (r - 1) * cellSize.
+	 */
+	@Override
+	protected void explore(final NearestNeighbours search) {
+		final int c1 = col(search.minX), c2 = col(search.maxX), r1 = row(search.minY), r2 = row(search.maxY);
+		final int last = Math.max(Math.max(c1, cols - 1 - c2), Math.max(r1, rows - 1 - r2));
+		for (int ring = 0; ring <= last; ring++) {
+			if ((ring - 1) * cellSize > search.bound()) { return; }
+			final int top = r1 - ring, bottom = r2 + ring, left = c1 - ring, right = c2 + ring;
+			if (ring == 0) {
+				for (int r = r1; r <= r2; r++) {
+					for (int c = c1; c <= c2; c++) {
+						offer(r * cols + c, search);
+					}
+				}
+				continue;
+			}
+			final int from = Math.max(left, 0), to = Math.min(right, cols - 1);
+			for (int c = from; c <= to; c++) {
+				if (top >= 0) {
+					offer(top * cols + c, search);
+				}
+				if (bottom < rows) {
+					offer(bottom * cols + c, search);
+				}
+			}
+			final int start = Math.max(top + 1, 0), end = Math.min(bottom - 1, rows - 1);
+			for (int r = start; r <= end; r++) {
+				if (left >= 0) {
+					offer(r * cols + left, search);
+				}
+				if (right < cols) {
+					offer(r * cols + right, search);
+				}
+			}
+		}
+	}
+
+	private void offer(final int cell, final NearestNeighbours search) {
+		if (sizes[cell] > 0) {
+			offer(agents[cell], envelopes[cell], sizes[cell], search);
+		}
+	}
+
+	@Override
+	public Collection<IAgent> allAtDistance(final IScope scope, final IShape source, final double dist,
+			final IAgentFilter f) {
+		if (!fixedCellSize) {
+			record(dist);
+		}
+		return super.allAtDistance(scope, source, dist, f);
+	}
+
+	/**
+	 * Records the distance used by a query (one out of SAMPLING). Every ADAPTATION_PERIOD queries, if the most
+	 * frequent distance is too different from the size of the cells, the index will be rehashed with cells of this
+	 * size at the next insertion (or bulk load)
+	 */
+	private void record(final double dist) {
+		if (dist <= 0 || queries.incrementAndGet() % SAMPLING != 0) { return; }
+		synchronized (frequencies) {
+			int i = 0;
+			while (i < distances.length && frequencies[i] > 0 && distances[i] != dist) {
+				i++;
+			}
+			if (i < distances.length) {
+				distances[i] = dist;
+				frequencies[i]++;
+			}
+			if (++samples < ADAPTATION_PERIOD / SAMPLING) { return; }
+			int best = 0;
+			for (int j = 1; j < distances.length; j++) {
+				if (frequencies[j] > frequencies[best]) {
+					best = j;
+				}
+			}
+			final double mode = distances[best];
+			if (mode < cellSize / 2 || mode > cellSize * 2) {
+				pendingCellSize = mode;
+			}
+			samples = 0;
+			Arrays.fill(frequencies, 0);
+		}
+	}
+
+}
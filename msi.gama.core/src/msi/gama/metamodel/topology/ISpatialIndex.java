@@ -10,7 +10,9 @@
  ********************************************************************************************************/
 package msi.gama.metamodel.topology;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 import com.vividsolutions.jts.geom.Envelope;
 
@@ -29,10 +31,28 @@ import msi.gama.runtime.IScope;
  */
 public interface ISpatialIndex {
 
+	/**
+	 * The values accepted by the 'spatial_index' facet of species
+	 */
+	String QUADTREE = "quadtree";
+	String PACKED_QUADTREE = "packed_quadtree";
+	String SPATIAL_HASH = "spatial_hash";
+	List<String> KINDS = Arrays.asList(QUADTREE, PACKED_QUADTREE, SPATIAL_HASH);
+
 	void insert(IAgent agent);
 
 	void remove(final Envelope3D previous, final IAgent agent);
 
+	/**
+	 * Called when an agent has moved from the envelope previous (which can be null if the agent was not located)
+	 */
+	default void update(final Envelope3D previous, final IAgent agent) {
+		if (previous != null && !previous.isNull()) {
+			remove(previous, agent);
+		}
+		insert(agent);
+	}
+
 	IAgent firstAtDistance(IScope scope, final IShape source, final double dist, final IAgentFilter f);
 
 	Collection<IAgent> firstAtDistance(IScope scope, final IShape source, final double dist, final IAgentFilter f,
@@ -55,6 +75,47 @@ public interface ISpatialIndex {
 
 		void mergeWith(Compound spatialIndex);
 
+		/**
+		 * Like add(), except that the moves of the agents of the population that occur during their step are not
+		 * applied immediately to the index, which is instead updated once, when the step is over
+		 */
+		void addRebuiltEachStep(ISpatialIndex.Bulk index, IPopulation<? extends IAgent> pop);
+
+		/**
+		 * Called before and after the population steps its agents
+		 */
+		void beginStep(IPopulation<? extends IAgent> pop);
+
+		void endStep(IPopulation<? extends IAgent> pop);
+
+	}
+
+	/**
+	 * A spatial index that can be cleared and rebuilt at once from a set of agents, rather than by inserting them one
+	 * by one
+	 */
+	public interface Bulk extends ISpatialIndex {
+
+		/**
+		 * Replaces the contents of the index by the agents passed. If bounds is not null, the index also adopts them
+		 * as its new bounds
+		 */
+		void bulkLoad(Envelope bounds, Iterable<? extends IAgent> agents);
+
+	}
+
+	/**
+	 * A spatial index that can take part in a best-first search of the agents closest to a shape, instead of gathering
+	 * all the agents found within increasing distances and sorting them
+	 */
+	public interface Nearest extends ISpatialIndex {
+
+		/**
+		 * Offers to the search the agents of the index that may be among the closest ones. The index is explored by
+		 * increasing distance to the source of the search, until it cannot improve the agents found
+		 */
+		void nearest(NearestNeighbours search);
+
 	}
 
 	Collection<IAgent> allAgents();
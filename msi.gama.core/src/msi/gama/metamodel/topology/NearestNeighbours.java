@@ -0,0 +1,363 @@
+/*******************************************************************************************************
+ *
+ * msi.gama.metamodel.topology.NearestNeighbours.java, in plugin msi.gama.core, is part of the source code of the GAMA
+ * modeling and simulation platform (v. 1.8)
+ *
+ * (c) 2007-2018 UMI 209 UMMISCO IRD/SU & Partners
+ *
+ * Visit https://github.com/gama-platform/gama for license information and contacts.
+ *
+ ********************************************************************************************************/
+package msi.gama.metamodel.topology;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import msi.gama.common.geometry.Envelope3D;
+import msi.gama.metamodel.agent.IAgent;
+import msi.gama.metamodel.shape.IShape;
+import msi.gama.metamodel.topology.filter.IAgentFilter;
+import msi.gama.runtime.IScope;
+import msi.gama.util.GamaListFactory;
+import msi.gama.util.IList;
+import msi.gaml.types.Types;
+
+/**
+ * The state of a best-first search of the k agents closest to a source shape, shared by the spatial indexes that take
+ * part in it (see {@link ISpatialIndex.Nearest}). It holds two primitive heaps: a bounded max-heap of the best agents
+ * found so far, keyed by their distance to the source, and a min-heap of the nodes (of any kind) that remain to be
+ * explored, keyed by a lower bound of their distance to the source. The search stops as soon as the closest remaining
+ * node cannot improve the agents found.
+ *
+ * The agents found at the same distance as the farthest one kept are kept aside, so that the ties can be broken with
+ * the random generator of the scope, like the former searches did (see Issue 722): an agent does not win a tie only
+ * because it has been found first.
+ *
+ * Instances are reused by the thread that obtains them (see {@link #start}) and must be closed after use.
+ */
+public final class NearestNeighbours implements AutoCloseable {
+
+	private static final ThreadLocal<NearestNeighbours> CACHE = ThreadLocal.withInitial(NearestNeighbours::new);
+
+	IScope scope;
+	IShape source;
+	IAgentFilter filter;
+	Collection<IAgent> excluded;
+	int capacity;
+	double maxDistance;
+	// The envelope of the source
+	double minX, minY, maxX, maxY;
+	boolean inUse;
+
+	// Max-heap of the agents found
+	double[] distances = new double[16];
+	IAgent[] agents = new IAgent[16];
+	int size;
+	// The agents at the same distance as the top of the max-heap that do not fit in it
+	IAgent[] ties = new IAgent[8];
+	int tieCount;
+
+	// Min-heap of the nodes to explore
+	double[] keys = new double[64];
+	Object[] nodes = new Object[64];
+	int pending;
+
+	/**
+	 * Starts the search of the number agents accepted by the filter, not present in excluded (which can be null) and
+	 * not farther than maxDistance, that are the closest to the source
+	 */
+	public static NearestNeighbours start(final IScope scope, final IShape source, final IAgentFilter filter,
+			final int number, final double maxDistance, final Collection<IAgent> excluded) {
+		NearestNeighbours search = CACHE.get();
+		if (search.inUse) {
+			// Searches are not supposed to be nested, but in case they are...
+			search = new NearestNeighbours();
+		}
+		search.inUse = true;
+		search.scope = scope;
+		search.source = source;
+		search.filter = filter;
+		search.excluded = excluded == null || excluded.isEmpty() ? null : excluded;
+		search.capacity = Math.max(number, 0);
+		search.maxDistance = maxDistance;
+		final Envelope3D env = source.getEnvelope();
+		search.minX = env.getMinX();
+		search.minY = env.getMinY();
+		search.maxX = env.getMaxX();
+		search.maxY = env.getMaxY();
+		env.dispose();
+		return search;
+	}
+
+	public IShape getSource() {
+		return source;
+	}
+
+	/**
+	 * The distance beyond which nodes and agents can be ignored: the maximum distance requested or, once enough agents
+	 * have been found, the distance of the farthest of them
+	 */
+	public double bound() {
+		return size < capacity ? maxDistance : Math.min(maxDistance, distances[0]);
+	}
+
+	/**
+	 * A lower bound of the distance between the source and any shape contained in the rectangle (x1, y1, x2, y2)
+	 */
+	public double lowerBound(final double x1, final double y1, final double x2, final double y2) {
+		final double dx = x1 > maxX ? x1 - maxX : minX > x2 ? minX - x2 : 0d;
+		final double dy = y1 > maxY ? y1 - maxY : minY > y2 ? minY - y2 : 0d;
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * Adds a node to explore if the rectangle (x1, y1, x2, y2) it covers is not too far from the source
+	 */
+	public void push(final Object node, final double x1, final double y1, final double x2, final double y2) {
+		final double key = lowerBound(x1, y1, x2, y2);
+		if (key > bound()) { return; }
+		if (pending == keys.length) {
+			keys = Arrays.copyOf(keys, pending * 2);
+			nodes = Arrays.copyOf(nodes, pending * 2);
+		}
+		int i = pending++;
+		while (i > 0) {
+			final int parent = (i - 1) >>> 1;
+			if (keys[parent] <= key) {
+				break;
+			}
+			keys[i] = keys[parent];
+			nodes[i] = nodes[parent];
+			i = parent;
+		}
+		keys[i] = key;
+		nodes[i] = node;
+	}
+
+	/**
+	 * Returns the closest node that remains to be explored, or null if there is none or if none of them can improve
+	 * the agents found. In that case, the remaining nodes are forgotten
+	 */
+	public Object next() {
+		if (pending == 0) { return null; }
+		if (keys[0] > bound()) {
+			Arrays.fill(nodes, 0, pending, null);
+			pending = 0;
+			return null;
+		}
+		final Object result = nodes[0];
+		final int last = --pending;
+		final double key = keys[last];
+		final Object node = nodes[last];
+		nodes[last] = null;
+		if (last > 0) {
+			int i = 0;
+			int child;
+			while ((child = 2 * i + 1) < last) {
+				if (child + 1 < last && keys[child + 1] < keys[child]) {
+					child++;
+				}
+				if (keys[child] >= key) {
+					break;
+				}
+				keys[i] = keys[child];
+				nodes[i] = nodes[child];
+				i = child;
+			}
+			keys[i] = key;
+			nodes[i] = node;
+		}
+		return result;
+	}
+
+	/**
+	 * Offers an agent stored with the envelope (x1, y1, x2, y2). Its exact distance is only computed if this envelope
+	 * is close enough to the source
+	 */
+	public void offer(final IAgent a, final double x1, final double y1, final double x2, final double y2) {
+		if (a == null || lowerBound(x1, y1, x2, y2) > bound()) { return; }
+		// Only the agents that are not points can be stored in several nodes
+		if ((x1 != x2 || y1 != y2) && found(a)) { return; }
+		consider(a);
+	}
+
+	/**
+	 * Offers an agent found by other means than the exploration of nodes
+	 */
+	public void offer(final IAgent a) {
+		if (a == null || found(a)) { return; }
+		consider(a);
+	}
+
+	private boolean found(final IAgent a) {
+		for (int i = 0; i < size; i++) {
+			if (agents[i] == a) { return true; }
+		}
+		for (int i = 0; i < tieCount; i++) {
+			if (ties[i] == a) { return true; }
+		}
+		return false;
+	}
+
+	private void addTie(final IAgent a) {
+		if (tieCount == ties.length) {
+			ties = Arrays.copyOf(ties, tieCount * 2);
+		}
+		ties[tieCount++] = a;
+	}
+
+	private void clearTies() {
+		Arrays.fill(ties, 0, tieCount, null);
+		tieCount = 0;
+	}
+
+	private void consider(final IAgent a) {
+		if (capacity == 0) { return; }
+		if (excluded != null && excluded.contains(a)) { return; }
+		if (!filter.accept(scope, source, a)) { return; }
+		final double d = source.euclidianDistanceTo(a);
+		if (d > maxDistance) { return; }
+		if (size < capacity) {
+			if (size == agents.length) {
+				final int length = (int) Math.min((long) size * 2, capacity);
+				agents = Arrays.copyOf(agents, length);
+				distances = Arrays.copyOf(distances, length);
+			}
+			int i = size++;
+			while (i > 0) {
+				final int parent = (i - 1) >>> 1;
+				if (distances[parent] >= d) {
+					break;
+				}
+				distances[i] = distances[parent];
+				agents[i] = agents[parent];
+				i = parent;
+			}
+			distances[i] = d;
+			agents[i] = a;
+		} else if (d < distances[0]) {
+			final double farthest = distances[0];
+			final IAgent evicted = agents[0];
+			siftDown(0, d, a);
+			// The evicted agent remains a candidate if it is still tied with the farthest one kept
+			if (distances[0] == farthest) {
+				addTie(evicted);
+			} else {
+				clearTies();
+			}
+		} else if (d == distances[0]) {
+			addTie(a);
+		}
+	}
+
+	/**
+	 * Places the agent a, at distance d, in the max-heap of agents, starting at position i
+	 */
+	private void siftDown(final int start, final double d, final IAgent a) {
+		int i = start;
+		int child;
+		while ((child = 2 * i + 1) < size) {
+			if (child + 1 < size && distances[child + 1] > distances[child]) {
+				child++;
+			}
+			if (distances[child] <= d) {
+				break;
+			}
+			distances[i] = distances[child];
+			agents[i] = agents[child];
+			i = child;
+		}
+		distances[i] = d;
+		agents[i] = a;
+	}
+
+	/**
+	 * Returns the closest agent found (chosen randomly among the closest ones if they are at the same distance), or
+	 * null if none has been found
+	 */
+	public IAgent closest() {
+		if (size == 0) { return null; }
+		if (size == 1 && tieCount > 0) {
+			// The agent of the heap is tied with the others
+			final int i = scope.getRandom().between(0, tieCount);
+			return i == tieCount ? agents[0] : ties[i];
+		}
+		IAgent result = null;
+		double min = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < size; i++) {
+			if (distances[i] < min) {
+				min = distances[i];
+				result = agents[i];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the agents found, sorted by increasing distance to the source, the agents at the same distance being in
+	 * a random order. The heap is emptied
+	 */
+	public IList<IAgent> result() {
+		final int count = size;
+		final int total = size + tieCount;
+		final IAgent[] sorted = new IAgent[total];
+		final double[] d = new double[total];
+		// The ties share the largest distance and come after the agents of the heap
+		if (tieCount > 0) {
+			System.arraycopy(ties, 0, sorted, count, tieCount);
+			Arrays.fill(d, count, total, distances[0]);
+		}
+		// The heap is emptied from the farthest agent, so the closest ones end up first
+		while (size > 0) {
+			final IAgent farthest = agents[0];
+			final double farthestDistance = distances[0];
+			final int last = --size;
+			final double dl = distances[last];
+			final IAgent a = agents[last];
+			agents[last] = null;
+			if (last > 0) {
+				siftDown(0, dl, a);
+			}
+			sorted[last] = farthest;
+			d[last] = farthestDistance;
+		}
+		// Each group of agents at the same distance that reaches the first count positions is shuffled
+		for (int start = 0; start < count;) {
+			int end = start + 1;
+			while (end < total && d[end] == d[start]) {
+				end++;
+			}
+			if (end - start > 1) {
+				shuffle(sorted, start, end);
+			}
+			start = end;
+		}
+		clearTies();
+		return GamaListFactory.createWithoutCasting(Types.AGENT,
+				total == count ? sorted : Arrays.copyOf(sorted, count));
+	}
+
+	private void shuffle(final IAgent[] array, final int from, final int to) {
+		for (int i = to - 1; i > from; i--) {
+			final int j = scope.getRandom().between(from, i);
+			final IAgent tmp = array[i];
+			array[i] = array[j];
+			array[j] = tmp;
+		}
+	}
+
+	@Override
+	public void close() {
+		Arrays.fill(agents, 0, size, null);
+		Arrays.fill(nodes, 0, pending, null);
+		clearTies();
+		size = 0;
+		pending = 0;
+		scope = null;
+		source = null;
+		filter = null;
+		excluded = null;
+		inUse = false;
+	}
+
+}
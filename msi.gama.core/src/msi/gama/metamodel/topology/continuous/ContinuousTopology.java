@@ -10,15 +10,25 @@
  ********************************************************************************************************/
 package msi.gama.metamodel.topology.continuous;
 
+import com.vividsolutions.jts.geom.Envelope;
+
 import msi.gama.common.interfaces.IKeyword;
+import msi.gama.metamodel.agent.IAgent;
+import msi.gama.metamodel.population.IPopulation;
 import msi.gama.metamodel.shape.ILocation;
 import msi.gama.metamodel.shape.IShape;
 import msi.gama.metamodel.topology.AbstractTopology;
+import msi.gama.metamodel.topology.GamaPackedQuadTree;
+import msi.gama.metamodel.topology.GamaSpatialHash;
+import msi.gama.metamodel.topology.ISpatialIndex;
 import msi.gama.metamodel.topology.ITopology;
 import msi.gama.runtime.IScope;
 import msi.gama.runtime.exceptions.GamaRuntimeException;
 import msi.gama.util.GamaListFactory;
+import msi.gaml.expressions.IExpression;
+import msi.gaml.operators.Cast;
 import msi.gaml.operators.Maths;
+import msi.gaml.species.ISpecies;
 import msi.gaml.types.Types;
 
 /**
@@ -40,6 +50,40 @@ public class ContinuousTopology extends AbstractTopology {
 		places = GamaListFactory.wrap(Types.GEOMETRY, environment);
 	}
 
+	/**
+	 * Installs, if the species requires it through its 'spatial_index' or 'rebuild_spatial_index' facets, a dedicated
+	 * spatial index for the population in the root spatial index
+	 */
+	@Override
+	public void initialize(final IScope scope, final IPopulation<? extends IAgent> pop) throws GamaRuntimeException {
+		final ISpecies species = pop.getSpecies();
+		IExpression exp = species.getFacet("rebuild_spatial_index");
+		final boolean rebuilt = exp != null && Cast.asBool(scope, exp.value(scope));
+		exp = species.getFacet("spatial_index");
+		if ((exp != null || rebuilt) && root != null) {
+			final ISpatialIndex index = root.getSpatialIndex();
+			// Rebuilding the index once per step requires an index that supports bulk loading
+			final String kind = exp == null ? ISpatialIndex.PACKED_QUADTREE : Cast.asString(scope, exp.value(scope));
+			final Envelope bounds = root.getEnvironment().getEnvelope();
+			ISpatialIndex.Bulk dedicated = null;
+			if (ISpatialIndex.PACKED_QUADTREE.equals(kind)) {
+				dedicated = GamaPackedQuadTree.create(bounds, index.isParallel());
+			} else if (ISpatialIndex.SPATIAL_HASH.equals(kind)) {
+				final IExpression size = species.getFacet("spatial_index_cell_size");
+				dedicated = GamaSpatialHash.create(bounds, size == null ? 0d : Cast.asFloat(scope, size.value(scope)),
+						index.isParallel());
+			}
+			if (dedicated != null && index instanceof ISpatialIndex.Compound) {
+				if (rebuilt) {
+					((ISpatialIndex.Compound) index).addRebuiltEachStep(dedicated, pop);
+				} else {
+					((ISpatialIndex.Compound) index).add(dedicated, pop);
+				}
+			}
+		}
+		super.initialize(scope, pop);
+	}
+
 	/**
 	 * @see msi.gama.interfaces.IValue#stringValue()
 	 */
@@ -0,0 +1,589 @@
+/*******************************************************************************************************
+ *
+ * msi.gama.metamodel.topology.graph.ContractionHierarchy.java, in plugin msi.gama.core, is part of the source code of
+ * the GAMA modeling and simulation platform (v. 1.8)
+ *
+ * (c) 2007-2018 UMI 209 UMMISCO IRD/SU & Partners
+ *
+ * Visit https://github.com/gama-platform/gama for license information and contacts.
+ *
+ ********************************************************************************************************/
+package msi.gama.metamodel.topology.graph;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import msi.gama.metamodel.topology.graph.GraphSnapshot.Search;
+import msi.gama.metamodel.topology.graph.GraphSnapshot.Workspace;
+import msi.gama.util.GamaListFactory;
+import msi.gama.util.IList;
+
+/**
+ * A contraction hierarchy (Geisberger et al., "Contraction Hierarchies: Faster and Simpler Hierarchical Routing in Road
+ * Networks", 2008) built on a {@link GraphSnapshot}. The vertices are contracted one after the other, from the least
+ * important to the most important one: contracting a vertex removes it from the graph and adds, between its
+ * neighbours, the shortcuts needed to preserve the shortest paths that went through it. A query is then answered by two
+ * Dijkstra searches (from the source and, backwards, from the target) that only follow the edges and shortcuts going
+ * to more important vertices, and therefore settle a few hundred vertices, whatever the size of the graph.
+ * <p>
+ * The preprocessing is parallel: at each round, the vertices that are less important than all their neighbours are
+ * contracted together, the shortcuts being computed by several threads. The hierarchy is only valid for the weights of
+ * the snapshot on which it has been built (see {@link #getSnapshot()}).
+ */
+public class ContractionHierarchy<V, E> {
+
+	// The number of vertices settled by a witness search before giving up (and adding the shortcut), when contracting a
+	// vertex and when only estimating the number of shortcuts its contraction would add
+	static final int WITNESS_SEARCH_LIMIT = 500;
+	static final int ESTIMATION_SEARCH_LIMIT = 50;
+	// Below this number of vertices, the vertices of a round are processed sequentially
+	static final int PARALLEL_THRESHOLD = 64;
+
+	private static final ThreadLocal<Witness> WITNESSES = ThreadLocal.withInitial(Witness::new);
+
+	final GraphSnapshot<V, E> snapshot;
+	// The position of each vertex in the order of contraction
+	final int[] rank;
+	// The edges to more important vertices, followed by the forward search
+	final int[] upStart, upTargets, upArcs;
+	final double[] upWeights;
+	// The edges from more important vertices, followed backwards by the backward search
+	final int[] downStart, downSources, downArcs;
+	final double[] downWeights;
+	// For each arc (edge or shortcut), the edge of the snapshot or -1 and, for shortcuts, the two arcs it replaces
+	final int[] arcEdge, arcFirst, arcSecond;
+
+	public ContractionHierarchy(final GraphSnapshot<V, E> snapshot) {
+		this.snapshot = snapshot;
+		final Builder builder = new Builder(snapshot);
+		builder.contract();
+		rank = builder.rank;
+		final int n = snapshot.getVertexCount();
+		final Arcs arcs = builder.arcs;
+		arcEdge = Arrays.copyOf(arcs.edge, arcs.size);
+		arcFirst = Arrays.copyOf(arcs.first, arcs.size);
+		arcSecond = Arrays.copyOf(arcs.second, arcs.size);
+		upStart = new int[n + 1];
+		downStart = new int[n + 1];
+		for (int v = 0; v < n; v++) {
+			for (int i = 0; i < builder.outSize[v]; i++) {
+				final int a = builder.out[v][i];
+				if (rank[arcs.to[a]] > rank[v]) {
+					upStart[v + 1]++;
+				} else {
+					downStart[arcs.to[a] + 1]++;
+				}
+			}
+		}
+		for (int v = 1; v <= n; v++) {
+			upStart[v] += upStart[v - 1];
+			downStart[v] += downStart[v - 1];
+		}
+		upTargets = new int[upStart[n]];
+		upArcs = new int[upStart[n]];
+		upWeights = new double[upStart[n]];
+		downSources = new int[downStart[n]];
+		downArcs = new int[downStart[n]];
+		downWeights = new double[downStart[n]];
+		final int[] nextUp = Arrays.copyOf(upStart, n);
+		final int[] nextDown = Arrays.copyOf(downStart, n);
+		for (int v = 0; v < n; v++) {
+			for (int i = 0; i < builder.outSize[v]; i++) {
+				final int a = builder.out[v][i];
+				final int to = arcs.to[a];
+				if (rank[to] > rank[v]) {
+					final int slot = nextUp[v]++;
+					upTargets[slot] = to;
+					upArcs[slot] = a;
+					upWeights[slot] = arcs.weight[a];
+				} else {
+					final int slot = nextDown[to]++;
+					downSources[slot] = v;
+					downArcs[slot] = a;
+					downWeights[slot] = arcs.weight[a];
+				}
+			}
+		}
+	}
+
+	/**
+	 * The snapshot of the graph on which the hierarchy has been built
+	 */
+	public GraphSnapshot<V, E> getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * The number of shortcuts added by the preprocessing
+	 */
+	public int getShortcutCount() {
+		int result = 0;
+		for (final int e : arcEdge) {
+			if (e < 0) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the list of the edges of the shortest path between the two vertices (empty if there is none)
+	 */
+	public IList<E> search(final V source, final V target) {
+		final int s = snapshot.indexOf(source);
+		final int t = snapshot.indexOf(target);
+		if (s < 0 || t < 0 || s == t) { return GamaListFactory.create(snapshot.edgeType); }
+		final Workspace w = GraphSnapshot.workspace(snapshot.getVertexCount());
+		final Search a = w.forward;
+		final Search b = w.backward;
+		a.reach(s, 0, -1, -1);
+		a.open.push(s, 0);
+		b.reach(t, 0, -1, -1);
+		b.open.push(t, 0);
+		w.best = Double.MAX_VALUE;
+		w.touch = -1;
+		while (true) {
+			final double minA = a.open.isEmpty() ? Double.MAX_VALUE : a.open.peekKey();
+			final double minB = b.open.isEmpty() ? Double.MAX_VALUE : b.open.peekKey();
+			// No vertex closer than the best path found can be reached anymore
+			if (Math.min(minA, minB) >= w.best) {
+				break;
+			}
+			if (minA <= minB) {
+				step(w, a, b, upStart, upTargets, upArcs, upWeights, downStart, downSources, downWeights);
+			} else {
+				step(w, b, a, downStart, downSources, downArcs, downWeights, upStart, upTargets, upWeights);
+			}
+		}
+		if (w.touch < 0) { return GamaListFactory.create(snapshot.edgeType); }
+		return unpack(w, w.touch);
+	}
+
+	/**
+	 * Settles the closest vertex of one of the searches and relaxes its edges to more important vertices, unless it is
+	 * reached by a shorter path through a more important vertex (in which case it cannot be on a shortest path: this is
+	 * the "stall-on-demand" optimisation)
+	 */
+	private static void step(final Workspace w, final Search search, final Search opposite, final int[] start,
+			final int[] others, final int[] arcs, final double[] weights, final int[] reverseStart,
+			final int[] reverseOthers, final double[] reverseWeights) {
+		final int u = search.open.pop();
+		if (search.isClosed(u)) { return; }
+		search.close(u);
+		final double du = search.dist[u];
+		if (opposite.isReached(u) && du + opposite.dist[u] < w.best) {
+			w.best = du + opposite.dist[u];
+			w.touch = u;
+		}
+		for (int slot = reverseStart[u], end = reverseStart[u + 1]; slot < end; slot++) {
+			final int x = reverseOthers[slot];
+			if (search.isReached(x) && search.dist[x] + reverseWeights[slot] < du) { return; }
+		}
+		for (int slot = start[u], end = start[u + 1]; slot < end; slot++) {
+			final int v = others[slot];
+			final double d = du + weights[slot];
+			if (!search.isReached(v) || search.dist[v] > d) {
+				search.reach(v, d, u, arcs[slot]);
+				search.open.push(v, d);
+				if (opposite.isReached(v) && d + opposite.dist[v] < w.best) {
+					w.best = d + opposite.dist[v];
+					w.touch = v;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Builds the list of the edges of the path that goes through the vertex, replacing the shortcuts by the edges they
+	 * stand for
+	 */
+	private IList<E> unpack(final Workspace w, final int touch) {
+		final IList<E> result = GamaListFactory.create(snapshot.edgeType);
+		int count = 0;
+		for (int v = touch; w.forward.parentEdge[v] >= 0; v = w.forward.parent[v]) {
+			count++;
+		}
+		final int[] arcs = new int[count];
+		for (int v = touch; w.forward.parentEdge[v] >= 0; v = w.forward.parent[v]) {
+			arcs[--count] = w.forward.parentEdge[v];
+		}
+		int[] stack = new int[16];
+		for (final int arc : arcs) {
+			stack = unpack(arc, stack, result);
+		}
+		for (int v = touch; w.backward.parentEdge[v] >= 0; v = w.backward.parent[v]) {
+			stack = unpack(w.backward.parentEdge[v], stack, result);
+		}
+		return result;
+	}
+
+	private int[] unpack(final int arc, final int[] buffer, final IList<E> result) {
+		int[] stack = buffer;
+		int size = 0;
+		stack[size++] = arc;
+		while (size > 0) {
+			final int a = stack[--size];
+			if (arcEdge[a] >= 0) {
+				result.add(snapshot.getEdge(arcEdge[a]));
+			} else {
+				if (size + 2 > stack.length) {
+					stack = Arrays.copyOf(stack, stack.length * 2);
+				}
+				stack[size++] = arcSecond[a];
+				stack[size++] = arcFirst[a];
+			}
+		}
+		return stack;
+	}
+
+	/**
+	 * The edges and shortcuts created during the preprocessing
+	 */
+	static final class Arcs {
+		int size;
+		int[] from = new int[16], to = new int[16], edge = new int[16], first = new int[16], second = new int[16];
+		double[] weight = new double[16];
+
+		int add(final int f, final int t, final double w, final int e, final int a1, final int a2) {
+			if (size == from.length) {
+				final int capacity = size * 2;
+				from = Arrays.copyOf(from, capacity);
+				to = Arrays.copyOf(to, capacity);
+				edge = Arrays.copyOf(edge, capacity);
+				first = Arrays.copyOf(first, capacity);
+				second = Arrays.copyOf(second, capacity);
+				weight = Arrays.copyOf(weight, capacity);
+			}
+			from[size] = f;
+			to[size] = t;
+			weight[size] = w;
+			edge[size] = e;
+			first[size] = a1;
+			second[size] = a2;
+			return size++;
+		}
+	}
+
+	/**
+	 * The shortcuts required by the contraction of a vertex: for each of them, the two arcs it replaces
+	 */
+	static final class Shortcuts {
+		int size;
+		int[] arcs = new int[8];
+
+		void add(final int in, final int out) {
+			if (2 * size + 2 > arcs.length) {
+				arcs = Arrays.copyOf(arcs, arcs.length * 2);
+			}
+			arcs[2 * size] = in;
+			arcs[2 * size + 1] = out;
+			size++;
+		}
+	}
+
+	/**
+	 * The local Dijkstra searches, used to know whether a shortcut is needed, of a thread
+	 */
+	static final class Witness {
+		final Search search = new Search();
+		int stamp;
+
+		Search prepare(final int n) {
+			stamp = stamp == Integer.MAX_VALUE ? 1 : stamp + 1;
+			search.prepare(n, stamp);
+			return search;
+		}
+	}
+
+	/**
+	 * The graph being contracted
+	 */
+	static final class Builder {
+		final int n;
+		final Arcs arcs = new Arcs();
+		// The arcs leaving and entering each vertex (including those whose other extremity has been contracted)
+		final int[][] out, in;
+		final int[] outSize, inSize;
+		final int[] rank;
+		final int[] priority;
+		final int[] contractedNeighbours;
+		// The depth of the vertex in the hierarchy (1 + the maximal depth of its contracted neighbours)
+		final int[] level;
+		// 0: not contracted, 1: being contracted in the current round, 2: contracted
+		final byte[] state;
+
+		Builder(final GraphSnapshot<?, ?> snapshot) {
+			n = snapshot.getVertexCount();
+			out = new int[n][];
+			in = new int[n][];
+			outSize = new int[n];
+			inSize = new int[n];
+			rank = new int[n];
+			priority = new int[n];
+			contractedNeighbours = new int[n];
+			level = new int[n];
+			state = new byte[n];
+			for (int e = 0; e < snapshot.getEdgeCount(); e++) {
+				final int s = snapshot.edgeSource[e];
+				final int t = snapshot.edgeTarget[e];
+				addArc(s, t, snapshot.weights[e], e, -1, -1);
+				if (!snapshot.directed) {
+					addArc(t, s, snapshot.weights[e], e, -1, -1);
+				}
+			}
+		}
+
+		/**
+		 * Adds an arc, unless a shorter (or equal) one already links the two vertices. A longer one is replaced
+		 */
+		void addArc(final int f, final int t, final double w, final int e, final int a1, final int a2) {
+			if (f == t) { return; }
+			for (int i = 0; i < outSize[f]; i++) {
+				final int existing = out[f][i];
+				if (arcs.to[existing] == t) {
+					if (arcs.weight[existing] <= w) { return; }
+					remove(out, outSize, f, i);
+					for (int j = 0; j < inSize[t]; j++) {
+						if (in[t][j] == existing) {
+							remove(in, inSize, t, j);
+							break;
+						}
+					}
+					break;
+				}
+			}
+			final int a = arcs.add(f, t, w, e, a1, a2);
+			append(out, outSize, f, a);
+			append(in, inSize, t, a);
+		}
+
+		private static void append(final int[][] lists, final int[] sizes, final int v, final int a) {
+			if (lists[v] == null) {
+				lists[v] = new int[4];
+			} else if (sizes[v] == lists[v].length) {
+				lists[v] = Arrays.copyOf(lists[v], sizes[v] * 2);
+			}
+			lists[v][sizes[v]++] = a;
+		}
+
+		private static void remove(final int[][] lists, final int[] sizes, final int v, final int i) {
+			lists[v][i] = lists[v][--sizes[v]];
+		}
+
+		void contract() {
+			forEach(n, v -> priority[v] = computePriority(v));
+			int[] remaining = new int[n];
+			for (int v = 0; v < n; v++) {
+				remaining[v] = v;
+			}
+			int remainingSize = n;
+			int nextRank = 0;
+			final int[] batch = new int[n];
+			final int[] touched = new int[n];
+			final boolean[] isTouched = new boolean[n];
+			while (remainingSize > 0) {
+				// The vertices less important than all their remaining neighbours form an independent set
+				int batchSize = 0;
+				for (int i = 0; i < remainingSize; i++) {
+					final int v = remaining[i];
+					if (isLocalMinimum(v)) {
+						batch[batchSize++] = v;
+						state[v] = 1;
+					}
+				}
+				final Shortcuts[] shortcuts = new Shortcuts[batchSize];
+				final int size = batchSize;
+				forEach(size, i -> shortcuts[i] = findShortcuts(batch[i], WITNESS_SEARCH_LIMIT));
+				int touchedSize = 0;
+				for (int i = 0; i < size; i++) {
+					final int v = batch[i];
+					rank[v] = nextRank++;
+					state[v] = 2;
+					final Shortcuts s = shortcuts[i];
+					for (int k = 0; k < s.size; k++) {
+						final int a1 = s.arcs[2 * k];
+						final int a2 = s.arcs[2 * k + 1];
+						addArc(arcs.from[a1], arcs.to[a2], arcs.weight[a1] + arcs.weight[a2], -1, a1, a2);
+					}
+					touchedSize = touchNeighbours(v, out, outSize, true, touched, touchedSize, isTouched);
+					touchedSize = touchNeighbours(v, in, inSize, false, touched, touchedSize, isTouched);
+				}
+				final int count = touchedSize;
+				forEach(count, i -> priority[touched[i]] = computePriority(touched[i]));
+				for (int i = 0; i < count; i++) {
+					isTouched[touched[i]] = false;
+				}
+				int j = 0;
+				for (int i = 0; i < remainingSize; i++) {
+					if (state[remaining[i]] == 0) {
+						remaining[j++] = remaining[i];
+					}
+				}
+				remainingSize = j;
+				if (remainingSize < remaining.length / 4) {
+					remaining = Arrays.copyOf(remaining, remainingSize);
+				}
+			}
+		}
+
+		/**
+		 * Runs the action for the integers from 0 to size - 1, in parallel if there are enough of them
+		 */
+		private static void forEach(final int size, final IntConsumer action) {
+			if (size < PARALLEL_THRESHOLD) {
+				for (int i = 0; i < size; i++) {
+					action.accept(i);
+				}
+			} else {
+				IntStream.range(0, size).parallel().forEach(action);
+			}
+		}
+
+		private int touchNeighbours(final int v, final int[][] lists, final int[] sizes, final boolean outgoing,
+				final int[] touched, final int touchedSize, final boolean[] isTouched) {
+			int result = touchedSize;
+			for (int i = 0; i < sizes[v]; i++) {
+				final int a = lists[v][i];
+				final int w = outgoing ? arcs.to[a] : arcs.from[a];
+				if (state[w] != 0) {
+					continue;
+				}
+				level[w] = Math.max(level[w], level[v] + 1);
+				if (!isTouched[w]) {
+					isTouched[w] = true;
+					contractedNeighbours[w]++;
+					touched[result++] = w;
+				}
+			}
+			return result;
+		}
+
+		private boolean isLocalMinimum(final int v) {
+			return isLocalMinimum(v, out, outSize, true) && isLocalMinimum(v, in, inSize, false);
+		}
+
+		private boolean isLocalMinimum(final int v, final int[][] lists, final int[] sizes, final boolean outgoing) {
+			final int p = priority[v];
+			for (int i = 0; i < sizes[v]; i++) {
+				final int a = lists[v][i];
+				final int w = outgoing ? arcs.to[a] : arcs.from[a];
+				// Vertices already selected in this round are contracted before
+				if (state[w] == 1) { return false; }
+				if (state[w] != 0) {
+					continue;
+				}
+				if (priority[w] < p || priority[w] == p && w < v) { return false; }
+			}
+			return true;
+		}
+
+		/**
+		 * The importance of a vertex: the number of shortcuts its contraction would add minus the number of arcs it
+		 * would remove, plus the number of its neighbours already contracted (to contract the graph uniformly)
+		 */
+		private int computePriority(final int v) {
+			int removed = 0;
+			for (int i = 0; i < outSize[v]; i++) {
+				if (state[arcs.to[out[v][i]]] == 0) {
+					removed++;
+				}
+			}
+			for (int i = 0; i < inSize[v]; i++) {
+				if (state[arcs.from[in[v][i]]] == 0) {
+					removed++;
+				}
+			}
+			final Shortcuts s = findShortcuts(v, ESTIMATION_SEARCH_LIMIT);
+			return s.size - removed + contractedNeighbours[v] + level[v];
+		}
+
+		/**
+		 * Finds the shortcuts needed if the vertex is contracted: for each pair of arcs (u, v) and (v, x), a shortcut is
+		 * needed if no path from u to x that avoids v (and the vertices contracted or being contracted) is as short.
+		 * Only reads the graph, and can therefore be called by several threads at the same time
+		 */
+		Shortcuts findShortcuts(final int v, final int searchLimit) {
+			final Shortcuts result = new Shortcuts();
+			double maxOut = 0;
+			int targets = 0;
+			for (int j = 0; j < outSize[v]; j++) {
+				final int a2 = out[v][j];
+				if (state[arcs.to[a2]] == 0) {
+					maxOut = Math.max(maxOut, arcs.weight[a2]);
+					targets++;
+				}
+			}
+			if (targets == 0) { return result; }
+			for (int i = 0; i < inSize[v]; i++) {
+				final int a1 = in[v][i];
+				final int u = arcs.from[a1];
+				if (state[u] != 0) {
+					continue;
+				}
+				final Search search = witnessSearch(u, v, arcs.weight[a1] + maxOut, targets, searchLimit);
+				for (int j = 0; j < outSize[v]; j++) {
+					final int a2 = out[v][j];
+					final int x = arcs.to[a2];
+					if (x == u || state[x] != 0) {
+						continue;
+					}
+					final double d = arcs.weight[a1] + arcs.weight[a2];
+					if (!search.isReached(x) || search.dist[x] > d) {
+						result.add(a1, a2);
+					}
+				}
+			}
+			return result;
+		}
+
+		private boolean isSuccessor(final int v, final int x) {
+			for (int j = 0; j < outSize[v]; j++) {
+				if (arcs.to[out[v][j]] == x) { return true; }
+			}
+			return false;
+		}
+
+		/**
+		 * A Dijkstra search from the vertex that avoids the excluded one, stopped after a distance or a number of
+		 * settled vertices, or when all the successors of the excluded vertex have been settled
+		 */
+		private Search witnessSearch(final int source, final int excluded, final double limit, final int targets,
+				final int searchLimit) {
+			final Search search = WITNESSES.get().prepare(n);
+			search.reach(source, 0, -1, -1);
+			search.open.push(source, 0);
+			int settled = 0;
+			int settledTargets = 0;
+			while (!search.open.isEmpty() && settled < searchLimit && settledTargets < targets) {
+				final int u = search.open.pop();
+				if (search.isClosed(u)) {
+					continue;
+				}
+				search.close(u);
+				settled++;
+				final double du = search.dist[u];
+				if (du > limit) {
+					break;
+				}
+				if (isSuccessor(excluded, u)) {
+					settledTargets++;
+				}
+				for (int i = 0; i < outSize[u]; i++) {
+					final int a = out[u][i];
+					final int x = arcs.to[a];
+					if (x == excluded || state[x] != 0) {
+						continue;
+					}
+					final double d = du + arcs.weight[a];
+					if (d <= limit && (!search.isReached(x) || search.dist[x] > d)) {
+						search.reach(x, d, u, a);
+						search.open.push(x, d);
+					}
+				}
+			}
+			return search;
+		}
+	}
+
+}
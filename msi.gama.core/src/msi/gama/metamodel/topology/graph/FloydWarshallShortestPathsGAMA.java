@@ -10,54 +10,56 @@
  ********************************************************************************************************/
 package msi.gama.metamodel.topology.graph;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 import org.jgrapht.Graph;
 import org.jgrapht.GraphPath;
-import org.jgrapht.alg.util.Pair;
 import org.jgrapht.graph.GraphWalk;
 
-import msi.gama.runtime.GAMA;
-import msi.gama.util.GamaMapFactory;
-import msi.gama.util.IMap;
+import msi.gama.common.preferences.GamaPreferences;
+import msi.gama.runtime.exceptions.GamaRuntimeException;
 import msi.gama.util.graph.GamaGraph;
-import msi.gama.util.matrix.GamaIntMatrix;
-
-// Copy of the jgrapht algorithm: just make it usable with GAMA undirected graph
+import ummisco.gama.dev.utils.DEBUG;
+
+/**
+ * The Floyd-Warshall algorithm, which computes the shortest paths between all the vertices of a graph (on its
+ * {@link GraphSnapshot}). The distances (as floats) and the successors (the vertex that follows each vertex on the
+ * shortest path towards each other one) are stored in two flat n x n matrices, row after row, either in the heap or,
+ * for large graphs, in a temporary file mapped in memory (see the preferences). The paths are rebuilt from the
+ * successors when they are asked for; the matrix of the successors is the one used by the 'all_pairs_shortest_path'
+ * and 'load_shortest_paths' operators, so that it can be saved and loaded in the next runs instead of being computed
+ * again.
+ * <p>
+ * The computation is blocked: the vertices are processed by blocks of BLOCK vertices. For each block, the rows of its
+ * vertices are first updated together, then all the other strips of BLOCK rows are updated in parallel through the
+ * vertices of the block, each strip only depending on its own rows and on the rows of the block.
+ */
 public class FloydWarshallShortestPathsGAMA<V, E> {
 
-	// TODO Look at the new implementantion of the algorithm in JGraphT 1.0.1 and try to derive from it.
-
-	// ~ Instance fields --------------------------------------------------------
+	static final int BLOCK = 64;
+	// Below this number of vertices, the strips are processed sequentially
+	static final int PARALLEL_THRESHOLD = 256;
 
 	private final GamaGraph<V, E> graph;
-	private final List<V> vertices;
-	private int nShortestPaths = 0;
-	private double diameter = 0.0;
-	private double[][] d = null;
-	private int[][] backtrace = null;
-	private GamaIntMatrix matrix = null;
-	private IMap<Pair<V, V>, GraphPath<V, E>> paths = null;
-
-	// ~ Constructors -----------------------------------------------------------
+	private GraphSnapshot<V, E> snapshot;
+	private volatile Storage storage = null;
 
 	public FloydWarshallShortestPathsGAMA(final GamaGraph<V, E> graph) {
 		this.graph = graph;
-		this.vertices = new ArrayList<>(graph.getVertexMap().keySet());
-
-	}
-
-	// ~ Methods ----------------------------------------------------------------
-
-	public FloydWarshallShortestPathsGAMA(final GamaGraph<V, E> graph, final GamaIntMatrix matrix) {
-		this.graph = graph;
-		this.vertices = new ArrayList<>(graph.getVertexMap().keySet());
-		this.paths = GamaMapFactory.createUnordered();
-		nShortestPaths = 0;
-		this.matrix = matrix;
 	}
 
 	/**
@@ -68,200 +70,374 @@ public class FloydWarshallShortestPathsGAMA<V, E> {
 	}
 
 	/**
-	 * @return total number of shortest paths
+	 * Computes the matrices of the distances and of the successors, if they have not been computed yet
 	 */
-	public int getShortestPathsCount() {
-		lazyCalculatePaths();
-		return nShortestPaths;
+	public void lazyCalculateMatrix() {
+		if (storage != null) { return; }
+		synchronized (this) {
+			if (storage != null) { return; }
+			snapshot = graph.getSnapshot();
+			final int n = snapshot.getVertexCount();
+			if ((long) n * n > Integer.MAX_VALUE - 8) {
+				throw GamaRuntimeException.error(
+						"The graph has too many vertices (" + n + ") to compute all its shortest paths", graph.getScope());
+			}
+			final Storage s = GamaPreferences.External.FLOYD_WARSHALL_MAPPED.getValue() ? Storage.mapped(n)
+					: new HeapStorage(n);
+			compute(s);
+			s.release();
+			storage = s;
+		}
 	}
 
-	public double[][] getD() {
-		return d;
+	/**
+	 * @return the diameter (longest of all the shortest paths) computed for the graph
+	 */
+	public double getDiameter() {
+		lazyCalculateMatrix();
+		if (storage == null) { return 0.0; }
+		final int n = storage.n;
+		double diameter = 0.0;
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				final float d = storage.distance(i, j);
+				if (d != Float.POSITIVE_INFINITY && d > diameter) {
+					diameter = d;
+				}
+			}
+		}
+		return diameter;
 	}
 
-	public int[][] getBacktrace() {
-		return backtrace;
+	/**
+	 * Returns the vertex that follows a on the shortest path from a to b, or null if there is none
+	 */
+	public V getSuccessor(final V a, final V b) {
+		lazyCalculateMatrix();
+		final int i = snapshot.indexOf(a);
+		final int j = snapshot.indexOf(b);
+		if (i < 0 || j < 0 || i == j) { return null; }
+		final int next = storage.next(i, j);
+		return next < 0 || next == i ? null : snapshot.getVertex(next);
 	}
 
 	/**
-	 * Calculates the matrix of all shortest paths, along with the diameter, but does not populate the paths map.
+	 * Get the shortest path between two vertices, rebuilt from the matrix of the successors
+	 *
+	 * @param a
+	 *            From vertice
+	 * @param b
+	 *            To vertice
+	 *
+	 * @return the path, or null if none found
 	 */
-	@SuppressWarnings ("unchecked")
-	public void lazyCalculateMatrix() {
-		matrix = null;
-		if (d != null) {
-			// already done
-			return;
-		}
-
-		final int n = vertices.size();
-
-		// init the backtrace matrix
-		backtrace = new int[n][n];
-		for (int i = 0; i < n; i++) {
-			Arrays.fill(backtrace[i], -1);
-		}
-
-		// initialize matrix, 0
-		d = new double[n][n];
-		for (int i = 0; i < n; i++) {
-			Arrays.fill(d[i], Double.POSITIVE_INFINITY);
+	public GraphPath<V, E> getShortestPath(final V a, final V b) {
+		lazyCalculateMatrix();
+		final int v_a = snapshot.indexOf(a);
+		final int v_b = snapshot.indexOf(b);
+		if (v_a < 0 || v_b < 0) { return null; }
+		final List<E> edges = new ArrayList<>();
+		double weight = 0.0;
+		int current = v_a;
+		// At most n - 1 edges (which also protects against the cycles of edges of null weight)
+		for (int steps = snapshot.getVertexCount(); current != v_b && steps > 0; steps--) {
+			final int next = storage.next(current, v_b);
+			if (next < 0 || next == current) { return null; }
+			final int e = lightestEdge(current, next);
+			if (e < 0) { return null; }
+			edges.add(snapshot.getEdge(e));
+			weight += snapshot.getWeight(e);
+			current = next;
 		}
+		// no path, return null
+		if (edges.isEmpty() || current != v_b) { return null; }
+		return new GraphWalk<>(graph, a, b, edges, weight);
+	}
 
-		// initialize matrix, 1
-		for (int i = 0; i < n; i++) {
-			d[i][i] = 0.0;
+	/**
+	 * The lightest edge from the vertex u to the vertex v in the snapshot, or -1
+	 */
+	private int lightestEdge(final int u, final int v) {
+		int result = -1;
+		for (int slot = snapshot.outStart[u], end = snapshot.outStart[u + 1]; slot < end; slot++) {
+			if (snapshot.outTargets[slot] == v) {
+				final int e = snapshot.outEdges[slot];
+				if (result < 0 || snapshot.weights[e] < snapshot.weights[result]) {
+					result = e;
+				}
+			}
 		}
+		return result;
+	}
 
-		// initialize matrix, 2
-		final Set<E> edges = graph.edgeSet();
-
-		for (final E edge : edges) {
-			final V v1 = (V) graph.getEdgeSource(edge);
-			final V v2 = (V) graph.getEdgeTarget(edge);
-
-			final int v_1 = vertices.indexOf(v1);
-			final int v_2 = vertices.indexOf(v2);
-
-			d[v_1][v_2] = graph.getEdgeWeight(edge);
-			if (!graph.isDirected()) {
-				d[v_2][v_1] = graph.getEdgeWeight(edge);
+	private void compute(final Storage s) {
+		final int n = s.n;
+		final int strips = (n + BLOCK - 1) / BLOCK;
+		forEach(n, strips, strip -> initialize(s, strip));
+		for (int block = 0; block < strips; block++) {
+			final int k0 = block * BLOCK;
+			final int kLen = Math.min(BLOCK, n - k0);
+			// The rows of the block are updated through the vertices of the block, one after the other
+			final Strip rows = s.open(k0, kLen);
+			for (int k = 0; k < kLen; k++) {
+				relax(rows.d, rows.next, rows.from, kLen, rows.d, rows.from, k0, k, k + 1, n);
 			}
+			final int current = block;
+			// Then the other strips, through all the vertices of the block
+			forEach(n, strips, strip -> {
+				if (strip == current) { return; }
+				final int i0 = strip * BLOCK;
+				final Strip other = s.open(i0, Math.min(BLOCK, n - i0));
+				relax(other.d, other.next, other.from, other.rows, rows.d, rows.from, k0, 0, kLen, n);
+				s.close(other);
+			});
+			// Only closed now, as the other strips read its rows
+			s.close(rows);
 		}
+	}
 
-		// run fw alg
-		for (int k = 0; k < n; k++) {
-			for (int i = 0; i < n; i++) {
-				for (int j = 0; j < n; j++) {
-					final double ik_kj = d[i][k] + d[k][j];
-					if (ik_kj < d[i][j]) {
-						d[i][j] = ik_kj;
-						backtrace[i][j] = k;
-						diameter = diameter > d[i][j] ? diameter : d[i][j];
-					}
+	/**
+	 * Fills the rows of the strip with the weights of the edges (the lightest one between two vertices)
+	 */
+	private void initialize(final Storage s, final int strip) {
+		final int n = s.n;
+		final int i0 = strip * BLOCK;
+		final Strip rows = s.open(i0, Math.min(BLOCK, n - i0));
+		Arrays.fill(rows.d, rows.from, rows.from + rows.rows * n, Float.POSITIVE_INFINITY);
+		Arrays.fill(rows.next, rows.from, rows.from + rows.rows * n, -1);
+		for (int r = 0; r < rows.rows; r++) {
+			final int i = i0 + r;
+			final int row = rows.from + r * n;
+			rows.d[row + i] = 0f;
+			rows.next[row + i] = i;
+			for (int slot = snapshot.outStart[i], end = snapshot.outStart[i + 1]; slot < end; slot++) {
+				final int j = snapshot.outTargets[slot];
+				final float w = (float) snapshot.weights[snapshot.outEdges[slot]];
+				if (j != i && w < rows.d[row + j]) {
+					rows.d[row + j] = w;
+					rows.next[row + j] = j;
 				}
 			}
 		}
+		s.close(rows);
 	}
 
 	/**
-	 * @return the diameter (longest of all the shortest paths) computed for the graph
+	 * Relaxes the rows of a strip (the first one starting at the index 'from' of d and next) through the vertices
+	 * k0 + first to k0 + last - 1, whose rows start at the index kFrom of kd
 	 */
-	public double getDiameter() {
-		lazyCalculateMatrix();
-		return diameter;
-	}
-
-	public void shortestPathRecur(final List<E> edges, final int v_a, final int v_b) {
-		final int k = backtrace[v_a][v_b];
-
-		if (k == -1) {
-			final Set<E> edgs = graph.getAllEdges(vertices.get(v_a), vertices.get(v_b));
-			double minW = Double.MAX_VALUE;
-			E edge = null;
-			for (final E e : edgs) {
-				final double ew = graph.getEdgeWeight(e);
-				if (ew < minW) {
-					minW = ew;
-					edge = e;
+	static void relax(final float[] d, final int[] next, final int from, final int rows, final float[] kd,
+			final int kFrom, final int k0, final int first, final int last, final int n) {
+		for (int r = 0; r < rows; r++) {
+			final int row = from + r * n;
+			for (int k = first; k < last; k++) {
+				final float dik = d[row + k0 + k];
+				if (dik == Float.POSITIVE_INFINITY) {
+					continue;
+				}
+				final int nik = next[row + k0 + k];
+				final int krow = kFrom + k * n;
+				for (int j = 0; j < n; j++) {
+					final float sum = dik + kd[krow + j];
+					if (sum < d[row + j]) {
+						d[row + j] = sum;
+						next[row + j] = nik;
+					}
 				}
 			}
-			if (edge != null) {
-				edges.add(edge);
-			}
-		} else {
-			shortestPathRecur(edges, v_a, k);
-			shortestPathRecur(edges, k, v_b);
 		}
 	}
 
-	public int succRecur(final int v_a, final int v_b) {
-		final int k = backtrace[v_a][v_b];
-		if (k == -1) {
-			if (!graph.containsEdge(vertices.get(v_a), vertices.get(v_b))) { return -1; }
-			return v_b;
+	private static void forEach(final int n, final int size, final IntConsumer action) {
+		if (n < PARALLEL_THRESHOLD) {
+			for (int i = 0; i < size; i++) {
+				action.accept(i);
+			}
 		} else {
-			return succRecur(v_a, k);
+			IntStream.range(0, size).parallel().forEach(action);
 		}
 	}
 
 	/**
-	 * Get the shortest path between two vertices. Note: The paths are calculated using a recursive algorithm. It *will*
-	 * give problems on paths longer than the stack allows.
-	 *
-	 * @param a
-	 *            From vertice
-	 * @param b
-	 *            To vertice
-	 *
-	 * @return the path, or null if none found
+	 * Some consecutive rows of the matrices, stored from the index 'from' of the two arrays
 	 */
-	public GraphPath<V, E> getShortestPath(final V a, final V b) {
-		lazyCalculatePaths();
-		return getShortestPathImpl(a, b);
+	static final class Strip {
+		final int row, rows, from;
+		final float[] d;
+		final int[] next;
+
+		Strip(final int row, final int rows, final float[] d, final int[] next, final int from) {
+			this.row = row;
+			this.rows = rows;
+			this.d = d;
+			this.next = next;
+			this.from = from;
+		}
 	}
 
-	private GraphPath<V, E> getShortestPathImpl(final V a, final V b) {
-		int v_a = vertices.indexOf(a);
-		final int v_b = vertices.indexOf(b);
-		int prev = v_a;
-		final List<E> edges = new ArrayList<>();
-		if (matrix != null) {
-			v_a = matrix.get(GAMA.getRuntimeScope(), v_b, v_a);
-			if (v_a != -1) {
-				while (prev != v_b) {
-					final Set<E> eds = graph.getAllEdges(vertices.get(prev), vertices.get(v_a));
-					if (!eds.isEmpty()) {
-						double minW = Double.MAX_VALUE;
-						E ed = null;
-						for (final E e : eds) {
-							final double w = graph.getEdgeWeight(e);
-							if (w < minW) {
-								minW = w;
-								ed = e;
-							}
-						}
-						edges.add(ed);
-					} else {
-						return null;
-					}
-					if (prev != v_b) {
-						prev = v_a;
-						v_a = matrix.get(GAMA.getRuntimeScope(), v_b, v_a);
-					}
-				}
+	/**
+	 * The two n x n matrices of the distances and of the successors
+	 */
+	static abstract class Storage {
+		final int n;
+
+		Storage(final int n) {
+			this.n = n;
+		}
+
+		/**
+		 * Returns the two matrices in a temporary file mapped in memory, or in the heap if the file cannot be created
+		 */
+		static Storage mapped(final int n) {
+			try {
+				return new MappedStorage(n, Integer.MAX_VALUE);
+			} catch (final IOException e) {
+				DEBUG.ERR("Unable to map the matrices of the Floyd-Warshall algorithm in a file: " + e);
+				return new HeapStorage(n);
 			}
-		} else {
-			shortestPathRecur(edges, v_a, v_b);
 		}
 
-		// no path, return null
-		if (edges.size() < 1) { return null; }
-		final GraphWalk<V, E> path = new GraphWalk<>(graph, a, b, edges, edges.size());
-		if (graph.isSaveComputedShortestPaths()) {
-			final V v_i = vertices.get(v_a);
-			final V v_j = vertices.get(v_b);
-
-			paths.put(new Pair<>(v_i, v_j), path);
-			nShortestPaths++;
+		/**
+		 * Gives access to the rows of the strip, which must be closed to save their modifications
+		 */
+		abstract Strip open(int row, int rows);
+
+		abstract void close(Strip strip);
+
+		/**
+		 * Called once the matrices have been computed, to free the memory only used by the computation
+		 */
+		void release() {}
+
+		abstract float distance(int i, int j);
+
+		abstract int next(int i, int j);
+	}
+
+	/**
+	 * The two matrices in the heap: the strips are read and written in place
+	 */
+	static final class HeapStorage extends Storage {
+		private final float[] d;
+		private final int[] next;
+
+		HeapStorage(final int n) {
+			super(n);
+			d = new float[n * n];
+			next = new int[n * n];
+		}
+
+		@Override
+		Strip open(final int row, final int rows) {
+			return new Strip(row, rows, d, next, row * n);
+		}
+
+		@Override
+		void close(final Strip strip) {}
+
+		@Override
+		float distance(final int i, final int j) {
+			return d[i * n + j];
+		}
+
+		@Override
+		int next(final int i, final int j) {
+			return next[i * n + j];
 		}
-		return path;
 	}
 
 	/**
-	 * Calculate the shortest paths (not done per default)
+	 * The two matrices in a temporary file mapped in memory: the strips are copied in arrays and written back. The
+	 * arrays of the strips closed are reused by the next strips opened, so that there are only as many of them as
+	 * threads computing the matrices. As a buffer cannot map more than 2GB, the matrices of the large graphs are
+	 * mapped in several buffers, each one holding a whole number of rows
 	 */
-	private void lazyCalculatePaths() {
-		// already we have calculated it once.
-		if (paths != null || matrix != null) { return; }
+	static final class MappedStorage extends Storage {
+		private final FloatBuffer[] d;
+		private final IntBuffer[] next;
+		private final int rowsPerBuffer;
+		private final Queue<Strip> free = new ConcurrentLinkedQueue<>();
+
+		MappedStorage(final int n, final long maxBufferSize) throws IOException {
+			super(n);
+			final long rowSize = (long) n * 4;
+			rowsPerBuffer = (int) Math.max(1, Math.min(n, maxBufferSize / rowSize));
+			final int buffers = n == 0 ? 0 : (n - 1) / rowsPerBuffer + 1;
+			d = new FloatBuffer[buffers];
+			next = new IntBuffer[buffers];
+			final File file = File.createTempFile("gama_floyd_warshall", ".bin");
+			file.deleteOnExit();
+			final long size = rowSize * n;
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+				raf.setLength(2 * size);
+				for (int b = 0; b < buffers; b++) {
+					final long position = b * rowsPerBuffer * rowSize;
+					final long length = Math.min(n - b * rowsPerBuffer, rowsPerBuffer) * rowSize;
+					d[b] = channel.map(MapMode.READ_WRITE, position, length).order(ByteOrder.nativeOrder())
+							.asFloatBuffer();
+					next[b] = channel.map(MapMode.READ_WRITE, size + position, length).order(ByteOrder.nativeOrder())
+							.asIntBuffer();
+				}
+			}
+			// The mappings remain valid after the file is deleted (except on Windows, where it is deleted at exit)
+			file.delete();
+		}
 
-		lazyCalculateMatrix();
+		@Override
+		Strip open(final int row, final int rows) {
+			final Strip closed = free.poll();
+			final Strip strip = closed == null ? new Strip(row, rows, new float[BLOCK * n], new int[BLOCK * n], 0)
+					: new Strip(row, rows, closed.d, closed.next, 0);
+			copy(strip, true);
+			return strip;
+		}
 
-		this.paths = GamaMapFactory.createUnordered();
+		@Override
+		void close(final Strip strip) {
+			copy(strip, false);
+			free.add(strip);
+		}
 
-		nShortestPaths = 0;
+		/**
+		 * Reads the rows of the strip from the buffers that contain them, or writes them back
+		 */
+		private void copy(final Strip strip, final boolean read) {
+			final int end = strip.row + strip.rows;
+			for (int r = strip.row; r < end;) {
+				final int b = r / rowsPerBuffer;
+				final int first = r - b * rowsPerBuffer;
+				final int count = Math.min(end - r, rowsPerBuffer - first) * n;
+				final int offset = (r - strip.row) * n;
+				final FloatBuffer db = d[b].duplicate();
+				db.position(first * n);
+				final IntBuffer nb = next[b].duplicate();
+				nb.position(first * n);
+				if (read) {
+					db.get(strip.d, offset, count);
+					nb.get(strip.next, offset, count);
+				} else {
+					db.put(strip.d, offset, count);
+					nb.put(strip.next, offset, count);
+				}
+				r += count / n;
+			}
+		}
+
+		@Override
+		void release() {
+			free.clear();
+		}
 
+		@Override
+		float distance(final int i, final int j) {
+			final int b = i / rowsPerBuffer;
+			return d[b].get((i - b * rowsPerBuffer) * n + j);
+		}
+
+		@Override
+		int next(final int i, final int j) {
+			final int b = i / rowsPerBuffer;
+			return next[b].get((i - b * rowsPerBuffer) * n + j);
+		}
 	}
 }
-
-// End FloydWarshallShortestPaths.java
\ No newline at end of file
@@ -0,0 +1,545 @@
+/*******************************************************************************************************
+ *
+ * msi.gama.metamodel.topology.graph.GraphSnapshot.java, in plugin msi.gama.core, is part of the source code of the
+ * GAMA modeling and simulation platform (v. 1.8)
+ *
+ * (c) 2007-2018 UMI 209 UMMISCO IRD/SU & Partners
+ *
+ * Visit https://github.com/gama-platform/gama for license information and contacts.
+ *
+ ********************************************************************************************************/
+package msi.gama.metamodel.topology.graph;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import msi.gama.metamodel.shape.ILocation;
+import msi.gama.metamodel.shape.IShape;
+import msi.gama.util.GamaListFactory;
+import msi.gama.util.IList;
+import msi.gama.util.graph.GamaGraph;
+import msi.gama.util.graph._Edge;
+import msi.gaml.types.IType;
+
+/**
+ * A frozen, int-indexed copy of a {@link GamaGraph}, in which the adjacency of the vertices is stored in the compressed
+ * sparse row format: the edges leaving the vertex i are the slots outStart[i] to outStart[i+1] - 1 of the outEdges and
+ * outTargets arrays (and symmetrically for the edges entering the vertex). The weights of the edges are copied in a
+ * double[] and, for spatial graphs, the coordinates of the vertices in three double[]. The path finding algorithms
+ * (Dijkstra, A* and NBA*) only manipulate these arrays and a per-thread {@link Workspace}, reused from one query to the
+ * next, instead of maps of vertices.
+ * <p>
+ * A snapshot is never modified: the graph drops it whenever its vertices, its edges or the weights of its edges change,
+ * and builds a new one at the next query (see {@link GamaGraph#getSnapshot()}). When only the weights have changed, the
+ * new snapshot shares all its arrays but the weights with the previous one (see {@link #withWeightsOf(GamaGraph)}). The
+ * coordinates of the vertices are those they had when the snapshot was built. A snapshot can be queried by several
+ * threads at the same time.
+ */
+@SuppressWarnings ("unchecked")
+public class GraphSnapshot<V, E> {
+
+	private static final ThreadLocal<Workspace> WORKSPACES = ThreadLocal.withInitial(Workspace::new);
+
+	final Object[] vertices;
+	final Object[] edges;
+	final Map<Object, Integer> indices;
+	final int[] edgeSource, edgeTarget;
+	final double[] weights;
+	final int[] outStart, outEdges, outTargets;
+	// Same arrays as the previous ones for undirected graphs
+	final int[] inStart, inEdges, inSources;
+	// Null if the graph is not spatial
+	final double[] x, y, z;
+	final boolean directed;
+	final IType<?> edgeType;
+
+	public GraphSnapshot(final GamaGraph<V, E> graph) {
+		directed = graph.isDirected();
+		edgeType = graph.getGamlType().getContentType();
+		final int n = graph._internalVertexMap().size();
+		final int m = graph._internalEdgeMap().size();
+		vertices = new Object[n];
+		indices = new HashMap<>(n * 2);
+		int i = 0;
+		for (final Object v : graph._internalVertexMap().keySet()) {
+			vertices[i] = v;
+			indices.put(v, i++);
+		}
+		final Object[] e = new Object[m];
+		final int[] es = new int[m];
+		final int[] et = new int[m];
+		final double[] w = new double[m];
+		i = 0;
+		for (final Map.Entry<?, ? extends _Edge<V, E>> entry : graph._internalEdgeMap().entrySet()) {
+			final _Edge<V, E> edge = entry.getValue();
+			final Integer s = indices.get(edge.getSource());
+			final Integer t = indices.get(edge.getTarget());
+			if (s == null || t == null) {
+				continue;
+			}
+			e[i] = entry.getKey();
+			es[i] = s;
+			et[i] = t;
+			w[i++] = edge.getWeight();
+		}
+		final int count = i;
+		// The edges whose extremities are not vertices of the graph are ignored
+		edges = count < m ? Arrays.copyOf(e, count) : e;
+		edgeSource = count < m ? Arrays.copyOf(es, count) : es;
+		edgeTarget = count < m ? Arrays.copyOf(et, count) : et;
+		weights = count < m ? Arrays.copyOf(w, count) : w;
+		outStart = new int[n + 1];
+		outEdges = new int[directed ? count : 2 * count];
+		outTargets = new int[outEdges.length];
+		if (directed) {
+			fill(count, edgeSource, edgeTarget, outStart, outEdges, outTargets, false);
+			inStart = new int[n + 1];
+			inEdges = new int[count];
+			inSources = new int[count];
+			fill(count, edgeTarget, edgeSource, inStart, inEdges, inSources, false);
+		} else {
+			fill(count, edgeSource, edgeTarget, outStart, outEdges, outTargets, true);
+			inStart = outStart;
+			inEdges = outEdges;
+			inSources = outTargets;
+		}
+		if (graph instanceof GamaSpatialGraph) {
+			x = new double[n];
+			y = new double[n];
+			z = new double[n];
+			for (i = 0; i < n; i++) {
+				final ILocation p = ((IShape) vertices[i]).getLocation();
+				x[i] = p.getX();
+				y[i] = p.getY();
+				z[i] = p.getZ();
+			}
+		} else {
+			x = y = z = null;
+		}
+	}
+
+	private GraphSnapshot(final GraphSnapshot<V, E> structure, final double[] weights) {
+		vertices = structure.vertices;
+		edges = structure.edges;
+		indices = structure.indices;
+		edgeSource = structure.edgeSource;
+		edgeTarget = structure.edgeTarget;
+		outStart = structure.outStart;
+		outEdges = structure.outEdges;
+		outTargets = structure.outTargets;
+		inStart = structure.inStart;
+		inEdges = structure.inEdges;
+		inSources = structure.inSources;
+		x = structure.x;
+		y = structure.y;
+		z = structure.z;
+		directed = structure.directed;
+		edgeType = structure.edgeType;
+		this.weights = weights;
+	}
+
+	/**
+	 * Returns a snapshot with the same vertices and edges as this one and the current weights of the edges of the
+	 * graph, which must not have gained or lost vertices or edges since this snapshot was built
+	 */
+	public GraphSnapshot<V, E> withWeightsOf(final GamaGraph<V, E> graph) {
+		final double[] w = new double[weights.length];
+		for (int e = 0; e < w.length; e++) {
+			final _Edge<V, E> edge = graph.getEdge(edges[e]);
+			w[e] = edge == null ? weights[e] : edge.getWeight();
+		}
+		return new GraphSnapshot<>(this, w);
+	}
+
+	/**
+	 * Counting sort of the edges by their first extremity. If both is true, each edge is also stored from its second
+	 * extremity
+	 */
+	private static void fill(final int count, final int[] from, final int[] to, final int[] start, final int[] slots,
+			final int[] others, final boolean both) {
+		for (int e = 0; e < count; e++) {
+			start[from[e] + 1]++;
+			if (both) {
+				start[to[e] + 1]++;
+			}
+		}
+		for (int v = 1; v < start.length; v++) {
+			start[v] += start[v - 1];
+		}
+		final int[] next = Arrays.copyOf(start, start.length - 1);
+		for (int e = 0; e < count; e++) {
+			int slot = next[from[e]]++;
+			slots[slot] = e;
+			others[slot] = to[e];
+			if (both) {
+				slot = next[to[e]]++;
+				slots[slot] = e;
+				others[slot] = from[e];
+			}
+		}
+	}
+
+	/**
+	 * The workspace of the current thread, prepared for a new query on a graph of n vertices
+	 */
+	static Workspace workspace(final int n) {
+		return WORKSPACES.get().prepare(n);
+	}
+
+	public int getVertexCount() {
+		return vertices.length;
+	}
+
+	public int getEdgeCount() {
+		return edges.length;
+	}
+
+	public boolean isDirected() {
+		return directed;
+	}
+
+	/**
+	 * The index of the vertex in this snapshot, or -1 if it is not a vertex of the graph
+	 */
+	public int indexOf(final Object vertex) {
+		final Integer i = indices.get(vertex);
+		return i == null ? -1 : i;
+	}
+
+	public V getVertex(final int i) {
+		return (V) vertices[i];
+	}
+
+	public E getEdge(final int e) {
+		return (E) edges[e];
+	}
+
+	public double getWeight(final int e) {
+		return weights[e];
+	}
+
+	/**
+	 * The straight line distance between two vertices (0 if the graph is not spatial). As the weights of the edges of
+	 * spatial graphs are usually their lengths, it is used as the heuristic of A* and NBA*
+	 */
+	public double estimate(final int v1, final int v2) {
+		if (x == null) { return 0; }
+		final double dx = x[v1] - x[v2];
+		final double dy = y[v1] - y[v2];
+		final double dz = z[v1] - z[v2];
+		return Math.sqrt(dx * dx + dy * dy + dz * dz);
+	}
+
+	/**
+	 * Dijkstra's algorithm from the source, stopped when the target is reached. Returns the list of the edges of the
+	 * shortest path (empty if there is none)
+	 */
+	public IList<E> dijkstra(final V source, final V target) {
+		return unidirectional(source, target, false);
+	}
+
+	/**
+	 * A* algorithm guided by the straight line distance to the target (equivalent to {@link #dijkstra} for graphs
+	 * that are not spatial)
+	 */
+	public IList<E> astar(final V source, final V target) {
+		return unidirectional(source, target, true);
+	}
+
+	private IList<E> unidirectional(final V source, final V target, final boolean guided) {
+		final int s = indexOf(source);
+		final int t = indexOf(target);
+		if (s < 0 || t < 0 || s == t) { return emptyPath(); }
+		final Workspace w = workspace(vertices.length);
+		final Search a = w.forward;
+		a.reach(s, 0, -1, -1);
+		a.open.push(s, guided ? estimate(s, t) : 0);
+		while (!a.open.isEmpty()) {
+			final int u = a.open.pop();
+			if (a.isClosed(u)) {
+				continue;
+			}
+			if (u == t) { return tracebackPath(w, t); }
+			a.close(u);
+			final double du = a.dist[u];
+			for (int slot = outStart[u], end = outStart[u + 1]; slot < end; slot++) {
+				final int v = outTargets[slot];
+				if (a.isClosed(v)) {
+					continue;
+				}
+				final int e = outEdges[slot];
+				final double d = du + weights[e];
+				if (!a.isReached(v) || a.dist[v] > d) {
+					a.reach(v, d, u, e);
+					a.open.push(v, guided ? d + estimate(v, t) : d);
+				}
+			}
+		}
+		return emptyPath();
+	}
+
+	/**
+	 * The NBA* (new bidirectional A*) algorithm of Pijls and Post, "Yet another bidirectional algorithm for shortest
+	 * paths" (2009). If stopWhenPathFound is true, the first path found by the two searches is returned, even if it is
+	 * not the shortest one.
+	 */
+	public IList<E> nbaStar(final V source, final V target, final boolean stopWhenPathFound) {
+		final int s = indexOf(source);
+		final int t = indexOf(target);
+		if (s < 0 || t < 0 || s == t) { return emptyPath(); }
+		final Workspace w = workspace(vertices.length);
+		final Search a = w.forward;
+		final Search b = w.backward;
+		final double total = estimate(s, t);
+		w.fA = total;
+		w.fB = total;
+		w.best = Double.MAX_VALUE;
+		w.touch = -1;
+		a.reach(s, 0, -1, -1);
+		a.open.push(s, total);
+		b.reach(t, 0, -1, -1);
+		b.open.push(t, total);
+		while (!a.open.isEmpty() && !b.open.isEmpty()) {
+			final boolean found;
+			if (a.open.size() < b.open.size()) {
+				found = expand(w, a, b, outStart, outEdges, outTargets, t, s, true);
+			} else {
+				found = expand(w, b, a, inStart, inEdges, inSources, s, t, false);
+			}
+			if (found && stopWhenPathFound) {
+				break;
+			}
+		}
+		if (w.touch < 0) { return emptyPath(); }
+		return tracebackPath(w, w.touch);
+	}
+
+	/**
+	 * Expands the best vertex of one of the searches of NBA*, the other one being opposite. Returns whether a better
+	 * path has been found
+	 */
+	private boolean expand(final Workspace w, final Search search, final Search opposite, final int[] start,
+			final int[] slots, final int[] others, final int goal, final int origin, final boolean forward) {
+		final int u = search.open.pop();
+		if (w.isClosed(u)) { return false; }
+		w.close(u);
+		boolean found = false;
+		final double du = search.dist[u];
+		final double f = forward ? w.fB : w.fA;
+		if (du + estimate(u, goal) < w.best && du + f - estimate(u, origin) < w.best) {
+			for (int slot = start[u], end = start[u + 1]; slot < end; slot++) {
+				final int v = others[slot];
+				if (w.isClosed(v)) {
+					continue;
+				}
+				final int e = slots[slot];
+				final double d = du + weights[e];
+				if (!search.isReached(v) || search.dist[v] > d) {
+					search.reach(v, d, u, e);
+					search.open.push(v, d + estimate(v, goal));
+					if (opposite.isReached(v) && d + opposite.dist[v] < w.best) {
+						w.best = d + opposite.dist[v];
+						w.touch = v;
+						found = true;
+					}
+				}
+			}
+		}
+		if (!search.open.isEmpty()) {
+			if (forward) {
+				w.fA = search.open.peekKey();
+			} else {
+				w.fB = search.open.peekKey();
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Builds the list of the edges from the source of the forward search to the vertex and, if a backward search has
+	 * reached the vertex, from the vertex to the target of the backward search
+	 */
+	private IList<E> tracebackPath(final Workspace w, final int touch) {
+		final Search a = w.forward;
+		final Search b = w.backward;
+		int length = 0;
+		for (int v = touch; a.parentEdge[v] >= 0; v = a.parent[v]) {
+			length++;
+		}
+		final boolean backward = b.isReached(touch);
+		if (backward) {
+			for (int v = touch; b.parentEdge[v] >= 0; v = b.parent[v]) {
+				length++;
+			}
+		}
+		final Object[] path = new Object[length];
+		int i = 0;
+		for (int v = touch; a.parentEdge[v] >= 0; v = a.parent[v]) {
+			path[i++] = edges[a.parentEdge[v]];
+		}
+		for (int j = 0, k = i - 1; j < k; j++, k--) {
+			final Object tmp = path[j];
+			path[j] = path[k];
+			path[k] = tmp;
+		}
+		if (backward) {
+			for (int v = touch; b.parentEdge[v] >= 0; v = b.parent[v]) {
+				path[i++] = edges[b.parentEdge[v]];
+			}
+		}
+		return (IList<E>) GamaListFactory.createWithoutCasting(edgeType, path);
+	}
+
+	private IList<E> emptyPath() {
+		return GamaListFactory.create(edgeType);
+	}
+
+	/**
+	 * A binary heap of vertices ordered by a key. A vertex can be present several times (with different keys): the
+	 * searches ignore the vertices that have already been closed when they are popped
+	 */
+	static final class Heap {
+		int[] nodes = new int[64];
+		double[] keys = new double[64];
+		int size;
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		int size() {
+			return size;
+		}
+
+		void clear() {
+			size = 0;
+		}
+
+		double peekKey() {
+			return keys[0];
+		}
+
+		void push(final int node, final double key) {
+			if (size == nodes.length) {
+				nodes = Arrays.copyOf(nodes, size * 2);
+				keys = Arrays.copyOf(keys, size * 2);
+			}
+			int i = size++;
+			while (i > 0) {
+				final int parent = (i - 1) >>> 1;
+				if (keys[parent] <= key) {
+					break;
+				}
+				nodes[i] = nodes[parent];
+				keys[i] = keys[parent];
+				i = parent;
+			}
+			nodes[i] = node;
+			keys[i] = key;
+		}
+
+		int pop() {
+			final int result = nodes[0];
+			final int last = --size;
+			if (last > 0) {
+				final int node = nodes[last];
+				final double key = keys[last];
+				int i = 0;
+				int child;
+				while ((child = 2 * i + 1) < last) {
+					if (child + 1 < last && keys[child + 1] < keys[child]) {
+						child++;
+					}
+					if (key <= keys[child]) {
+						break;
+					}
+					nodes[i] = nodes[child];
+					keys[i] = keys[child];
+					i = child;
+				}
+				nodes[i] = node;
+				keys[i] = key;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * The state of a search in one direction. The distances and parents of a vertex are only meaningful if its stamp
+	 * is the one of the current query, which avoids clearing the arrays between the queries
+	 */
+	static final class Search {
+		final Heap open = new Heap();
+		double[] dist = new double[0];
+		int[] parent = new int[0];
+		int[] parentEdge = new int[0];
+		int[] reached = new int[0];
+		int[] closed = new int[0];
+		int stamp;
+
+		void prepare(final int n, final int stamp) {
+			if (dist.length < n) {
+				final int size = Math.max(n, dist.length * 2);
+				dist = new double[size];
+				parent = new int[size];
+				parentEdge = new int[size];
+				reached = new int[size];
+				closed = new int[size];
+			} else if (stamp == 1) {
+				Arrays.fill(reached, 0);
+				Arrays.fill(closed, 0);
+			}
+			this.stamp = stamp;
+			open.clear();
+		}
+
+		boolean isReached(final int v) {
+			return reached[v] == stamp;
+		}
+
+		boolean isClosed(final int v) {
+			return closed[v] == stamp;
+		}
+
+		void close(final int v) {
+			closed[v] = stamp;
+		}
+
+		void reach(final int v, final double d, final int from, final int edge) {
+			reached[v] = stamp;
+			dist[v] = d;
+			parent[v] = from;
+			parentEdge[v] = edge;
+		}
+	}
+
+	/**
+	 * The arrays used by the queries of a thread, sized for the largest graph it has queried
+	 */
+	static final class Workspace {
+		final Search forward = new Search();
+		final Search backward = new Search();
+		int stamp;
+		double fA, fB, best;
+		int touch;
+
+		Workspace prepare(final int n) {
+			// When the stamps overflow, the arrays are cleared and the stamps start again from 1
+			stamp = stamp == Integer.MAX_VALUE ? 1 : stamp + 1;
+			forward.prepare(n, stamp);
+			backward.prepare(n, stamp);
+			return this;
+		}
+
+		// NBA* uses a single closed set for its two searches
+		boolean isClosed(final int v) {
+			return forward.isClosed(v);
+		}
+
+		void close(final int v) {
+			forward.close(v);
+		}
+	}
+
+}
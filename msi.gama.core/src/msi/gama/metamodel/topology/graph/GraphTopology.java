@@ -14,8 +14,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.google.common.collect.Ordering;
@@ -52,6 +55,17 @@ import msi.gaml.types.Types;
 @SuppressWarnings ({ "unchecked", "rawtypes" })
 public class GraphTopology extends AbstractTopology {
 
+	// The number of times a vertex must be the target of a path (with the same weights) before its shortest path tree
+	// is built, and the number of trees kept
+	static final int TREE_THRESHOLD = 8;
+	static final int MAX_TREES = 32;
+
+	// The snapshot of the graph on which the trees have been built, the trees (least recently used first) and the
+	// number of paths computed towards each vertex with this snapshot
+	private GraphSnapshot snapshot;
+	private final LinkedHashMap<Object, ShortestPathTree> trees = new LinkedHashMap<>(16, 0.75f, true);
+	private final Map<Object, Integer> requests = new HashMap<>();
+
 	/**
 	 * @param scope
 	 * @param env
@@ -144,7 +158,11 @@ public class GraphTopology extends AbstractTopology {
 
 		}
 		if (sourceNode && targetNode) {
-			return (GamaSpatialPath) graph.computeShortestPathBetween(scope, sourceN, targetN);
+			if (getShortestPathTree(scope, targetN, false) == null) {
+				return (GamaSpatialPath) graph.computeShortestPathBetween(scope, sourceN, targetN);
+			}
+			return PathFactory.newInstance(scope, graph.getTopology(scope), sourceN, targetN,
+					computeBestRouteBetween(scope, sourceN, targetN));
 		}
 
 		IShape edgeS = null, edgeT = null;
@@ -300,7 +318,7 @@ public class GraphTopology extends AbstractTopology {
 			if (nodeT1 == source) {
 				l1 = lengthEdge(edgeT, target, nodeT2, nodeT1);
 			} else {
-				edges = getPlaces().computeBestRouteBetween(scope, source, nodeT1);
+				edges = computeBestRouteBetween(scope, source, nodeT1);
 				final boolean isEmpty = edges.isEmpty();
 				l1 = isEmpty ? Double.MAX_VALUE : pathlengthEdges(edges) + lengthEdge(edgeT, target, nodeT2, nodeT1);
 				if (!isEmpty) {
@@ -317,7 +335,7 @@ public class GraphTopology extends AbstractTopology {
 				if (nodeT2 == source) {
 					l2 = lengthEdge(edgeT, target, nodeT1, nodeT2);
 				} else {
-					edges2 = getPlaces().computeBestRouteBetween(scope, source, nodeT2);
+					edges2 = computeBestRouteBetween(scope, source, nodeT2);
 					l2 = edges2.isEmpty() ? Double.MAX_VALUE
 							: pathlengthEdges(edges2) + lengthEdge(edgeT, target, nodeT1, nodeT2);
 				}
@@ -338,7 +356,7 @@ public class GraphTopology extends AbstractTopology {
 			if (nodeS1 == target) {
 				l1 = lengthEdge(edgeS, source, nodeS2, nodeS1);
 			} else {
-				edges = getPlaces().computeBestRouteBetween(scope, nodeS1, target);
+				edges = computeBestRouteBetween(scope, nodeS1, target);
 				final boolean isEmpty = edges.isEmpty();
 				l1 = isEmpty ? Double.MAX_VALUE : pathlengthEdges(edges) + lengthEdge(edgeS, source, nodeS2, nodeS1);
 				if (!isEmpty) {
@@ -355,7 +373,7 @@ public class GraphTopology extends AbstractTopology {
 				if (nodeS2 == target) {
 					l2 = lengthEdge(edgeS, source, nodeS1, nodeS2);
 				} else {
-					edges2 = getPlaces().computeBestRouteBetween(scope, nodeS2, target);
+					edges2 = computeBestRouteBetween(scope, nodeS2, target);
 					l2 = edges2.isEmpty() ? Double.MAX_VALUE
 							: pathlengthEdges(edges2) + lengthEdge(edgeS, source, nodeS1, nodeS2);
 				}
@@ -382,7 +400,7 @@ public class GraphTopology extends AbstractTopology {
 			if (nodeS1 == nodeT1) {
 				lmin = lengthEdge(edgeS, source, nodeS2, nodeS1) + lengthEdge(edgeT, target, nodeT2, nodeT1);
 			} else {
-				edges = getPlaces().computeBestRouteBetween(scope, nodeS1, nodeT1);
+				edges = computeBestRouteBetween(scope, nodeS1, nodeT1);
 				final boolean isEmpty = edges.isEmpty();
 
 				final double els = lengthEdge(edgeS, source, nodeS2, nodeS1);
@@ -431,7 +449,7 @@ public class GraphTopology extends AbstractTopology {
 				if (nodeS2 == nodeT1) {
 					l2 = lengthEdge(edgeS, source, nodeS1, nodeS2) + lengthEdge(edgeT, target, nodeT2, nodeT1);
 				} else {
-					edges2 = getPlaces().computeBestRouteBetween(scope, nodeS2, nodeT1);
+					edges2 = computeBestRouteBetween(scope, nodeS2, nodeT1);
 					final boolean isEmpty = edges2.isEmpty();
 					final double els = lengthEdge(edgeS, source, nodeS1, nodeS2);
 					final double elt = lengthEdge(edgeT, target, nodeT2, nodeT1);
@@ -479,7 +497,7 @@ public class GraphTopology extends AbstractTopology {
 				if (nodeS1 == nodeT2) {
 					l2 = lengthEdge(edgeS, source, nodeS2, nodeS1) + lengthEdge(edgeT, target, nodeT1, nodeT2);
 				} else {
-					edges2 = getPlaces().computeBestRouteBetween(scope, nodeS1, nodeT2);
+					edges2 = computeBestRouteBetween(scope, nodeS1, nodeT2);
 					final boolean isEmpty = edges2.isEmpty();
 					final double els = lengthEdge(edgeS, source, nodeS2, nodeS1);
 					final double elt = lengthEdge(edgeT, target, nodeT1, nodeT2);
@@ -509,7 +527,7 @@ public class GraphTopology extends AbstractTopology {
 				if (nodeS2 == nodeT2) {
 					l2 = lengthEdge(edgeS, source, nodeS1, nodeS2) + lengthEdge(edgeT, target, nodeT1, nodeT2);
 				} else {
-					edges2 = getPlaces().computeBestRouteBetween(scope, nodeS2, nodeT2);
+					edges2 = computeBestRouteBetween(scope, nodeS2, nodeT2);
 					l2 = edges2.isEmpty() ? Double.MAX_VALUE : pathlengthEdges(edges2)
 							+ lengthEdge(edgeS, source, nodeS1, nodeS2) + lengthEdge(edgeT, target, nodeT1, nodeT2);
 				}
@@ -547,7 +565,7 @@ public class GraphTopology extends AbstractTopology {
 				IList<IShape> edgesbis = null;
 				if (computeOther) {
 					l1 = pathlengthEdges(edges) + lengthEdge(edgeS, source, nodeSbis, nodeS);
-					edgesbis = getPlaces().computeBestRouteBetween(scope, nodeSbis, nodeT);
+					edgesbis = computeBestRouteBetween(scope, nodeSbis, nodeT);
 					l2 = pathlengthEdges(edgesbis) + lengthEdge(edgeS, source, nodeS, nodeSbis);
 				}
 				if (l1 < l2 || edgesbis == null || edgesbis.isEmpty() || edgesbis.get(0) == null) {
@@ -576,6 +594,58 @@ public class GraphTopology extends AbstractTopology {
 		return PathFactory.newInstance(scope, this, source, target, edges);
 	}
 
+	/**
+	 * Returns the tree of the shortest paths from all the vertices of the graph to the target vertex, built with the
+	 * current weights of the graph. If build is false, the tree is only built if the target is often used (see the
+	 * preferences), and null is returned otherwise. Many agents going to the same destination can then share the same
+	 * search instead of computing their paths separately
+	 */
+	public ShortestPathTree getShortestPathTree(final IScope scope, final Object target, final boolean build) {
+		if (!build && !GamaPreferences.External.PATH_TREES_OPTIMIZATION.getValue()) { return null; }
+		final GamaSpatialGraph graph = (GamaSpatialGraph) getPlaces();
+		if (!build && graph.hasAllShortestPaths()) { return null; }
+		final GraphSnapshot current = graph.getSnapshot();
+		synchronized (trees) {
+			if (current != snapshot) {
+				snapshot = current;
+				trees.clear();
+				requests.clear();
+			}
+			final ShortestPathTree tree = trees.get(target);
+			if (tree != null) { return tree; }
+			if (!build && requests.merge(target, 1, Integer::sum) < TREE_THRESHOLD) { return null; }
+		}
+		// Built without holding the lock, so that the paths towards the other targets are not delayed
+		final ShortestPathTree tree = new ShortestPathTree(current, target);
+		synchronized (trees) {
+			// Not kept if the graph has been modified in the meantime
+			if (current != snapshot) { return tree; }
+			final ShortestPathTree existing = trees.putIfAbsent(target, tree);
+			if (existing != null) { return existing; }
+			if (trees.size() > MAX_TREES) {
+				trees.remove(trees.keySet().iterator().next());
+			}
+			return tree;
+		}
+	}
+
+	/**
+	 * Returns the shortest path tree to the target vertex, built with the current weights of the graph
+	 */
+	public ShortestPathTree getShortestPathTree(final IScope scope, final Object target) {
+		return getShortestPathTree(scope, target, true);
+	}
+
+	/**
+	 * The edges of the shortest path between two vertices, read from the shortest path tree of the target if it has
+	 * one, computed by the graph otherwise
+	 */
+	private IList<IShape> computeBestRouteBetween(final IScope scope, final IShape source, final IShape target) {
+		final ShortestPathTree tree = getShortestPathTree(scope, target, false);
+		if (tree == null) { return getPlaces().computeBestRouteBetween(scope, source, target); }
+		return tree.routeFrom(source);
+	}
+
 	public double pathlengthEdges(final IList<IShape> edges) {
 		double length = 0;
 		for (final IShape sp : edges) {
@@ -641,7 +711,7 @@ public class GraphTopology extends AbstractTopology {
 			}
 			return PathFactory.newInstance(scope, this, source, target, edges);
 		}
-		edges = getPlaces().computeBestRouteBetween(scope, nodeS, nodeT);
+		edges = computeBestRouteBetween(scope, nodeS, nodeT);
 		if (edges.isEmpty() || edges.get(0) == null) { return null; }
 
 		if (!sourceNode) {
@@ -665,7 +735,7 @@ public class GraphTopology extends AbstractTopology {
 			}
 			return PathFactory.newInstance(scope, this, source, target, edges);
 		}
-		edges = getPlaces().computeBestRouteBetween(scope, source, target);
+		edges = computeBestRouteBetween(scope, source, target);
 		if (existingEdge != null) {
 			edges = edges.listValue(scope, Types.NO_TYPE, true);
 			edges.addValueAtIndex(scope, 0, existingEdge);
@@ -946,7 +1016,7 @@ public class GraphTopology extends AbstractTopology {
 			/**
 			 * TODO AD: PROBLEM HERE. Why is edges recomputed immediately ?
 			 */
-			edges = getPlaces().computeBestRouteBetween(scope, nodeS, nodeT);
+			edges = computeBestRouteBetween(scope, nodeS, nodeT);
 			if (edges.isEmpty() || edges.get(0) == null) {
 				continue;
 			}
@@ -0,0 +1,119 @@
+/*******************************************************************************************************
+ *
+ * msi.gama.metamodel.topology.graph.ShortestPathTree.java, in plugin msi.gama.core, is part of the source code of the
+ * GAMA modeling and simulation platform (v. 1.8)
+ *
+ * (c) 2007-2018 UMI 209 UMMISCO IRD/SU & Partners
+ *
+ * Visit https://github.com/gama-platform/gama for license information and contacts.
+ *
+ ********************************************************************************************************/
+package msi.gama.metamodel.topology.graph;
+
+import java.util.Arrays;
+
+import msi.gama.metamodel.topology.graph.GraphSnapshot.Heap;
+import msi.gama.util.GamaListFactory;
+import msi.gama.util.IList;
+
+/**
+ * The shortest paths from all the vertices of a {@link GraphSnapshot} to one of them (the target), computed by a single
+ * Dijkstra search that follows the edges backwards from the target. Each vertex keeps the edge by which it leaves
+ * towards the target, so that the path from any vertex is obtained by following these edges, without any search. This
+ * is much cheaper than one search per source when many agents go to the same destination (see
+ * {@link GraphTopology#getShortestPathTree(msi.gama.runtime.IScope, Object)}).
+ * <p>
+ * Like the snapshot on which it is built, a tree is never modified and is only valid for the weights of this snapshot.
+ */
+@SuppressWarnings ("unchecked")
+public class ShortestPathTree<V, E> {
+
+	final GraphSnapshot<V, E> snapshot;
+	final int target;
+	// For each vertex, the distance to the target, the edge to follow and the next vertex (-1 if none)
+	final double[] distance;
+	final int[] nextEdge, nextVertex;
+
+	public ShortestPathTree(final GraphSnapshot<V, E> snapshot, final V target) {
+		this.snapshot = snapshot;
+		this.target = snapshot.indexOf(target);
+		final int n = snapshot.getVertexCount();
+		distance = new double[n];
+		nextEdge = new int[n];
+		nextVertex = new int[n];
+		Arrays.fill(distance, Double.POSITIVE_INFINITY);
+		Arrays.fill(nextEdge, -1);
+		Arrays.fill(nextVertex, -1);
+		if (this.target >= 0) {
+			build();
+		}
+	}
+
+	private void build() {
+		final int[] inStart = snapshot.inStart;
+		final int[] inEdges = snapshot.inEdges;
+		final int[] inSources = snapshot.inSources;
+		final double[] weights = snapshot.weights;
+		final boolean[] closed = new boolean[distance.length];
+		final Heap open = new Heap();
+		distance[target] = 0;
+		open.push(target, 0);
+		while (!open.isEmpty()) {
+			final int u = open.pop();
+			if (closed[u]) {
+				continue;
+			}
+			closed[u] = true;
+			final double du = distance[u];
+			for (int slot = inStart[u], end = inStart[u + 1]; slot < end; slot++) {
+				final int v = inSources[slot];
+				if (closed[v]) {
+					continue;
+				}
+				final int e = inEdges[slot];
+				final double d = du + weights[e];
+				if (d < distance[v]) {
+					distance[v] = d;
+					nextEdge[v] = e;
+					nextVertex[v] = u;
+					open.push(v, d);
+				}
+			}
+		}
+	}
+
+	public GraphSnapshot<V, E> getSnapshot() {
+		return snapshot;
+	}
+
+	public V getTarget() {
+		return target < 0 ? null : snapshot.getVertex(target);
+	}
+
+	/**
+	 * The length of the shortest path from the vertex to the target (infinite if there is none)
+	 */
+	public double distanceFrom(final V source) {
+		final int s = snapshot.indexOf(source);
+		return s < 0 ? Double.POSITIVE_INFINITY : distance[s];
+	}
+
+	/**
+	 * The edges of the shortest path from the vertex to the target (empty if there is none)
+	 */
+	public IList<E> routeFrom(final V source) {
+		final int s = snapshot.indexOf(source);
+		if (s < 0 || s == target || nextEdge[s] < 0) { return GamaListFactory.create(snapshot.edgeType); }
+		int length = 0;
+		for (int v = s; v != target; v = nextVertex[v]) {
+			length++;
+		}
+		final Object[] path = new Object[length];
+		int i = 0;
+		for (int v = s; v != target; v = nextVertex[v]) {
+			path[i++] = snapshot.edges[nextEdge[v]];
+		}
+		return (IList<E>) GamaListFactory.createWithoutCasting(snapshot.edgeType, path);
+	}
+
+}
@@ -67,6 +67,9 @@ import msi.gama.util.matrix.GamaMatrix;
 import msi.gama.util.matrix.IMatrix;
 import msi.gama.util.path.GamaSpatialPath;
 import msi.gama.util.path.PathFactory;
+import msi.gaml.descriptions.AttributeSlots;
+import msi.gaml.descriptions.SpeciesDescription;
+import msi.gaml.expressions.AgentVariableExpression;
 import msi.gaml.expressions.IExpression;
 import msi.gaml.operators.Cast;
 import msi.gaml.operators.Maths;
@@ -465,6 +468,18 @@ public class GamaSpatialMatrix extends GamaMatrix<IShape> implements IGrid {
 		return neighborhood;
 	}
 
+	/**
+	 * Computes, in parallel, the neighbors of all the cells up to the radius passed (see
+	 * GridNeighborhood.precompute()). Forces the use of the neighbors cache
+	 */
+	public void precomputeNeighborhood(final int radius) {
+		if (!useNeighborsCache) {
+			useNeighborsCache = true;
+			neighborhood = null;
+		}
+		((GridNeighborhood) getNeighborhood()).precompute(radius);
+	}
+
 	@Override
 	public int[] getDisplayData() {
 		return supportImagePixels;
@@ -477,6 +492,14 @@ public class GamaSpatialMatrix extends GamaMatrix<IShape> implements IGrid {
 
 	@Override
 	public double[] getGridValueOf(final IScope scope, final IExpression exp) {
+		// The values of the attributes stored in columns are copied without evaluating the expression on each cell
+		if (exp instanceof AgentVariableExpression && cellSpecies != null) {
+			final IPopulation pop = cellSpecies.getPopulation(scope);
+			if (pop instanceof GridPopulation) {
+				final double[] result = ((GridPopulation) pop).copyValuesOf(((AgentVariableExpression) exp).getName());
+				if (result != null) { return result; }
+			}
+		}
 		final double[] result = new double[matrix.length];
 		for (int i = 0; i < matrix.length; i++) {
 			final IShape s = matrix[i];
@@ -1574,11 +1597,112 @@ public class GamaSpatialMatrix extends GamaMatrix<IShape> implements IGrid {
 	 */
 	public class GridPopulation<G extends IAgent> extends GamaPopulation<G> {
 
+		// The values of the int, float and bool attributes of the cells (see AttributeSlots), stored by column: one
+		// contiguous array per attribute, indexed by the index of the cells. The cells only hold their index
+		int[][] intColumns;
+		double[][] floatColumns;
+		boolean[][] boolColumns;
+
 		public GridPopulation(final ITopology t, final IMacroAgent host, final ISpecies species) {
 			super(host, species);
 			topology = t;
 		}
 
+		private AttributeSlots getAttributeSlots() {
+			final SpeciesDescription desc = species.getDescription();
+			return desc == null ? AttributeSlots.EMPTY : desc.getAttributeSlots();
+		}
+
+		void allocateColumns() {
+			final AttributeSlots slots = getAttributeSlots();
+			final int n = matrix.length;
+			floatColumns = new double[slots.count(AttributeSlots.FLOAT)][n];
+			boolColumns = new boolean[slots.count(AttributeSlots.BOOL)][n];
+			intColumns = new int[slots.count(AttributeSlots.INT)][n];
+		}
+
+		boolean hasSlotValues() {
+			return intColumns != null;
+		}
+
+		Object getSlotValue(final int cell, final int slot) {
+			final int i = AttributeSlots.index(slot);
+			switch (AttributeSlots.kind(slot)) {
+				case AttributeSlots.INT:
+					return intColumns == null ? 0 : intColumns[i][cell];
+				case AttributeSlots.FLOAT:
+					return floatColumns == null ? 0d : floatColumns[i][cell];
+				default:
+					return boolColumns == null ? false : boolColumns[i][cell];
+			}
+		}
+
+		void setSlotValue(final int cell, final int slot, final Object value) {
+			if (intColumns == null) {
+				allocateColumns();
+			}
+			final int i = AttributeSlots.index(slot);
+			switch (AttributeSlots.kind(slot)) {
+				case AttributeSlots.INT:
+					intColumns[i][cell] =
+							value instanceof Number ? ((Number) value).intValue() : Cast.asInt(getHost().getScope(), value);
+					break;
+				case AttributeSlots.FLOAT:
+					floatColumns[i][cell] = value instanceof Number ? ((Number) value).doubleValue()
+							: Cast.asFloat(getHost().getScope(), value);
+					break;
+				default:
+					boolColumns[i][cell] =
+							value instanceof Boolean ? (Boolean) value : Cast.asBool(getHost().getScope(), value);
+			}
+		}
+
+		/**
+		 * Returns the array containing the values of the float attribute passed for all the cells, indexed by the index
+		 * of the cells, or null if this attribute is not stored in a column. The array is the storage itself: writing
+		 * into it bypasses the casts and the 'on_change' facet of the attribute.
+		 */
+		public double[] getFloatColumn(final String var) {
+			if (floatColumns == null) { return null; }
+			final int slot = getAttributeSlots().slotOf(var);
+			if (slot == AttributeSlots.NONE || AttributeSlots.kind(slot) != AttributeSlots.FLOAT) { return null; }
+			return floatColumns[AttributeSlots.index(slot)];
+		}
+
+		/**
+		 * Returns the array containing the values of the int attribute passed for all the cells, indexed by the index of
+		 * the cells, or null if this attribute is not stored in a column. The array is the storage itself
+		 */
+		public int[] getIntColumn(final String var) {
+			if (intColumns == null) { return null; }
+			final int slot = getAttributeSlots().slotOf(var);
+			if (slot == AttributeSlots.NONE || AttributeSlots.kind(slot) != AttributeSlots.INT) { return null; }
+			return intColumns[AttributeSlots.index(slot)];
+		}
+
+		/**
+		 * Returns a copy of the values of the int or float attribute passed for all the cells, or null if this
+		 * attribute is not stored in a column
+		 */
+		public double[] copyValuesOf(final String var) {
+			final double[] floats = getFloatColumn(var);
+			if (floats != null) { return floats.clone(); }
+			final int[] ints = getIntColumn(var);
+			if (ints == null) { return null; }
+			final double[] result = new double[ints.length];
+			for (int i = 0; i < ints.length; i++) {
+				result[i] = ints[i];
+			}
+			return result;
+		}
+
+		/**
+		 * Whether the cell at this index exists (grids built from files or hexagonal grids can have holes)
+		 */
+		public boolean hasCell(final int index) {
+			return matrix[index] != null;
+		}
+
 		@Override
 		public Stream<G> stream() {
 			return (Stream<G>) StreamEx.of(matrix);
@@ -1615,6 +1739,7 @@ public class GamaSpatialMatrix extends GamaMatrix<IShape> implements IGrid {
 				}
 			}
 
+			allocateColumns();
 			for (final String s : orderedVarNames) {
 				final IVariable var = species.getVar(s);
 				for (int i = 0; i < actualNumberOfCells; i++) {
@@ -1700,6 +1825,9 @@ public class GamaSpatialMatrix extends GamaMatrix<IShape> implements IGrid {
 					a.dispose();
 				}
 			}
+			intColumns = null;
+			floatColumns = null;
+			boolColumns = null;
 		}
 
 		@Override
@@ -1880,6 +2008,27 @@ public class GamaSpatialMatrix extends GamaMatrix<IShape> implements IGrid {
 				return GridPopulation.this;
 			}
 
+			@Override
+			public boolean hasSlotValues() {
+				return GridPopulation.this.hasSlotValues();
+			}
+
+			@Override
+			public boolean isSlotAssigned(final int slot) {
+				// The columns are filled for all the cells at once
+				return GridPopulation.this.hasSlotValues();
+			}
+
+			@Override
+			public Object getSlotValue(final int slot) {
+				return GridPopulation.this.getSlotValue(getIndex(), slot);
+			}
+
+			@Override
+			public void setSlotValue(final int slot, final Object value) {
+				GridPopulation.this.setSlotValue(getIndex(), slot, value);
+			}
+
 			@Override
 			public IList<IAgent> getNeighbors(final IScope scope) {
 				return Cast.asList(scope, getNeighborhood().getNeighborsIn(scope, getIndex(), 1));
@@ -1946,6 +2095,27 @@ public class GamaSpatialMatrix extends GamaMatrix<IShape> implements IGrid {
 				return GridPopulation.this;
 			}
 
+			@Override
+			public boolean hasSlotValues() {
+				return GridPopulation.this.hasSlotValues();
+			}
+
+			@Override
+			public boolean isSlotAssigned(final int slot) {
+				// The columns are filled for all the cells at once
+				return GridPopulation.this.hasSlotValues();
+			}
+
+			@Override
+			public Object getSlotValue(final int slot) {
+				return GridPopulation.this.getSlotValue(getIndex(), slot);
+			}
+
+			@Override
+			public void setSlotValue(final int slot, final Object value) {
+				GridPopulation.this.setSlotValue(getIndex(), slot, value);
+			}
+
 			@Override
 			public IShape getGeometry() {
 				return geometry;
@@ -17,14 +17,18 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 import msi.gama.metamodel.agent.IAgent;
 import msi.gama.metamodel.population.IPopulation;
 import msi.gama.metamodel.topology.grid.GamaSpatialMatrix.GridPopulation;
 import msi.gama.runtime.IScope;
+import msi.gama.runtime.concurrent.GamaExecutorService;
 import msi.gama.runtime.exceptions.GamaRuntimeException;
 import msi.gaml.operators.Cast;
 import msi.gaml.variables.IVariable;
+import msi.gaml.variables.Variable;
 
 public class GridDiffuser {
 
@@ -197,6 +201,9 @@ public class GridDiffuser {
 								// proportion.
 	IScope diffuserScope;
 
+	// Side of the square blocks of cells processed by the same task
+	static final int BLOCK_SIZE = 64;
+
 	double[] input, output;
 	int nbRows, nbCols;
 	double min_value;
@@ -233,9 +240,12 @@ public class GridDiffuser {
 			}
 		}
 
+		// The values of the attributes stored in columns are read directly
+		final double[] column = getColumn(population);
 		for (int i = 0; i < input.length; i++) {
-			input[i] = Cast.asFloat(diffuserScope,
-					population.get(diffuserScope, i).getDirectVarValue(diffuserScope, var_diffu));
+			input[i] = column != null ? column[i]
+					: Cast.asFloat(diffuserScope,
+							population.get(diffuserScope, i).getDirectVarValue(diffuserScope, var_diffu));
 			if (input[i] < min_value) {
 				input[i] = 0;
 			}
@@ -246,6 +256,236 @@ public class GridDiffuser {
 
 	public void doDiffusion_with_convolution() {
 		// default method : convolution
+		if (redistributes()) {
+			convolutionWithRedistribution();
+		} else {
+			forEachBlock(this::convolve);
+		}
+	}
+
+	public void doDiffusion_with_dotProduct() {
+		// dot product
+		if (redistributes()) {
+			dotProductWithRedistribution();
+		} else {
+			forEachBlock(this::gather);
+		}
+	}
+
+	/**
+	 * Whether the values diffused to masked cells are redistributed to other cells (facet 'avoid_mask'). In that case,
+	 * the computation of a cell modifies other cells and the grid is processed sequentially
+	 */
+	private boolean redistributes() {
+		return avoid_mask && mask != null;
+	}
+
+	private interface Block {
+		void process(int firstCol, int lastCol, int firstRow, int lastRow);
+	}
+
+	/**
+	 * Divides the grid into square blocks of BLOCK_SIZE cells of side, processed in parallel when there are several of
+	 * them. The blocks only write into their own cells of 'output', so the result does not depend on their order
+	 */
+	private void forEachBlock(final Block block) {
+		final int blockCols = (nbCols + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		final int blockRows = (nbRows + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		final int blocks = blockCols * blockRows;
+		final IntConsumer task = b -> {
+			final int c = b % blockCols * BLOCK_SIZE, r = b / blockCols * BLOCK_SIZE;
+			block.process(c, Math.min(c + BLOCK_SIZE, nbCols), r, Math.min(r + BLOCK_SIZE, nbRows));
+		};
+		if (blocks < 2 || GamaExecutorService.AGENT_PARALLEL_EXECUTOR == null) {
+			for (int b = 0; b < blocks; b++) {
+				task.accept(b);
+			}
+		} else {
+			GamaExecutorService.executeThreaded(() -> IntStream.range(0, blocks).parallel().forEach(task));
+		}
+	}
+
+	/**
+	 * Convolution of the cells of a block, without redistribution: each output cell only depends on the input
+	 */
+	private void convolve(final int firstCol, final int lastCol, final int firstRow, final int lastRow) {
+		final int kRows = mat_diffu.length;
+		final int kCols = mat_diffu[0].length;
+		final int kCenterX = kCols / 2;
+		final int kCenterY = kRows / 2;
+		for (int j = firstRow; j < lastRow; ++j) {
+			for (int i = firstCol; i < lastCol; ++i) {
+				final int outputIndex = j * nbCols + i;
+				double value = output[outputIndex];
+				for (int m = 0; m < kRows; ++m) {
+					for (int n = 0; n < kCols; ++n) {
+						int ii = i + n - kCenterX;
+						int jj = j + m - kCenterY;
+						if (is_torus) {
+							if (ii < 0) {
+								ii = nbRows + ii;
+							} else if (ii >= nbRows) {
+								ii = ii - nbRows;
+							}
+							if (jj < 0) {
+								jj = nbCols + jj;
+							} else if (jj >= nbCols) {
+								jj = jj - nbCols;
+							}
+						}
+						if (ii >= 0 && ii < nbCols && jj >= 0 && jj < nbRows && (mask == null || mask[ii][jj] == 1)) {
+							value = accumulate(value, input[jj * nbCols + ii] * mat_diffu[kRows - m - 1][kCols - n - 1]);
+						}
+					}
+				}
+				output[outputIndex] = value;
+			}
+		}
+	}
+
+	/**
+	 * Dot product computed for the output cells of a block, without redistribution. Instead of scattering the value of
+	 * each input cell to its output cells, each output cell gathers the contributions of its input cells, in the
+	 * order in which the sequential scattering would have added them (i.e. by input row, input column, kernel row and
+	 * kernel column), so that the floating point results are identical
+	 */
+	private void gather(final int firstCol, final int lastCol, final int firstRow, final int lastRow) {
+		final int kRows = mat_diffu.length;
+		final int kCols = mat_diffu[0].length;
+		final int kCenterX = kCols / 2;
+		final int kCenterY = kRows / 2;
+		final int max = 9 * kRows * kCols;
+		// The contributions (index of the input cell and value of the kernel) and, if they need to be sorted, their
+		// keys: (((ii * nbCols + jj) * kRows + m) * kCols + n)
+		final int[] inputs = new int[max];
+		final double[] factors = new double[max];
+		final long[] keys = new long[max];
+		// Cells whose input cells are all reached without the torus and without leaving the grid
+		final int side = Math.min(nbRows, nbCols);
+		final int minInterior = kCols - 1 - kCenterX, maxInterior = side - 1 - kCenterX;
+		final int minInteriorRow = kRows - 1 - kCenterY, maxInteriorRow = side - 1 - kCenterY;
+		for (int j = firstRow; j < lastRow; ++j) {
+			final boolean interiorRow = j >= minInteriorRow && j <= maxInteriorRow;
+			for (int i = firstCol; i < lastCol; ++i) {
+				if (interiorRow && i >= minInterior && i <= maxInterior) {
+					final int outputIndex = j * nbCols + i;
+					double value = output[outputIndex];
+					for (int n = kCols - 1; n >= 0; --n) {
+						final int ii = i - n + kCenterX;
+						for (int m = kRows - 1; m >= 0; --m) {
+							final int jj = j - m + kCenterY;
+							if (mask == null || mask[ii][jj] == 1) {
+								value = accumulate(value, input[jj * nbCols + ii] * mat_diffu[m][n]);
+							}
+						}
+					}
+					output[outputIndex] = value;
+					continue;
+				}
+				int count = 0;
+				boolean sorted = true;
+				// Enumerated by decreasing kernel columns and rows, i.e. by increasing input rows (ii) and columns (jj)
+				// as long as the torus is not involved
+				for (int n = kCols - 1; n >= 0; --n) {
+					final int ii0 = i - n + kCenterX;
+					for (int m = kRows - 1; m >= 0; --m) {
+						final int jj0 = j - m + kCenterY;
+						// Input cells that can reach (i, j), directly or through the torus
+						for (int ii = ii0 - nbRows; ii <= ii0 + nbRows; ii += nbRows) {
+							if (ii < 0 || ii >= nbRows || outputCol(ii, n, kCenterX) != i) {
+								continue;
+							}
+							for (int jj = jj0 - nbCols; jj <= jj0 + nbCols; jj += nbCols) {
+								if (jj < 0 || jj >= nbCols || outputRow(jj, m, kCenterY) != j) {
+									continue;
+								}
+								if (mask == null || mask[ii][jj] == 1) {
+									sorted &= ii == ii0 && jj == jj0;
+									keys[count] = (((long) ii * nbCols + jj) * kRows + m) * kCols + n;
+									inputs[count] = jj * nbCols + ii;
+									factors[count++] = mat_diffu[m][n];
+								}
+							}
+						}
+					}
+				}
+				if (count == 0) {
+					continue;
+				}
+				if (!sorted) {
+					sort(keys, inputs, factors, count);
+				}
+				final int outputIndex = j * nbCols + i;
+				double value = output[outputIndex];
+				for (int k = 0; k < count; k++) {
+					value = accumulate(value, input[inputs[k]] * factors[k]);
+				}
+				output[outputIndex] = value;
+			}
+		}
+	}
+
+	/**
+	 * Sorts the contributions by key (insertion sort, as there are only a few of them)
+	 */
+	private static void sort(final long[] keys, final int[] inputs, final double[] factors, final int count) {
+		for (int k = 1; k < count; k++) {
+			final long key = keys[k];
+			final int in = inputs[k];
+			final double f = factors[k];
+			int l = k - 1;
+			while (l >= 0 && keys[l] > key) {
+				keys[l + 1] = keys[l];
+				inputs[l + 1] = inputs[l];
+				factors[l + 1] = factors[l];
+				l--;
+			}
+			keys[l + 1] = key;
+			inputs[l + 1] = in;
+			factors[l + 1] = f;
+		}
+	}
+
+	/**
+	 * The column of the output cell reached from the input column ii by the kernel column n in the dot product
+	 */
+	private int outputCol(final int ii, final int n, final int kCenterX) {
+		int i = ii + n - kCenterX;
+		if (is_torus) {
+			if (i < 0) {
+				i = nbRows + i;
+			} else if (i >= nbRows) {
+				i = i - nbRows;
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * The row of the output cell reached from the input row jj by the kernel row m in the dot product
+	 */
+	private int outputRow(final int jj, final int m, final int kCenterY) {
+		int j = jj + m - kCenterY;
+		if (is_torus) {
+			if (j < 0) {
+				j = nbCols + j;
+			} else if (j >= nbCols) {
+				j = j - nbCols;
+			}
+		}
+		return j;
+	}
+
+	/**
+	 * Adds a contribution to the value of an output cell (or keeps the maximum for gradients)
+	 */
+	private double accumulate(final double value, final double contribution) {
+		if (value == -Double.MAX_VALUE) { return contribution; }
+		if (is_gradient) { return value < contribution ? contribution : value; }
+		return value + contribution;
+	}
+
+	private void convolutionWithRedistribution() {
 
 		final int kRows = mat_diffu.length;
 		final int kCols = mat_diffu[0].length;
@@ -253,12 +493,13 @@ public class GridDiffuser {
 		final int kCenterX = kCols / 2;
 		final int kCenterY = kRows / 2;
 
+		final ArrayList<int[]> non_masked_cells = new ArrayList<>();
 		for (int i = 0; i < nbCols; ++i) // output rows
 		{
 			for (int j = 0; j < nbRows; ++j) // output columns
 			{
 				double value_to_redistribute = 0;
-				final ArrayList<int[]> non_masked_cells = new ArrayList<>();
+				non_masked_cells.clear();
 				for (int m = 0; m < kRows; ++m) // kernel rows
 				{
 					for (int n = 0; n < kCols; ++n) // kernel columns
@@ -329,8 +570,7 @@ public class GridDiffuser {
 		}
 	}
 
-	public void doDiffusion_with_dotProduct() {
-		// dot product
+	private void dotProductWithRedistribution() {
 
 		final int kRows = mat_diffu.length;
 		final int kCols = mat_diffu[0].length;
@@ -338,6 +578,7 @@ public class GridDiffuser {
 		final int kCenterX = kCols / 2;
 		final int kCenterY = kRows / 2;
 
+		final ArrayList<int[]> non_masked_cells = new ArrayList<>();
 		for (int ii = 0; ii < nbRows; ++ii) // input rows
 		{
 			for (int jj = 0; jj < nbCols; ++jj) // input columns
@@ -345,7 +586,7 @@ public class GridDiffuser {
 				if (mask == null || mask[ii][jj] == 1) {
 					// diffuse only if the input is not masked
 					double value_to_redistribute = 0;
-					final ArrayList<int[]> non_masked_cells = new ArrayList<>();
+					non_masked_cells.clear();
 					for (int m = 0; m < kRows; ++m) // kernel rows
 					{
 						for (int n = 0; n < kCols; ++n) // kernel columns
@@ -416,9 +657,17 @@ public class GridDiffuser {
 		}
 	}
 
+	private double[] getColumn(final IPopulation<? extends IAgent> pop) {
+		if (!(pop instanceof GridPopulation)) { return null; }
+		return ((GridPopulation<? extends IAgent>) pop).getFloatColumn(var_diffu);
+	}
+
 	public void finishDiffusion(final IScope scope, final IPopulation<? extends IAgent> pop) {
 		final IVariable v = pop.getVar(var_diffu);
 		if (v == null) { return; }
+		// The values can be written directly in the column of the attribute if nothing needs to be checked or
+		// triggered when they are assigned
+		final double[] column = v instanceof Variable && ((Variable) v).isStoredAsIs() ? getColumn(pop) : null;
 		for (int i = 0; i < output.length; i++) {
 			double valToPut = output[i];
 			if (valToPut == -Double.MAX_VALUE) {
@@ -436,7 +685,11 @@ public class GridDiffuser {
 			} else {
 				valToPut = Math.max(valToPut, min_value);
 			}
-			v.setVal(scope, pop.get(scope, i), valToPut);
+			if (column != null) {
+				column[i] = valToPut;
+			} else {
+				v.setVal(scope, pop.get(scope, i), valToPut);
+			}
 		}
 	}
 
@@ -466,8 +719,14 @@ public class GridDiffuser {
 			final List<GridDiffusion> listGridDiffu = m_diffusions.get(pairVarGrid);
 			loadGridProperties(pairVarGrid);
 			final Iterator<GridDiffusion> gridDiffIterator = listGridDiffu.iterator();
-			input = new double[pairVarGrid.NbCols * pairVarGrid.NbRows];
-			output = new double[pairVarGrid.NbCols * pairVarGrid.NbRows];
+			// The buffers are kept from one diffusion to the other
+			final int size = pairVarGrid.NbCols * pairVarGrid.NbRows;
+			if (input == null || input.length != size) {
+				input = new double[size];
+				output = new double[size];
+			} else {
+				Arrays.fill(input, 0d);
+			}
 			Arrays.fill(output, -Double.MAX_VALUE);
 			while (gridDiffIterator.hasNext()) {
 				final GridDiffusion gridDiffusion = gridDiffIterator.next();
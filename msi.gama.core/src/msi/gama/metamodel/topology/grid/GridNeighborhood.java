@@ -10,10 +10,13 @@
  ********************************************************************************************************/
 package msi.gama.metamodel.topology.grid;
 
+import java.util.Arrays;
 import java.util.Set;
+import java.util.stream.IntStream;
 
 import msi.gama.metamodel.agent.IAgent;
 import msi.gama.runtime.IScope;
+import msi.gama.runtime.concurrent.GamaExecutorService;
 import msi.gama.util.Collector;
 
 /**
@@ -26,19 +29,109 @@ public abstract class GridNeighborhood implements INeighborhood {
 
 	protected final GamaSpatialMatrix matrix;
 	// i : index of agents; j : index of neighbors
-	protected int[][] neighbors;
+	protected volatile int[][] neighbors;
 	// i : index of agents; j : index of the neighbors by distance
-	protected int[][] neighborsIndexes;
+	protected volatile int[][] neighborsIndexes;
+
+	// The neighbors precomputed up to 'radius' (see precompute()), stored in a compressed sparse row table: the
+	// neighbors of the cell i at the distance r (1 <= r <= radius) are the elements of 'targets' between
+	// offsets[i * radius + r - 1] (included) and offsets[i * radius + r] (excluded)
+	// (targets is written last, so that the other fields are visible to the threads that see it)
+	protected int radius;
+	protected int[] offsets;
+	protected volatile int[] targets;
 
 	public GridNeighborhood(final GamaSpatialMatrix matrix) {
 		this.matrix = matrix;
-		neighbors = new int[matrix.matrix.length][0];
-		// neighborsIndexes = new ArrayList[agents.length];
-		neighborsIndexes = new int[matrix.matrix.length][];
+		createCache();
+	}
+
+	/**
+	 * Computes once, in parallel, the neighbors of all the cells up to the radius passed. Then, the lookups within this
+	 * radius do not allocate anything and can be shared by several threads. The order of the neighbors is the same as
+	 * the one of the lazy computation
+	 */
+	public void precompute(final int maxRadius) {
+		final int n = matrix.matrix.length;
+		final int[][] rings = new int[n][];
+		final int[][] sizes = new int[n][];
+		GamaExecutorService.executeThreaded(() -> IntStream.range(0, n).parallel().forEach(i -> {
+			if (matrix.matrix[i] == null) { return; }
+			final int[] s = new int[maxRadius];
+			int[] all = new int[0];
+			for (int r = 1; r <= maxRadius; r++) {
+				final Set<Integer> ring = getNeighborsAtRadius(i, r);
+				s[r - 1] = ring.size();
+				int k = all.length;
+				all = Arrays.copyOf(all, k + ring.size());
+				for (final Integer ii : ring) {
+					all[k++] = ii;
+				}
+			}
+			rings[i] = all;
+			sizes[i] = s;
+		}));
+		final int[] o = new int[n * maxRadius + 1];
+		int total = 0;
+		for (int i = 0; i < n; i++) {
+			for (int r = 0; r < maxRadius; r++) {
+				o[i * maxRadius + r] = total;
+				total += sizes[i] == null ? 0 : sizes[i][r];
+			}
+		}
+		o[n * maxRadius] = total;
+		final int[] t = new int[total];
+		GamaExecutorService.executeThreaded(() -> IntStream.range(0, n).parallel().forEach(i -> {
+			if (rings[i] != null) {
+				java.lang.System.arraycopy(rings[i], 0, t, o[i * maxRadius], rings[i].length);
+			}
+		}));
+		offsets = o;
+		radius = maxRadius;
+		targets = t;
+		// The lazy cache is only recreated if neighbors beyond the radius are asked for
+		neighbors = null;
+		neighborsIndexes = null;
+	}
+
+	/**
+	 * Whether the neighbors of the cells within this distance have been precomputed
+	 */
+	public boolean isPrecomputed(final int distance) {
+		return targets != null && distance <= radius;
+	}
+
+	/**
+	 * The table of the precomputed neighbors (see firstNeighbor() and lastNeighbor()). It is shared by all the cells
+	 * and must not be modified
+	 */
+	public int[] getTargets() {
+		return targets;
+	}
+
+	/**
+	 * Index, in the table of the precomputed neighbors, of the first neighbor of the cell
+	 */
+	public int firstNeighbor(final int placeIndex) {
+		return offsets[placeIndex * radius];
 	}
 
+	/**
+	 * Index, in the table of the precomputed neighbors, following the last neighbor of the cell within the distance
+	 */
+	public int lastNeighbor(final int placeIndex, final int distance) {
+		return offsets[placeIndex * radius + distance];
+	}
+
+	/**
+	 * Returns the neighbors of the cell within the range (at least). When they are precomputed, the table of all the
+	 * precomputed neighbors is returned as is, without any copy: the neighbors of the cell are then the
+	 * getRawNeighborsCount() elements that start at getRawNeighborsOffset()
+	 */
 	@Override
 	public int[] getRawNeighborsIncluding(final IScope scope, final int placeIndex, final int radius) {
+		if (isPrecomputed(radius)) { return targets; }
+		createCache();
 		// List<Integer> n = neighborsIndexes[placeIndex];
 		int[] n = neighborsIndexes[placeIndex];
 		if (n == null) {
@@ -54,6 +147,29 @@ public abstract class GridNeighborhood implements INeighborhood {
 		return neighbors[placeIndex];
 	}
 
+	@Override
+	public int getRawNeighborsOffset(final IScope scope, final int placeIndex, final int radius) {
+		return isPrecomputed(radius) ? firstNeighbor(placeIndex) : 0;
+	}
+
+	@Override
+	public int getRawNeighborsCount(final IScope scope, final int placeIndex, final int radius) {
+		if (isPrecomputed(radius)) { return lastNeighbor(placeIndex, radius) - firstNeighbor(placeIndex); }
+		getRawNeighborsIncluding(scope, placeIndex, radius);
+		return neighborsIndexes[placeIndex][radius - 1];
+	}
+
+	private void createCache() {
+		if (neighbors != null) { return; }
+		synchronized (this) {
+			if (neighbors == null) {
+				// neighborsIndexes = new ArrayList[agents.length];
+				neighborsIndexes = new int[matrix.matrix.length][];
+				neighbors = new int[matrix.matrix.length][0];
+			}
+		}
+	}
+
 	protected abstract Set<Integer> getNeighborsAtRadius(final int placeIndex, final int radius);
 
 	private void computeNeighborsFrom(final int placeIndex, final int begin, final int end) {
@@ -89,6 +205,11 @@ public abstract class GridNeighborhood implements INeighborhood {
 	@Override
 	public int neighborsIndexOf(final IScope scope, final int placeIndex, final int n) {
 		if (n == 1) { return 0; }
+		if (isPrecomputed(n - 1)) {
+			if (n > radius) { return lastNeighbor(placeIndex, radius) - firstNeighbor(placeIndex) - 1; }
+			return lastNeighbor(placeIndex, n - 1) - firstNeighbor(placeIndex);
+		}
+		createCache();
 		final int size = neighborsIndexes[placeIndex].length;
 		if (n > size) { return neighbors[placeIndex].length - 1; }
 		return neighborsIndexes[placeIndex][n - 2];
@@ -96,6 +217,17 @@ public abstract class GridNeighborhood implements INeighborhood {
 
 	@Override
 	public Set<IAgent> getNeighborsIn(final IScope scope, final int placeIndex, final int radius) {
+		if (isPrecomputed(radius)) {
+			final int last = lastNeighbor(placeIndex, radius);
+			try (final Collector.AsOrderedSet<IAgent> result = Collector.getOrderedSet()) {
+				for (int i = firstNeighbor(placeIndex); i < last; i++) {
+					result.add(matrix.matrix[targets[i]].getAgent());
+				}
+				result.shuffleInPlaceWith(scope.getRandom());
+				return result.items();
+			}
+		}
+		createCache();
 		int[] n = neighborsIndexes[placeIndex];
 		if (n == null) {
 			n = new int[0];
@@ -120,6 +252,8 @@ public abstract class GridNeighborhood implements INeighborhood {
 	public void clear() {
 		neighbors = null;
 		neighborsIndexes = null;
+		offsets = null;
+		targets = null;
 	}
 
 }
\ No newline at end of file
@@ -28,12 +28,40 @@ public interface INeighborhood {
 	public abstract boolean isVN();
 
 	/**
+	 * Returns the indexes of the neighbors of the cell within the range (at least). The array is not a copy: it belongs
+	 * to the neighborhood, which keeps it in its caches or shares it between all the cells, so it must not be modified
+	 * (e.g. sorted or shuffled) by the callers
+	 *
 	 * @param placeIndex
 	 * @param range
 	 * @return
 	 */
 	public abstract int[] getRawNeighborsIncluding(IScope scope, int placeIndex, int range);
 
+	/**
+	 * The array returned by getRawNeighborsIncluding() for the same range may be shared by all the cells: the
+	 * neighbors of the cell start at this position
+	 *
+	 * @param placeIndex
+	 * @param range
+	 * @return
+	 */
+	public default int getRawNeighborsOffset(final IScope scope, final int placeIndex, final int range) {
+		return 0;
+	}
+
+	/**
+	 * The number of neighbors of the cell within the range, from getRawNeighborsOffset() in the array returned by
+	 * getRawNeighborsIncluding()
+	 *
+	 * @param placeIndex
+	 * @param range
+	 * @return
+	 */
+	public default int getRawNeighborsCount(final IScope scope, final int placeIndex, final int range) {
+		return getRawNeighborsIncluding(scope, placeIndex, range).length;
+	}
+
 	/**
 	 * @param placeIndex
 	 * @param n
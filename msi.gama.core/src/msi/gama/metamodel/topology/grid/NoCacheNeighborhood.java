@@ -10,8 +10,7 @@
  ********************************************************************************************************/
 package msi.gama.metamodel.topology.grid;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collection;
 import java.util.Set;
 
 import msi.gama.metamodel.agent.IAgent;
@@ -46,9 +45,10 @@ public class NoCacheNeighborhood implements INeighborhood {
 	private Set<IAgent> computeNeighborsFrom(final IScope scope, final int placeIndex, final int begin, final int end) {
 		try (final Collector.AsOrderedSet<IAgent> result = Collector.getOrderedSet()) {
 			for (int i = begin; i <= end; i++) {
-				for (final Integer index : matrix.usesVN ? get4NeighborsAtRadius(placeIndex, i)
-						: get8NeighborsAtRadius(placeIndex, i)) {
-					result.add(matrix.matrix[index].getAgent());
+				if (matrix.usesVN) {
+					add4NeighborsAtRadius(placeIndex, i, result);
+				} else {
+					add8NeighborsAtRadius(placeIndex, i, result);
 				}
 			}
 			// Addresses Issue 1071 by explicitly shuffling the result
@@ -57,51 +57,32 @@ public class NoCacheNeighborhood implements INeighborhood {
 		}
 	}
 
-	protected List<Integer> get8NeighborsAtRadius(final int placeIndex, final int radius) {
+	private void add(final int p, final Collection<IAgent> result) {
+		if (p != -1) {
+			result.add(matrix.matrix[p].getAgent());
+		}
+	}
+
+	protected void add8NeighborsAtRadius(final int placeIndex, final int radius, final Collection<IAgent> result) {
 		final int y = placeIndex / matrix.numCols;
 		final int x = placeIndex - y * matrix.numCols;
-		final List<Integer> v = new ArrayList<>(radius + 1 * radius + 1);
-		int p;
 		for (int i = 1 - radius; i < radius; i++) {
-			p = matrix.getPlaceIndexAt(x + i, y - radius);
-			if (p != -1) {
-				v.add(p);
-			}
-			p = matrix.getPlaceIndexAt(x - i, y + radius);
-			if (p != -1) {
-				v.add(p);
-			}
+			add(matrix.getPlaceIndexAt(x + i, y - radius), result);
+			add(matrix.getPlaceIndexAt(x - i, y + radius), result);
 		}
 		for (int i = -radius; i < radius + 1; i++) {
-			p = matrix.getPlaceIndexAt(x - radius, y - i);
-			if (p != -1) {
-				v.add(p);
-			}
-			p = matrix.getPlaceIndexAt(x + radius, y + i);
-			if (p != -1) {
-				v.add(p);
-			}
+			add(matrix.getPlaceIndexAt(x - radius, y - i), result);
+			add(matrix.getPlaceIndexAt(x + radius, y + i), result);
 		}
-		return v;
 	}
 
-	protected List<Integer> get4NeighborsAtRadius(final int placeIndex, final int radius) {
+	protected void add4NeighborsAtRadius(final int placeIndex, final int radius, final Collection<IAgent> result) {
 		final int y = placeIndex / matrix.numCols;
 		final int x = placeIndex - y * matrix.numCols;
-
-		final List<Integer> v = new ArrayList<>(radius << 2);
-		int p;
 		for (int i = -radius; i < radius; i++) {
-			p = matrix.getPlaceIndexAt(x - i, y - Math.abs(i) + radius);
-			if (p != -1) {
-				v.add(p);
-			}
-			p = matrix.getPlaceIndexAt(x + i, y + Math.abs(i) - radius);
-			if (p != -1) {
-				v.add(p);
-			}
+			add(matrix.getPlaceIndexAt(x - i, y - Math.abs(i) + radius), result);
+			add(matrix.getPlaceIndexAt(x + i, y + Math.abs(i) - radius), result);
 		}
-		return v;
 	}
 
 	/**
@@ -10,12 +10,13 @@
  ********************************************************************************************************/
 package msi.gama.runtime;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Map;
 
 import msi.gama.common.util.PoolUtils;
 import msi.gama.util.GamaMapFactory;
-import msi.gaml.types.Types;
+import msi.gaml.expressions.TempVariableExpression;
 
 public class ExecutionContext implements IExecutionContext {
 
@@ -37,13 +38,21 @@ public class ExecutionContext implements IExecutionContext {
 		return result;
 	}
 
-	Map<String, Object> local;
+	// The temporary variables of the context, stored in two parallel arrays (most contexts declare only a few of
+	// them, which are faster to find by a linear search than by hashing their names). The arrays are kept when the
+	// context returns to the pool
+	String[] names = EMPTY_NAMES;
+	Object[] values = EMPTY_VALUES;
+	int size;
 	IExecutionContext outer;
 	IScope scope;
 
+	private static final String[] EMPTY_NAMES = new String[0];
+	private static final Object[] EMPTY_VALUES = new Object[0];
+
 	@Override
 	public void dispose() {
-		local = null;
+		clearLocalVars();
 		outer = null;
 		scope = null;
 		POOL.release(this);
@@ -61,30 +70,116 @@ public class ExecutionContext implements IExecutionContext {
 		return outer;
 	}
 
+	/**
+	 * Returns the index of the variable in this context, or -1 if it is not declared in it. The names are most of the
+	 * time the same instances as the ones declared, so they are compared by identity first
+	 */
+	private int indexOf(final String name) {
+		final String[] n = names;
+		for (int i = size - 1; i >= 0; i--) {
+			if (n[i] == name) { return i; }
+		}
+		for (int i = size - 1; i >= 0; i--) {
+			if (name != null && name.equals(n[i])) { return i; }
+		}
+		return -1;
+	}
+
 	@Override
 	public void setTempVar(final String name, final Object value) {
-		if (local == null || !local.containsKey(name)) {
-			if (outer != null) {
-				outer.setTempVar(name, value);
+		IExecutionContext context = this;
+		// The chain of execution contexts is walked without recursion as long as it is made of ExecutionContexts
+		while (context instanceof ExecutionContext) {
+			final ExecutionContext c = (ExecutionContext) context;
+			final int i = c.indexOf(name);
+			if (i >= 0) {
+				c.values[i] = value;
+				return;
 			}
-		} else {
-			local.put(name, value);
+			context = c.outer;
+		}
+		if (context != null) {
+			context.setTempVar(name, value);
 		}
-
 	}
 
 	@Override
 	public Object getTempVar(final String name) {
-		if (local == null || !local.containsKey(name)) { return outer == null ? null : outer.getTempVar(name); }
-		return local.get(name);
+		IExecutionContext context = this;
+		while (context instanceof ExecutionContext) {
+			final ExecutionContext c = (ExecutionContext) context;
+			final int i = c.indexOf(name);
+			if (i >= 0) { return c.values[i]; }
+			context = c.outer;
+		}
+		return context == null ? null : context.getTempVar(name);
+	}
+
+	/**
+	 * Returns the index of the variable in this context, or -1 if it is not declared in it, trying first the slot
+	 * remembered by the expression. A name is declared only once in a context, so the result is the same as
+	 * {@link #indexOf(String)}
+	 */
+	private int indexOf(final String name, final int slot) {
+		if (slot < size && names[slot] == name) { return slot; }
+		return indexOf(name);
+	}
+
+	/**
+	 * Same as {@link #getTempVar(String)}, but remembers in the expression the index at which the variable is found.
+	 * As the chain of contexts is only known at runtime (the body of an action, for instance, is executed in a child
+	 * of the context of the caller), this index cannot be computed by the compiler and is only used as a hint
+	 */
+	public Object getTempVar(final TempVariableExpression var) {
+		final String name = var.getName();
+		final int slot = var.getSlot();
+		IExecutionContext context = this;
+		while (context instanceof ExecutionContext) {
+			final ExecutionContext c = (ExecutionContext) context;
+			final int i = c.indexOf(name, slot);
+			if (i >= 0) {
+				if (i != slot) {
+					var.setSlot(i);
+				}
+				return c.values[i];
+			}
+			context = c.outer;
+		}
+		return context == null ? null : context.getTempVar(name);
+	}
+
+	/**
+	 * Same as {@link #setTempVar(String, Object)}, but remembers in the expression the index at which the variable is
+	 * found
+	 */
+	public void setTempVar(final TempVariableExpression var, final Object value) {
+		final String name = var.getName();
+		final int slot = var.getSlot();
+		IExecutionContext context = this;
+		while (context instanceof ExecutionContext) {
+			final ExecutionContext c = (ExecutionContext) context;
+			final int i = c.indexOf(name, slot);
+			if (i >= 0) {
+				if (i != slot) {
+					var.setSlot(i);
+				}
+				c.values[i] = value;
+				return;
+			}
+			context = c.outer;
+		}
+		if (context != null) {
+			context.setTempVar(name, value);
+		}
 	}
 
-	@SuppressWarnings ("unchecked")
 	@Override
 	public ExecutionContext createCopy() {
 		final ExecutionContext r = create(scope, outer);
-		if (local != null) {
-			r.local = GamaMapFactory.createWithoutCasting(Types.NO_TYPE, Types.NO_TYPE, local, false);
+		if (size > 0) {
+			r.names = Arrays.copyOf(names, size);
+			r.values = Arrays.copyOf(values, size);
+			r.size = size;
 		}
 		return r;
 	}
@@ -94,45 +189,65 @@ public class ExecutionContext implements IExecutionContext {
 		return create(this);
 	}
 
+	@SuppressWarnings ("unchecked")
 	@Override
 	public Map<? extends String, ? extends Object> getLocalVars() {
-		return local == null ? Collections.EMPTY_MAP : local;
+		if (size == 0) { return Collections.EMPTY_MAP; }
+		final Map<String, Object> result = GamaMapFactory.createUnordered();
+		for (int i = 0; i < size; i++) {
+			result.put(names[i], values[i]);
+		}
+		return result;
 	}
 
 	@Override
 	public void clearLocalVars() {
-		local = null;
+		Arrays.fill(names, 0, size, null);
+		Arrays.fill(values, 0, size, null);
+		size = 0;
 	}
 
 	@Override
 	public void putLocalVar(final String varName, final Object val) {
-		if (local == null) {
-			local = GamaMapFactory.createUnordered();
+		final int i = indexOf(varName);
+		if (i >= 0) {
+			values[i] = val;
+			return;
+		}
+		if (size == names.length) {
+			final int capacity = Math.max(4, size * 2);
+			names = Arrays.copyOf(names, capacity);
+			values = Arrays.copyOf(values, capacity);
 		}
-		local.put(varName, val);
+		names[size] = varName;
+		values[size++] = val;
 	}
 
 	@Override
 	public Object getLocalVar(final String string) {
-		if (local == null) { return null; }
-		return local.get(string);
+		final int i = indexOf(string);
+		return i < 0 ? null : values[i];
 	}
 
 	@Override
 	public boolean hasLocalVar(final String name) {
-		if (local == null) { return false; }
-		return local.containsKey(name);
+		return indexOf(name) >= 0;
 	}
 
 	@Override
 	public void removeLocalVar(final String name) {
-		if (local == null) { return; }
-		local.remove(name);
+		final int i = indexOf(name);
+		if (i < 0) { return; }
+		final int moved = --size - i;
+		System.arraycopy(names, i + 1, names, i, moved);
+		System.arraycopy(values, i + 1, values, i, moved);
+		names[size] = null;
+		values[size] = null;
 	}
 
 	@Override
 	public String toString() {
-		return "execution context " + local;
+		return "execution context " + getLocalVars();
 	}
 
 }
\ No newline at end of file
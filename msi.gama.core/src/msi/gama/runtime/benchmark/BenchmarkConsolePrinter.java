@@ -10,6 +10,7 @@
  ********************************************************************************************************/
 package msi.gama.runtime.benchmark;
 
+import msi.gama.runtime.concurrent.GamaExecutorService;
 import msi.gama.util.tree.GamaTree.Order;
 import msi.gaml.operators.Strings;
 import ummisco.gama.dev.utils.DEBUG;
@@ -37,6 +38,9 @@ public class BenchmarkConsolePrinter {
 			});
 			sb.append(Strings.LN);
 		});
+		GamaExecutorService.forEachStepProfile((species, profile) -> {
+			sb.append(Strings.LN).append("Parallel step of ").append(species.getName()).append(": ").append(profile);
+		});
 		DEBUG.LOG(sb.toString());
 	}
 
@@ -0,0 +1,91 @@
+/*******************************************************************************************************
+ *
+ * msi.gama.runtime.concurrent.AdaptiveAgentStepper.java, in plugin msi.gama.core, is part of the source code of the
+ * GAMA modeling and simulation platform (v. 1.8)
+ *
+ * (c) 2007-2018 UMI 209 UMMISCO IRD/SU & Partners
+ *
+ * Visit https://github.com/gama-platform/gama for license information and contacts.
+ *
+ ********************************************************************************************************/
+package msi.gama.runtime.concurrent;
+
+import java.util.concurrent.RecursiveAction;
+
+import msi.gama.metamodel.agent.IAgent;
+import msi.gama.metamodel.shape.IShape;
+import msi.gama.runtime.IScope;
+import msi.gama.runtime.exceptions.GamaRuntimeException;
+
+/**
+ * Steps the agents of a species in parallel, by dividing them into tasks of similar estimated costs rather than of the
+ * same number of agents (see {@link AgentStepProfile}). The tasks are divided recursively and executed by the
+ * work-stealing pool of GAMA, so that idle threads take over the remaining halves of the busy ones.
+ */
+public class AdaptiveAgentStepper extends RecursiveAction {
+
+	final IScope scope;
+	final IShape[] agents;
+	final AgentStepProfile.Step step;
+	final int begin, end;
+
+	/**
+	 * Steps the agents, either on the calling thread if their estimated cost is too low to be worth dividing them, or
+	 * in parallel. Returns false if the step of an agent has not passed when stepped on the calling thread.
+	 */
+	public static Boolean step(final IScope scope, final IShape[] agents, final AgentStepProfile profile,
+			final int threshold) throws GamaRuntimeException {
+		final AgentStepProfile.Step step = profile.prepare(agents.length, threshold);
+		try {
+			if (!step.shouldSplit(0, agents.length)) { return stepAgents(scope, agents, step, 0, agents.length); }
+			GamaExecutorService.AGENT_PARALLEL_EXECUTOR.invoke(new AdaptiveAgentStepper(scope, agents, step, 0,
+					agents.length));
+			return true;
+		} finally {
+			profile.update(step);
+		}
+	}
+
+	private AdaptiveAgentStepper(final IScope scope, final IShape[] agents, final AgentStepProfile.Step step,
+			final int begin, final int end) {
+		this.scope = scope;
+		this.agents = agents;
+		this.step = step;
+		this.begin = begin;
+		this.end = end;
+	}
+
+	@Override
+	protected void compute() throws GamaRuntimeException {
+		if (step.shouldSplit(begin, end)) {
+			final int mid = step.split(begin, end);
+			invokeAll(new AdaptiveAgentStepper(scope, agents, step, begin, mid),
+					new AdaptiveAgentStepper(scope, agents, step, mid, end));
+		} else {
+			stepAgents(scope.copy(" - forked - "), agents, step, begin, end);
+		}
+	}
+
+	static boolean stepAgents(final IScope scope, final IShape[] agents, final AgentStepProfile.Step step,
+			final int begin, final int end) {
+		final double[] measures = step.measures;
+		final long start = System.nanoTime();
+		long last = start;
+		boolean passed = true;
+		for (int i = begin; i < end && passed; i++) {
+			final IAgent agent = (IAgent) agents[i];
+			if (agent.dead()) {
+				continue;
+			}
+			passed = scope.step(agent).passed();
+			if (measures != null) {
+				final long now = System.nanoTime();
+				measures[i] = now - last;
+				last = now;
+			}
+		}
+		step.recordTask(end - begin, System.nanoTime() - start);
+		return passed;
+	}
+
+}
@@ -0,0 +1,193 @@
+/*******************************************************************************************************
+ *
+ * msi.gama.runtime.concurrent.AgentStepProfile.java, in plugin msi.gama.core, is part of the source code of the
+ * GAMA modeling and simulation platform (v. 1.8)
+ *
+ * (c) 2007-2018 UMI 209 UMMISCO IRD/SU & Partners
+ *
+ * Visit https://github.com/gama-platform/gama for license information and contacts.
+ *
+ ********************************************************************************************************/
+package msi.gama.runtime.concurrent;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The cost of the step of the agents of a species, measured over the last cycles, and used to divide the agents into
+ * parallel tasks of similar durations (see {@link AdaptiveAgentStepper}).
+ *
+ * The cost of each agent (identified by its position in the scheduled agents) is measured every SAMPLING_PERIOD
+ * cycles. In between, only the duration of the tasks is measured and used to scale these costs. Before any measure,
+ * the agents are supposed to have the same cost and the tasks contain at most 'threshold' agents, like with a fixed
+ * threshold.
+ *
+ * The sizes of the tasks chosen for the last step are kept as metrics (see getTasks(), getMinTaskSize(), etc.).
+ */
+public class AgentStepProfile {
+
+	// Duration targeted for each parallel task, in nanoseconds
+	static final double TARGET_DURATION = 500_000d;
+	// Number of cycles between two measures of the cost of each agent
+	static final int SAMPLING_PERIOD = 10;
+	// Weight of the last measures in the moving averages of the costs
+	static final double SMOOTHING = 0.5;
+
+	// Smoothed cost of each agent (in ns), by position
+	private double[] costs;
+	// Factor applied to the costs since they have been measured
+	private double scale = 1d;
+	private int cycles;
+
+	// Metrics of the last step
+	private volatile int tasks, agents, minTaskSize, maxTaskSize;
+	private volatile double agentCost;
+
+	/**
+	 * A step in progress: the estimated cumulative costs of the agents and what is measured while stepping them
+	 */
+	class Step {
+		final double[] cumulativeCosts;
+		final double target;
+		final double[] measures;
+		final LongAdder duration = new LongAdder(), tasks = new LongAdder();
+		final AtomicInteger minTaskSize = new AtomicInteger(Integer.MAX_VALUE), maxTaskSize = new AtomicInteger();
+
+		Step(final double[] cumulativeCosts, final double target, final boolean sampling) {
+			this.cumulativeCosts = cumulativeCosts;
+			this.target = target;
+			measures = sampling ? new double[cumulativeCosts.length - 1] : null;
+		}
+
+		double cost(final int begin, final int end) {
+			return cumulativeCosts[end] - cumulativeCosts[begin];
+		}
+
+		/**
+		 * Whether the agents between begin and end should be divided into several tasks
+		 */
+		boolean shouldSplit(final int begin, final int end) {
+			return end - begin > 1 && cost(begin, end) > target;
+		}
+
+		/**
+		 * The position that divides the agents between begin and end into two sets of (roughly) the same cost
+		 */
+		int split(final int begin, final int end) {
+			final double half = (cumulativeCosts[begin] + cumulativeCosts[end]) / 2;
+			int mid = Arrays.binarySearch(cumulativeCosts, begin, end + 1, half);
+			if (mid < 0) {
+				mid = -mid - 1;
+			}
+			return Math.max(begin + 1, Math.min(end - 1, mid));
+		}
+
+		void recordTask(final int size, final long nanos) {
+			duration.add(nanos);
+			tasks.increment();
+			minTaskSize.accumulateAndGet(size, Math::min);
+			maxTaskSize.accumulateAndGet(size, Math::max);
+		}
+	}
+
+	/**
+	 * Prepares the step of n agents. The threshold is used as long as no cost has been measured
+	 */
+	synchronized Step prepare(final int n, final int threshold) {
+		final double[] cumulative = new double[n + 1];
+		final boolean measured = costs != null && costs.length > 0;
+		if (!measured) {
+			for (int i = 0; i < n; i++) {
+				cumulative[i + 1] = i + 1;
+			}
+			return new Step(cumulative, Math.max(1, threshold), true);
+		}
+		// The agents that have not been measured yet are supposed to have the mean cost
+		final double mean = agentCost;
+		for (int i = 0; i < n; i++) {
+			cumulative[i + 1] = cumulative[i] + (i < costs.length ? costs[i] * scale : mean);
+		}
+		return new Step(cumulative, TARGET_DURATION, cycles % SAMPLING_PERIOD == 0 || n > costs.length * 2);
+	}
+
+	/**
+	 * Updates the costs with what has been measured during the step
+	 */
+	synchronized void update(final Step step) {
+		cycles++;
+		final int n = step.cumulativeCosts.length - 1;
+		final double measuredTotal = step.duration.doubleValue();
+		if (step.measures != null) {
+			if (costs == null || costs.length == 0) {
+				costs = step.measures;
+			} else {
+				final double[] previous = costs;
+				costs = step.measures;
+				for (int i = 0, max = Math.min(n, previous.length); i < max; i++) {
+					costs[i] = SMOOTHING * costs[i] + (1 - SMOOTHING) * previous[i] * scale;
+				}
+			}
+			scale = 1d;
+		} else {
+			final double estimatedTotal = step.cumulativeCosts[n];
+			if (estimatedTotal > 0 && measuredTotal > 0) {
+				scale *= 1 - SMOOTHING + SMOOTHING * measuredTotal / estimatedTotal;
+			}
+		}
+		agents = n;
+		agentCost = n == 0 ? 0 : measuredTotal / n;
+		tasks = step.tasks.intValue();
+		minTaskSize = tasks == 0 ? 0 : step.minTaskSize.get();
+		maxTaskSize = step.maxTaskSize.get();
+	}
+
+	/**
+	 * The number of parallel tasks used in the last step
+	 */
+	public int getTasks() {
+		return tasks;
+	}
+
+	/**
+	 * The number of agents stepped in the last step
+	 */
+	public int getAgents() {
+		return agents;
+	}
+
+	/**
+	 * The minimum number of agents stepped by a task in the last step
+	 */
+	public int getMinTaskSize() {
+		return minTaskSize;
+	}
+
+	/**
+	 * The maximum number of agents stepped by a task in the last step
+	 */
+	public int getMaxTaskSize() {
+		return maxTaskSize;
+	}
+
+	/**
+	 * The mean number of agents stepped by a task in the last step
+	 */
+	public double getMeanTaskSize() {
+		return tasks == 0 ? 0 : (double) agents / tasks;
+	}
+
+	/**
+	 * The mean cost of the step of an agent (in nanoseconds) in the last step
+	 */
+	public double getAgentCost() {
+		return agentCost;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d agents in %d tasks (min %d, max %d, mean %.1f agents), %.0f ns per agent", agents,
+				tasks, minTaskSize, maxTaskSize, getMeanTaskSize(), agentCost);
+	}
+
+}
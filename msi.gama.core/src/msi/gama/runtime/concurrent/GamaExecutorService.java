@@ -13,7 +13,10 @@ package msi.gama.runtime.concurrent;
 import static msi.gama.common.preferences.GamaPreferences.create;
 
 import java.lang.Thread.UncaughtExceptionHandler;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -23,6 +26,7 @@ import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 import com.google.common.util.concurrent.MoreExecutors;
 
@@ -39,7 +43,8 @@ import msi.gaml.expressions.IExpression;
 import msi.gaml.operators.Cast;
 import msi.gaml.species.ISpecies;
 import msi.gaml.statements.IExecutable;
-import msi.gaml.types.IType;;
+import msi.gaml.types.IType;
+import msi.gaml.types.Types;
 
 public abstract class GamaExecutorService {
 
@@ -62,6 +67,9 @@ public abstract class GamaExecutorService {
 	};
 
 	public static volatile ForkJoinPool AGENT_PARALLEL_EXECUTOR;
+	// The costs measured during the parallel steps of the agents of each species
+	private static final Map<ISpecies, AgentStepProfile> STEP_PROFILES =
+			Collections.synchronizedMap(new WeakHashMap<>());
 	public static volatile ExecutorService SIMULATION_PARALLEL_EXECUTOR;
 	public static final ExecutorService SAME_THREAD_EXECUTOR = MoreExecutors.newDirectExecutorService();// sameThreadExecutor();
 
@@ -77,6 +85,12 @@ public abstract class GamaExecutorService {
 	public static final Pref<Integer> CONCURRENCY_THRESHOLD =
 			create("pref_parallel_threshold", "Number under which agents are executed sequentially", 20, IType.INT,
 					true).between(1, null).in(GamaPreferences.Runtime.NAME, GamaPreferences.Runtime.CONCURRENCY);
+	public static final Pref<Boolean> CONCURRENCY_ADAPTIVE = create("pref_parallel_adaptive",
+			"Divide the agents of species into parallel tasks of similar durations (measured during the previous steps)",
+			true, IType.BOOL, true).in(GamaPreferences.Runtime.NAME, GamaPreferences.Runtime.CONCURRENCY);
+	public static final Pref<Integer> CONCURRENCY_ITERATORS = create("pref_parallel_iterators",
+			"Number of elements above which the iterators (where, collect, count, sum_of...) are evaluated in parallel (0 to disable)",
+			0, IType.INT, true).between(0, null).in(GamaPreferences.Runtime.NAME, GamaPreferences.Runtime.CONCURRENCY);
 	public static final Pref<Integer> CONCURRENCY_THREADS_NUMBER =
 			create("pref_parallel_threads",
 					"Max. number of threads to use (available processors: " + Runtime.getRuntime().availableProcessors()
@@ -222,6 +236,10 @@ public abstract class GamaExecutorService {
 	private static <A extends IShape> Boolean doStep(final IScope scope, final A[] array, final int threshold,
 			final ISpecies species) {
 		try (final StopWatch w = GAMA.benchmark(scope, species)) {
+			// The adaptive tasks take care of the agents too cheap to be stepped in parallel
+			if (threshold > 1 && isAdaptive(species)) {
+				return AdaptiveAgentStepper.step(scope, array, getOrCreateStepProfile(species), threshold);
+			}
 			int concurrency = threshold;
 			if (array.length <= threshold) {
 				concurrency = 0;
@@ -248,6 +266,37 @@ public abstract class GamaExecutorService {
 		return true;
 	}
 
+	/**
+	 * Whether the agents of the species can be divided into tasks of similar costs, i.e. if it is allowed by the
+	 * preferences and the threshold has not been explicitly given by the model
+	 */
+	private static boolean isAdaptive(final ISpecies species) {
+		if (!CONCURRENCY_ADAPTIVE.getValue()) { return false; }
+		final IExpression concurrency = species.getConcurrency();
+		return concurrency == null || concurrency.getGamlType() == Types.BOOL;
+	}
+
+	private static AgentStepProfile getOrCreateStepProfile(final ISpecies species) {
+		return STEP_PROFILES.computeIfAbsent(species, s -> new AgentStepProfile());
+	}
+
+	/**
+	 * Returns the costs and sizes of the tasks measured during the last parallel step of the agents of this species,
+	 * or null if they have not been stepped in parallel with adaptive tasks
+	 */
+	public static AgentStepProfile getStepProfile(final ISpecies species) {
+		return STEP_PROFILES.get(species);
+	}
+
+	/**
+	 * Visits the species whose agents have been stepped in parallel with adaptive tasks, and their profile
+	 */
+	public static void forEachStepProfile(final BiConsumer<ISpecies, AgentStepProfile> visitor) {
+		synchronized (STEP_PROFILES) {
+			STEP_PROFILES.forEach(visitor);
+		}
+	}
+
 	public static <A extends IShape> void execute(final IScope scope, final IExecutable executable, final A[] array,
 			final IExpression parallel) throws GamaRuntimeException {
 		int threshold = getParallelism(scope, parallel, Caller.NONE);
@@ -0,0 +1,173 @@
+/*******************************************************************************************************
+ *
+ * msi.gama.runtime.concurrent.ParallelIterators.java, in plugin msi.gama.core, is part of the source code of the GAMA
+ * modeling and simulation platform (v. 1.8)
+ *
+ * (c) 2007-2018 UMI 209 UMMISCO IRD/SU & Partners
+ *
+ * Visit https://github.com/gama-platform/gama for license information and contacts.
+ *
+ ********************************************************************************************************/
+package msi.gama.runtime.concurrent;
+
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import msi.gama.common.interfaces.IKeyword;
+import msi.gama.precompiler.GamlAnnotations.operator;
+import msi.gama.precompiler.IOperatorCategory;
+import msi.gama.runtime.IScope;
+import msi.gama.runtime.exceptions.GamaRuntimeException;
+import msi.gama.util.IContainer;
+import msi.gaml.descriptions.IDescription;
+import msi.gaml.descriptions.OperatorProto;
+import msi.gaml.descriptions.VariableDescription;
+import msi.gaml.expressions.AgentVariableExpression;
+import msi.gaml.expressions.IExpression;
+import msi.gaml.expressions.IOperator;
+import msi.gaml.expressions.PrimitiveOperator;
+
+/**
+ * Evaluates the expression of the iterator operators (where, collect, count, sum_of, with_max_of...) on the elements
+ * of large containers in parallel. The elements are divided into ranges, each evaluated by a task of the parallel
+ * executor with its own copy of the scope (and therefore its own value of 'each'). The values are stored at the index
+ * of their element, so that the operators combine them in the same order, and return the same results, as when they
+ * are evaluated sequentially.
+ *
+ * Only the expressions that do not modify anything, and do not depend on the order of their evaluations, are
+ * evaluated in parallel: the ones made of constant-foldable operators, accesses to variables and attributes (except
+ * the attributes defined by a function) and iterators on such expressions. The calls to actions and the operators
+ * using the random generator, for instance, are always evaluated sequentially.
+ */
+public class ParallelIterators {
+
+	/**
+	 * The minimal number of elements evaluated by each task
+	 */
+	static final int MIN_TASK_SIZE = 256;
+
+	/**
+	 * Returns the elements of the container, in the order in which the iterators visit them, if the expression can be
+	 * evaluated on them in parallel, or null if they should be iterated sequentially
+	 */
+	public static Object[] elementsOf(final IScope scope, final IContainer<?, ?> c, final IExpression filter) {
+		if (!isParallel(scope, c, filter)) { return null; }
+		return c.stream(scope).toArray();
+	}
+
+	/**
+	 * Whether the expression should be evaluated in parallel on the elements of the container
+	 */
+	public static boolean isParallel(final IScope scope, final IContainer<?, ?> c, final IExpression filter) {
+		final int threshold = GamaExecutorService.CONCURRENCY_ITERATORS.getValue();
+		if (c == null || filter == null || threshold <= 0) { return false; }
+		if (c.length(scope) < Math.max(threshold, 2 * MIN_TASK_SIZE)) { return false; }
+		return isParallelizable(filter);
+	}
+
+	/**
+	 * Whether the evaluations of the expression are independent of each other and of the thread that computes them
+	 */
+	public static boolean isParallelizable(final IExpression filter) {
+		return !filter.findAny(e -> !isSafe(e));
+	}
+
+	private static boolean isSafe(final IExpression e) {
+		if (e instanceof PrimitiveOperator) { return false; }
+		if (e instanceof IOperator) {
+			final OperatorProto proto = ((IOperator) e).getPrototype();
+			return proto != null && (proto.canBeConst || proto.iterator || proto.isVarOrField || isSpatialProperty(proto));
+		}
+		if (e instanceof AgentVariableExpression) {
+			final IDescription desc = ((AgentVariableExpression) e).getDefinitionDescription();
+			if (desc == null || desc.getSpeciesContext() == null) { return true; }
+			final VariableDescription var = desc.getSpeciesContext().getAttribute(e.getName());
+			return var == null || !var.hasFacet(IKeyword.FUNCTION);
+		}
+		return true;
+	}
+
+	/**
+	 * The spatial properties (intersects, covers, touches...) only compare the geometries of their operands
+	 */
+	private static boolean isSpatialProperty(final OperatorProto proto) {
+		final operator op = proto.getSupport() == null ? null : proto.getSupport().getAnnotation(operator.class);
+		if (op == null) { return false; }
+		boolean property = false;
+		for (final String category : op.category()) {
+			if (IOperatorCategory.RANDOM.equals(category)) { return false; }
+			property |= IOperatorCategory.SP_PROPERTIES.equals(category);
+		}
+		return property;
+	}
+
+	/**
+	 * Evaluates the expression on each of the elements, in parallel, and returns the values in the order of the
+	 * elements
+	 */
+	public static Object[] evaluate(final IScope scope, final Object[] elements, final IExpression filter)
+			throws GamaRuntimeException {
+		final Object[] values = new Object[elements.length];
+		GamaExecutorService.AGENT_PARALLEL_EXECUTOR
+				.invoke(new Evaluation(scope, elements, filter, values, null, 0, elements.length));
+		return values;
+	}
+
+	/**
+	 * Returns the index of the first element for which the expression is true, or -1 if there is none. The ranges are
+	 * evaluated in parallel, but the elements placed after an element already found are not evaluated
+	 */
+	public static int indexOfFirst(final IScope scope, final Object[] elements, final IExpression filter)
+			throws GamaRuntimeException {
+		final AtomicInteger first = new AtomicInteger(elements.length);
+		GamaExecutorService.AGENT_PARALLEL_EXECUTOR
+				.invoke(new Evaluation(scope, elements, filter, null, first, 0, elements.length));
+		final int index = first.get();
+		return index == elements.length ? -1 : index;
+	}
+
+	static class Evaluation extends RecursiveAction {
+
+		final IScope scope;
+		final Object[] elements, values;
+		final IExpression filter;
+		final AtomicInteger first;
+		final int begin, end;
+
+		Evaluation(final IScope scope, final Object[] elements, final IExpression filter, final Object[] values,
+				final AtomicInteger first, final int begin, final int end) {
+			this.scope = scope;
+			this.elements = elements;
+			this.filter = filter;
+			this.values = values;
+			this.first = first;
+			this.begin = begin;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() throws GamaRuntimeException {
+			if (first != null && first.get() < begin) { return; }
+			if (end - begin >= 2 * MIN_TASK_SIZE && getSurplusQueuedTaskCount() <= 2) {
+				final int mid = (begin + end) >>> 1;
+				invokeAll(new Evaluation(scope, elements, filter, values, first, begin, mid),
+						new Evaluation(scope, elements, filter, values, first, mid, end));
+				return;
+			}
+			final IScope s = scope.copy(" - forked - ");
+			for (int i = begin; i < end; i++) {
+				s.setEach(elements[i]);
+				if (first == null) {
+					values[i] = filter.value(s);
+				} else {
+					if (first.get() < i) { return; }
+					if ((Boolean) filter.value(s)) {
+						first.accumulateAndGet(i, Math::min);
+						return;
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -19,7 +19,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.jgrapht.DirectedGraph;
 import org.jgrapht.EdgeFactory;
@@ -32,10 +33,8 @@ import org.jgrapht.alg.ConnectivityInspector;
 import org.jgrapht.alg.CycleDetector;
 import org.jgrapht.alg.HamiltonianCycle;
 import org.jgrapht.alg.shortestpath.BellmanFordShortestPath;
-import org.jgrapht.alg.shortestpath.DijkstraShortestPath;
 import org.jgrapht.alg.shortestpath.KShortestPaths;
 import org.jgrapht.alg.spanning.KruskalMinimumSpanningTree;
-import org.jgrapht.alg.util.Pair;
 import org.jgrapht.graph.AsUndirectedGraph;
 import org.jgrapht.graph.SimpleWeightedGraph;
 
@@ -44,9 +43,10 @@ import msi.gama.common.util.StringUtils;
 import msi.gama.metamodel.agent.IAgent;
 import msi.gama.metamodel.shape.ILocation;
 import msi.gama.metamodel.shape.IShape;
+import msi.gama.metamodel.topology.graph.ContractionHierarchy;
 import msi.gama.metamodel.topology.graph.FloydWarshallShortestPathsGAMA;
 import msi.gama.metamodel.topology.graph.GamaSpatialGraph.VertexRelationship;
-import msi.gama.metamodel.topology.graph.NBAStarPathfinder;
+import msi.gama.metamodel.topology.graph.GraphSnapshot;
 import msi.gama.runtime.IScope;
 import msi.gama.runtime.exceptions.GamaRuntimeException;
 import msi.gama.util.Collector;
@@ -73,6 +73,7 @@ import msi.gaml.types.GamaPairType;
 import msi.gaml.types.IContainerType;
 import msi.gaml.types.IType;
 import msi.gaml.types.Types;
+import ummisco.gama.dev.utils.DEBUG;
 import one.util.streamex.StreamEx;
 
 @SuppressWarnings ({ "unchecked", "rawtypes" })
@@ -85,14 +86,14 @@ public class GamaGraph<V, E> implements IGraph<V, E> {
 	protected boolean agentEdge;
 	protected final IScope graphScope;
 	protected final IContainerType type;
-	protected Map<Pair<V, V>, IList<IList<E>>> shortestPathComputed = null;
+	protected ShortestPathCache<V, E> shortestPathComputed = null;
 	protected VertexRelationship vertexRelation;
 	protected GamaIntMatrix shortestPathMatrix = null;
 
 	protected static double DEFAULT_NODE_WEIGHT = 0.0;
 
 	public enum shortestPathAlgorithm {
-		FloydWarshall, BellmannFord, Dijkstra, AStar, NBAStar, NBAStarApprox;
+		FloydWarshall, BellmannFord, Dijkstra, AStar, NBAStar, NBAStarApprox, CHBidirectionalDijkstra;
 	}
 
 	protected boolean saveComputedShortestPaths = true;
@@ -100,6 +101,22 @@ public class GamaGraph<V, E> implements IGraph<V, E> {
 	protected ISpecies edgeSpecies;
 	protected shortestPathAlgorithm pathFindingAlgo = shortestPathAlgorithm.NBAStar;
 	private FloydWarshallShortestPathsGAMA<V, E> optimizer;
+	// The compact copy of the graph used by the path finding algorithms, rebuilt after each modification
+	private volatile GraphSnapshot<V, E> snapshot;
+	// The last snapshot built, whose structure is reused when only the weights of the edges have changed
+	private GraphSnapshot<V, E> lastSnapshot;
+	private volatile boolean structureChanged = true;
+	private volatile int modifications;
+	// The contraction hierarchy used by the CHBidirectionalDijkstra optimizer and whether it is being rebuilt
+	private volatile ContractionHierarchy<V, E> hierarchy;
+	private final AtomicBoolean hierarchyBuilding = new AtomicBoolean();
+	// The snapshot whose hierarchy could not be built: its paths are computed by NBA* rather than retrying the build
+	private volatile GraphSnapshot<V, E> failedSnapshot;
+	// The snapshot for which the paths are computed by NBA*, the hierarchy being out of date, and the number of paths
+	// computed for it: the hierarchy is only rebuilt once the weights have stopped changing for a while
+	private GraphSnapshot<V, E> outdatedSnapshot;
+	private int outdatedQueries;
+	static final int QUERIES_BEFORE_REBUILD = 100;
 
 	private Object linkedGraph = null;
 
@@ -119,7 +136,7 @@ public class GamaGraph<V, E> implements IGraph<V, E> {
 		version = 1;
 		agentEdge = false;
 		this.graphScope = scope;
-		shortestPathComputed = new ConcurrentHashMap<>();
+		shortestPathComputed = new ShortestPathCache<>();
 		type = Types.GRAPH.of(nodeType, vertexType);
 	}
 
@@ -127,7 +144,7 @@ public class GamaGraph<V, E> implements IGraph<V, E> {
 			final VertexRelationship rel, final ISpecies edgesSpecies, final IType nodeType, final IType edgeType) {
 		vertexMap = GamaMapFactory.create();
 		edgeMap = GamaMapFactory.create();
-		shortestPathComputed = new ConcurrentHashMap<>();
+		shortestPathComputed = new ShortestPathCache<>();
 		this.graphScope = scope;
 		// WARNING TODO Verify this
 		// IType nodeType = byEdge ? Types.NO_TYPE :
@@ -142,7 +159,7 @@ public class GamaGraph<V, E> implements IGraph<V, E> {
 	public GamaGraph(final IScope scope, final IType nodeType, final IType vertexType) {
 		vertexMap = GamaMapFactory.create();
 		edgeMap = GamaMapFactory.create();
-		shortestPathComputed = new ConcurrentHashMap<>();
+		shortestPathComputed = new ShortestPathCache<>();
 		this.graphScope = scope;
 		type = Types.GRAPH.of(nodeType, vertexType);
 	}
@@ -702,7 +719,10 @@ public class GamaGraph<V, E> implements IGraph<V, E> {
 	public void setEdgeWeight(final Object e, final double weight) {
 		if (!containsEdge(e)) { return; }
 		incVersion();
-		getEdge(e).setWeight(weight);
+		final _Edge<V, E> edge = getEdge(e);
+		final double old = edge.getWeight();
+		edge.setWeight(weight);
+		shortestPathComputed.weightChanged(e, old, weight);
 	}
 
 	@Override
@@ -723,6 +743,14 @@ public class GamaGraph<V, E> implements IGraph<V, E> {
 		pathFindingAlgo = shortestPathAlgorithm.valueOf(s);
 	}
 
+	/**
+	 * Whether the shortest paths are read from the paths between all the vertices, computed beforehand (Floyd-Warshall
+	 * optimizer) or loaded in the graph
+	 */
+	public boolean hasAllShortestPaths() {
+		return shortestPathMatrix != null || pathFindingAlgo == shortestPathAlgorithm.FloydWarshall;
+	}
+
 	// protected IPath<V,E> pathFromEdges(final Object source, final Object
 	// target, final IList<E> edges) {
 	protected IPath<V, E, IGraph<V, E>> pathFromEdges(final IScope scope, final V source, final V target,
@@ -757,14 +785,13 @@ public class GamaGraph<V, E> implements IGraph<V, E> {
 			if (path == null) { return GamaListFactory.create(getGamlType().getContentType()); }
 			return GamaListFactory.create(scope, getGamlType().getContentType(), path.getEdgeList());
 		} else if (pathFindingAlgo == shortestPathAlgorithm.NBAStarApprox) {
-			IList<IList<E>> sp1 = null;
+			List<List<E>> sp1 = null;
 			if (saveComputedShortestPaths) {
-				sp1 = shortestPathComputed.get(new Pair<>(source, target));
+				sp1 = shortestPathComputed.get(source, target);
 			}
 			IList<E> spl1 = null;
 			if (sp1 == null || sp1.isEmpty() || sp1.get(0).isEmpty()) {
-				final NBAStarPathfinder<V, E> p1 = new NBAStarPathfinder<>(this, true);
-				spl1 = p1.search(source, target);
+				spl1 = getSnapshot().nbaStar(source, target, true);
 				if (saveComputedShortestPaths) {
 					saveShortestPaths(spl1, source, target);
 				}
@@ -773,31 +800,14 @@ public class GamaGraph<V, E> implements IGraph<V, E> {
 			}
 			return spl1;
 		} else if (pathFindingAlgo == shortestPathAlgorithm.Dijkstra) {
-			IList<IList<E>> sp2 = null;
+			List<List<E>> sp2 = null;
 			if (saveComputedShortestPaths) {
-				sp2 = shortestPathComputed.get(new Pair<>(source, target));
+				sp2 = shortestPathComputed.get(source, target);
 			}
 			IList<E> spl2 = null;
 
 			if (sp2 == null || sp2.isEmpty() || sp2.get(0).isEmpty()) {
-				spl2 = GamaListFactory.create(getGamlType().getContentType());
-
-				try {
-					final DijkstraShortestPath<V, V> p2 = new DijkstraShortestPath(getProxyGraph());
-					final GraphPath ph = p2.getPath(source, target);
-					if (ph == null) {
-						spl2 = GamaListFactory.create(getGamlType().getContentType());
-					} else {
-						final List re = ph.getEdgeList();
-						if (re == null) {
-							spl2 = GamaListFactory.create(getGamlType().getContentType());
-						} else {
-							spl2 = GamaListFactory.create(scope, getGamlType().getContentType(), re);
-						}
-					}
-				} catch (final IllegalArgumentException e) {
-					spl2 = GamaListFactory.create(getGamlType().getContentType());
-				}
+				spl2 = getSnapshot().dijkstra(source, target);
 				if (saveComputedShortestPaths) {
 					saveShortestPaths(spl2, source, target);
 				}
@@ -807,22 +817,13 @@ public class GamaGraph<V, E> implements IGraph<V, E> {
 			return spl2;
 		} else if (pathFindingAlgo == shortestPathAlgorithm.AStar) {
 
-			IList<IList<E>> sp3 = null;
+			List<List<E>> sp3 = null;
 			if (saveComputedShortestPaths) {
-				sp3 = shortestPathComputed.get(new Pair<>(source, target));
+				sp3 = shortestPathComputed.get(source, target);
 			}
 			IList<E> spl3 = null;
 			if (sp3 == null || sp3.isEmpty() || sp3.get(0).isEmpty()) {
-				spl3 = GamaListFactory.create(getGamlType().getContentType());
-				final msi.gama.metamodel.topology.graph.AStar astarAlgo =
-						new msi.gama.metamodel.topology.graph.AStar(this, source, target);
-				astarAlgo.compute();
-				final List re = astarAlgo.getShortestPath();
-				if (re == null) {
-					spl3 = GamaListFactory.create(getGamlType().getContentType());
-				} else {
-					spl3 = GamaListFactory.create(scope, getGamlType().getContentType(), re);
-				}
+				spl3 = getSnapshot().astar(source, target);
 				if (saveComputedShortestPaths) {
 					saveShortestPaths(spl3, source, target);
 				}
@@ -833,10 +834,27 @@ public class GamaGraph<V, E> implements IGraph<V, E> {
 
 			return spl3;
 
+		} else if (pathFindingAlgo == shortestPathAlgorithm.CHBidirectionalDijkstra) {
+			List<List<E>> sp4 = null;
+			if (saveComputedShortestPaths) {
+				sp4 = shortestPathComputed.get(source, target);
+			}
+			IList<E> spl4 = null;
+			if (sp4 == null || sp4.isEmpty() || sp4.get(0).isEmpty()) {
+				final ContractionHierarchy<V, E> ch = getContractionHierarchy();
+				// While the hierarchy is built in the background, the paths are computed by NBA*
+				spl4 = ch == null ? getSnapshot().nbaStar(source, target, false) : ch.search(source, target);
+				if (saveComputedShortestPaths) {
+					saveShortestPaths(spl4, source, target);
+				}
+			} else {
+				spl4 = GamaListFactory.create(scope, getGamlType().getContentType(), sp4.get(0));
+			}
+			return spl4;
 		} else if (pathFindingAlgo == shortestPathAlgorithm.BellmannFord) {
-			IList<IList<E>> sp1 = null;
+			List<List<E>> sp1 = null;
 			if (saveComputedShortestPaths) {
-				sp1 = shortestPathComputed.get(new Pair<>(source, target));
+				sp1 = shortestPathComputed.get(source, target);
 			}
 			IList<E> spl1 = null;
 			if (sp1 == null || sp1.isEmpty() || sp1.get(0).isEmpty()) {
@@ -861,14 +879,13 @@ public class GamaGraph<V, E> implements IGraph<V, E> {
 			}
 			return spl1;
 		} else { // default
-			IList<IList<E>> sp1 = null;
+			List<List<E>> sp1 = null;
 			if (saveComputedShortestPaths) {
-				sp1 = shortestPathComputed.get(new Pair<>(source, target));
+				sp1 = shortestPathComputed.get(source, target);
 			}
 			IList<E> spl1 = null;
 			if (sp1 == null || sp1.isEmpty() || sp1.get(0).isEmpty()) {
-				final NBAStarPathfinder<V, E> p1 = new NBAStarPathfinder<>(this, false);
-				spl1 = p1.search(source, target);
+				spl1 = getSnapshot().nbaStar(source, target, false);
 				if (saveComputedShortestPaths) {
 					saveShortestPaths(spl1, source, target);
 				}
@@ -881,30 +898,19 @@ public class GamaGraph<V, E> implements IGraph<V, E> {
 	}
 
 	private void saveShortestPaths(final List<E> edges, final V source, final V target) {
+		if (edges.isEmpty()) { return; }
+		// The vertex from which each edge is followed: the paths from these vertices to the target are saved as well
+		final List<V> starts = new ArrayList<>(edges.size());
 		V s = source;
-		final IList<IList<E>> spl = GamaListFactory.create(Types.LIST.of(getGamlType().getContentType()));
-		spl.add(GamaListFactory.createWithoutCasting(getGamlType().getContentType(), edges));
-		shortestPathComputed.put(new Pair<>(source, target), spl);
-		final List<E> edges2 = GamaListFactory.create(graphScope, getGamlType().getContentType(), edges);
-		for (int i = 0; i < edges.size(); i++) {
-			final E edge = edges2.remove(0);
-			if (edges2.isEmpty()) {
-				break;
-			}
-			// DEBUG.LOG("s : " + s + " j : " + j + " i: " + i);
+		for (final E edge : edges) {
+			starts.add(s);
 			V nwS = (V) this.getEdgeTarget(edge);
 			if (!directed && nwS.equals(s)) {
 				nwS = (V) this.getEdgeSource(edge);
 			}
-			final Pair<V, V> pp = new Pair<>(nwS, target);
-			if (!shortestPathComputed.containsKey(pp)) {
-				final IList<IList<E>> spl2 = GamaListFactory.create(getGamlType().getContentType());
-				spl2.add(GamaListFactory.createWithoutCasting(getGamlType().getContentType(), edges2));
-				shortestPathComputed.put(pp, spl2);
-			}
 			s = nwS;
-
 		}
+		shortestPathComputed.putPath(target, edges, starts);
 	}
 
 	@Override
@@ -921,11 +927,10 @@ public class GamaGraph<V, E> implements IGraph<V, E> {
 
 	@Override
 	public IList<IList<E>> computeKBestRoutesBetween(final IScope scope, final V source, final V target, final int k) {
-		final Pair<V, V> pp = new Pair<>(source, target);
 		final IList<IList<E>> paths = GamaListFactory.create(Types.LIST.of(getGamlType().getContentType()));
-		final IList<IList<E>> sps = shortestPathComputed.get(pp);
+		final List<List<E>> sps = shortestPathComputed.get(source, target);
 		if (sps != null && sps.size() >= k) {
-			for (final IList<E> sp : sps) {
+			for (final List<E> sp : sps) {
 				paths.add(GamaListFactory.create(scope, getGamlType().getContentType(), sp));
 			}
 		} else {
@@ -940,7 +945,7 @@ public class GamaGraph<V, E> implements IGraph<V, E> {
 				}
 			}
 			if (saveComputedShortestPaths) {
-				shortestPathComputed.put(pp, el);
+				shortestPathComputed.putPaths(source, target, el);
 			}
 		}
 		return paths;
@@ -1115,6 +1120,9 @@ public class GamaGraph<V, E> implements IGraph<V, E> {
 
 	@Override
 	public void setDirected(final boolean b) {
+		if (directed != b) {
+			invalidateSnapshot();
+		}
 		directed = b;
 	}
 
@@ -1182,6 +1190,7 @@ public class GamaGraph<V, E> implements IGraph<V, E> {
 
 	@Override
 	public void dispatchEvent(final IScope scope, final GraphEvent event) {
+		invalidateSnapshot();
 		synchronized (listeners) {
 			if (listeners.isEmpty()) { return; }
 			for (final IGraphEventListener l : listeners) {
@@ -1204,7 +1213,6 @@ public class GamaGraph<V, E> implements IGraph<V, E> {
 	@Override
 	public void incVersion() {
 		version++;
-		shortestPathComputed.clear();
 		linkedGraph = null;
 	}
 
@@ -1237,6 +1245,111 @@ public class GamaGraph<V, E> implements IGraph<V, E> {
 
 	public void reInitPathFinder() {
 		optimizer = null;
+		invalidateSnapshotWeights();
+	}
+
+	/**
+	 * Returns the compact copy of the graph on which the shortest paths are computed, building it if the graph has
+	 * been modified since the last time it was built
+	 */
+	public GraphSnapshot<V, E> getSnapshot() {
+		GraphSnapshot<V, E> result = snapshot;
+		if (result == null) {
+			synchronized (this) {
+				result = snapshot;
+				if (result == null) {
+					final int before = modifications;
+					final boolean rebuild = structureChanged || lastSnapshot == null;
+					structureChanged = false;
+					result = rebuild ? new GraphSnapshot<>(this) : lastSnapshot.withWeightsOf(this);
+					// Not kept if the graph has been modified in the meantime
+					if (before == modifications) {
+						snapshot = result;
+						lastSnapshot = result;
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the contraction hierarchy of the current snapshot of the graph, or null if it is not available yet. The
+	 * hierarchies are built in the background: the first one as soon as it is asked for, the next ones (after a
+	 * modification of the graph) only when the same snapshot has been asked for {@value #QUERIES_BEFORE_REBUILD} times,
+	 * so that the graphs whose weights change at each cycle do not keep rebuilding hierarchies they would not use
+	 */
+	public ContractionHierarchy<V, E> getContractionHierarchy() {
+		final GraphSnapshot<V, E> current = getSnapshot();
+		final ContractionHierarchy<V, E> result = hierarchy;
+		if (result != null && result.getSnapshot() == current) { return result; }
+		if (current == failedSnapshot) { return null; }
+		if (result == null || isWorthRebuilding(current)) {
+			buildInBackground(current);
+		}
+		return null;
+	}
+
+	/**
+	 * Builds (in the calling thread) the contraction hierarchy of the current snapshot of the graph, if it is not
+	 * available yet, and returns it
+	 */
+	public ContractionHierarchy<V, E> buildContractionHierarchy() {
+		final GraphSnapshot<V, E> current = getSnapshot();
+		ContractionHierarchy<V, E> result = hierarchy;
+		if (result == null || result.getSnapshot() != current) {
+			result = new ContractionHierarchy<>(current);
+			hierarchy = result;
+		}
+		return result;
+	}
+
+	private boolean isWorthRebuilding(final GraphSnapshot<V, E> current) {
+		synchronized (hierarchyBuilding) {
+			if (outdatedSnapshot != current) {
+				outdatedSnapshot = current;
+				outdatedQueries = 0;
+			}
+			return ++outdatedQueries >= QUERIES_BEFORE_REBUILD;
+		}
+	}
+
+	private void buildInBackground(final GraphSnapshot<V, E> current) {
+		if (!hierarchyBuilding.compareAndSet(false, true)) { return; }
+		ForkJoinPool.commonPool().execute(() -> {
+			try {
+				final ContractionHierarchy<V, E> result = new ContractionHierarchy<>(current);
+				// Not kept if a more recent one has been built in the meantime
+				final ContractionHierarchy<V, E> existing = hierarchy;
+				if (existing == null || existing.getSnapshot() != snapshot) {
+					hierarchy = result;
+				}
+			} catch (final Throwable e) {
+				// Nothing would report it in the pool: it is logged and not retried until the graph is modified
+				failedSnapshot = current;
+				DEBUG.ERR("The contraction hierarchy of the graph could not be built", e);
+			} finally {
+				hierarchyBuilding.set(false);
+			}
+		});
+	}
+
+	/**
+	 * Called when vertices or edges are added or removed
+	 */
+	public void invalidateSnapshot() {
+		structureChanged = true;
+		shortestPathComputed.clear();
+		optimizer = null;
+		invalidateSnapshotWeights();
+	}
+
+	/**
+	 * Called when the weight of an edge changes
+	 */
+	public void invalidateSnapshotWeights() {
+		modifications++;
+		snapshot = null;
 	}
 
 	public boolean isAgentEdge() {
@@ -1388,12 +1501,7 @@ public class GamaGraph<V, E> implements IGraph<V, E> {
 				next = M[next];
 				vc = vn;
 			} while (previous != i);
-			final Pair vv = new Pair(v1, vt);
-			if (!shortestPathComputed.containsKey(vv)) {
-				final IList<IList<E>> ssp = GamaListFactory.create(Types.LIST.of(getGamlType().getContentType()));
-				ssp.add(edges);
-				shortestPathComputed.put(vv, ssp);
-			}
+			shortestPathComputed.putIfAbsent((V) v1, vt, edges);
 			if (j == t) {
 				edgesVertices = edges;
 			}
@@ -1414,67 +1522,59 @@ public class GamaGraph<V, E> implements IGraph<V, E> {
 				matrix.set(scope, j, i, i);
 			}
 		}
+		if (optimizer == null && pathFindingAlgo == shortestPathAlgorithm.FloydWarshall) {
+			optimizer = new FloydWarshallShortestPathsGAMA<>(this);
+		}
 		if (optimizer != null) {
+			// The successors are read directly from the matrix computed by the Floyd-Warshall algorithm
 			for (int i = 0; i < vertices.size(); i++) {
 				final V v1 = vertices.get(i);
 				for (int j = 0; j < vertices.size(); j++) {
-					final V v2 = vertices.get(j);
-					final GraphPath<V, E> path = optimizer.getShortestPath(v1, v2);
-					if (path == null || path.getEdgeList() == null || path.getEdgeList().isEmpty()) {
+					if (i == j) {
 						continue;
 					}
-					matrix.set(scope, j, i, nextVertice(scope, path.getEdgeList().get(0), v1, indexVertices, directed));
+					final V next = optimizer.getSuccessor(v1, vertices.get(j));
+					if (next != null) {
+						matrix.set(scope, j, i, indexVertices.get(scope, next));
+					}
 				}
 			}
 		} else {
-			if (pathFindingAlgo.equals(shortestPathAlgorithm.FloydWarshall)) {
-				optimizer = new FloydWarshallShortestPathsGAMA(this);
-				optimizer.lazyCalculateMatrix();
-				for (int i = 0; i < vertexMap.size(); i++) {
-					for (int j = 0; j < vertexMap.size(); j++) {
-						if (i == j) {
-							continue;
-						}
-						matrix.set(scope, j, i, optimizer.succRecur(i, j));
+			for (int i = 0; i < vertexMap.size(); i++) {
+				final V v1 = vertices.get(i);
+				for (int j = 0; j < vertexMap.size(); j++) {
+					if (i == j) {
+						continue;
 					}
-				}
-			} else {
-				for (int i = 0; i < vertexMap.size(); i++) {
-					final V v1 = vertices.get(i);
-					for (int j = 0; j < vertexMap.size(); j++) {
-						if (i == j) {
-							continue;
-						}
-						if (matrix.get(scope, j, i) != i) {
-							continue;
-						}
-						final V v2 = vertices.get(j);
-						final List edges = computeBestRouteBetween(scope, v1, v2);
-						// DEBUG.LOG("edges : " + edges);
-						if (edges == null) {
-							continue;
-						}
-						V source = v1;
-						int s = i;
-						for (final Object edge : edges) {
-							// DEBUG.LOG("s : " + s + " j : " + j + "
-							// i: " + i);
-							if (s != i && matrix.get(scope, j, s) != s) {
-								break;
-							}
-
-							V target = (V) this.getEdgeTarget(edge);
-							if (!directed && target == source) {
-								target = (V) this.getEdgeSource(edge);
-							}
-							final Integer k = indexVertices.get(scope, target);
-							// DEBUG.LOG("k : " +k);
-							matrix.set(scope, j, s, k);
-							s = k;
-							source = target;
+					if (matrix.get(scope, j, i) != i) {
+						continue;
+					}
+					final V v2 = vertices.get(j);
+					final List edges = computeBestRouteBetween(scope, v1, v2);
+					// DEBUG.LOG("edges : " + edges);
+					if (edges == null) {
+						continue;
+					}
+					V source = v1;
+					int s = i;
+					for (final Object edge : edges) {
+						// DEBUG.LOG("s : " + s + " j : " + j + "
+						// i: " + i);
+						if (s != i && matrix.get(scope, j, s) != s) {
+							break;
 						}
 
+						V target = (V) this.getEdgeTarget(edge);
+						if (!directed && target == source) {
+							target = (V) this.getEdgeSource(edge);
+						}
+						final Integer k = indexVertices.get(scope, target);
+						// DEBUG.LOG("k : " +k);
+						matrix.set(scope, j, s, k);
+						s = k;
+						source = target;
 					}
+
 				}
 			}
 
@@ -1483,27 +1583,14 @@ public class GamaGraph<V, E> implements IGraph<V, E> {
 
 	}
 
-	private Integer nextVertice(final IScope scope, final E edge, final V source, final IMap<V, Integer> indexVertices,
-			final boolean isDirected) {
-		if (isDirected) { return indexVertices.get(scope, (V) this.getEdgeTarget(edge)); }
-
-		final V target = (V) this.getEdgeTarget(edge);
-		if (target != source) {
-			// source = target;
-			return indexVertices.get(scope, target);
-		}
-		return indexVertices.get(scope, (V) this.getEdgeSource(edge));
-	}
-
-	public Map<Pair<V, V>, IList<IList<E>>> getShortestPathComputed() {
+	public ShortestPathCache<V, E> getShortestPathComputed() {
 		return shortestPathComputed;
 	}
 
 	public IList<E> getShortestPath(final V s, final V t) {
-		final Pair<V, V> vp = new Pair<>(s, t);
-		final IList<IList<E>> ppc = shortestPathComputed.get(vp);
+		final List<List<E>> ppc = shortestPathComputed.get(s, t);
 		if (ppc == null || ppc.isEmpty()) { return null; }
-		return ppc.get(0);
+		return GamaListFactory.createWithoutCasting(getGamlType().getContentType(), ppc.get(0));
 	}
 
 	public Map<V, _Vertex<V, E>> getVertexMap() {
@@ -0,0 +1,290 @@
+/*******************************************************************************************************
+ *
+ * msi.gama.util.graph.ShortestPathCache.java, in plugin msi.gama.core, is part of the source code of the GAMA modeling
+ * and simulation platform (v. 1.8)
+ *
+ * (c) 2007-2018 UMI 209 UMMISCO IRD/SU & Partners
+ *
+ * Visit https://github.com/gama-platform/gama for license information and contacts.
+ *
+ ********************************************************************************************************/
+package msi.gama.util.graph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jgrapht.alg.util.Pair;
+
+import msi.gama.common.preferences.GamaPreferences;
+import ummisco.gama.dev.utils.DEBUG;
+
+/**
+ * The cache of the shortest paths computed on a graph (when 'saveComputedShortestPaths' is true), keyed by their
+ * source and target vertices. Its size is bounded (see the preferences): when it is full, the least recently used
+ * paths are evicted. A path and the paths to the same target that start from its intermediate vertices (its suffixes)
+ * share the same list of edges, so that a path of n edges costs n, and not n * n / 2.
+ * <p>
+ * When the weight of an edge changes, only the paths that may no longer be the shortest ones are removed: the paths
+ * that go through the edge if its weight increases, the other ones if it decreases. The cache keeps the number of
+ * hits, misses, evictions and invalidations, which can be used to tune its size: they are output, when DEBUG is turned
+ * on for this class, each time the cache is cleared.
+ */
+public class ShortestPathCache<V, E> {
+
+	static {
+		DEBUG.OFF();
+	}
+
+	/**
+	 * A list of edges stored in the cache, shared by the entries of the path and of its suffixes
+	 */
+	static final class Route<V, E> {
+		final List<E> edges;
+		// The keys of the entries created with this route (some of them may have been removed or replaced since)
+		final List<Pair<V, V>> keys = new ArrayList<>(1);
+		int references;
+
+		Route(final List<E> edges) {
+			this.edges = Collections.unmodifiableList(new ArrayList<>(edges));
+		}
+	}
+
+	/**
+	 * The paths between two vertices: one route (or several, for the k shortest paths), from the given offset
+	 */
+	static final class Entry<V, E> {
+		final Route<V, E>[] routes;
+		final int offset;
+
+		Entry(final Route<V, E>[] routes, final int offset) {
+			this.routes = routes;
+			this.offset = offset;
+		}
+
+		boolean uses(final Route<V, E> route) {
+			for (final Route<V, E> r : routes) {
+				if (r == route) { return true; }
+			}
+			return false;
+		}
+
+		List<List<E>> paths() {
+			final List<List<E>> result = new ArrayList<>(routes.length);
+			for (final Route<V, E> r : routes) {
+				result.add(offset == 0 ? r.edges : r.edges.subList(offset, r.edges.size()));
+			}
+			return result;
+		}
+
+		/**
+		 * Whether all the paths of the entry go through the edge
+		 */
+		boolean traverses(final Object edge, final Set<Route<V, E>> routesOfEdge) {
+			if (routesOfEdge == null) { return false; }
+			for (final Route<V, E> r : routes) {
+				if (!routesOfEdge.contains(r) || r.edges.indexOf(edge) < offset) { return false; }
+			}
+			return true;
+		}
+	}
+
+	// The least recently used entries come first (an entry is moved to the end when it is used)
+	private final LinkedHashMap<Pair<V, V>, Entry<V, E>> entries = new LinkedHashMap<>();
+	// The routes that go through each edge
+	private final Map<Object, Set<Route<V, E>>> index = new HashMap<>();
+	// The number of entries plus the number of edges of the routes they use
+	private long size;
+	private long hits, misses, evictions, invalidations;
+
+	/**
+	 * Returns the paths stored between the two vertices (which must not be modified), or null if there are none
+	 */
+	public synchronized List<List<E>> get(final V source, final V target) {
+		final Pair<V, V> key = new Pair<>(source, target);
+		final Entry<V, E> e = entries.remove(key);
+		if (e == null) {
+			misses++;
+			return null;
+		}
+		entries.put(key, e);
+		hits++;
+		return e.paths();
+	}
+
+	@SuppressWarnings ("unchecked")
+	private static <V, E> Route<V, E>[] routes(final int size) {
+		return new Route[size];
+	}
+
+	private static <V, E> Route<V, E>[] routes(final Route<V, E> route) {
+		final Route<V, E>[] result = routes(1);
+		result[0] = route;
+		return result;
+	}
+
+	/**
+	 * Stores the shortest path between the source and the target and, unless they are already known, the paths to the
+	 * target from its intermediate vertices, starts.get(i) being the vertex from which the i-th edge is followed
+	 */
+	public synchronized void putPath(final V target, final List<E> edges, final List<V> starts) {
+		final Route<V, E> route = new Route<>(edges);
+		for (int i = 0; i < starts.size(); i++) {
+			final Pair<V, V> key = new Pair<>(starts.get(i), target);
+			if (i == 0 || !entries.containsKey(key)) {
+				add(key, new Entry<>(routes(route), i));
+			}
+		}
+		evict();
+	}
+
+	/**
+	 * Stores the paths (for instance the k shortest ones) between the source and the target
+	 */
+	public synchronized void putPaths(final V source, final V target, final List<? extends List<E>> paths) {
+		final Route<V, E>[] routes = routes(paths.size());
+		for (int i = 0; i < routes.length; i++) {
+			routes[i] = new Route<>(paths.get(i));
+		}
+		add(new Pair<>(source, target), new Entry<>(routes, 0));
+		evict();
+	}
+
+	/**
+	 * Stores the path between the source and the target if no path is known between them
+	 */
+	public synchronized void putIfAbsent(final V source, final V target, final List<E> edges) {
+		final Pair<V, V> key = new Pair<>(source, target);
+		if (entries.containsKey(key)) { return; }
+		add(key, new Entry<>(routes(new Route<>(edges)), 0));
+		evict();
+	}
+
+	/**
+	 * Removes the paths that may no longer be the shortest ones after the weight of the edge has changed: the paths
+	 * that go through the edge if its weight has increased, the other ones if it has decreased
+	 */
+	public synchronized void weightChanged(final Object edge, final double oldWeight, final double newWeight) {
+		if (oldWeight == newWeight || entries.isEmpty()) { return; }
+		final Set<Route<V, E>> routesOfEdge = index.get(edge);
+		if (newWeight > oldWeight) {
+			if (routesOfEdge == null) { return; }
+			for (final Route<V, E> r : new ArrayList<>(routesOfEdge)) {
+				final int position = r.edges.indexOf(edge);
+				for (final Pair<V, V> key : r.keys) {
+					final Entry<V, E> e = entries.get(key);
+					if (e != null && e.uses(r) && position >= e.offset) {
+						entries.remove(key);
+						release(e);
+						invalidations++;
+					}
+				}
+			}
+		} else {
+			final Iterator<Entry<V, E>> it = entries.values().iterator();
+			while (it.hasNext()) {
+				final Entry<V, E> e = it.next();
+				if (!e.traverses(edge, routesOfEdge)) {
+					it.remove();
+					release(e);
+					invalidations++;
+				}
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		if (DEBUG.IS_ON() && hits + misses > 0) {
+			DEBUG.OUT(toString());
+		}
+		invalidations += entries.size();
+		entries.clear();
+		index.clear();
+		size = 0;
+	}
+
+	public synchronized int getPathCount() {
+		return entries.size();
+	}
+
+	public synchronized long getSize() {
+		return size;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public synchronized long getInvalidations() {
+		return invalidations;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "shortest paths cache: " + entries.size() + " paths, size " + size + ", " + hits + " hits, " + misses
+				+ " misses, " + evictions + " evictions, " + invalidations + " invalidations";
+	}
+
+	private void add(final Pair<V, V> key, final Entry<V, E> entry) {
+		// Removed first, so that the new entry is the most recently used one
+		final Entry<V, E> old = entries.remove(key);
+		if (old != null) {
+			release(old);
+		}
+		entries.put(key, entry);
+		size++;
+		for (final Route<V, E> r : entry.routes) {
+			r.keys.add(key);
+			if (r.references++ == 0) {
+				size += r.edges.size();
+				for (final E edge : r.edges) {
+					index.computeIfAbsent(edge, k -> Collections.newSetFromMap(new HashMap<>())).add(r);
+				}
+			}
+		}
+	}
+
+	private void release(final Entry<V, E> entry) {
+		size--;
+		for (final Route<V, E> r : entry.routes) {
+			if (--r.references == 0) {
+				size -= r.edges.size();
+				for (final E edge : r.edges) {
+					final Set<Route<V, E>> routes = index.get(edge);
+					if (routes != null && routes.remove(r) && routes.isEmpty()) {
+						index.remove(edge);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes the least recently used entries until the size of the cache is within the limit
+	 */
+	private void evict() {
+		final long max = GamaPreferences.Runtime.CORE_PATH_CACHE_SIZE.getValue();
+		if (max <= 0) { return; }
+		final Iterator<Entry<V, E>> it = entries.values().iterator();
+		while (size > max && it.hasNext()) {
+			final Entry<V, E> e = it.next();
+			it.remove();
+			release(e);
+			evictions++;
+		}
+	}
+
+}
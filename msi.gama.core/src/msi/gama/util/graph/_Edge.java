@@ -56,6 +56,13 @@ public class _Edge<V, E> extends GraphObject<GamaGraph<V, E>, V, E> {
 		graph.getVertex(target).removeInEdge(edge);
 	}
 
+	@Override
+	public void setWeight(final double w) {
+		if (w == weight) { return; }
+		super.setWeight(w);
+		graph.invalidateSnapshotWeights();
+	}
+
 	@Override
 	public double getWeight() {
 		// Syst�matique ??
@@ -0,0 +1,144 @@
+/*******************************************************************************************************
+ *
+ * msi.gaml.descriptions.AttributeSlots.java, in plugin msi.gama.core, is part of the source code of the GAMA modeling
+ * and simulation platform (v. 1.8)
+ *
+ * (c) 2007-2018 UMI 209 UMMISCO IRD/SU & Partners
+ *
+ * Visit https://github.com/gama-platform/gama for license information and contacts.
+ *
+ ********************************************************************************************************/
+package msi.gaml.descriptions;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import msi.gama.common.interfaces.IKeyword;
+import msi.gaml.types.IType;
+
+/**
+ * The storage layout of the attributes of the agents of a species. Each int, float and bool attribute declared in a
+ * model, whose value is not computed by a function or managed by Java getters and setters, receives a fixed slot in
+ * one of three primitive arrays held by the agents (see AbstractAgent), instead of being stored in the map of
+ * attributes of their geometry.
+ *
+ * A slot is encoded as (index << 2 | kind), kind being one of INT, FLOAT or BOOL. The slots of a parent species are
+ * kept in its sub-species, so that the variables they inherit use the same indices.
+ */
+public final class AttributeSlots {
+
+	public static final int INT = 0;
+	public static final int FLOAT = 1;
+	public static final int BOOL = 2;
+	public static final int NONE = -1;
+
+	public static final AttributeSlots EMPTY = new AttributeSlots(null);
+
+	private final Map<String, Integer> slots;
+	// The names of the attributes stored in each kind of array
+	private String[] ints, floats, bools;
+
+	private AttributeSlots(final AttributeSlots parent) {
+		if (parent == null) {
+			slots = new HashMap<>();
+			ints = floats = bools = new String[0];
+		} else {
+			slots = new HashMap<>(parent.slots);
+			ints = parent.ints;
+			floats = parent.floats;
+			bools = parent.bools;
+		}
+	}
+
+	/**
+	 * Computes the layout of a species from the one of its parent and its own attributes
+	 */
+	static AttributeSlots of(final AttributeSlots parent, final Iterable<VariableDescription> ownAttributes) {
+		final AttributeSlots result = new AttributeSlots(parent);
+		for (final VariableDescription vd : ownAttributes) {
+			result.add(vd.getName(), kindOf(vd));
+		}
+		return result.slots.isEmpty() ? EMPTY : result;
+	}
+
+	/**
+	 * Returns the kind of slot in which the values of the attribute can be stored, or NONE if they must be stored in
+	 * the map of attributes
+	 */
+	static int kindOf(final VariableDescription vd) {
+		if (vd.isBuiltIn() || vd.isSyntheticSpeciesContainer()) { return NONE; }
+		if (vd.getGetter() != null || vd.getSetter() != null || vd.hasFacet(IKeyword.FUNCTION)) { return NONE; }
+		switch (vd.getGamlType().id()) {
+			case IType.INT:
+				return INT;
+			case IType.FLOAT:
+				return FLOAT;
+			case IType.BOOL:
+				return BOOL;
+			default:
+				return NONE;
+		}
+	}
+
+	private void add(final String name, final int kind) {
+		final Integer existing = slots.get(name);
+		if (existing != null) {
+			// A redefinition keeps the slot of the parent attribute if it has the same kind
+			if ((existing & 3) == kind) { return; }
+			slots.remove(name);
+		}
+		if (kind == NONE) { return; }
+		final int index;
+		switch (kind) {
+			case INT:
+				index = ints.length;
+				ints = Arrays.copyOf(ints, index + 1);
+				ints[index] = name;
+				break;
+			case FLOAT:
+				index = floats.length;
+				floats = Arrays.copyOf(floats, index + 1);
+				floats[index] = name;
+				break;
+			default:
+				index = bools.length;
+				bools = Arrays.copyOf(bools, index + 1);
+				bools[index] = name;
+		}
+		slots.put(name, index << 2 | kind);
+	}
+
+	/**
+	 * Returns the slot of the attribute, or NONE if it is not stored in a slot
+	 */
+	public int slotOf(final String name) {
+		final Integer slot = slots.get(name);
+		return slot == null ? NONE : slot;
+	}
+
+	public boolean isEmpty() {
+		return slots.isEmpty();
+	}
+
+	public static int kind(final int slot) {
+		return slot & 3;
+	}
+
+	public static int index(final int slot) {
+		return slot >> 2;
+	}
+
+	public int count(final int kind) {
+		return names(kind).length;
+	}
+
+	/**
+	 * The names of the attributes stored in the slots of this kind, by index. Slots left by redefined attributes have
+	 * the name of the attribute but do not belong to it anymore: use slotOf() to verify it
+	 */
+	public String[] names(final int kind) {
+		return kind == INT ? ints : kind == FLOAT ? floats : bools;
+	}
+
+}
@@ -58,6 +58,8 @@ public class SpeciesDescription extends TypeDescription {
 	private IMap<String, SpeciesDescription> microSpecies;
 	protected LinkedHashSet<SkillDescription> skills;
 	protected SkillDescription control;
+	// The storage layout of the attributes of the agents, computed when the species is compiled
+	private AttributeSlots slots;
 	private IAgentConstructor agentConstructor;
 	private SpeciesConstantExpression speciesExpr;
 	protected Class javaBase;
@@ -110,9 +112,23 @@ public class SpeciesDescription extends TypeDescription {
 			control = null;
 		}
 		microSpecies = null;
+		slots = null;
 
 	}
 
+	/**
+	 * Returns the slots in which the int, float and bool attributes of the agents of this species are stored (see
+	 * {@link AttributeSlots})
+	 */
+	public AttributeSlots getAttributeSlots() {
+		if (slots == null) {
+			final SpeciesDescription parent = getParent();
+			slots = AttributeSlots.of(parent == null || parent == this ? null : parent.getAttributeSlots(),
+					getOwnAttributes());
+		}
+		return slots;
+	}
+
 	protected void setSkills(final IExpressionDescription userDefinedSkills, final Set<String> builtInSkills) {
 		/* We try to add the control architecture if any is defined */
 		final String controlName = getLitteral(CONTROL);
@@ -68,8 +68,32 @@ public class BinaryOperator extends AbstractNAryOperator {
 		return OperatorProto.binaries.contains(getName());
 	}
 
+	// The number of evaluations before compiling the operator (-1 if it will not be compiled)
+	private int evaluations;
+	private volatile PrimitiveExpressionCompiler.Compiled compiled;
+
 	@Override
 	public Object _value(final IScope scope) throws GamaRuntimeException {
+		final PrimitiveExpressionCompiler.Compiled c = compiled;
+		if (c != null) {
+			try {
+				return c.value(scope);
+			} catch (final PrimitiveExpressionCompiler.Interpret ex) {
+				// A nil operand: the operator is interpreted instead, which handles nil like its helper and reports the
+				// values of the operands (evaluating them again has no side effect, see PrimitiveExpressionCompiler)
+			} catch (final GamaRuntimeException ge) {
+				throw ge;
+			} catch (final RuntimeException ex) {
+				final GamaRuntimeException e1 = GamaRuntimeException.create(ex, scope);
+				e1.addContext("when applying the " + literalValue() + " operator");
+				throw e1;
+			}
+		} else if (evaluations >= 0 && ++evaluations > PrimitiveExpressionCompiler.COMPILATION_THRESHOLD) {
+			evaluations = -1;
+			if (GamaPreferences.External.EXPRESSION_COMPILATION.getValue()) {
+				compiled = PrimitiveExpressionCompiler.compile(this);
+			}
+		}
 		Object leftVal = null, rightVal = null;
 		try {
 			leftVal = prototype.lazy[0] ? exprs[0] : exprs[0].value(scope);
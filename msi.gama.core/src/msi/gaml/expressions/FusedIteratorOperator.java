@@ -0,0 +1,160 @@
+/*******************************************************************************************************
+ *
+ * msi.gaml.expressions.FusedIteratorOperator.java, in plugin msi.gama.core, is part of the source code of the GAMA
+ * modeling and simulation platform (v. 1.8)
+ *
+ * (c) 2007-2018 UMI 209 UMMISCO IRD/SU & Partners
+ *
+ * Visit https://github.com/gama-platform/gama for license information and contacts.
+ *
+ ********************************************************************************************************/
+package msi.gaml.expressions;
+
+import static msi.gaml.compilation.GAML.notNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import msi.gama.common.preferences.GamaPreferences;
+import msi.gama.runtime.IScope;
+import msi.gama.runtime.concurrent.ParallelIterators;
+import msi.gama.runtime.exceptions.GamaRuntimeException;
+import msi.gama.util.IContainer;
+import msi.gama.util.IList;
+import msi.gaml.compilation.GamaGetter;
+import msi.gaml.descriptions.OperatorProto;
+import msi.gaml.operators.Containers;
+import msi.gaml.types.IType;
+import one.util.streamex.StreamEx;
+
+/**
+ * An iterator operator (where, collect, count, sum_of, mean_of, max_of, min_of) applied to the result of a chain of
+ * 'where' and 'collect', like in '(people where each.sick) collect each.age' or '(cells where (each.food > 0)) sum_of
+ * each.food'. Instead of building the list returned by each operator of the chain, the elements of the source are
+ * filtered and transformed one after the other, in a single pass, and directly passed to the last operator.
+ *
+ * As the expressions of the different operators are then evaluated alternately, and not one operator after the other,
+ * only the chains whose expressions do not depend on the order of their evaluations are fused (see
+ * {@link ParallelIterators#isParallelizable(IExpression)}). The results are the same as the ones of the operators
+ * evaluated separately.
+ */
+@SuppressWarnings ({ "rawtypes", "unchecked" })
+public class FusedIteratorOperator extends BinaryOperator {
+
+	static final String WHERE = "where", COLLECT = "collect";
+	static final String[] TERMINALS = { WHERE, COLLECT, "count", "sum_of", "mean_of", "max_of", "min_of" };
+
+	/**
+	 * Returns the fused version of the iterator operator if it is applied to a chain of 'where' and 'collect' that can
+	 * be fused, or the operator itself otherwise
+	 */
+	public static IExpression fuse(final IExpression expression) {
+		if (!GamaPreferences.External.ITERATOR_FUSION.getValue()) { return expression; }
+		if (!(expression instanceof BinaryOperator) || expression instanceof FusedIteratorOperator) {
+			return expression;
+		}
+		final BinaryOperator op = (BinaryOperator) expression;
+		if (!isTerminal(op) || !isStage(op.exprs[0])) { return expression; }
+		if (!ParallelIterators.isParallelizable(op.exprs[1])) { return expression; }
+		for (IExpression e = op.exprs[0]; isStage(e); e = ((BinaryOperator) e).exprs[0]) {
+			if (!ParallelIterators.isParallelizable(((BinaryOperator) e).exprs[1])) { return expression; }
+		}
+		return new FusedIteratorOperator(op.prototype, op.exprs);
+	}
+
+	private static boolean isTerminal(final BinaryOperator op) {
+		if (!op.prototype.iterator) { return false; }
+		final String name = op.getName();
+		for (final String terminal : TERMINALS) {
+			if (terminal.equals(name)) { return true; }
+		}
+		return false;
+	}
+
+	private static boolean isStage(final IExpression e) {
+		if (!(e instanceof BinaryOperator)) { return false; }
+		final BinaryOperator op = (BinaryOperator) e;
+		return op.prototype.iterator && (WHERE.equals(op.getName()) || COLLECT.equals(op.getName()));
+	}
+
+	// The source of the chain and its operators, from the first one to the one just before this operator. Computed
+	// after the creation (or the copy) of the operator, as its operands can be resolved in the meantime. As the operator
+	// can be evaluated by several threads, the stages are published after the source
+	private volatile IExpression source;
+	private volatile BinaryOperator[] stages;
+
+	FusedIteratorOperator(final OperatorProto proto, final IExpression... args) {
+		super(proto, null, args);
+	}
+
+	private BinaryOperator[] computeStages() {
+		final List<BinaryOperator> chain = new ArrayList<>();
+		IExpression e = exprs[0];
+		while (isStage(e)) {
+			chain.add(0, (BinaryOperator) e);
+			e = ((BinaryOperator) e).exprs[0];
+		}
+		final BinaryOperator[] result = chain.toArray(new BinaryOperator[chain.size()]);
+		source = e;
+		stages = result;
+		return result;
+	}
+
+	@Override
+	public Object _value(final IScope scope) throws GamaRuntimeException {
+		BinaryOperator[] stages = this.stages;
+		if (stages == null) {
+			stages = computeStages();
+		}
+		final IContainer c = (IContainer) source.value(scope);
+		// Large containers may be iterated in parallel by each of the operators of the chain
+		if (ParallelIterators.isParallel(scope, c, stages[0].exprs[1])) { return separately(scope, c, stages); }
+		StreamEx s = notNull(scope, c).stream(scope);
+		IType type = c.getGamlType().getContentType();
+		for (final BinaryOperator stage : stages) {
+			final IExpression filter = stage.exprs[1];
+			if (WHERE.equals(stage.getName())) {
+				s = (StreamEx) s.filter(Containers.by(scope, filter));
+			} else {
+				s = s.map(Containers.with(scope, filter));
+				type = filter.getGamlType();
+			}
+		}
+		final IExpression filter = exprs[1];
+		switch (getName()) {
+			case WHERE:
+				return s.filter(Containers.by(scope, filter)).toCollection(Containers.listOf(type));
+			case COLLECT:
+				return s.map(Containers.with(scope, filter)).toCollection(Containers.listOf(filter.getGamlType()));
+			case "count":
+				return (int) s.filter(Containers.by(scope, filter)).count();
+			case "sum_of":
+				return Containers.sumOf(scope, s.map(Containers.with(scope, filter)), filter.getGamlType(), c);
+			case "mean_of":
+				return Containers.mean(scope,
+						(IList) s.map(Containers.with(scope, filter)).toCollection(Containers.listOf(filter.getGamlType())));
+			case "max_of":
+				return s.map(Containers.with(scope, filter)).maxBy(Function.identity()).orElse(null);
+			default:
+				return s.map(Containers.with(scope, filter)).minBy(Function.identity()).orElse(null);
+		}
+	}
+
+	/**
+	 * Applies the operators of the chain one after the other, like if they had not been fused
+	 */
+	private Object separately(final IScope scope, final IContainer source, final BinaryOperator[] stages) {
+		Object result = source;
+		for (final BinaryOperator stage : stages) {
+			result = ((GamaGetter.Binary) stage.prototype.helper).get(scope, result, stage.exprs[1]);
+		}
+		return ((GamaGetter.Binary) prototype.helper).get(scope, result, exprs[1]);
+	}
+
+	@Override
+	public FusedIteratorOperator copy() {
+		return new FusedIteratorOperator(prototype, exprs);
+	}
+
+}
@@ -295,6 +295,8 @@ public class GamlExpressionFactory implements IExpressionFactory {
 			if (ged != null) {
 				context.warning(proto.getName() + " is deprecated: " + ged, IGamlIssue.DEPRECATED, eObject);
 			}
+			// Chains of iterators are evaluated in a single pass
+			if (proto.iterator) { return FusedIteratorOperator.fuse(copy); }
 		}
 		return copy;
 	}
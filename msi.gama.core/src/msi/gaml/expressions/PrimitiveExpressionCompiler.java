@@ -0,0 +1,325 @@
+/*******************************************************************************************************
+ *
+ * msi.gaml.expressions.PrimitiveExpressionCompiler.java, in plugin msi.gama.core, is part of the source code of the
+ * GAMA modeling and simulation platform (v. 1.8)
+ *
+ * (c) 2007-2018 UMI 209 UMMISCO IRD/SU & Partners
+ *
+ * Visit https://github.com/gama-platform/gama for license information and contacts.
+ *
+ ********************************************************************************************************/
+package msi.gaml.expressions;
+
+import static msi.gama.common.interfaces.IKeyword.DIVIDE;
+import static msi.gama.common.interfaces.IKeyword.MINUS;
+import static msi.gama.common.interfaces.IKeyword.MULTIPLY;
+import static msi.gama.common.interfaces.IKeyword.PLUS;
+import static msi.gaml.operators.Comparison.GT;
+import static msi.gaml.operators.Comparison.GTE;
+import static msi.gaml.operators.Comparison.LT;
+import static msi.gaml.operators.Comparison.LTE;
+
+import msi.gama.runtime.IScope;
+import msi.gama.runtime.concurrent.ParallelIterators;
+import msi.gama.runtime.exceptions.GamaRuntimeException;
+import msi.gaml.descriptions.OperatorProto;
+import msi.gaml.operators.Cast;
+import msi.gaml.types.IType;
+
+/**
+ * Compiles the trees of int and float arithmetic operators (+, -, *, /), comparisons (<, >, <=, >=) and logical
+ * operators (and, or) into trees of evaluators working on primitive values, which are boxed only once, at the root.
+ * The operands that are not part of these trees (variables, other operators...) are evaluated normally and cast to
+ * the type expected by the operator, exactly like the generated helpers of the operators would do. The results are
+ * therefore identical to the ones of the interpreted operators. When one of these operands is nil, the evaluation is
+ * abandoned (see {@link Interpret}) and the operator is interpreted instead, so that nil values and the errors they
+ * may cause are handled, and reported, by the operators themselves. As the operands already evaluated are then
+ * evaluated again, only the expressions whose evaluation has no side effects (see
+ * {@link ParallelIterators#isParallelizable(IExpression)}) are compiled: the ones that call actions or use the random
+ * generator, for instance, are always interpreted.
+ *
+ * The binary operators compile themselves after having been evaluated COMPILATION_THRESHOLD times (see
+ * BinaryOperator), so that the expressions evaluated only a few times do not pay for it.
+ */
+public class PrimitiveExpressionCompiler {
+
+	/**
+	 * The number of evaluations after which an operator is compiled
+	 */
+	public static final int COMPILATION_THRESHOLD = 100;
+
+	static final int NONE = -1, INT = 0, FLOAT = 1, BOOL = 2;
+
+	@FunctionalInterface
+	interface IntEvaluator {
+		int eval(IScope scope);
+	}
+
+	@FunctionalInterface
+	interface FloatEvaluator {
+		double eval(IScope scope);
+	}
+
+	@FunctionalInterface
+	interface BoolEvaluator {
+		boolean eval(IScope scope);
+	}
+
+	/**
+	 * The result of the compilation of an operator: evaluates it and boxes its value
+	 */
+	@FunctionalInterface
+	public interface Compiled {
+		Object value(IScope scope) throws GamaRuntimeException;
+	}
+
+	/**
+	 * Thrown by the compiled evaluators when an operand is nil. Its only instance carries no stack trace
+	 */
+	static final class Interpret extends RuntimeException {
+
+		static final Interpret INSTANCE = new Interpret();
+
+		private Interpret() {
+			super(null, null, false, false);
+		}
+	}
+
+	/**
+	 * Evaluates an operand that is not part of the compiled tree, abandoning the compiled evaluation if it is nil
+	 */
+	private static Object operand(final IScope scope, final IExpression e) {
+		final Object value = e.value(scope);
+		if (value == null) { throw Interpret.INSTANCE; }
+		return value;
+	}
+
+	/**
+	 * Returns the compiled version of the expression, or null if it is not an operator that can be compiled
+	 */
+	public static Compiled compile(final IExpression expression) {
+		if (!ParallelIterators.isParallelizable(expression)) { return null; }
+		switch (kindOf(expression)) {
+			case INT:
+				final IntEvaluator i = intOf(expression);
+				return s -> i.eval(s);
+			case FLOAT:
+				final FloatEvaluator f = floatOf(expression);
+				return s -> f.eval(s);
+			case BOOL:
+				final BoolEvaluator b = boolOf(expression);
+				return s -> b.eval(s);
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * The kind of primitive value returned by the operator, or NONE if it cannot be compiled
+	 */
+	static int kindOf(final IExpression expression) {
+		if (!(expression instanceof BinaryOperator) || expression instanceof BinaryOperator.BinaryVarOperator) {
+			return NONE;
+		}
+		final OperatorProto proto = ((BinaryOperator) expression).prototype;
+		if (proto.signature.size() != 2) { return NONE; }
+		final String name = proto.getName();
+		if (proto.lazy[1] && !proto.lazy[0]) {
+			return "and".equals(name) || "or".equals(name) ? BOOL : NONE;
+		}
+		if (proto.lazy[0] || proto.lazy[1]) { return NONE; }
+		final int left = numberKind(proto.signature.get(0));
+		final int right = numberKind(proto.signature.get(1));
+		if (left == NONE || right == NONE) { return NONE; }
+		switch (name) {
+			case PLUS:
+			case MINUS:
+			case MULTIPLY:
+				return left == INT && right == INT ? INT : FLOAT;
+			case DIVIDE:
+				return FLOAT;
+			case GT:
+			case LT:
+			case GTE:
+			case LTE:
+				return BOOL;
+			default:
+				return NONE;
+		}
+	}
+
+	private static int numberKind(final IType<?> type) {
+		if (type == null) { return NONE; }
+		switch (type.id()) {
+			case IType.INT:
+				return INT;
+			case IType.FLOAT:
+				return FLOAT;
+			default:
+				return NONE;
+		}
+	}
+
+	private static IExpression left(final IExpression e) {
+		return ((BinaryOperator) e).exprs[0];
+	}
+
+	private static IExpression right(final IExpression e) {
+		return ((BinaryOperator) e).exprs[1];
+	}
+
+	private static int leftKind(final IExpression e) {
+		return numberKind(((BinaryOperator) e).prototype.signature.get(0));
+	}
+
+	private static int rightKind(final IExpression e) {
+		return numberKind(((BinaryOperator) e).prototype.signature.get(1));
+	}
+
+	private static String name(final IExpression e) {
+		return ((BinaryOperator) e).prototype.getName();
+	}
+
+	static IntEvaluator intOf(final IExpression e) {
+		final int kind = kindOf(e);
+		if (kind == INT) {
+			final IntEvaluator a = intOf(left(e));
+			final IntEvaluator b = intOf(right(e));
+			switch (name(e)) {
+				case PLUS:
+					return s -> a.eval(s) + b.eval(s);
+				case MINUS:
+					return s -> a.eval(s) - b.eval(s);
+				default:
+					return s -> a.eval(s) * b.eval(s);
+			}
+		}
+		if (kind == FLOAT) {
+			final FloatEvaluator f = floatOf(e);
+			return s -> (int) f.eval(s);
+		}
+		if (kind == NONE && e.isConst()) {
+			final Object value = e.getConstValue();
+			if (value instanceof Number) {
+				final int constant = ((Number) value).intValue();
+				return s -> constant;
+			}
+		}
+		return s -> {
+			final Object value = operand(s, e);
+			return value instanceof Integer ? (Integer) value : Cast.asInt(s, value);
+		};
+	}
+
+	static FloatEvaluator floatOf(final IExpression e) {
+		final int kind = kindOf(e);
+		if (kind == FLOAT) {
+			final String name = name(e);
+			if (DIVIDE.equals(name)) { return divisionOf(e); }
+			final FloatEvaluator a = floatOf(left(e), leftKind(e));
+			final FloatEvaluator b = floatOf(right(e), rightKind(e));
+			switch (name) {
+				case PLUS:
+					return s -> a.eval(s) + b.eval(s);
+				case MINUS:
+					return s -> a.eval(s) - b.eval(s);
+				default:
+					return s -> a.eval(s) * b.eval(s);
+			}
+		}
+		if (kind == INT) {
+			final IntEvaluator i = intOf(e);
+			return s -> i.eval(s);
+		}
+		if (kind == NONE && e.isConst()) {
+			final Object value = e.getConstValue();
+			if (value instanceof Number) {
+				final double constant = ((Number) value).doubleValue();
+				return s -> constant;
+			}
+		}
+		return s -> {
+			final Object value = operand(s, e);
+			return value instanceof Double ? (Double) value : Cast.asFloat(s, value);
+		};
+	}
+
+	/**
+	 * The operand of an operator whose signature expects an int is first cast to an int, even if it is a float
+	 */
+	private static FloatEvaluator floatOf(final IExpression e, final int expected) {
+		if (expected == INT) {
+			final IntEvaluator i = intOf(e);
+			return s -> i.eval(s);
+		}
+		return floatOf(e);
+	}
+
+	/**
+	 * The division, which always returns a float and fails on a zero divisor, like Maths.opDivide()
+	 */
+	private static FloatEvaluator divisionOf(final IExpression e) {
+		final FloatEvaluator a = floatOf(left(e), leftKind(e));
+		if (rightKind(e) == INT) {
+			final IntEvaluator b = intOf(right(e));
+			return s -> {
+				final double x = a.eval(s);
+				final int y = b.eval(s);
+				if (y == 0) { throw GamaRuntimeException.error("Division by zero", s); }
+				return x / y;
+			};
+		}
+		final FloatEvaluator b = floatOf(right(e));
+		return s -> {
+			final double x = a.eval(s);
+			final double y = b.eval(s);
+			// Same test as Double.equals(0.0), which does not consider -0.0 as a zero
+			if (Double.doubleToLongBits(y) == 0L) { throw GamaRuntimeException.error("Division by zero", s); }
+			return x / y;
+		};
+	}
+
+	static BoolEvaluator boolOf(final IExpression e) {
+		if (kindOf(e) != BOOL) {
+			return s -> {
+				final Object value = operand(s, e);
+				return value instanceof Boolean ? (Boolean) value : Cast.asBool(s, value);
+			};
+		}
+		final String name = name(e);
+		if ("and".equals(name) || "or".equals(name)) {
+			final BoolEvaluator a = boolOf(left(e));
+			final BoolEvaluator b = boolOf(right(e));
+			return "and".equals(name) ? s -> a.eval(s) && b.eval(s) : s -> a.eval(s) || b.eval(s);
+		}
+		if (leftKind(e) == INT && rightKind(e) == INT) {
+			final IntEvaluator a = intOf(left(e));
+			final IntEvaluator b = intOf(right(e));
+			switch (name) {
+				case GT:
+					return s -> a.eval(s) > b.eval(s);
+				case LT:
+					return s -> a.eval(s) < b.eval(s);
+				case GTE:
+					return s -> a.eval(s) >= b.eval(s);
+				default:
+					return s -> a.eval(s) <= b.eval(s);
+			}
+		}
+		final FloatEvaluator a = floatOf(left(e), leftKind(e));
+		final FloatEvaluator b = floatOf(right(e), rightKind(e));
+		// Between two floats, Comparison defines >= and <= as the negations of < and >, which differ on NaN
+		final boolean floats = leftKind(e) == FLOAT && rightKind(e) == FLOAT;
+		switch (name) {
+			case GT:
+				return s -> a.eval(s) > b.eval(s);
+			case LT:
+				return s -> a.eval(s) < b.eval(s);
+			case GTE:
+				return floats ? s -> !(a.eval(s) < b.eval(s)) : s -> a.eval(s) >= b.eval(s);
+			default:
+				return floats ? s -> !(a.eval(s) > b.eval(s)) : s -> a.eval(s) <= b.eval(s);
+		}
+	}
+
+}
@@ -11,6 +11,8 @@
 package msi.gaml.expressions;
 
 import msi.gama.common.interfaces.IKeyword;
+import msi.gama.runtime.ExecutionContext;
+import msi.gama.runtime.IExecutionContext;
 import msi.gama.runtime.IScope;
 import msi.gama.runtime.exceptions.GamaRuntimeException;
 import msi.gaml.compilation.GAML;
@@ -23,8 +25,22 @@ public class TempVariableExpression extends VariableExpression {
 		super(n, type, false, definitionDescription);
 	}
 
+	// The index of the variable in the execution context that declared it the last time it was accessed. It is only a
+	// hint, checked by the context, so concurrent accesses from different scopes do not need to synchronize on it
+	private int slot;
+
+	public int getSlot() {
+		return slot;
+	}
+
+	public void setSlot(final int slot) {
+		this.slot = slot;
+	}
+
 	@Override
 	public Object _value(final IScope scope) {
+		final IExecutionContext context = scope.getExecutionContext();
+		if (context instanceof ExecutionContext) { return ((ExecutionContext) context).getTempVar(this); }
 		return scope.getVarValue(getName());
 	}
 
@@ -34,7 +50,12 @@ public class TempVariableExpression extends VariableExpression {
 		if (create) {
 			scope.addVarWithValue(getName(), val);
 		} else {
-			scope.setVarValue(getName(), val);
+			final IExecutionContext context = scope.getExecutionContext();
+			if (context instanceof ExecutionContext) {
+				((ExecutionContext) context).setTempVar(this, val);
+			} else {
+				scope.setVarValue(getName(), val);
+			}
 		}
 	}
 
@@ -42,6 +42,7 @@ import msi.gama.metamodel.shape.GamaPoint;
 import msi.gama.metamodel.shape.ILocation;
 import msi.gama.metamodel.shape.IShape;
 import msi.gama.metamodel.topology.ITopology;
+import msi.gama.metamodel.topology.grid.GamaSpatialMatrix.GridPopulation;
 import msi.gama.metamodel.topology.grid.IGrid;
 import msi.gama.precompiler.GamlAnnotations.doc;
 import msi.gama.precompiler.GamlAnnotations.example;
@@ -54,6 +55,7 @@ import msi.gama.precompiler.IOperatorCategory;
 import msi.gama.precompiler.ITypeProvider;
 import msi.gama.runtime.GAMA;
 import msi.gama.runtime.IScope;
+import msi.gama.runtime.concurrent.ParallelIterators;
 import msi.gama.runtime.exceptions.GamaRuntimeException;
 import msi.gama.util.GamaColor;
 import msi.gama.util.GamaListFactory;
@@ -71,6 +73,8 @@ import msi.gaml.compilation.IOperatorValidator;
 import msi.gaml.compilation.annotations.validator;
 import msi.gaml.descriptions.IDescription;
 import msi.gaml.expressions.BinaryOperator;
+import msi.gaml.expressions.BinaryOperator.BinaryVarOperator;
+import msi.gaml.expressions.EachExpression;
 import msi.gaml.expressions.IExpression;
 import msi.gaml.species.ISpecies;
 import msi.gaml.types.GamaType;
@@ -1192,6 +1196,11 @@ public class Containers {
 			see = { "group_by", "last_with", "where" })
 	@test ("[1,2,3,4,5,6,7,8] first_with (each > 3) = 4")
 	public static Object first_with(final IScope scope, final IContainer c, final IExpression filter) {
+		final Object[] elements = ParallelIterators.elementsOf(scope, c, filter);
+		if (elements != null) {
+			final int index = ParallelIterators.indexOfFirst(scope, elements, filter);
+			return index < 0 ? null : elements[index];
+		}
 		return stream(scope, c).findFirst(by(scope, filter)).orElse(null);
 	}
 
@@ -1307,15 +1316,30 @@ public class Containers {
 			see = { "min_of", "max_of", "product_of", "mean_of" })
 	@test ("[1,2] sum_of (each * 100 ) = 300")
 	public static Object sum_of(final IScope scope, final IContainer container, final IExpression filter) {
-		Stream s = stream(scope, container);
+		final Object sum = sumOfColumn(scope, container, filter);
+		if (sum != null) { return sum; }
+		Stream s;
 		IType t;
-		if (filter != null) {
-			s = s.map(with(scope, filter));
+		final Object[] elements = ParallelIterators.elementsOf(scope, container, filter);
+		if (elements != null) {
+			s = StreamEx.of(ParallelIterators.evaluate(scope, elements, filter));
+			t = filter.getGamlType();
+		} else if (filter != null) {
+			s = stream(scope, container).map(with(scope, filter));
 			t = filter.getGamlType();
 		} else {
+			s = stream(scope, container);
 			t = container.getGamlType().getContentType();
 		}
-		s = s.map(each -> t.cast(scope, each, null, false));
+		return sumOf(scope, s, t, container);
+	}
+
+	/**
+	 * Sums the values, once cast to the type given, in the order of the stream. The source is only used to report the
+	 * values that cannot be summed
+	 */
+	public static Object sumOf(final IScope scope, final Stream values, final IType t, final IContainer source) {
+		final Stream s = values.map(each -> t.cast(scope, each, null, false));
 		switch (t.id()) {
 			case IType.INT:
 				return ((Stream<Integer>) s).reduce(0, Integer::sum);
@@ -1328,8 +1352,44 @@ public class Containers {
 			case IType.STRING:
 				return ((Stream<String>) s).reduce("", String::concat);
 			default:
-				return GamaRuntimeException.error("No sum can be computed for " + container.serialize(true), scope);
+				return GamaRuntimeException.error("No sum can be computed for " + source.serialize(true), scope);
+		}
+	}
+
+	/**
+	 * Sums the values of an attribute of the cells of a grid ('grid sum_of each.attribute') directly in the column in
+	 * which they are stored, in the same order as sum_of. Returns null if the expression or the container do not allow
+	 * it
+	 */
+	private static Object sumOfColumn(final IScope scope, final IContainer container, final IExpression filter) {
+		if (!(filter instanceof BinaryVarOperator)) { return null; }
+		final BinaryVarOperator var = (BinaryVarOperator) filter;
+		if (!(var.getOwner() instanceof EachExpression)) { return null; }
+		final IContainer c = container instanceof ISpecies ? ((ISpecies) container).getPopulation(scope) : container;
+		if (!(c instanceof GridPopulation)) { return null; }
+		final GridPopulation<?> grid = (GridPopulation<?>) c;
+		final String name = var.getVar().getName();
+		final double[] floats = grid.getFloatColumn(name);
+		if (floats != null) {
+			double sum = 0d;
+			for (int i = 0; i < floats.length; i++) {
+				if (grid.hasCell(i)) {
+					sum += floats[i];
+				}
+			}
+			return sum;
 		}
+		final int[] ints = grid.getIntColumn(name);
+		if (ints != null) {
+			int sum = 0;
+			for (int i = 0; i < ints.length; i++) {
+				if (grid.hasCell(i)) {
+					sum += ints[i];
+				}
+			}
+			return sum;
+		}
+		return null;
 	}
 
 	@operator (
@@ -1604,6 +1664,12 @@ public class Containers {
 			see = { "first_with", "last_with", "where" })
 	@test ("[1,2,3,4,5,6,7,8] where (each > 3) = [4, 5, 6, 7, 8] ")
 	public static IList where(final IScope scope, final IContainer c, final IExpression filter) {
+		final Object[] elements = ParallelIterators.elementsOf(scope, c, filter);
+		if (elements != null) {
+			final Object[] values = ParallelIterators.evaluate(scope, elements, filter);
+			return (IList) IntStreamEx.range(elements.length).filter(i -> (Boolean) values[i]).mapToObj(i -> elements[i])
+					.toCollection(listLike(c));
+		}
 		return (IList) stream(scope, c).filter(by(scope, filter)).toCollection(listLike(c));
 	}
 
@@ -1639,6 +1705,12 @@ public class Containers {
 	@test ("[1,2,3,4,5,6,7,8] with_max_of (each ) = 8")
 	@validator (ComparableValidator.class)
 	public static Object with_max_of(final IScope scope, final IContainer c, final IExpression filter) {
+		final Object[] elements = ParallelIterators.elementsOf(scope, c, filter);
+		if (elements != null) {
+			final Object[] values = ParallelIterators.evaluate(scope, elements, filter);
+			final Object index = IntStreamEx.range(elements.length).boxed().maxBy(i -> (Comparable) values[i]).orElse(null);
+			return index == null ? null : elements[(Integer) index];
+		}
 		return stream(scope, c).maxBy(with(scope, filter)).orElse(null);
 	}
 
@@ -1674,6 +1746,12 @@ public class Containers {
 	@test ("[1,2,3,4,5,6,7,8] with_min_of (each )  = 1")
 	@validator (ComparableValidator.class)
 	public static Object with_min_of(final IScope scope, final IContainer c, final IExpression filter) {
+		final Object[] elements = ParallelIterators.elementsOf(scope, c, filter);
+		if (elements != null) {
+			final Object[] values = ParallelIterators.evaluate(scope, elements, filter);
+			final Object index = IntStreamEx.range(elements.length).boxed().minBy(i -> (Comparable) values[i]).orElse(null);
+			return index == null ? null : elements[(Integer) index];
+		}
 		return stream(scope, c).minBy(with(scope, filter)).orElse(null);
 	}
 
@@ -1741,6 +1819,11 @@ public class Containers {
 	@test ("[1,2,4] collect (each *2) = [2,4,8]")
 	@test ("[1,2,4] collect ([2,4]) = [[2,4],[2,4],[2,4]]")
 	public static IList collect(final IScope scope, final IContainer c, final IExpression filter) {
+		final Object[] elements = ParallelIterators.elementsOf(scope, c, filter);
+		if (elements != null) {
+			return (IList) StreamEx.of(ParallelIterators.evaluate(scope, elements, filter))
+					.toCollection(listOf(filter.getGamlType()));
+		}
 		return (IList) stream(scope, c).map(with(scope, filter)).toCollection(listOf(filter.getGamlType()));
 	}
 
@@ -1799,6 +1882,11 @@ public class Containers {
 							equals = "1") },
 			see = { "group_by" })
 	public static Integer count(final IScope scope, final IContainer original, final IExpression filter) {
+		final Object[] elements = ParallelIterators.elementsOf(scope, original, filter);
+		if (elements != null) {
+			final Object[] values = ParallelIterators.evaluate(scope, elements, filter);
+			return (int) IntStreamEx.range(values.length).filter(i -> (Boolean) values[i]).count();
+		}
 		return (int) notNull(scope, original).stream(scope).filter(by(scope, filter)).count();
 	}
 
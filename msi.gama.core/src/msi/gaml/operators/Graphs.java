@@ -1539,7 +1539,9 @@ public class Graphs {
 			value = "changes the shortest path computation method of the given graph",
 			comment = "the right-hand operand can be \"Djikstra\", \"Bellmann\", \"Astar\" to use the associated algorithm. "
 					+ "Note that these methods are dynamic: the path is computed when needed. In contrarily, if the operand is another string, "
-					+ "a static method will be used, i.e. all the shortest are previously computed.",
+					+ "a static method will be used, i.e. all the shortest are previously computed. "
+					+ "\"CHBidirectionalDijkstra\" preprocesses the graph (contraction hierarchy) to answer the queries much faster "
+					+ "on large graphs whose weights rarely change.",
 			examples = @example (
 					value = "graphEpidemio <- graphEpidemio with_optimizer_type \"static\";",
 					isExecutable = false),
@@ -1557,6 +1559,16 @@ public class Graphs {
 		return graph;
 	}
 
+	@operator (
+			value = "build_contraction_hierarchy",
+			doc = @doc ("For internal use only"),
+			internal = true)
+	@no_test
+	public static Integer buildContractionHierarchy(final IScope scope, final IGraph graph) {
+		if (!(graph instanceof GamaGraph)) { return 0; }
+		return ((GamaGraph<?, ?>) graph).buildContractionHierarchy().getShortcutCount();
+	}
+
 	@operator (
 			value = "add_node",
 			type = IType.GRAPH,
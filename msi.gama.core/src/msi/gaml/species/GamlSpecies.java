@@ -17,6 +17,7 @@ import msi.gama.common.interfaces.IKeyword;
 import msi.gama.metamodel.agent.IAgent;
 import msi.gama.metamodel.population.IPopulation;
 import msi.gama.metamodel.shape.IShape;
+import msi.gama.metamodel.topology.ISpatialIndex;
 import msi.gama.precompiler.GamlAnnotations.doc;
 import msi.gama.precompiler.GamlAnnotations.example;
 import msi.gama.precompiler.GamlAnnotations.facet;
@@ -124,6 +125,33 @@ import one.util.streamex.StreamEx;
 						optional = true,
 						doc = { @doc (
 								value = "(grid only),(true by default). Allows to turn on or off the use of the neighbors cache used for grids. Note that if a diffusion of variable occurs, GAMA will emit a warning and automatically switch to a caching version") }),
+				@facet (
+						name = "neighbors_cache_radius",
+						type = IType.INT,
+						optional = true,
+						doc = { @doc (
+								value = "(grid only),(0 by default). If strictly positive, the neighbors of all the cells are computed in parallel when the grid is created, up to this distance, and stored in a compact table, which speeds up and makes thread-safe the neighbors queries within this distance. Farther neighbors are computed on demand, as usual",
+								see = "use_neighbors_cache") }),
+				@facet (
+						name = "spatial_index",
+						type = IType.STRING,
+						optional = true,
+						doc = { @doc (
+								value = "(species only),(\"quadtree\" by default). Allows to specify the spatial index used to store the agents of this species (\"quadtree\", \"packed_quadtree\" or \"spatial_hash\"). \"packed_quadtree\" stores the agents in packed arrays and can be faster for large populations of moving agents. \"spatial_hash\" stores them in the cells of a uniform grid and is well suited to dense populations of point agents queried with a fixed distance",
+								see = "spatial_index_cell_size") }),
+				@facet (
+						name = "spatial_index_cell_size",
+						type = IType.FLOAT,
+						optional = true,
+						doc = { @doc (
+								value = "(species only), the size of the cells of the \"spatial_hash\" spatial index. If not specified, it is adapted to the distance most frequently used in 'at_distance' queries",
+								see = "spatial_index") }),
+				@facet (
+						name = "rebuild_spatial_index",
+						type = IType.BOOL,
+						optional = true,
+						doc = { @doc (
+								value = "(species only),(false by default). If true, the moves of the agents of this species during their step are not applied immediately to their spatial index, which is instead updated once, when the step of the species is over (and rebuilt entirely if most agents have moved). Spatial queries made during the step may then not take into account the latest moves. Requires a \"packed_quadtree\" (by default) or \"spatial_hash\" spatial index") }),
 				@facet (
 						name = IKeyword.FILE,
 						type = IType.FILE,
@@ -323,6 +351,29 @@ public class GamlSpecies extends AbstractSpecies {
 							IGamlIssue.WRONG_CONTEXT, TORUS);
 				}
 			}
+			final IExpression index = desc.getFacetExpr("spatial_index");
+			if (index != null) {
+				if (!desc.getKeyword().equals(IKeyword.SPECIES)) {
+					desc.warning("The 'spatial_index' facet can only be specified for regular species",
+							IGamlIssue.WRONG_CONTEXT, "spatial_index");
+				} else if (index.isConst() && !ISpatialIndex.KINDS.contains(index.getConstValue())) {
+					desc.error("'spatial_index' must be one of " + ISpatialIndex.KINDS, IGamlIssue.WRONG_VALUE,
+							"spatial_index");
+				}
+			}
+			final IExpression rebuild = desc.getFacetExpr("rebuild_spatial_index");
+			if (rebuild != null && index != null && index.isConst()
+					&& ISpatialIndex.QUADTREE.equals(index.getConstValue())) {
+				desc.warning("'rebuild_spatial_index' is not supported by the \"" + ISpatialIndex.QUADTREE
+						+ "\" spatial index and will be ignored", IGamlIssue.CONFLICTING_FACETS, "rebuild_spatial_index");
+			}
+			final IExpression cellSize = desc.getFacetExpr("spatial_index_cell_size");
+			if (cellSize != null && (index == null || index.isConst()
+					&& !ISpatialIndex.SPATIAL_HASH.equals(index.getConstValue()))) {
+				desc.warning("'spatial_index_cell_size' is only used by the \"" + ISpatialIndex.SPATIAL_HASH
+						+ "\" spatial index and will be ignored", IGamlIssue.CONFLICTING_FACETS,
+						"spatial_index_cell_size");
+			}
 			final String name = desc.getName();
 			if (AbstractGamlAdditions.isUnaryOperator(name)) {
 				desc.error("The name '" + name + "' cannot be used for naming this " + desc.getKeyword()
@@ -12,6 +12,7 @@ package msi.gaml.statements;
 
 import msi.gama.common.interfaces.IGamlIssue;
 import msi.gama.common.interfaces.IKeyword;
+import msi.gama.metamodel.agent.IAgent;
 import msi.gama.metamodel.shape.IShape;
 import msi.gama.runtime.IScope;
 import msi.gama.runtime.exceptions.GamaRuntimeException;
@@ -26,6 +27,7 @@ import msi.gaml.descriptions.SpeciesDescription;
 import msi.gaml.expressions.IExpression;
 import msi.gaml.expressions.IExpressionFactory;
 import msi.gaml.expressions.IVarExpression;
+import msi.gaml.operators.Cast;
 import msi.gaml.statements.AbstractContainerStatement.ContainerValidator;
 import msi.gaml.types.IType;
 import msi.gaml.types.Types;
@@ -289,11 +291,79 @@ public abstract class AbstractContainerStatement extends AbstractStatement {
 	private IContainer.Modifiable identifyContainer(final IScope scope) throws GamaRuntimeException {
 		final Object cont = list.value(scope);
 		if (isDirect) { return (IContainer.Modifiable) cont; }
+		if (cont instanceof IAgent) { return new AgentAttributes((IAgent) cont); }
 		if (cont instanceof IShape) { return ((IShape) cont).getOrCreateAttributes(); }
 		throw GamaRuntimeException.warning("Cannot use " + list.serialize(false) + ", of type "
 				+ list.getGamlType().toString() + ", as a container", scope);
 	}
 
+	/**
+	 * The attributes of an agent, used as a container. The values put at an index are set through the agent, so that
+	 * the attributes stored in slots (see AttributeSlots) are modified, and not the attributes of its geometry
+	 */
+	private static class AgentAttributes implements IContainer.Modifiable<String, Object> {
+		final IAgent agent;
+
+		AgentAttributes(final IAgent agent) {
+			this.agent = agent;
+		}
+
+		@Override
+		public boolean checkBounds(final IScope scope, final Object index, final boolean forAdding) {
+			return agent.getOrCreateAttributes().checkBounds(scope, index, forAdding);
+		}
+
+		@Override
+		public void addValue(final IScope scope, final Object value) {
+			agent.getOrCreateAttributes().addValue(scope, value);
+		}
+
+		@Override
+		public void addValueAtIndex(final IScope scope, final Object index, final Object value) {
+			agent.setAttribute(Cast.asString(scope, index), value);
+		}
+
+		@Override
+		public void setValueAtIndex(final IScope scope, final Object index, final Object value) {
+			agent.setAttribute(Cast.asString(scope, index), value);
+		}
+
+		@Override
+		public void addValues(final IScope scope, final IContainer<?, ?> values) {
+			agent.getOrCreateAttributes().addValues(scope, values);
+		}
+
+		@Override
+		public void setAllValues(final IScope scope, final Object value) {
+			agent.getOrCreateAttributes().setAllValues(scope, value);
+		}
+
+		@Override
+		public void removeValue(final IScope scope, final Object value) {
+			agent.getOrCreateAttributes().removeValue(scope, value);
+		}
+
+		@Override
+		public void removeIndex(final IScope scope, final Object index) {
+			agent.getOrCreateAttributes().removeIndex(scope, index);
+		}
+
+		@Override
+		public void removeIndexes(final IScope scope, final IContainer<?, ?> index) {
+			agent.getOrCreateAttributes().removeIndexes(scope, index);
+		}
+
+		@Override
+		public void removeValues(final IScope scope, final IContainer<?, ?> values) {
+			agent.getOrCreateAttributes().removeValues(scope, values);
+		}
+
+		@Override
+		public void removeAllOccurrencesOfValue(final IScope scope, final Object value) {
+			agent.getOrCreateAttributes().removeAllOccurrencesOfValue(scope, value);
+		}
+	}
+
 	/**
 	 * Method to add, remove or put one individual item
 	 *
@@ -20,6 +20,8 @@ import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -74,6 +76,7 @@ import msi.gama.common.interfaces.IGamlIssue;
 import msi.gama.common.interfaces.IKeyword;
 import msi.gama.common.interfaces.ITyped;
 import msi.gama.common.preferences.GamaPreferences;
+import msi.gama.common.util.OutputChannels;
 import msi.gama.metamodel.agent.IAgent;
 import msi.gama.metamodel.population.IPopulation;
 import msi.gama.metamodel.shape.IShape;
@@ -370,13 +373,22 @@ public class SaveStatement extends AbstractStatementSequence implements IStateme
 				case "text":
 				case "csv":
 					final boolean rewrite = shouldOverwrite(scope);
-					if (rewrite) {
-						if (exists) {
-							fileToSave.delete();
-							exists = false;
+					if (OutputChannels.isActive(scope)) {
+						// The file is kept open and written at the end of the cycle
+						if (rewrite) {
+							OutputChannels.truncate(scope, fileToSave);
 						}
+						exists = OutputChannels.exists(scope, fileToSave);
+						fileToSave.createNewFile();
+					} else {
+						if (rewrite) {
+							if (exists) {
+								fileToSave.delete();
+								exists = false;
+							}
+						}
+						fileToSave.createNewFile();
 					}
-					fileToSave.createNewFile();
 					final boolean addHeader = !exists && (header == null || Cast.asBool(scope, header.value(scope)));
 					saveText(type, fileToSave, addHeader, scope);
 					break;
@@ -734,7 +746,25 @@ public class SaveStatement extends AbstractStatementSequence implements IStateme
 
 	public void saveText(final String type, final File fileTxt, final boolean header, final IScope scope)
 			throws GamaRuntimeException {
-		try (FileWriter fw = new FileWriter(fileTxt, true)) {
+		if (OutputChannels.isActive(scope)) {
+			final StringWriter sw = new StringWriter();
+			saveText(type, sw, header, scope);
+			OutputChannels.append(scope, fileTxt, sw.getBuffer());
+		} else {
+			try (FileWriter fw = new FileWriter(fileTxt, true)) {
+				saveText(type, fw, header, scope);
+			} catch (final IOException io) {
+				// Could catch the exception when multiple threads try to access the file
+				// See Issue #2796. But it'd be a bad idea.
+				// DEBUG.OUT("Ignoring IOException");
+				throw GamaRuntimeFileException.create(io, scope);
+			}
+		}
+	}
+
+	private void saveText(final String type, final Writer fw, final boolean header, final IScope scope)
+			throws GamaRuntimeException {
+		try {
 			if (type.equals("text")) {
 				fw.write(Cast.asString(scope, item.value(scope)) + Strings.LN);
 			} else if (type.equals("csv")) {
@@ -193,6 +193,11 @@ public class NumberVariable extends Variable {
 		return f;
 	}
 
+	@Override
+	public boolean isStoredAsIs() {
+		return super.isStoredAsIs() && min == null && max == null;
+	}
+
 	@Override
 	public Number getMinValue(final IScope scope) {
 		return minVal;
@@ -18,6 +18,7 @@ import com.google.common.base.Objects;
 import msi.gama.common.interfaces.IGamlIssue;
 import msi.gama.common.interfaces.IKeyword;
 import msi.gama.common.interfaces.ISkill;
+import msi.gama.metamodel.agent.AbstractAgent;
 import msi.gama.metamodel.agent.IAgent;
 import msi.gama.precompiler.GamlAnnotations.doc;
 import msi.gama.precompiler.GamlAnnotations.facet;
@@ -36,6 +37,7 @@ import msi.gaml.compilation.IGamaHelper;
 import msi.gaml.compilation.ISymbol;
 import msi.gaml.compilation.Symbol;
 import msi.gaml.compilation.annotations.validator;
+import msi.gaml.descriptions.AttributeSlots;
 import msi.gaml.descriptions.ConstantExpressionDescription;
 import msi.gaml.descriptions.IDescription;
 import msi.gaml.descriptions.IExpressionDescription;
@@ -363,6 +365,9 @@ public class Variable extends Symbol implements IVariable {
 	private IExecutable on_changer;
 	protected String pName, cName;
 	protected ISkill gSkill, sSkill;
+	// The slot in which the value is stored in the agents, bound when the variable is attached to its species (see
+	// AttributeSlots)
+	protected int slot = AttributeSlots.NONE;
 	// private Object speciesWideValue;
 
 	public Variable(final IDescription sd) {
@@ -387,6 +392,9 @@ public class Variable extends Symbol implements IVariable {
 	// }
 
 	private void buildHelpers(final AbstractSpecies species) {
+		if (getDescription().getGetter() == null && getDescription().getSetter() == null && functionExpression == null) {
+			slot = species.getDescription().getAttributeSlots().slotOf(getName());
+		}
 		getter = getDescription().getGetter();
 		if (getter != null) {
 			gSkill = species.getSkillInstanceFor(getter.getSkillClass());
@@ -514,12 +522,23 @@ public class Variable extends Symbol implements IVariable {
 		}
 	}
 
+	/**
+	 * Whether the values assigned to this variable are stored as they are in its slot (see AttributeSlots), without
+	 * being checked or triggering any action, so that they can be written directly in the storage of the agents
+	 */
+	public boolean isStoredAsIs() {
+		return slot != AttributeSlots.NONE && !isNotModifiable && setter == null && amongExpression == null
+				&& onChangeExpression == null;
+	}
+
 	protected void _setVal(final IAgent agent, final IScope scope, final Object v) throws GamaRuntimeException {
 		Object val;
 		val = coerce(agent, scope, v);
 		val = checkAmong(agent, scope, val);
 		if (setter != null) {
 			setter.run(scope, agent, sSkill == null ? agent : sSkill, val);
+		} else if (slot != AttributeSlots.NONE && agent instanceof AbstractAgent) {
+			((AbstractAgent) agent).setSlotValue(slot, val);
 		} else {
 			agent.setAttribute(name, val);
 		}
@@ -548,6 +567,12 @@ public class Variable extends Symbol implements IVariable {
 		// if (isSpeciesConst) { return speciesWideValue; }
 		if (getter != null) { return getter.run(scope, agent, gSkill == null ? agent : gSkill); }
 		if (functionExpression != null) { return scope.evaluate(functionExpression, agent).getValue(); }
+		if (slot != AttributeSlots.NONE && agent instanceof AbstractAgent) {
+			final AbstractAgent a = (AbstractAgent) agent;
+			// Var not yet initialized (see below)
+			if (isNotModifiable && !a.isSlotAssigned(slot)) { return getInitialValue(scope); }
+			return a.getSlotValue(slot);
+		}
 		if (!agent.hasAttribute(name)) {
 			// Var not yet initialized. May happen when asking for its value while initializing an editor
 			// See Issue #2781
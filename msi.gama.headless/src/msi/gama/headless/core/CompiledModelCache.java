@@ -0,0 +1,173 @@
+/*********************************************************************************************
+ *
+ *
+ * 'CompiledModelCache.java', in plugin 'msi.gama.headless', is part of the source code of the GAMA modeling and
+ * simulation platform. (c) 2007-2014 UMI 209 UMMISCO IRD/UPMC & Partners
+ *
+ * Visit https://code.google.com/p/gama-platform/ for license information and developers contact.
+ *
+ *
+ **********************************************************************************************/
+package msi.gama.headless.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.emf.common.util.URI;
+
+import msi.gama.kernel.model.IModel;
+import msi.gama.lang.gaml.indexer.GamlResourceIndexer;
+import msi.gama.lang.gaml.validation.GamlModelBuilder;
+import msi.gaml.compilation.GamlCompilationError;
+import msi.gaml.descriptions.ModelDescription;
+import ummisco.gama.dev.utils.DEBUG;
+
+/**
+ * Keeps the validated descriptions of the models loaded in headless mode, so that the jobs running the same model (for
+ * instance the runs of a parameter sweep) parse and validate it only once. Each job receives its own model, compiled
+ * from the shared description, and can therefore instantiate its experiments independently of the others.
+ *
+ * The descriptions are identified by the absolute path of the model file, and discarded as soon as the contents of
+ * this file or of one of the files it imports (directly or not) change.
+ */
+public class CompiledModelCache {
+
+	private static final Map<String, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+	/**
+	 * A validated description, the warnings obtained when validating it and the state of its source files
+	 */
+	static class Entry {
+		final ModelDescription description;
+		final List<GamlCompilationError> warnings;
+		final Map<File, Source> sources = new LinkedHashMap<>();
+
+		Entry(final ModelDescription description, final List<GamlCompilationError> warnings,
+				final Iterable<File> files) throws IOException {
+			this.description = description;
+			this.warnings = warnings;
+			for (final File f : files) {
+				sources.put(f, new Source(f));
+			}
+		}
+
+		boolean isUpToDate() {
+			for (final Map.Entry<File, Source> s : sources.entrySet()) {
+				if (!s.getValue().isSameAs(s.getKey())) { return false; }
+			}
+			return true;
+		}
+
+		IModel newModel(final List<GamlCompilationError> errors) {
+			if (errors != null) {
+				errors.addAll(warnings);
+			}
+			// The compilation reads (and sometimes completes) the descriptions, so it is not done concurrently
+			synchronized (this) {
+				return (IModel) description.compile();
+			}
+		}
+	}
+
+	/**
+	 * The state of a source file: its length and date are compared first, and its contents only if they differ (e.g.
+	 * if the file has been saved again without being modified)
+	 */
+	static class Source {
+		volatile long length, lastModified;
+		final byte[] hash;
+
+		Source(final File file) throws IOException {
+			length = file.length();
+			lastModified = file.lastModified();
+			hash = hash(file);
+		}
+
+		boolean isSameAs(final File file) {
+			if (!file.exists()) { return false; }
+			if (file.length() == length && file.lastModified() == lastModified) { return true; }
+			try {
+				if (!Arrays.equals(hash, hash(file))) { return false; }
+			} catch (final IOException e) {
+				return false;
+			}
+			length = file.length();
+			lastModified = file.lastModified();
+			return true;
+		}
+
+		static byte[] hash(final File file) throws IOException {
+			try {
+				return MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file.toPath()));
+			} catch (final NoSuchAlgorithmException e) {
+				throw new IOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Returns a new model compiled from the file, reusing its description if it has already been validated and if
+	 * none of its source files has changed since. Returns null if the model contains errors, which are added to the
+	 * list passed (if not null)
+	 */
+	public static IModel compile(final File file, final List<GamlCompilationError> errors) throws IOException {
+		final String path = file.getAbsolutePath();
+		Entry entry = ENTRIES.get(path);
+		if (entry == null || !entry.isUpToDate()) {
+			entry = validate(file, path, errors);
+			if (entry == null) { return null; }
+		}
+		return entry.newModel(errors);
+	}
+
+	/**
+	 * Parses and validates the model, unless another job has done it in the meantime. Xtext resources are not
+	 * thread-safe, so only one model is validated at a time
+	 */
+	private static synchronized Entry validate(final File file, final String path,
+			final List<GamlCompilationError> errors) throws IOException {
+		final Entry existing = ENTRIES.get(path);
+		if (existing != null && existing.isUpToDate()) { return existing; }
+		ENTRIES.remove(path);
+		DEBUG.LOG(path + " model is being compiled...");
+		final URI uri = URI.createFileURI(path);
+		final List<GamlCompilationError> messages = new ArrayList<>();
+		final ModelDescription description = GamlModelBuilder.getDefaultInstance().buildModelDescription(uri, messages);
+		if (description == null) {
+			if (errors != null) {
+				errors.addAll(messages);
+			}
+			return null;
+		}
+		final List<File> files = new ArrayList<>();
+		files.add(file);
+		final Iterator<URI> imports = GamlResourceIndexer.allImportsOf(uri);
+		while (imports.hasNext()) {
+			final URI imported = imports.next();
+			if (imported.isFile() && !imported.equals(uri)) {
+				files.add(new File(imported.toFileString()));
+			}
+		}
+		final Entry entry = new Entry(description, messages, files);
+		ENTRIES.put(path, entry);
+		return entry;
+	}
+
+	/**
+	 * Discards all the descriptions kept
+	 */
+	public static void clear() {
+		ENTRIES.clear();
+	}
+
+}
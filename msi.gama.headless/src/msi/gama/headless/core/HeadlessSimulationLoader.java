@@ -14,14 +14,11 @@ import java.io.File;
 import java.io.IOException;
 import java.util.List;
 
-import org.eclipse.emf.common.util.URI;
-
 import com.google.inject.Injector;
 
 import msi.gama.common.preferences.GamaPreferences;
 import msi.gama.kernel.model.IModel;
 import msi.gama.lang.gaml.GamlStandaloneSetup;
-import msi.gama.lang.gaml.validation.GamlModelBuilder;
 import msi.gama.precompiler.GamlProperties;
 import msi.gama.runtime.GAMA;
 import msi.gama.runtime.exceptions.GamaRuntimeException;
@@ -62,7 +59,7 @@ public class HeadlessSimulationLoader {
 	 * @deprecated use loadModel(File, List<GamlCompilationError>) instead
 	 */
 	@Deprecated
-	public static synchronized IModel loadModel(final File myFile) throws IOException, GamaHeadlessException {
+	public static IModel loadModel(final File myFile) throws IOException, GamaHeadlessException {
 		return loadModel(myFile, null);
 	}
 
@@ -79,7 +76,7 @@ public class HeadlessSimulationLoader {
 	 * @throws GamaHeadlessException
 	 *             in case the compilation ends in error
 	 */
-	public static synchronized IModel loadModel(final File myFile, final List<GamlCompilationError> errors)
+	public static IModel loadModel(final File myFile, final List<GamlCompilationError> errors)
 			throws IOException, GamaHeadlessException {
 		return loadModel(myFile, errors, null);
 	}
@@ -94,20 +91,21 @@ public class HeadlessSimulationLoader {
 	 * @param metaProperties
 	 *            an instance of GamlProperties that will be filled with the sylmbolic names of bundles required to run
 	 *            the model (can be null) and other informations (skills, operators, statements, ...).
-	 * @return a compiled model
+	 * @return a compiled model. The model is only parsed and validated once as long as its sources do not change
+	 *         (see CompiledModelCache), and each call returns a new model, so that several threads can load and
+	 *         experiment it concurrently
 	 * @throws IOException
 	 *             in case the file is null or not found
 	 * @throws GamaHeadlessException
 	 *             in case the compilation ends in error
 	 */
-	public static synchronized IModel loadModel(final File myFile, final List<GamlCompilationError> errors,
+	public static IModel loadModel(final File myFile, final List<GamlCompilationError> errors,
 			final GamlProperties metaProperties) throws IOException, GamaHeadlessException {
 		if (myFile == null) { throw new IOException("Model file is null"); }
 		final String fileName = myFile.getAbsolutePath();
 		if (!myFile.exists()) { throw new IOException("Model file does not exist: " + fileName); }
-		DEBUG.LOG(fileName + " model is being compiled...");
 
-		final IModel model = GamlModelBuilder.getDefaultInstance().compile(URI.createFileURI(fileName), errors);
+		final IModel model = CompiledModelCache.compile(myFile, errors);
 		if (model == null) {
 			DEBUG.LOG("Model compiled with following indications: \n"
 					+ (errors == null ? "" : StreamEx.of(errors).joining("\n")));
@@ -170,7 +170,7 @@ public class LocalSimulationRuntime extends Observable implements SimulationRunt
 	}
 
 	@Override
-	public synchronized IModel loadModel(final File fl) throws IOException, GamaHeadlessException {
+	public IModel loadModel(final File fl) throws IOException, GamaHeadlessException {
 		// return lockUnLock( fl,null, null) ; //lockModel(fl); //
 		final List<GamlCompilationError> errors = new ArrayList<>();
 		return HeadlessSimulationLoader.loadModel(fl, errors); // lockModel(fl); //mdl.c;
@@ -74,7 +74,12 @@ public class GamlModelBuilder {
 		return model == null ? null : (IModel) model.compile();
 	}
 
-	private ModelDescription buildModelDescription(final URI uri, final List<GamlCompilationError> errors) {
+	/**
+	 * Parses and validates the model at this URI (and its imports), without compiling it. The description returned
+	 * can be compiled several times (see ModelDescription.compile()) to obtain independent models. Returns null if the
+	 * model contains errors, which are added to the list passed (if not null)
+	 */
+	public ModelDescription buildModelDescription(final URI uri, final List<GamlCompilationError> errors) {
 		try {
 			final GamlResource r = (GamlResource) buildResourceSet.getResource(uri, true);
 			// Syntactic errors detected, we cannot build the resource
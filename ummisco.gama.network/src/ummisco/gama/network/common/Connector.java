@@ -12,9 +12,12 @@ package ummisco.gama.network.common;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import msi.gama.extensions.messaging.GamaMessage;
 import msi.gama.metamodel.agent.IAgent;
@@ -24,40 +27,33 @@ import ummisco.gama.serializer.factory.StreamConverter;
 
 public abstract class Connector implements IConnector {
 
-	// private final static int REGISTER_GROUP_THREAD_SAFE_ACTION = 0;
-	// private final static int SUBSCRIBE_GROUP_THREAD_SAFE_ACTION = 1;
-	// private final static int CONNECTION_THREAD_SAFE_ACTION = 2;
-	// private final static int REGISTER_USER_THREAD_SAFE_ACTION = 3;
-	// private final static int UNSUBSCRIBE_GROUP_THREAD_SAFE_ACTION = 4;
-
-	private final static int FETCH_ALL_MESSAGE_THREAD_SAFE_ACTION = 5;
-	private final static int PUSCH_RECEIVED_MESSAGE_THREAD_SAFE_ACTION = 8;
-
 	// connector Configuration data
 	protected Map<String, String> connectionParameter;
 
-	// Box ordered map
-	protected Map<String, ArrayList<IAgent>> boxFollower;
+	// Box ordered map. The followers are read by the threads of the network when messages arrive
+	protected Map<String, List<IAgent>> boxFollower;
 
 	// Received messages
-	protected Map<IAgent, LinkedList<ConnectorMessage>> receivedMessage;
+	protected final Mailboxes mailboxes = new Mailboxes();
+
+	// Messages to send at the end of the step, by sender and receiver (only when the messages are batched). They are
+	// added with compute() and the entry of a sender is removed before its messages are sent, so that none is lost
+	private final Map<IAgent, Map<String, List<CompositeGamaMessage>>> outbox = new ConcurrentHashMap<>();
 
 	protected Map<String, IAgent> localMemberNames;
 
 	protected List<String> topicSuscribingPending;
 	protected boolean isConnected = false;
 
-	Object lockGroupManagment = new Object();
-
 	boolean forceNetworkUse = false;
+	boolean batchMessages = false;
 
 	protected Connector() {
 		super();
-		boxFollower = new HashMap<>();
+		boxFollower = new ConcurrentHashMap<>();
 		topicSuscribingPending = Collections.synchronizedList(new ArrayList<String>());
 		connectionParameter = new HashMap<>();
-		receivedMessage = new HashMap<>();
-		localMemberNames = new HashMap<>();
+		localMemberNames = new ConcurrentHashMap<>();
 		forceNetworkUse = false;
 	}
 
@@ -66,6 +62,11 @@ public abstract class Connector implements IConnector {
 		this.forceNetworkUse = b;
 	}
 
+	@Override
+	public void batchMessages(final boolean b) {
+		this.batchMessages = b;
+	}
+
 	@Override
 	public void configure(final String parameterName, final String value) {
 		this.connectionParameter.put(parameterName, value);
@@ -81,45 +82,27 @@ public abstract class Connector implements IConnector {
 
 	@Override
 	public List<ConnectorMessage> fetchMessageBox(final IAgent agent) {
-		final List<ConnectorMessage> currentMessage = receivedMessage.get(agent);
-		this.receivedMessage.put(agent, new LinkedList<ConnectorMessage>());
-		return currentMessage;
+		final List<ConnectorMessage> currentMessage = mailboxes.drain(agent);
+		return currentMessage == null ? new LinkedList<>() : currentMessage;
 	}
 
 	public void storeMessage(final String topic, final String content) throws GamaNetworkException {
-		// final ArrayList<IAgent> bb = this.boxFollower.get(receiver);
 		final ConnectorMessage msg = MessageFactory.unPackNetworkMessage(topic, content);
 		if (!this.localMemberNames.containsKey(msg.getSender())) {
-			pushAndFetchthreadSafe(Connector.PUSCH_RECEIVED_MESSAGE_THREAD_SAFE_ACTION, msg.getReceiver(), msg);
+			deliver(msg.getReceiver(), msg);
 		}
 	}
 
-	private Map<IAgent, LinkedList<ConnectorMessage>> pushAndFetchthreadSafe(final int action, final String groupName,
-			final ConnectorMessage message) {
-		synchronized (lockGroupManagment) {
-			switch (action) {
-				case FETCH_ALL_MESSAGE_THREAD_SAFE_ACTION: {
-					final Map<IAgent, LinkedList<ConnectorMessage>> newBox = new HashMap<>();
-					for (final IAgent agt : this.receivedMessage.keySet()) {
-						newBox.put(agt, new LinkedList<ConnectorMessage>());
-					}
-					final Map<IAgent, LinkedList<ConnectorMessage>> allMessage = this.receivedMessage;
-					this.receivedMessage = newBox;
-					return allMessage;
-				}
-				case PUSCH_RECEIVED_MESSAGE_THREAD_SAFE_ACTION: {
-					final ArrayList<IAgent> bb = this.boxFollower.get(groupName);
-					for (final IAgent agt : bb) {
-						final LinkedList<ConnectorMessage> messages = receivedMessage.get(agt);
-						if (messages != null) {
-							messages.add(message);
-						}
-					}
-					break;
-				}
-			}
+	/**
+	 * Puts the message in the mailboxes of the local agents that follow the box
+	 */
+	private void deliver(final String box, final ConnectorMessage message) {
+		final List<IAgent> followers = this.boxFollower.get(box);
+		// The message can be addressed to a box followed by no local agent
+		if (followers == null) { return; }
+		for (final IAgent agt : followers) {
+			mailboxes.deliver(agt, message);
 		}
-		return null;
 	}
 
 	@Override
@@ -127,7 +110,7 @@ public abstract class Connector implements IConnector {
 		if (!this.forceNetworkUse && this.boxFollower.containsKey(receiver)) {
 			final ConnectorMessage msg =
 					new LocalMessage((String) sender.getAttribute(INetworkSkill.NET_AGENT_NAME), receiver, content);
-			this.pushAndFetchthreadSafe(PUSCH_RECEIVED_MESSAGE_THREAD_SAFE_ACTION, receiver, msg);
+			deliver(receiver, msg);
 		}
 
 		if (!this.localMemberNames.containsKey(receiver)) {
@@ -135,31 +118,68 @@ public abstract class Connector implements IConnector {
 			if (cmsg.getSender() instanceof IAgent) {
 				cmsg.setSender(sender.getAttribute(INetworkSkill.NET_AGENT_NAME));
 			}
-			final NetworkMessage msg =
-					MessageFactory.buildNetworkMessage((String) sender.getAttribute(INetworkSkill.NET_AGENT_NAME),
-							receiver, StreamConverter.convertObjectToStream(sender.getScope(), cmsg));
-			this.sendMessage(sender, receiver, MessageFactory.packMessage(msg));
+			if (!batchMessages) {
+				sendContents(sender, receiver, cmsg);
+				return;
+			}
+			// The messages are sent at the end of the step, all the ones to the same receiver at once
+			outbox.compute(sender, (s, messages) -> {
+				final Map<String, List<CompositeGamaMessage>> result =
+						messages == null ? new LinkedHashMap<>() : messages;
+				result.computeIfAbsent(receiver, r -> new ArrayList<>()).add(cmsg);
+				return result;
+			});
+		}
+	}
+
+	private void sendContents(final IAgent sender, final String receiver, final Object contents) {
+		final NetworkMessage msg =
+				MessageFactory.buildNetworkMessage((String) sender.getAttribute(INetworkSkill.NET_AGENT_NAME),
+						receiver, StreamConverter.convertObjectToStream(sender.getScope(), contents));
+		this.sendMessage(sender, receiver, MessageFactory.packMessage(msg));
+	}
+
+	/**
+	 * Sends the messages waiting in the outbox, if the messages are batched. The messages of an agent to the same
+	 * receiver are serialized together and sent as a single network message (an array of messages, read back by
+	 * {@link NetworkMessage#getAllContents(IScope)}). The entry of each sender is removed before its messages are sent
+	 */
+	protected void flushOutbox() {
+		for (final IAgent sender : outbox.keySet()) {
+			final Map<String, List<CompositeGamaMessage>> messages = outbox.remove(sender);
+			if (messages == null) {
+				continue;
+			}
+			for (final Map.Entry<String, List<CompositeGamaMessage>> byReceiver : messages.entrySet()) {
+				final List<CompositeGamaMessage> batch = byReceiver.getValue();
+				// A single message keeps the format understood by all the peers
+				sendContents(sender, byReceiver.getKey(),
+						batch.size() == 1 ? batch.get(0) : batch.toArray(new CompositeGamaMessage[batch.size()]));
+			}
 		}
 	}
 
 	@Override
 	public Map<IAgent, LinkedList<ConnectorMessage>> fetchAllMessages() {
-		return pushAndFetchthreadSafe(FETCH_ALL_MESSAGE_THREAD_SAFE_ACTION, null, null);
+		flushOutbox();
+		return mailboxes.drainAll();
 	}
 
 	@Override
 	public void close(final IScope scope) throws GamaNetworkException {
+		flushOutbox();
 		releaseConnection(scope);
 		topicSuscribingPending.clear();
 		boxFollower.clear();
-		receivedMessage.clear();
+		mailboxes.clear();
+		outbox.clear();
 		isConnected = false;
 	}
 
 	@Override
 	public void leaveTheGroup(final IAgent agt, final String groupName) {
 		this.unsubscribeGroup(agt, groupName);
-		final ArrayList<IAgent> members = this.boxFollower.get(groupName);
+		final List<IAgent> members = this.boxFollower.get(groupName);
 		if (members != null) {
 			members.remove(agt);
 			if (members.size() == 0) {
@@ -170,15 +190,13 @@ public abstract class Connector implements IConnector {
 
 	@Override
 	public void joinAGroup(final IAgent agt, final String groupName) {
-		if (!this.receivedMessage.keySet().contains(agt)) {
-			this.receivedMessage.put(agt, new LinkedList<ConnectorMessage>());
-		}
+		mailboxes.register(agt);
 
-		ArrayList<IAgent> agentBroadcast = this.boxFollower.get(groupName);
+		List<IAgent> agentBroadcast = this.boxFollower.get(groupName);
 
 		if (agentBroadcast == null) {
 			this.subscribeToGroup(agt, groupName);
-			agentBroadcast = new ArrayList<>();
+			agentBroadcast = new CopyOnWriteArrayList<>();
 			this.boxFollower.put(groupName, agentBroadcast);
 		}
 		if (!agentBroadcast.contains(agt)) {
@@ -197,7 +215,7 @@ public abstract class Connector implements IConnector {
 			connectToServer(agent);
 		}
 
-		if (this.receivedMessage.get(agent) == null) {
+		if (!mailboxes.isRegistered(agent)) {
 			joinAGroup(agent, netAgent);
 		}
 	}
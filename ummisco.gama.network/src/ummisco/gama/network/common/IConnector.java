@@ -36,6 +36,8 @@ public interface IConnector {
 
 	void forceNetworkUse(boolean b);
 
+	void batchMessages(boolean b);
+
 	String SERVER_URL = "SERVER_URL";
 	String SERVER_PORT = "SERVER_PORT";
 	String LOCAL_NAME = "LOCAL_NAME";
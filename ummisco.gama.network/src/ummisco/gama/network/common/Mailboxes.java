@@ -0,0 +1,92 @@
+/*********************************************************************************************
+ *
+ * 'Mailboxes.java, in plugin ummisco.gama.network, is part of the source code of the GAMA modeling and simulation
+ * platform. (c) 2007-2016 UMI 209 UMMISCO IRD/UPMC & Partners
+ *
+ * Visit https://github.com/gama-platform/gama for license information and developers contact.
+ *
+ *
+ **********************************************************************************************/
+package ummisco.gama.network.common;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import msi.gama.metamodel.agent.IAgent;
+
+/**
+ * The messages received by the agents of a connector. Each agent has its own lock-free queue: the threads of the
+ * network (or the agents sending local messages) deliver messages without blocking each other, and the simulation
+ * drains all the queues at the end of each step.
+ */
+public class Mailboxes {
+
+	private final Map<IAgent, Queue<ConnectorMessage>> boxes = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates the mailbox of the agent if it does not exist yet
+	 */
+	public void register(final IAgent agent) {
+		boxes.computeIfAbsent(agent, a -> new ConcurrentLinkedQueue<>());
+	}
+
+	public boolean isRegistered(final IAgent agent) {
+		return boxes.containsKey(agent);
+	}
+
+	public Set<IAgent> getAgents() {
+		return boxes.keySet();
+	}
+
+	/**
+	 * Adds the message to the mailbox of the agent. Nothing is done if the agent has no mailbox
+	 */
+	public void deliver(final IAgent agent, final ConnectorMessage message) {
+		final Queue<ConnectorMessage> box = boxes.get(agent);
+		if (box != null) {
+			box.add(message);
+		}
+	}
+
+	/**
+	 * Removes and returns the messages received by the agent (null if the agent has no mailbox)
+	 */
+	public LinkedList<ConnectorMessage> drain(final IAgent agent) {
+		final Queue<ConnectorMessage> box = boxes.get(agent);
+		if (box == null) { return null; }
+		return drain(box);
+	}
+
+	/**
+	 * Removes and returns the messages received by all the agents. Only the agents that have received messages appear
+	 * in the result
+	 */
+	public Map<IAgent, LinkedList<ConnectorMessage>> drainAll() {
+		final Map<IAgent, LinkedList<ConnectorMessage>> result = new HashMap<>();
+		for (final Map.Entry<IAgent, Queue<ConnectorMessage>> entry : boxes.entrySet()) {
+			if (!entry.getValue().isEmpty()) {
+				result.put(entry.getKey(), drain(entry.getValue()));
+			}
+		}
+		return result;
+	}
+
+	private static LinkedList<ConnectorMessage> drain(final Queue<ConnectorMessage> box) {
+		final LinkedList<ConnectorMessage> result = new LinkedList<>();
+		ConnectorMessage message;
+		while ((message = box.poll()) != null) {
+			result.add(message);
+		}
+		return result;
+	}
+
+	public void clear() {
+		boxes.clear();
+	}
+
+}
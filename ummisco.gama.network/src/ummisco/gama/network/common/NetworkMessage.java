@@ -10,6 +10,9 @@
  **********************************************************************************************/
 package ummisco.gama.network.common;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import msi.gama.extensions.messaging.GamaMessage;
 import msi.gama.runtime.IScope;
 import ummisco.gama.serializer.factory.StreamConverter;
@@ -68,6 +71,32 @@ public class NetworkMessage implements ConnectorMessage {
 
 	public GamaMessage getCompositeContent(final IScope scope) {
 		final Object messageContent = StreamConverter.convertStreamToObject(scope, content);
+		return toMessage(scope, messageContent instanceof CompositeGamaMessage[]
+				? ((CompositeGamaMessage[]) messageContent)[0] : messageContent);
+	}
+
+	/**
+	 * Returns all the messages carried by this network message: the messages sent by an agent to the same receiver
+	 * during a step are sent together (see {@link Connector#flushOutbox()})
+	 */
+	public List<GamaMessage> getAllContents(final IScope scope) {
+		final List<GamaMessage> result = new ArrayList<>();
+		if (isPlainMessage) {
+			result.add(getPlainContent(scope));
+			return result;
+		}
+		final Object messageContent = StreamConverter.convertStreamToObject(scope, content);
+		if (messageContent instanceof CompositeGamaMessage[]) {
+			for (final CompositeGamaMessage m : (CompositeGamaMessage[]) messageContent) {
+				result.add(toMessage(scope, m));
+			}
+		} else {
+			result.add(toMessage(scope, messageContent));
+		}
+		return result;
+	}
+
+	private GamaMessage toMessage(final IScope scope, final Object messageContent) {
 		GamaMessage message = null;
 		if (messageContent instanceof CompositeGamaMessage)
 			message = (GamaMessage) messageContent;
@@ -28,12 +28,15 @@ public interface INetworkSkill {
 	String UDP_CLIENT = "udp_emitter";
 	String TCP_SERVER = "tcp_server";
 	String TCP_CLIENT = "tcp_client";
+	String TCP_NIO_SERVER = "tcp_nio_server";
+	String TCP_NIO_CLIENT = "tcp_nio_client";
 
 	///// SKILL NETWORK
 	String NETWORK_SKILL = "network";
 	String FETCH_MESSAGE = "fetch_message";
 	String HAS_MORE_MESSAGE_IN_BOX = "has_more_message";
 	String FORCE_NETWORK_USE = "force_network_use";
+	String BATCH_MESSAGES = "batch_messages";
 
 	///// GROUP MANAGEMENT
 	String REGISTER_TO_GROUP = "join_group";
@@ -40,8 +40,10 @@ import msi.gaml.types.IType;
 import ummisco.gama.dev.utils.DEBUG;
 import ummisco.gama.network.common.ConnectorMessage;
 import ummisco.gama.network.common.IConnector;
+import ummisco.gama.network.common.NetworkMessage;
 import ummisco.gama.network.mqtt.MQTTConnector;
 import ummisco.gama.network.serial.ArduinoConnector;
+import ummisco.gama.network.tcp.NIOTCPConnector;
 import ummisco.gama.network.tcp.TCPConnection;
 import ummisco.gama.network.udp.UDPConnector;
 
@@ -109,8 +111,10 @@ public class NetworkSkill extends MessagingSkill {
 					type = IType.STRING,
 					doc = @doc ("protocol type (MQTT (by default), TCP, UDP): the possible value ares '"
 							+ INetworkSkill.UDP_SERVER + "', '" + INetworkSkill.UDP_CLIENT + "', '"
-							+ INetworkSkill.TCP_SERVER + "', '" + INetworkSkill.TCP_CLIENT
-							+ "', otherwise the MQTT protocol is used.")),
+							+ INetworkSkill.TCP_SERVER + "', '" + INetworkSkill.TCP_CLIENT + "', '"
+							+ INetworkSkill.TCP_NIO_SERVER + "', '" + INetworkSkill.TCP_NIO_CLIENT
+							+ "' (TCP server and client serving all their connections with a single thread)"
+							+ ", otherwise the MQTT protocol is used.")),
 					@arg (
 							name = INetworkSkill.PORT,
 							type = IType.INT,
@@ -135,6 +139,11 @@ public class NetworkSkill extends MessagingSkill {
 							type = IType.BOOL,
 							optional = true,
 							doc = @doc ("force the use of the network even interaction between local agents")),
+					@arg (
+							name = INetworkSkill.BATCH_MESSAGES,
+							type = IType.BOOL,
+							optional = true,
+							doc = @doc ("send the messages of an agent to the same receiver at the end of the step, all at once (false by default). Only the peers running the same version of GAMA can read them")),
 					@arg (
 							name = INetworkSkill.SERVER_URL,
 							type = IType.STRING,
@@ -165,6 +174,7 @@ public class NetworkSkill extends MessagingSkill {
 		final String networkName = (String) scope.getArg(INetworkSkill.WITHNAME, IType.STRING);
 		final String protocol = (String) scope.getArg(INetworkSkill.PROTOCOL, IType.STRING);
 		final Boolean force_local = (Boolean) scope.getArg(INetworkSkill.FORCE_NETWORK_USE, IType.BOOL);
+		final Boolean batch = (Boolean) scope.getArg(INetworkSkill.BATCH_MESSAGES, IType.BOOL);
 		final Integer port = (Integer) scope.getArg(INetworkSkill.PORT, IType.INT);
 		final String packet_size = (String) scope.getArg(INetworkSkill.MAX_DATA_PACKET_SIZE, IType.STRING);
 
@@ -197,6 +207,16 @@ public class NetworkSkill extends MessagingSkill {
 				connector = new TCPConnection(scope, false);
 				connector.configure(IConnector.SERVER_URL, serverURL);
 				connector.configure(IConnector.SERVER_PORT, "" + port);
+			} else if (protocol != null && protocol.equals(INetworkSkill.TCP_NIO_SERVER)) {
+				DEBUG.OUT("create NIO TCP serveur");
+				connector = new NIOTCPConnector(scope, true);
+				connector.configure(IConnector.SERVER_URL, serverURL);
+				connector.configure(IConnector.SERVER_PORT, "" + port);
+			} else if (protocol != null && protocol.equals(INetworkSkill.TCP_NIO_CLIENT)) {
+				DEBUG.OUT("create NIO TCP client");
+				connector = new NIOTCPConnector(scope, false);
+				connector.configure(IConnector.SERVER_URL, serverURL);
+				connector.configure(IConnector.SERVER_PORT, "" + port);
 			} else if (protocol != null && protocol.equals("arduino")) {
 				connector = new ArduinoConnector(scope);			
 			} else // if(protocol.equals( INetworkSkill.MQTT))
@@ -222,6 +242,9 @@ public class NetworkSkill extends MessagingSkill {
 			if (force_local != null) {
 				connector.forceNetworkUse(force_local.booleanValue());
 			}
+			if (batch != null) {
+				connector.batchMessages(batch.booleanValue());
+			}
 			// Fix to Issue #2618
 			myConnectors.put(serverKey, connector);
 
@@ -392,7 +415,14 @@ public class NetworkSkill extends MessagingSkill {
 				 * if (!(connection instanceof MQTTConnector)) { mailbox.clear(); }
 				 */
 				for (final ConnectorMessage msg : messages.get(agt)) {
-					mailbox.addMessage(scope, msg.getContents(scope));
+					if (msg instanceof NetworkMessage) {
+						// A network message can carry several messages sent during the same step
+						for (final GamaMessage m : ((NetworkMessage) msg).getAllContents(scope)) {
+							mailbox.addMessage(scope, m);
+						}
+					} else {
+						mailbox.addMessage(scope, msg.getContents(scope));
+					}
 				}
 			}
 		}
@@ -0,0 +1,60 @@
+/*********************************************************************************************
+ *
+ * 'BufferPool.java, in plugin ummisco.gama.network, is part of the source code of the GAMA modeling and simulation
+ * platform. (c) 2007-2016 UMI 209 UMMISCO IRD/UPMC & Partners
+ *
+ * Visit https://github.com/gama-platform/gama for license information and developers contact.
+ *
+ *
+ **********************************************************************************************/
+package ummisco.gama.network.tcp;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of direct buffers of the same size, shared by the connections of the NIO sockets. Direct buffers are costly to
+ * allocate and are only freed by the garbage collector: the ones released are kept (up to a maximal number) and reused
+ */
+public class BufferPool {
+
+	public static final BufferPool DEFAULT = new BufferPool(64 * 1024, 256);
+
+	private final int bufferSize, maxBuffers;
+	private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger count = new AtomicInteger();
+
+	public BufferPool(final int bufferSize, final int maxBuffers) {
+		this.bufferSize = bufferSize;
+		this.maxBuffers = maxBuffers;
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * Returns an empty buffer, ready to be written
+	 */
+	public ByteBuffer acquire() {
+		final ByteBuffer buffer = buffers.poll();
+		if (buffer == null) { return ByteBuffer.allocateDirect(bufferSize); }
+		count.decrementAndGet();
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Gives back a buffer returned by {@link #acquire()}. The other buffers are simply ignored
+	 */
+	public void release(final ByteBuffer buffer) {
+		if (buffer == null || !buffer.isDirect() || buffer.capacity() != bufferSize) { return; }
+		if (count.incrementAndGet() > maxBuffers) {
+			count.decrementAndGet();
+			return;
+		}
+		buffers.offer(buffer);
+	}
+
+}
@@ -0,0 +1,378 @@
+/*********************************************************************************************
+ *
+ * 'NIOSocketService.java, in plugin ummisco.gama.network, is part of the source code of the GAMA modeling and
+ * simulation platform. (c) 2007-2016 UMI 209 UMMISCO IRD/UPMC & Partners
+ *
+ * Visit https://github.com/gama-platform/gama for license information and developers contact.
+ *
+ *
+ **********************************************************************************************/
+package ummisco.gama.network.tcp;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import ummisco.gama.dev.utils.DEBUG;
+import ummisco.gama.network.common.socket.SocketService;
+
+/**
+ * A TCP server (or client) in which a single thread, waiting on a selector, accepts the connections, reads the
+ * incoming messages and writes the outgoing ones for all the clients. Contrary to {@link ServerService} and
+ * {@link ClientService}, which dedicate a blocked thread to each connection, the number of clients does not change the
+ * number of threads.
+ *
+ * Each message is sent as a frame made of its length (4 bytes) followed by its content in UTF-8, so that the messages
+ * do not need to be escaped. The frames are read and written through direct buffers taken from a {@link BufferPool}
+ * (an outgoing buffer is only taken while a connection has frames to write). The messages can be sent from any thread:
+ * they are queued and written by the thread of the service.
+ */
+public abstract class NIOSocketService extends Thread implements SocketService {
+
+	/**
+	 * The maximal length of the frames received. A connection that announces a longer (or a negative) one is closed
+	 */
+	public static final int MAX_FRAME = 64 * 1024 * 1024;
+
+	static {
+		DEBUG.OFF();
+	}
+
+	/**
+	 * A connection to a client (or to the server)
+	 */
+	class Connection {
+		final SocketChannel channel;
+		final String name;
+		final Queue<byte[]> outgoing = new ConcurrentLinkedQueue<>();
+		// The names of the boxes followed by the agents on the other side of the connection
+		final Set<String> groups = ConcurrentHashMap.newKeySet();
+		ByteBuffer incoming, out;
+		// The frame being copied to the outgoing buffer
+		byte[] frame;
+		int offset;
+
+		Connection(final SocketChannel channel) throws IOException {
+			this.channel = channel;
+			this.name = channel.getRemoteAddress().toString();
+			this.incoming = pool.acquire();
+		}
+	}
+
+	private final String server;
+	private final int port;
+	private final BufferPool pool;
+	private final Map<String, Connection> connections = new ConcurrentHashMap<>();
+	private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+	private Selector selector;
+	private ServerSocketChannel serverChannel;
+	private Connection serverConnection;
+	private volatile boolean isAlive;
+
+	/**
+	 * @param server
+	 *            the address of the server to connect to, or null to act as a server
+	 * @param port
+	 *            the port of the server
+	 */
+	public NIOSocketService(final String server, final int port) {
+		this(server, port, BufferPool.DEFAULT);
+	}
+
+	public NIOSocketService(final String server, final int port, final BufferPool pool) {
+		this.server = server;
+		this.port = port;
+		this.pool = pool;
+		setDaemon(true);
+	}
+
+	public boolean isServer() {
+		return server == null;
+	}
+
+	@Override
+	public void startService() throws IOException {
+		selector = Selector.open();
+		if (isServer()) {
+			serverChannel = ServerSocketChannel.open();
+			serverChannel.bind(new InetSocketAddress(port));
+			serverChannel.configureBlocking(false);
+			serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		} else {
+			final SocketChannel channel = SocketChannel.open(new InetSocketAddress(server, port));
+			serverConnection = register(channel);
+		}
+		isAlive = true;
+		setName("NIO " + (isServer() ? "server" : "client") + " on port " + port);
+		start();
+	}
+
+	@Override
+	public void stopService() {
+		isAlive = false;
+		if (selector != null) {
+			selector.wakeup();
+		}
+	}
+
+	@Override
+	public boolean isOnline() {
+		return isAlive;
+	}
+
+	@Override
+	public String getRemoteAddress() {
+		if (serverConnection == null) { return null; }
+		return serverConnection.name;
+	}
+
+	@Override
+	public String getLocalAddress() {
+		try {
+			if (serverConnection != null) { return serverConnection.channel.getLocalAddress().toString(); }
+			if (serverChannel != null) { return serverChannel.getLocalAddress().toString(); }
+		} catch (final IOException e) {}
+		return null;
+	}
+
+	/**
+	 * The number of clients connected to the server (or 1 when connected to a server)
+	 */
+	public int getConnectionCount() {
+		return connections.size();
+	}
+
+	/**
+	 * Records that the agents connected through the connection follow the box, so that the messages sent to the box
+	 * are sent to this connection
+	 */
+	public void joinGroup(final String connection, final String group) {
+		final Connection c = connections.get(connection);
+		if (c != null) {
+			c.groups.add(group);
+		}
+	}
+
+	public void leaveGroup(final String connection, final String group) {
+		final Connection c = connections.get(connection);
+		if (c != null) {
+			c.groups.remove(group);
+		}
+	}
+
+	/**
+	 * Sends the message to all the connections
+	 */
+	@Override
+	public void sendMessage(final String message) {
+		send(connections.values(), message);
+	}
+
+	/**
+	 * Sends the message to the connections that follow the box of the receiver or, if none of them follows it, to all
+	 * the connections
+	 */
+	public void sendMessage(final String receiver, final String message) {
+		final List<Connection> targets = new ArrayList<>();
+		for (final Connection c : connections.values()) {
+			if (c.groups.contains(receiver)) {
+				targets.add(c);
+			}
+		}
+		send(targets.isEmpty() ? connections.values() : targets, message);
+	}
+
+	private void send(final Iterable<Connection> targets, final String message) {
+		if (!isAlive) { return; }
+		final byte[] content = message.getBytes(StandardCharsets.UTF_8);
+		// The same frame is shared by all the connections
+		final byte[] frame = ByteBuffer.allocate(4 + content.length).putInt(content.length).put(content).array();
+		for (final Connection c : targets) {
+			c.outgoing.add(frame);
+			pendingWrites.add(c);
+		}
+		selector.wakeup();
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (isAlive) {
+				selector.select();
+				Connection pending;
+				while ((pending = pendingWrites.poll()) != null) {
+					final SelectionKey key = pending.channel.keyFor(selector);
+					if (key != null && key.isValid()) {
+						key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+					}
+				}
+				final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					final SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) {
+						continue;
+					}
+					final Connection c = (Connection) key.attachment();
+					// An error on a connection (including an error thrown while handling one of its messages) only
+					// closes this connection
+					try {
+						if (key.isAcceptable()) {
+							accept();
+							continue;
+						}
+						if (key.isReadable()) {
+							read(c);
+						}
+						if (key.isValid() && key.isWritable()) {
+							write(c, key);
+						}
+					} catch (final IOException | RuntimeException e) {
+						if (c == null) {
+							DEBUG.LOG("Connection refused: " + e);
+						} else {
+							DEBUG.LOG("Connection closed " + c.name + ": " + e);
+							close(c);
+						}
+					}
+				}
+			}
+		} catch (final IOException | ClosedSelectorException e) {
+			DEBUG.LOG("Socket error" + e);
+		} finally {
+			isAlive = false;
+			closeAll();
+		}
+	}
+
+	private Connection register(final SocketChannel channel) throws IOException {
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		final Connection c = new Connection(channel);
+		channel.register(selector, SelectionKey.OP_READ, c);
+		connections.put(c.name, c);
+		return c;
+	}
+
+	private void accept() throws IOException {
+		final SocketChannel channel = serverChannel.accept();
+		if (channel == null) { return; }
+		final Connection c = register(channel);
+		DEBUG.OUT(c.name + " connected");
+	}
+
+	private void read(final Connection c) throws IOException {
+		if (c.channel.read(c.incoming) < 0) {
+			close(c);
+			return;
+		}
+		final ByteBuffer in = c.incoming;
+		in.flip();
+		while (in.remaining() >= 4) {
+			final int length = in.getInt(in.position());
+			if (length < 0 || length > MAX_FRAME) { throw new IOException("Invalid frame length: " + length); }
+			if (in.remaining() < 4 + length) {
+				if (4 + length > in.capacity()) {
+					// A frame larger than the pooled buffers: it is read in a buffer of its size
+					final ByteBuffer larger = ByteBuffer.allocate(4 + length);
+					larger.put(in);
+					pool.release(in);
+					c.incoming = larger;
+					return;
+				}
+				break;
+			}
+			in.getInt();
+			final byte[] content = new byte[length];
+			in.get(content);
+			receivedMessage(c.name, new String(content, StandardCharsets.UTF_8));
+		}
+		in.compact();
+		if (!in.isDirect() && in.position() <= pool.getBufferSize()) {
+			in.flip();
+			c.incoming = pool.acquire().put(in);
+		}
+	}
+
+	private void write(final Connection c, final SelectionKey key) throws IOException {
+		if (c.out == null) {
+			c.out = pool.acquire();
+		}
+		do {
+			fill(c);
+			c.out.flip();
+			c.channel.write(c.out);
+			final boolean full = c.out.hasRemaining();
+			c.out.compact();
+			// The socket cannot accept more data for the moment
+			if (full) { return; }
+		} while (c.frame != null || !c.outgoing.isEmpty());
+		pool.release(c.out);
+		c.out = null;
+		key.interestOps(SelectionKey.OP_READ);
+		// A message may have been queued in the meantime
+		if (!c.outgoing.isEmpty()) {
+			pendingWrites.add(c);
+		}
+	}
+
+	/**
+	 * Copies as many queued frames as possible to the outgoing buffer of the connection
+	 */
+	private void fill(final Connection c) {
+		while (c.out.hasRemaining()) {
+			if (c.frame == null) {
+				c.frame = c.outgoing.poll();
+				c.offset = 0;
+				if (c.frame == null) { return; }
+			}
+			final int length = Math.min(c.out.remaining(), c.frame.length - c.offset);
+			c.out.put(c.frame, c.offset, length);
+			c.offset += length;
+			if (c.offset == c.frame.length) {
+				c.frame = null;
+			}
+		}
+	}
+
+	private void close(final Connection c) {
+		connections.remove(c.name);
+		try {
+			c.channel.close();
+		} catch (final IOException e) {}
+		pool.release(c.incoming);
+		pool.release(c.out);
+		c.out = null;
+		c.outgoing.clear();
+		if (c == serverConnection) {
+			isAlive = false;
+		}
+	}
+
+	private void closeAll() {
+		for (final Connection c : new ArrayList<>(connections.values())) {
+			close(c);
+		}
+		try {
+			if (serverChannel != null) {
+				serverChannel.close();
+			}
+			selector.close();
+		} catch (final IOException e) {}
+	}
+
+}
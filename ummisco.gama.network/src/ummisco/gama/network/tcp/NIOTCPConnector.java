@@ -0,0 +1,111 @@
+/*********************************************************************************************
+ *
+ * 'NIOTCPConnector.java, in plugin ummisco.gama.network, is part of the source code of the GAMA modeling and
+ * simulation platform. (c) 2007-2016 UMI 209 UMMISCO IRD/UPMC & Partners
+ *
+ * Visit https://github.com/gama-platform/gama for license information and developers contact.
+ *
+ *
+ **********************************************************************************************/
+package ummisco.gama.network.tcp;
+
+import java.io.IOException;
+
+import msi.gama.metamodel.agent.IAgent;
+import msi.gama.runtime.IScope;
+import ummisco.gama.network.common.CommandMessage;
+import ummisco.gama.network.common.CommandMessage.CommandType;
+import ummisco.gama.network.common.Connector;
+import ummisco.gama.network.common.GamaNetworkException;
+import ummisco.gama.network.common.MessageFactory;
+import ummisco.gama.network.common.MessageFactory.MessageType;
+
+/**
+ * A TCP connector (server or client) based on a {@link NIOSocketService}: a single thread serves all the clients of the
+ * server. The clients tell the server which boxes their agents follow, so that the server only sends them the messages
+ * addressed to these boxes.
+ */
+public class NIOTCPConnector extends Connector {
+
+	private NIOSocketService socket;
+	private final boolean isServer;
+
+	public NIOTCPConnector(final IScope scope, final boolean isServer) {
+		this.isServer = isServer;
+	}
+
+	protected void receivedMessage(final String sender, final String message) {
+		final MessageType mte = MessageFactory.identifyMessageType(message);
+		if (mte.equals(MessageType.COMMAND_MESSAGE)) {
+			final CommandMessage mm = MessageFactory.unPackCommandMessage(sender, message);
+			if (mm.getCommand().equals(CommandType.NEW_GROUP)) {
+				socket.joinGroup(sender, mm.getPlainContents());
+			} else if (mm.getCommand().equals(CommandType.REMOVE_GROUP)) {
+				socket.leaveGroup(sender, mm.getPlainContents());
+			}
+		} else {
+			storeMessage(MessageFactory.unpackReceiverName(message), message);
+		}
+	}
+
+	@Override
+	protected void connectToServer(final IAgent agent) throws GamaNetworkException {
+		if (isConnected) { return; }
+		final String server = this.getConfigurationParameter(SERVER_URL);
+		final int port = Integer.valueOf(this.getConfigurationParameter(SERVER_PORT)).intValue();
+		socket = new NIOSocketService(isServer ? null : server == null ? TCPConnector.DEFAULT_HOST : server, port) {
+
+			@Override
+			public void receivedMessage(final String sender, final String message) {
+				NIOTCPConnector.this.receivedMessage(sender, message);
+			}
+		};
+		try {
+			socket.startService();
+		} catch (final IOException e) {
+			throw GamaNetworkException.cannotBeConnectedFailure(agent.getScope());
+		}
+		this.setConnected();
+	}
+
+	@Override
+	protected boolean isAlive(final IAgent agent) throws GamaNetworkException {
+		return socket != null && socket.isOnline();
+	}
+
+	@Override
+	protected void subscribeToGroup(final IAgent agt, final String boxName) throws GamaNetworkException {
+		sendCommand(agt, CommandType.NEW_GROUP, boxName);
+	}
+
+	@Override
+	protected void unsubscribeGroup(final IAgent agt, final String boxName) throws GamaNetworkException {
+		sendCommand(agt, CommandType.REMOVE_GROUP, boxName);
+	}
+
+	private void sendCommand(final IAgent agt, final CommandType command, final String boxName) {
+		// Only the server needs to know the boxes followed on the other side
+		if (isServer || socket == null) { return; }
+		final CommandMessage cmd = MessageFactory.buildCommandMessage(socket.getLocalAddress(),
+				socket.getRemoteAddress(), command, boxName);
+		socket.sendMessage(MessageFactory.packMessage(cmd));
+	}
+
+	@Override
+	protected void releaseConnection(final IScope scope) throws GamaNetworkException {
+		if (socket != null) {
+			socket.stopService();
+		}
+		socket = null;
+		this.isConnected = false;
+	}
+
+	@Override
+	protected void sendMessage(final IAgent sender, final String receiver, final String content)
+			throws GamaNetworkException {
+		if (socket != null) {
+			socket.sendMessage(receiver, content);
+		}
+	}
+
+}
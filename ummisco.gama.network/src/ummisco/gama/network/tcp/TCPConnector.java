@@ -145,13 +145,13 @@ public class TCPConnector extends Connector {
 
 	@Override
 	public Map<IAgent, LinkedList<ConnectorMessage>> fetchAllMessages() {
-		for (final IAgent agt : this.receivedMessage.keySet()) {
+		for (final IAgent agt : this.mailboxes.getAgents()) {
 			// IScope scope = agt.getScope();
 			final IList<ConnectorMessage> m = (IList<ConnectorMessage>) agt.getAttribute("messages" + agt);
 			if (m != null) {
 				// receivedMessage.get(agt).addAll(m);
 				for (final ConnectorMessage cm : m) {
-					receivedMessage.get(agt).add(cm);
+					mailboxes.deliver(agt, cm);
 				}
 				m.clear();
 				agt.setAttribute("message" + agt, m);
@@ -46,11 +46,11 @@ public class UDPConnector extends Connector {
 	@SuppressWarnings ("unchecked")
 	@Override
 	public Map<IAgent, LinkedList<ConnectorMessage>> fetchAllMessages() {
-		for (final IAgent agt : this.receivedMessage.keySet()) {
+		for (final IAgent agt : this.mailboxes.getAgents()) {
 			final IList<ConnectorMessage> m = (IList<ConnectorMessage>) agt.getAttribute("messages" + agt);
 			if (m != null) {
 				for (final ConnectorMessage cm : m) {
-					receivedMessage.get(agt).add(cm);
+					mailboxes.deliver(agt, cm);
 				}
 				m.clear();
 				agt.setAttribute("message" + agt, m);
@@ -9,9 +9,8 @@
  **********************************************************************************************/
 package ummisco.gama.serializer.experiment;
 
-import com.thoughtworks.xstream.XStream;
-
 import msi.gama.common.interfaces.IKeyword;
+import msi.gama.common.preferences.GamaPreferences;
 import msi.gama.common.util.RandomUtils;
 import msi.gama.kernel.experiment.ExperimentAgent;
 import msi.gama.kernel.experiment.ExperimentPlan;
@@ -23,21 +22,17 @@ import msi.gama.outputs.IOutputManager;
 import msi.gama.precompiler.GamlAnnotations.experiment;
 import msi.gama.runtime.IScope;
 import msi.gama.runtime.exceptions.GamaRuntimeException;
-import msi.gama.util.tree.GamaNode;
-import msi.gama.util.tree.GamaTree;
-import ummisco.gama.serializer.factory.StreamConverter;
-import ummisco.gama.serializer.gamaType.converters.ConverterScope;
-import ummisco.gama.serializer.gaml.ReverseOperators;
 
 @experiment (IKeyword.MEMORIZE)
 public class ExperimentBackwardAgent extends ExperimentAgent {
 
-	GamaTree<String> historyTree;
-	GamaNode<String> currentNode;
+	SimulationHistory history;
 
 	public ExperimentBackwardAgent(final IPopulation<? extends IAgent> s, final int index) throws GamaRuntimeException {
 		super(s, index);
-		historyTree = new GamaTree<>();
+		history = new SimulationHistory(GamaPreferences.Runtime.CORE_MEMORIZE_INTERVAL.getValue(),
+				GamaPreferences.Runtime.CORE_MEMORIZE_STEPS.getValue(),
+				GamaPreferences.Runtime.CORE_MEMORIZE_MEMORY.getValue() * 1024L * 1024L);
 	}
 
 	/**
@@ -49,10 +44,7 @@ public class ExperimentBackwardAgent extends ExperimentAgent {
 	public Object _init_(final IScope scope) {
 		super._init_(scope);
 		// Save simulation state in the history
-		final String state = ReverseOperators.serializeAgent(scope, this.getSimulation());
-
-		historyTree.setRoot(state);
-		currentNode = historyTree.getRoot();
+		history.record(scope, this.getSimulation());
 
 		return this;
 	}
@@ -63,9 +55,7 @@ public class ExperimentBackwardAgent extends ExperimentAgent {
 		final boolean result = super.step(scope);
 
 		// Save simulation state in the history
-		final String state = ReverseOperators.serializeAgent(scope, this.getSimulation());
-
-		currentNode = currentNode.addChild(state);
+		history.record(scope, this.getSimulation());
 
 		// scope.getGui().getConsole(scope).informConsole("step RNG " + getSimulation().getRandomGenerator().getUsage(),
 		// scope.getRoot(), new GamaColor(0, 0, 0));
@@ -76,20 +66,13 @@ public class ExperimentBackwardAgent extends ExperimentAgent {
 	@Override
 	public boolean backward(final IScope scope) {
 		final boolean result = true;
-		GamaNode<String> previousNode;
 
 		try {
 			if (canStepBack()) {
-				previousNode = currentNode.getParent();
-				final String previousState = previousNode.getData();
-
-				if (previousState != null) {
-					final ConverterScope cScope = new ConverterScope(scope);
-					final XStream xstream = StreamConverter.loadAndBuild(cScope);
-
-					// get the previous state
-					final SavedAgent agt = (SavedAgent) xstream.fromXML(previousState);
+				// get the previous state
+				final SavedAgent agt = history.stepBack(scope);
 
+				if (agt != null) {
 					// Update of the simulation
 					final SimulationAgent currentSimAgt = getSimulation();
 
@@ -112,8 +95,6 @@ public class ExperimentBackwardAgent extends ExperimentAgent {
 					} else {
 						currentSimAgt.setRandomGenerator(new RandomUtils(super.random.next(), rngName));
 					}
-
-					currentNode = currentNode.getParent();
 				}
 			}
 		} finally {
@@ -134,10 +115,15 @@ public class ExperimentBackwardAgent extends ExperimentAgent {
 
 	@Override
 	public boolean canStepBack() {
+		return history != null && history.canStepBack();
+	}
 
-		final int current_cycle = getSimulation().getCycle(this.getScope());
-		return (current_cycle > 0) ? true : false;
-		// return currentNode != null && currentNode.getParent() != null;
+	@Override
+	public void dispose() {
+		if (history != null) {
+			history.dispose();
+		}
+		super.dispose();
 	}
 
 	@Override
@@ -0,0 +1,538 @@
+/*********************************************************************************************
+ *
+ * 'SimulationHistory.java, in plugin ummisco.gama.serialize, is part of the source code of the GAMA modeling and
+ * simulation platform. (c) 2007-2016 UMI 209 UMMISCO IRD/UPMC & Partners
+ *
+ * Visit https://github.com/gama-platform/gama for license information and developers contact.
+ *
+ *
+ **********************************************************************************************/
+package ummisco.gama.serializer.experiment;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import msi.gama.metamodel.agent.IAgent;
+import msi.gama.metamodel.agent.SavedAgent;
+import msi.gama.runtime.IScope;
+import msi.gama.runtime.exceptions.GamaRuntimeException;
+import ummisco.gama.serializer.factory.BinarySerializer;
+
+/**
+ * The states of a simulation memorized by an experiment in order to step back. Instead of keeping the complete state
+ * of the simulation at each step, the history keeps a complete state every 'interval' steps and, in between, only the
+ * attributes of the agents that have changed since the previous step (and the agents that have appeared or
+ * disappeared). The states are compressed, the oldest ones are moved to a temporary file when the memory they occupy
+ * exceeds a given budget, and the history can be limited to a given number of steps.
+ *
+ * The state of a simulation is flattened into records: one for the simulation and one for each of the agents it
+ * (directly or not) contains, identified by their path (e.g. "/prey/12" or "/prey/12/cell/3"). Each attribute is
+ * encoded separately and, to find the ones that have changed, the history keeps the last encoded value of each of them
+ * (the arrays of the last state, not copies).
+ */
+public class SimulationHistory {
+
+	// The pseudo-attribute that keeps the names of the micro-populations of an agent
+	static final String POPULATIONS = "#populations";
+
+	final int interval, maxSteps;
+	final long maxMemory;
+	final List<Checkpoint> checkpoints = new ArrayList<>();
+	// The encoded attributes of the last state recorded (null if the next state must be complete)
+	Map<String, Digest> digests;
+	// The position, in the checkpoints, of the current state of the simulation
+	int current = -1;
+	long memory;
+	// The number of bytes of the temporary file occupied by the states it contains
+	long spilled;
+	RandomAccessFile spill;
+	File spillFile;
+
+	/**
+	 * A state of the simulation, either complete or containing only the changes since the previous one. Its data is
+	 * either kept in memory or in the temporary file of the history
+	 */
+	static class Checkpoint {
+		final boolean complete;
+		byte[] data;
+		long offset;
+		int length;
+
+		Checkpoint(final boolean complete, final byte[] data) {
+			this.complete = complete;
+			this.data = data;
+			this.length = data.length;
+		}
+	}
+
+	/**
+	 * The encoded attributes of an agent in the last state recorded
+	 */
+	static class Digest {
+		final String[] names;
+		final byte[][] values;
+
+		Digest(final Map<String, byte[]> record) {
+			names = record.keySet().toArray(new String[record.size()]);
+			values = record.values().toArray(new byte[names.length][]);
+		}
+
+		/**
+		 * Whether the attributes of the record are the same as the ones of this digest (in any order)
+		 */
+		boolean hasSameNamesAs(final Map<String, byte[]> record) {
+			if (record.size() != names.length) { return false; }
+			for (final String name : names) {
+				if (!record.containsKey(name)) { return false; }
+			}
+			return true;
+		}
+
+		boolean hasChanged(final String name, final byte[] value) {
+			for (int i = 0; i < names.length; i++) {
+				if (names[i].equals(name)) { return !Arrays.equals(values[i], value); }
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * @param interval
+	 *            the number of steps between two complete states
+	 * @param maxSteps
+	 *            the maximal number of steps kept (0 for no limit)
+	 * @param maxMemory
+	 *            the number of bytes that the states can occupy in memory before being moved to a file
+	 */
+	public SimulationHistory(final int interval, final int maxSteps, final long maxMemory) {
+		this.maxSteps = Math.max(0, maxSteps);
+		// A complete state is needed before the history reaches its maximal size, so that the oldest steps can be
+		// forgotten
+		this.interval = Math.max(1, this.maxSteps == 0 ? interval : Math.min(interval, this.maxSteps / 2));
+		this.maxMemory = Math.max(0, maxMemory);
+	}
+
+	/**
+	 * Memorizes the current state of the agent (usually a simulation), which becomes the current state of the
+	 * history. The states that had been memorized after the current one (i.e. before stepping back) are forgotten
+	 */
+	public void record(final IScope scope, final IAgent agent) throws GamaRuntimeException {
+		record(new BinarySerializer.Writer(scope), new SavedAgent(scope, agent));
+	}
+
+	void record(final BinarySerializer.Writer writer, final SavedAgent state) {
+		if (checkpoints.size() > current + 1) {
+			while (checkpoints.size() > current + 1) {
+				forget(checkpoints.remove(checkpoints.size() - 1));
+			}
+			reclaimSpill();
+		}
+		final Map<String, Map<String, byte[]>> records = new LinkedHashMap<>();
+		flatten(writer, "", state, records);
+		final boolean complete = digests == null || stepsSinceComplete() >= interval;
+		final Map<String, Map<String, byte[]>> changes;
+		final List<String> removed = new ArrayList<>();
+		if (complete) {
+			changes = records;
+		} else {
+			changes = new LinkedHashMap<>();
+			for (final Map.Entry<String, Map<String, byte[]>> entry : records.entrySet()) {
+				final Digest previous = digests.get(entry.getKey());
+				if (previous == null) {
+					changes.put(entry.getKey(), entry.getValue());
+					continue;
+				}
+				if (!previous.hasSameNamesAs(entry.getValue())) {
+					// The record is replaced
+					removed.add(entry.getKey());
+					changes.put(entry.getKey(), entry.getValue());
+					continue;
+				}
+				final Map<String, byte[]> changed = new LinkedHashMap<>();
+				for (final Map.Entry<String, byte[]> attribute : entry.getValue().entrySet()) {
+					if (previous.hasChanged(attribute.getKey(), attribute.getValue())) {
+						changed.put(attribute.getKey(), attribute.getValue());
+					}
+				}
+				if (!changed.isEmpty()) {
+					changes.put(entry.getKey(), changed);
+				}
+			}
+			for (final String path : digests.keySet()) {
+				if (!records.containsKey(path)) {
+					removed.add(path);
+				}
+			}
+		}
+		final Map<String, Digest> newDigests = new HashMap<>(records.size());
+		for (final Map.Entry<String, Map<String, byte[]>> entry : records.entrySet()) {
+			newDigests.put(entry.getKey(), new Digest(entry.getValue()));
+		}
+		digests = newDigests;
+		final Checkpoint checkpoint = new Checkpoint(complete, write(changes, removed));
+		checkpoints.add(checkpoint);
+		memory += checkpoint.length;
+		current = checkpoints.size() - 1;
+		forgetOldestSteps();
+		spillOldestSteps();
+	}
+
+	/**
+	 * Whether a state has been memorized before the current one
+	 */
+	public boolean canStepBack() {
+		return current > 0;
+	}
+
+	/**
+	 * Returns the state memorized before the current one, which becomes the current state, or null if there is none.
+	 * The next state recorded will be a complete one, as the simulation is restored to a state older than the last
+	 * one recorded
+	 */
+	public SavedAgent stepBack(final IScope scope) throws GamaRuntimeException {
+		if (!canStepBack()) { return null; }
+		current--;
+		digests = null;
+		return restore(new BinarySerializer.Reader(scope), current);
+	}
+
+	/**
+	 * Rebuilds the state memorized at the given position, from the last complete state before it and the changes
+	 * recorded since
+	 */
+	SavedAgent restore(final BinarySerializer.Reader reader, final int position) throws GamaRuntimeException {
+		int start = position;
+		while (!checkpoints.get(start).complete) {
+			start--;
+		}
+		final Map<String, Map<String, byte[]>> records = new LinkedHashMap<>();
+		for (int i = start; i <= position; i++) {
+			read(checkpoints.get(i), records);
+		}
+		return unflatten(reader, "", records);
+	}
+
+	/**
+	 * The number of bytes occupied in memory by the states
+	 */
+	public long getMemory() {
+		return memory;
+	}
+
+	/**
+	 * The number of states memorized
+	 */
+	public int size() {
+		return checkpoints.size();
+	}
+
+	/**
+	 * Forgets all the states memorized and deletes the temporary file, if any
+	 */
+	public void dispose() {
+		checkpoints.clear();
+		digests = null;
+		current = -1;
+		memory = 0;
+		spilled = 0;
+		if (spill != null) {
+			try {
+				spill.close();
+			} catch (final IOException e) {}
+			spill = null;
+			spillFile.delete();
+			spillFile = null;
+		}
+	}
+
+	private int stepsSinceComplete() {
+		int steps = 0;
+		for (int i = checkpoints.size() - 1; i >= 0 && !checkpoints.get(i).complete; i--) {
+			steps++;
+		}
+		return steps + 1;
+	}
+
+	/**
+	 * Removes the oldest states, one complete state and its changes at a time, so that the history does not contain
+	 * more than maxSteps states
+	 */
+	private void forgetOldestSteps() {
+		if (maxSteps == 0 || checkpoints.size() <= maxSteps) { return; }
+		while (checkpoints.size() > maxSteps) {
+			int next = 1;
+			while (next < checkpoints.size() && !checkpoints.get(next).complete) {
+				next++;
+			}
+			if (next >= checkpoints.size() || next > current) {
+				break;
+			}
+			for (int i = 0; i < next; i++) {
+				forget(checkpoints.remove(0));
+			}
+			current -= next;
+		}
+		reclaimSpill();
+	}
+
+	private void forget(final Checkpoint c) {
+		if (c.data != null) {
+			memory -= c.length;
+		} else {
+			spilled -= c.length;
+		}
+	}
+
+	/**
+	 * Gives back the space of the temporary file occupied by the states that have been forgotten. As the states are
+	 * moved to the file from the oldest one, the file contains a contiguous sequence of states: the ones forgotten
+	 * after having stepped back are at its end, and the file is truncated; the oldest ones forgotten are at its
+	 * beginning, and the remaining states are moved there once the space lost exceeds the space they occupy
+	 */
+	private void reclaimSpill() {
+		if (spill == null) { return; }
+		try {
+			if (spilled == 0) {
+				spill.setLength(0);
+				return;
+			}
+			long start = -1, end = 0;
+			for (final Checkpoint c : checkpoints) {
+				if (c.data == null) {
+					if (start < 0) {
+						start = c.offset;
+					}
+					end = c.offset + c.length;
+				}
+			}
+			if (start >= spilled) {
+				end = 0;
+				for (final Checkpoint c : checkpoints) {
+					if (c.data == null) {
+						final byte[] data = dataOf(c);
+						spill.seek(end);
+						spill.write(data);
+						c.offset = end;
+						end += c.length;
+					}
+				}
+			}
+			if (end < spill.length()) {
+				spill.setLength(end);
+			}
+		} catch (final IOException e) {
+			// The space will be reclaimed later
+		}
+	}
+
+	/**
+	 * The number of bytes of the temporary file occupied by the states it contains
+	 */
+	public long getSpilledSize() {
+		return spilled;
+	}
+
+	/**
+	 * The number of bytes of the temporary file (0 if there is none)
+	 */
+	public long getFileSize() {
+		try {
+			return spill == null ? 0 : spill.length();
+		} catch (final IOException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Moves the data of the oldest states to the temporary file while the ones kept in memory exceed the budget. The
+	 * current state is always kept in memory
+	 */
+	private void spillOldestSteps() {
+		for (int i = 0; i < current && memory > maxMemory; i++) {
+			final Checkpoint c = checkpoints.get(i);
+			if (c.data == null) {
+				continue;
+			}
+			try {
+				if (spill == null) {
+					spillFile = File.createTempFile("gama_history", ".bin");
+					spillFile.deleteOnExit();
+					spill = new RandomAccessFile(spillFile, "rw");
+				}
+				c.offset = spill.length();
+				spill.seek(c.offset);
+				spill.write(c.data);
+				c.data = null;
+				memory -= c.length;
+				spilled += c.length;
+			} catch (final IOException e) {
+				// The states remain in memory
+				return;
+			}
+		}
+	}
+
+	private byte[] dataOf(final Checkpoint c) throws IOException {
+		if (c.data != null) { return c.data; }
+		final byte[] data = new byte[c.length];
+		spill.seek(c.offset);
+		spill.readFully(data);
+		return data;
+	}
+
+	/**
+	 * Flattens a saved agent and its micro-agents into records of encoded attributes
+	 */
+	static void flatten(final BinarySerializer.Writer writer, final String path, final SavedAgent agent,
+			final Map<String, Map<String, byte[]>> records) {
+		final Map<String, byte[]> record = new LinkedHashMap<>();
+		for (final Map.Entry<String, Object> attribute : agent.getVariables().entrySet()) {
+			record.put(attribute.getKey(), writer.encode(attribute.getValue()));
+		}
+		final Map<String, List<SavedAgent>> populations = agent.getInnerPopulations();
+		if (populations != null) {
+			record.put(POPULATIONS, String.join("\n", populations.keySet()).getBytes(StandardCharsets.UTF_8));
+		}
+		records.put(path, record);
+		if (populations == null) { return; }
+		for (final Map.Entry<String, List<SavedAgent>> population : populations.entrySet()) {
+			for (final SavedAgent micro : population.getValue()) {
+				flatten(writer, path + "/" + population.getKey() + "/" + micro.getIndex(), micro, records);
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds the saved agent (and its micro-agents) described by the records
+	 */
+	static SavedAgent unflatten(final BinarySerializer.Reader reader, final String path,
+			final Map<String, Map<String, byte[]>> records) {
+		final Map<String, Map<String, List<SavedAgent>>> micros = new HashMap<>();
+		final Map<String, SavedAgent> agents = new HashMap<>();
+		// The records are sorted by depth, so that the micro-agents are rebuilt before their hosts
+		final List<String> paths = new ArrayList<>(records.keySet());
+		paths.sort((p1, p2) -> Integer.compare(depthOf(p2), depthOf(p1)));
+		for (final String p : paths) {
+			final Map<String, byte[]> record = records.get(p);
+			final Map<String, Object> variables = new LinkedHashMap<>();
+			Map<String, List<SavedAgent>> populations = null;
+			for (final Map.Entry<String, byte[]> attribute : record.entrySet()) {
+				if (POPULATIONS.equals(attribute.getKey())) {
+					populations = new LinkedHashMap<>();
+					final Map<String, List<SavedAgent>> found = micros.getOrDefault(p, Collections.emptyMap());
+					final String names = new String(attribute.getValue(), StandardCharsets.UTF_8);
+					for (final String name : names.isEmpty() ? new String[0] : names.split("\n")) {
+						final List<SavedAgent> list = found.getOrDefault(name, new ArrayList<>());
+						list.sort((a1, a2) -> Integer.compare(a1.getIndex(), a2.getIndex()));
+						populations.put(name, list);
+					}
+				} else {
+					variables.put(attribute.getKey(), reader.decode(attribute.getValue()));
+				}
+			}
+			if (p.equals(path)) { return new SavedAgent(indexOf(p), variables, populations); }
+			final SavedAgent agent = new SavedAgent(indexOf(p), variables, populations);
+			agents.put(p, agent);
+			final int index = p.lastIndexOf('/');
+			final int species = p.lastIndexOf('/', index - 1);
+			micros.computeIfAbsent(p.substring(0, species), k -> new HashMap<>())
+					.computeIfAbsent(p.substring(species + 1, index), k -> new ArrayList<>()).add(agent);
+		}
+		return null;
+	}
+
+	private static int depthOf(final String path) {
+		int depth = 0;
+		for (int i = 0; i < path.length(); i++) {
+			if (path.charAt(i) == '/') {
+				depth++;
+			}
+		}
+		return depth;
+	}
+
+	private static int indexOf(final String path) {
+		if (path.isEmpty()) { return 0; }
+		return Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+	}
+
+	/**
+	 * Writes the paths of the records removed and the records added or changed, in a compressed form
+	 */
+	static byte[] write(final Map<String, Map<String, byte[]>> records, final List<String> removed) {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+			out.writeInt(removed.size());
+			for (final String path : removed) {
+				out.writeUTF(path);
+			}
+			out.writeInt(records.size());
+			for (final Map.Entry<String, Map<String, byte[]>> record : records.entrySet()) {
+				out.writeUTF(record.getKey());
+				out.writeInt(record.getValue().size());
+				for (final Map.Entry<String, byte[]> attribute : record.getValue().entrySet()) {
+					out.writeUTF(attribute.getKey());
+					out.writeInt(attribute.getValue().length);
+					out.write(attribute.getValue());
+				}
+			}
+		} catch (final IOException e) {
+			throw GamaRuntimeException.create(e, null);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Applies the records written in the checkpoint to the ones passed: the records of a complete state replace all
+	 * of them, the ones of a state containing changes only remove the records of the agents that have disappeared and
+	 * replace the attributes that have changed
+	 */
+	void read(final Checkpoint checkpoint, final Map<String, Map<String, byte[]>> records) {
+		if (checkpoint.complete) {
+			records.clear();
+		}
+		try (DataInputStream in =
+				new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(dataOf(checkpoint))))) {
+			final int removed = in.readInt();
+			for (int i = 0; i < removed; i++) {
+				records.remove(in.readUTF());
+			}
+			final int size = in.readInt();
+			for (int i = 0; i < size; i++) {
+				final String path = in.readUTF();
+				final Map<String, byte[]> record = records.computeIfAbsent(path, p -> new LinkedHashMap<>());
+				final int attributes = in.readInt();
+				for (int j = 0; j < attributes; j++) {
+					final String name = in.readUTF();
+					final byte[] value = new byte[in.readInt()];
+					in.readFully(value);
+					record.put(name, value);
+				}
+			}
+		} catch (final IOException e) {
+			throw GamaRuntimeException.create(e, null);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "History of " + checkpoints.size() + " steps (" + memory / 1024 + " KB in memory"
+				+ (spill == null ? ")" : ", others in " + spillFile.getName() + ")");
+	}
+
+}
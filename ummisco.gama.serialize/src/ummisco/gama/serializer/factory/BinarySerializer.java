@@ -0,0 +1,651 @@
+/*********************************************************************************************
+ *
+ * 'BinarySerializer.java, in plugin ummisco.gama.serialize, is part of the source code of the GAMA modeling and
+ * simulation platform. (c) 2007-2016 UMI 209 UMMISCO IRD/UPMC & Partners
+ *
+ * Visit https://github.com/gama-platform/gama for license information and developers contact.
+ *
+ *
+ **********************************************************************************************/
+package ummisco.gama.serializer.factory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.binary.BinaryStreamReader;
+import com.thoughtworks.xstream.io.binary.BinaryStreamWriter;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKBReader;
+import com.vividsolutions.jts.io.WKBWriter;
+
+import msi.gama.common.geometry.GeometryUtils;
+import msi.gama.kernel.experiment.ExperimentAgent;
+import msi.gama.kernel.simulation.SimulationAgent;
+import msi.gama.metamodel.agent.IAgent;
+import msi.gama.metamodel.agent.SavedAgent;
+import msi.gama.metamodel.shape.GamaPoint;
+import msi.gama.metamodel.shape.GamaShape;
+import msi.gama.metamodel.shape.IShape;
+import msi.gama.runtime.IScope;
+import msi.gama.runtime.exceptions.GamaRuntimeException;
+import msi.gama.util.GamaColor;
+import msi.gama.util.GamaListFactory;
+import msi.gama.util.GamaMapFactory;
+import msi.gama.util.GamaPair;
+import msi.gama.util.IList;
+import msi.gama.util.IMap;
+import msi.gama.util.IReference;
+import msi.gama.util.matrix.GamaFloatMatrix;
+import msi.gama.util.matrix.GamaIntMatrix;
+import msi.gama.util.matrix.GamaObjectMatrix;
+import msi.gaml.types.GamaType;
+import msi.gaml.types.IType;
+import ummisco.gama.serializer.gamaType.converters.ConverterScope;
+import ummisco.gama.serializer.gamaType.reduced.GamaListReducer;
+import ummisco.gama.serializer.gamaType.reduced.GamaMapReducer;
+import ummisco.gama.serializer.gamaType.reduced.GamaPairReducer;
+import ummisco.gama.serializer.gamaType.reference.ReferenceAgent;
+import ummisco.gama.serializer.gamaType.reference.ReferenceToAgent;
+
+/**
+ * A compact binary serialization of the values manipulated by the simulations (numbers, strings, points, colors,
+ * containers, matrices, geometries, agents and saved agents). Each value is written after a one-byte tag, the numbers
+ * and the coordinates as primitives, the geometries as WKB and the agents as references (like in the XML produced by
+ * {@link StreamConverter}). The strings that appear several times (e.g. the names of the attributes of the agents) are
+ * only written once. The values of the other types (dates, graphs, paths, files, species...) are delegated to
+ * XStream, with the same converters as {@link StreamConverter}.
+ *
+ * The way each class is written is computed once and cached, and so is, for each thread, the XStream used for the
+ * other values. The writers and readers are not thread-safe and must not be shared between threads, but they are cheap
+ * to create: the static methods of this class can be called from any thread, and without any lock.
+ */
+@SuppressWarnings ({ "rawtypes", "unchecked" })
+public class BinarySerializer {
+
+	// The first bytes of the data returned by toBytes(): "GAMB" and the version of the format
+	static final byte[] MAGIC = { 'G', 'A', 'M', 'B', 2 };
+
+	static final byte NULL = 0, TRUE = 1, FALSE = 2, INT = 3, LONG = 4, DOUBLE = 5, STRING = 6, STRING_REF = 7,
+			POINT = 8, COLOR = 9, LIST = 10, MAP = 11, PAIR = 12, INT_MATRIX = 13, FLOAT_MATRIX = 14,
+			OBJECT_MATRIX = 15, SHAPE = 16, AGENT = 17, SAVED_AGENT = 18, TYPE = 19, OTHER = 20;
+
+	// The strings not longer than this are only written once in a given value
+	static final int SHARED_STRING_LENGTH = 64;
+
+	/**
+	 * The XStream used by the writers and readers of a thread for the values that have no binary form. Building it
+	 * registers all the converters, which is much longer than serializing most values, so it is only done once per
+	 * thread; the scope of its converters is the one of the last writer or reader that used it
+	 */
+	static class Fallback {
+
+		final ConverterScope scope = new ConverterScope(null);
+		final XStream xstream = StreamConverter.loadAndBuild(scope);
+
+		XStream in(final IScope s) {
+			scope.setScope(s);
+			scope.setSimulationAgent(null);
+			return xstream;
+		}
+	}
+
+	static final ThreadLocal<Fallback> FALLBACK = ThreadLocal.withInitial(Fallback::new);
+
+	interface Codec {
+		void write(Writer w, Object o) throws IOException;
+	}
+
+	static final ClassValue<Codec> CODECS = new ClassValue<Codec>() {
+
+		@Override
+		protected Codec computeValue(final Class<?> c) {
+			return codecFor(c);
+		}
+	};
+
+	static Codec codecFor(final Class<?> c) {
+		if (c == SavedAgent.class) { return (w, o) -> {
+			w.out.writeByte(SAVED_AGENT);
+			w.writeSavedAgent((SavedAgent) o);
+		}; }
+		if (c == ReferenceAgent.class) {
+			return (w, o) -> w.writeAgent(((ReferenceAgent) o).getAttributeValue());
+		}
+		if (IReference.class.isAssignableFrom(c)) { return Writer::writeOther; }
+		if (IAgent.class.isAssignableFrom(c)) { return (w, o) -> w.writeAgent(new ReferenceToAgent((IAgent) o)); }
+		if (c == GamaShape.class) { return Writer::writeShape; }
+		if (c == GamaPoint.class) { return (w, o) -> {
+			final GamaPoint p = (GamaPoint) o;
+			w.out.writeByte(POINT);
+			w.out.writeDouble(p.x);
+			w.out.writeDouble(p.y);
+			w.out.writeDouble(p.z);
+		}; }
+		if (c == GamaColor.class) { return (w, o) -> {
+			w.out.writeByte(COLOR);
+			w.out.writeInt(((GamaColor) o).getRGB());
+		}; }
+		if (c == Integer.class) { return (w, o) -> {
+			w.out.writeByte(INT);
+			w.out.writeInt((Integer) o);
+		}; }
+		if (c == Double.class) { return (w, o) -> {
+			w.out.writeByte(DOUBLE);
+			w.out.writeDouble((Double) o);
+		}; }
+		if (c == Boolean.class) { return (w, o) -> w.out.writeByte((Boolean) o ? TRUE : FALSE); }
+		if (c == Long.class) { return (w, o) -> {
+			w.out.writeByte(LONG);
+			w.out.writeLong((Long) o);
+		}; }
+		if (c == String.class) { return (w, o) -> w.writeString((String) o); }
+		if (c == GamaIntMatrix.class) { return (w, o) -> {
+			final GamaIntMatrix m = (GamaIntMatrix) o;
+			w.out.writeByte(INT_MATRIX);
+			w.writeDimensions(m.getCols(null), m.getRows(null));
+			for (final int v : m.getMatrix()) {
+				w.out.writeInt(v);
+			}
+		}; }
+		if (c == GamaFloatMatrix.class) { return (w, o) -> {
+			final GamaFloatMatrix m = (GamaFloatMatrix) o;
+			w.out.writeByte(FLOAT_MATRIX);
+			w.writeDimensions(m.getCols(null), m.getRows(null));
+			for (final double v : m.getMatrix()) {
+				w.out.writeDouble(v);
+			}
+		}; }
+		if (c == GamaObjectMatrix.class) { return (w, o) -> {
+			final GamaObjectMatrix m = (GamaObjectMatrix) o;
+			w.out.writeByte(OBJECT_MATRIX);
+			w.writeType(m.getGamlType().getContentType());
+			w.writeDimensions(m.getCols(null), m.getRows(null));
+			for (final Object v : m.getMatrix()) {
+				w.writeObject(v);
+			}
+		}; }
+		if (IList.class.isAssignableFrom(c)) { return (w, o) -> {
+			final IList l = (IList) o;
+			w.out.writeByte(LIST);
+			w.writeType(l.getGamlType().getContentType());
+			w.writeSize(l.size());
+			for (final Object v : l) {
+				w.writeObject(v);
+			}
+		}; }
+		if (IMap.class.isAssignableFrom(c)) { return (w, o) -> {
+			final IMap<?, ?> m = (IMap) o;
+			w.out.writeByte(MAP);
+			w.writeType(m.getGamlType().getKeyType());
+			w.writeType(m.getGamlType().getContentType());
+			w.writeSize(m.size());
+			for (final Map.Entry e : m.entrySet()) {
+				w.writeObject(e.getKey());
+				w.writeObject(e.getValue());
+			}
+		}; }
+		if (c == GamaPair.class) { return (w, o) -> {
+			final GamaPair p = (GamaPair) o;
+			w.out.writeByte(PAIR);
+			w.writeType(p.getGamlType().getKeyType());
+			w.writeType(p.getGamlType().getContentType());
+			w.writeObject(p.getKey());
+			w.writeObject(p.getValue());
+		}; }
+		if (IType.class.isAssignableFrom(c)) { return (w, o) -> {
+			w.out.writeByte(TYPE);
+			w.writeType((IType) o);
+		}; }
+		return Writer::writeOther;
+	}
+
+	/**
+	 * Serializes the value, preceded by the signature of the format
+	 */
+	public static byte[] toBytes(final IScope scope, final Object o) throws GamaRuntimeException {
+		return new Writer(scope).encode(o, true);
+	}
+
+	/**
+	 * Rebuilds a value serialized by {@link #toBytes(IScope, Object)}
+	 */
+	public static Object fromBytes(final IScope scope, final byte[] data) throws GamaRuntimeException {
+		if (!isBinary(data)) { throw GamaRuntimeException.error("Not a serialized value", scope); }
+		return new Reader(scope).decode(data, MAGIC.length);
+	}
+
+	/**
+	 * Whether the data has been produced by {@link #toBytes(IScope, Object)}
+	 */
+	public static boolean isBinary(final byte[] data) {
+		if (data == null || data.length < MAGIC.length) { return false; }
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (data[i] != MAGIC[i]) { return false; }
+		}
+		return true;
+	}
+
+	/**
+	 * Writes values in the binary format. A writer can serialize several values one after the other, but must be
+	 * used by only one thread
+	 */
+	public static class Writer {
+
+		final IScope scope;
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		final DataOutputStream out = new DataOutputStream(bytes);
+		final Map<String, Integer> strings = new HashMap<>();
+
+		public Writer(final IScope scope) {
+			this.scope = scope;
+		}
+
+		/**
+		 * Serializes the value (without the signature of the format)
+		 */
+		public byte[] encode(final Object o) throws GamaRuntimeException {
+			return encode(o, false);
+		}
+
+		byte[] encode(final Object o, final boolean signed) throws GamaRuntimeException {
+			bytes.reset();
+			strings.clear();
+			try {
+				if (signed) {
+					out.write(MAGIC);
+				}
+				writeObject(o);
+				out.flush();
+			} catch (final IOException e) {
+				throw GamaRuntimeException.create(e, scope);
+			}
+			return bytes.toByteArray();
+		}
+
+		void writeObject(final Object o) throws IOException {
+			if (o == null) {
+				out.writeByte(NULL);
+			} else {
+				CODECS.get(o.getClass()).write(this, o);
+			}
+		}
+
+		void writeSize(final int size) throws IOException {
+			int s = size;
+			while ((s & ~0x7F) != 0) {
+				out.writeByte(s & 0x7F | 0x80);
+				s >>>= 7;
+			}
+			out.writeByte(s);
+		}
+
+		void writeDimensions(final int cols, final int rows) throws IOException {
+			writeSize(cols);
+			writeSize(rows);
+		}
+
+		void writeString(final String s) throws IOException {
+			if (s == null) {
+				out.writeByte(NULL);
+				return;
+			}
+			final Integer ref = strings.get(s);
+			if (ref != null) {
+				out.writeByte(STRING_REF);
+				writeSize(ref);
+				return;
+			}
+			if (s.length() <= SHARED_STRING_LENGTH) {
+				strings.put(s, strings.size());
+			}
+			final byte[] utf = s.getBytes(StandardCharsets.UTF_8);
+			out.writeByte(STRING);
+			writeSize(utf.length);
+			out.write(utf);
+		}
+
+		// The parametric types (e.g. list<int>) are written as their base type followed by their key and content types
+		void writeType(final IType type) throws IOException {
+			if (type == null) {
+				writeString(null);
+				return;
+			}
+			writeString(type.getGamlType().getName());
+			final boolean parametric = type.isParametricType();
+			out.writeBoolean(parametric);
+			if (parametric) {
+				writeType(type.getKeyType());
+				writeType(type.getContentType());
+			}
+		}
+
+		void writeAgent(final ReferenceToAgent ref) throws IOException {
+			final List<String> species = ref.getSpecies();
+			final List<Integer> index = ref.getIndex();
+			out.writeByte(AGENT);
+			writeSize(species.size());
+			for (int i = 0; i < species.size(); i++) {
+				writeString(species.get(i));
+				out.writeInt(index.get(i));
+			}
+		}
+
+		void writeSavedAgent(final SavedAgent agent) throws IOException {
+			out.writeInt(agent.getIndex());
+			final List<Map.Entry<String, Object>> variables = new ArrayList<>(agent.size());
+			for (final Map.Entry<String, Object> e : agent.entrySet()) {
+				// Like in the XML format, the experiment and the simulation are not saved
+				if (!(e.getValue() instanceof ExperimentAgent) && !(e.getValue() instanceof SimulationAgent)) {
+					variables.add(e);
+				}
+			}
+			writeSize(variables.size());
+			for (final Map.Entry<String, Object> e : variables) {
+				writeString(e.getKey());
+				writeObject(e.getValue());
+			}
+			final Map<String, List<SavedAgent>> populations = agent.getInnerPopulations();
+			out.writeBoolean(populations != null);
+			if (populations == null) { return; }
+			writeSize(populations.size());
+			for (final Map.Entry<String, List<SavedAgent>> e : populations.entrySet()) {
+				writeString(e.getKey());
+				writeSize(e.getValue().size());
+				for (final SavedAgent micro : e.getValue()) {
+					writeSavedAgent(micro);
+				}
+			}
+		}
+
+		void writeShape(final Object o) throws IOException {
+			final GamaShape shape = (GamaShape) o;
+			final Geometry g = shape.getInnerGeometry();
+			// WKB cannot represent empty points
+			if (g == null || g.isEmpty()) {
+				writeOther(o);
+				return;
+			}
+			final byte[] wkb = new WKBWriter(3).write(g);
+			out.writeByte(SHAPE);
+			writeSize(wkb.length);
+			out.write(wkb);
+			final Double depth = shape.getDepth();
+			out.writeBoolean(depth != null);
+			if (depth != null) {
+				out.writeDouble(depth);
+			}
+			out.writeByte(shape.getGeometricalType().ordinal());
+			final List<Object> attributes = new ArrayList<>();
+			shape.forEachAttribute((k, v) -> {
+				attributes.add(k);
+				attributes.add(v);
+				return true;
+			});
+			writeSize(attributes.size() / 2);
+			for (int i = 0; i < attributes.size(); i += 2) {
+				writeString((String) attributes.get(i));
+				writeObject(attributes.get(i + 1));
+			}
+		}
+
+		void writeOther(final Object o) throws IOException {
+			final ByteArrayOutputStream blob = new ByteArrayOutputStream();
+			final BinaryStreamWriter writer = new BinaryStreamWriter(blob);
+			FALLBACK.get().in(scope).marshal(o, writer);
+			writer.flush();
+			out.writeByte(OTHER);
+			writeSize(blob.size());
+			blob.writeTo(out);
+		}
+	}
+
+	/**
+	 * Reads values written by a {@link Writer}. Like the writers, a reader must be used by only one thread
+	 */
+	public static class Reader {
+
+		final IScope scope;
+		final List<String> strings = new ArrayList<>();
+		DataInputStream in;
+
+		public Reader(final IScope scope) {
+			this.scope = scope;
+		}
+
+		/**
+		 * Rebuilds a value serialized by {@link Writer#encode(Object)}
+		 */
+		public Object decode(final byte[] data) throws GamaRuntimeException {
+			return decode(data, 0);
+		}
+
+		Object decode(final byte[] data, final int offset) throws GamaRuntimeException {
+			in = new DataInputStream(new ByteArrayInputStream(data, offset, data.length - offset));
+			strings.clear();
+			try {
+				return readObject();
+			} catch (final IOException e) {
+				throw GamaRuntimeException.create(e, scope);
+			}
+		}
+
+		Object readObject() throws IOException {
+			final byte tag = in.readByte();
+			switch (tag) {
+				case NULL:
+					return null;
+				case TRUE:
+					return true;
+				case FALSE:
+					return false;
+				case INT:
+					return in.readInt();
+				case LONG:
+					return in.readLong();
+				case DOUBLE:
+					return in.readDouble();
+				case STRING:
+				case STRING_REF:
+					return readString(tag);
+				case POINT:
+					return new GamaPoint(in.readDouble(), in.readDouble(), in.readDouble());
+				case COLOR:
+					final int argb = in.readInt();
+					return new GamaColor(argb >> 16 & 0xFF, argb >> 8 & 0xFF, argb & 0xFF, argb >>> 24);
+				case LIST:
+					return readList();
+				case MAP:
+					return readMap();
+				case PAIR:
+					return readPair();
+				case INT_MATRIX: {
+					final int cols = readSize(), rows = readSize();
+					final int[] values = new int[cols * rows];
+					for (int i = 0; i < values.length; i++) {
+						values[i] = in.readInt();
+					}
+					return new GamaIntMatrix(cols, rows, values);
+				}
+				case FLOAT_MATRIX: {
+					final int cols = readSize(), rows = readSize();
+					final double[] values = new double[cols * rows];
+					for (int i = 0; i < values.length; i++) {
+						values[i] = in.readDouble();
+					}
+					return new GamaFloatMatrix(cols, rows, values);
+				}
+				case OBJECT_MATRIX: {
+					final IType type = readType();
+					final int cols = readSize(), rows = readSize();
+					final Object[] values = new Object[cols * rows];
+					for (int i = 0; i < values.length; i++) {
+						values[i] = readObject();
+					}
+					return new GamaObjectMatrix(cols, rows, values, type);
+				}
+				case SHAPE:
+					return readShape();
+				case AGENT:
+					return readAgent();
+				case SAVED_AGENT:
+					return readSavedAgent();
+				case TYPE:
+					return readType();
+				case OTHER:
+					return readOther();
+				default:
+					throw new IOException("Unknown tag " + tag);
+			}
+		}
+
+		int readSize() throws IOException {
+			int size = 0, shift = 0;
+			byte b;
+			do {
+				b = in.readByte();
+				size |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			return size;
+		}
+
+		String readString() throws IOException {
+			return readString(in.readByte());
+		}
+
+		String readString(final byte tag) throws IOException {
+			if (tag == NULL) { return null; }
+			if (tag == STRING_REF) { return strings.get(readSize()); }
+			final byte[] utf = new byte[readSize()];
+			in.readFully(utf);
+			final String s = new String(utf, StandardCharsets.UTF_8);
+			if (s.length() <= SHARED_STRING_LENGTH) {
+				strings.add(s);
+			}
+			return s;
+		}
+
+		IType readType() throws IOException {
+			final String name = readString();
+			if (name == null) { return null; }
+			final IType type = scope.getType(name);
+			if (!in.readBoolean()) { return type; }
+			final IType keyType = readType();
+			final IType contentType = readType();
+			return GamaType.from(type, keyType, contentType);
+		}
+
+		// The containers that contain agents are rebuilt as references, resolved once all the agents are restored
+		Object readList() throws IOException {
+			final IType type = readType();
+			final int size = readSize();
+			final List<Object> values = new ArrayList<>(size);
+			boolean reference = false;
+			for (int i = 0; i < size; i++) {
+				final Object v = readObject();
+				reference |= IReference.isReference(v);
+				values.add(v);
+			}
+			final IList list = GamaListFactory.createWithoutCasting(type, values);
+			return reference ? new GamaListReducer(list).constructObject(scope) : list;
+		}
+
+		Object readMap() throws IOException {
+			final IType keyType = readType();
+			final IType contentType = readType();
+			final int size = readSize();
+			final Map<Object, Object> values = new LinkedHashMap<>(size);
+			boolean reference = false;
+			for (int i = 0; i < size; i++) {
+				final Object k = readObject();
+				final Object v = readObject();
+				reference |= IReference.isReference(k) || IReference.isReference(v);
+				values.put(k, v);
+			}
+			final IMap map = GamaMapFactory.createWithoutCasting(keyType, contentType, values);
+			return reference ? new GamaMapReducer(map).constructObject(scope) : map;
+		}
+
+		Object readPair() throws IOException {
+			final IType keyType = readType();
+			final IType contentType = readType();
+			final GamaPair pair = new GamaPair(readObject(), readObject(), keyType, contentType);
+			return new GamaPairReducer(pair).constructObject();
+		}
+
+		Object readAgent() throws IOException {
+			final int size = readSize();
+			final List<String> species = new ArrayList<>(size);
+			final List<Integer> index = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				species.add(readString());
+				index.add(in.readInt());
+			}
+			return new ReferenceAgent(null, null, new ReferenceToAgent(species, index));
+		}
+
+		SavedAgent readSavedAgent() throws IOException {
+			final int index = in.readInt();
+			final int size = readSize();
+			final Map<String, Object> variables = new LinkedHashMap<>(size);
+			for (int i = 0; i < size; i++) {
+				final String name = readString();
+				variables.put(name, readObject());
+			}
+			Map<String, List<SavedAgent>> populations = null;
+			if (in.readBoolean()) {
+				final int count = readSize();
+				populations = new LinkedHashMap<>(count);
+				for (int i = 0; i < count; i++) {
+					final String name = readString();
+					final int n = readSize();
+					final List<SavedAgent> micros = new ArrayList<>(n);
+					for (int j = 0; j < n; j++) {
+						micros.add(readSavedAgent());
+					}
+					populations.put(name, micros);
+				}
+			}
+			return new SavedAgent(index, variables, populations);
+		}
+
+		Object readShape() throws IOException {
+			final byte[] wkb = new byte[readSize()];
+			in.readFully(wkb);
+			final GamaShape shape;
+			try {
+				shape = new GamaShape(new WKBReader(GeometryUtils.GEOMETRY_FACTORY).read(wkb));
+			} catch (final ParseException e) {
+				throw new IOException(e);
+			}
+			if (in.readBoolean()) {
+				shape.setDepth(in.readDouble());
+			}
+			shape.setGeometricalType(IShape.Type.values()[in.readByte()]);
+			final int size = readSize();
+			for (int i = 0; i < size; i++) {
+				final String name = readString();
+				shape.setAttribute(name, readObject());
+			}
+			return shape;
+		}
+
+		Object readOther() throws IOException {
+			final byte[] blob = new byte[readSize()];
+			in.readFully(blob);
+			return FALLBACK.get().in(scope).unmarshal(new BinaryStreamReader(new ByteArrayInputStream(blob)));
+		}
+	}
+
+}
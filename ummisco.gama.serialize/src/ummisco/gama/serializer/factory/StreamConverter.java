@@ -35,11 +35,11 @@ public abstract class StreamConverter {
 		return dataStreamer;
 	}
 
-	public static synchronized String convertObjectToStream(final IScope scope, final Object o) {
+	public static String convertObjectToStream(final IScope scope, final Object o) {
 		return loadAndBuild(new ConverterScope(scope)).toXML(o);
 	}
 
-	public static synchronized String convertObjectToStream(final ConverterScope scope, final Object o) {
+	public static String convertObjectToStream(final ConverterScope scope, final Object o) {
 		return loadAndBuild(scope).toXML(o);
 	}
 
@@ -51,6 +51,14 @@ public abstract class StreamConverter {
 		return loadAndBuild(scope).fromXML(data);
 	}
 
+	public static byte[] convertObjectToBytes(final IScope scope, final Object o) {
+		return BinarySerializer.toBytes(scope, o);
+	}
+
+	public static Object convertBytesToObject(final IScope scope, final byte[] data) {
+		return BinarySerializer.fromBytes(scope, data);
+	}
+
 	// TODO To remove when possible
 	public static XStream loadAndBuildNetwork(final ConverterScope cs) {
 		final XStream dataStreamer = new XStream(new DomDriver());
@@ -63,11 +71,11 @@ public abstract class StreamConverter {
 		return dataStreamer;
 	}
 
-	public static synchronized String convertNetworkObjectToStream(final ConverterScope scope, final Object o) {
+	public static String convertNetworkObjectToStream(final ConverterScope scope, final Object o) {
 		return loadAndBuildNetwork(scope).toXML(o);
 	}
 
-	public static synchronized String convertNetworkObjectToStream(final IScope scope, final Object o) {
+	public static String convertNetworkObjectToStream(final IScope scope, final Object o) {
 		return loadAndBuildNetwork(new ConverterScope(scope)).toXML(o);
 	}
 
@@ -23,6 +23,7 @@ public class ConverterScope {
 	}
 
 	public IScope getScope() { return scope; }
+	public void setScope(IScope s) { scope = s; }
 	public SimulationAgent getSimulationAgent() { return simAgt; }
 	public void setSimulationAgent(SimulationAgent sim){ simAgt = sim;}
 }
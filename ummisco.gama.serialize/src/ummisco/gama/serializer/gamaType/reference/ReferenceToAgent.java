@@ -16,6 +16,11 @@ public class ReferenceToAgent {
 		index = new ArrayList<>();
 	}
 
+	public ReferenceToAgent(final List<String> species, final List<Integer> index) {
+		this.species = species;
+		this.index = index;
+	}
+
 	public ReferenceToAgent(final IAgent agt) {
 		this();
 		if (agt != null) {
@@ -32,6 +37,14 @@ public class ReferenceToAgent {
 		}
 	}
 
+	public List<String> getSpecies() {
+		return species;
+	}
+
+	public List<Integer> getIndex() {
+		return index;
+	}
+
 	@Override
 	public String toString() {
 		String res = "";
@@ -117,7 +117,7 @@ public class GamaSavedSimulationFile extends GamaFile<IList<String>, String> {
 		setMetadata(scope);
 
 		// Set the buffer
-		final String serializedAgent = ReverseOperators.serializeAgent(scope, agent);
+		final String serializedAgent = ReverseOperators.encodeAgent(scope, agent);
 		final IList<String> c = GamaListFactory.create();
 		c.add(serializedAgent);
 
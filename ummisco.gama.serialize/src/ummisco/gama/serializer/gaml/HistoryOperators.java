@@ -0,0 +1,83 @@
+/*********************************************************************************************
+ *
+ * 'HistoryOperators.java, in plugin ummisco.gama.serialize, is part of the source code of the GAMA modeling and
+ * simulation platform. (c) 2007-2016 UMI 209 UMMISCO IRD/UPMC & Partners
+ *
+ * Visit https://github.com/gama-platform/gama for license information and developers contact.
+ *
+ *
+ **********************************************************************************************/
+package ummisco.gama.serializer.gaml;
+
+import msi.gama.kernel.simulation.SimulationAgent;
+import msi.gama.metamodel.agent.IAgent;
+import msi.gama.metamodel.agent.SavedAgent;
+import msi.gama.precompiler.GamlAnnotations.doc;
+import msi.gama.precompiler.GamlAnnotations.no_test;
+import msi.gama.precompiler.GamlAnnotations.operator;
+import msi.gama.runtime.IScope;
+import msi.gama.runtime.exceptions.GamaRuntimeException;
+import msi.gama.util.GamaMapFactory;
+import msi.gama.util.IMap;
+import msi.gaml.types.Types;
+import ummisco.gama.serializer.experiment.SimulationHistory;
+
+/**
+ * Gives access, from the test models, to the histories used by the 'memorize' experiments to step back
+ */
+public class HistoryOperators {
+
+	@operator (
+			value = "simulation_history",
+			doc = @doc ("For internal use only"),
+			internal = true)
+	@no_test
+	public static Object history(final IScope scope, final Integer interval, final Integer maxSteps,
+			final Integer maxMemory) {
+		return new SimulationHistory(interval, maxSteps, maxMemory);
+	}
+
+	@operator (
+			value = "record_state",
+			doc = @doc ("For internal use only"),
+			internal = true)
+	@no_test
+	public static Integer record(final IScope scope, final Object history, final IAgent agent) {
+		final SimulationHistory h = historyOf(scope, history);
+		h.record(scope, agent);
+		return h.size();
+	}
+
+	@operator (
+			value = "restore_previous_state",
+			doc = @doc ("For internal use only"),
+			internal = true)
+	@no_test
+	public static Boolean stepBack(final IScope scope, final Object history, final IAgent simulation) {
+		final SavedAgent state = historyOf(scope, history).stepBack(scope);
+		if (state == null) { return false; }
+		((SimulationAgent) simulation).updateWith(scope, state);
+		return true;
+	}
+
+	@operator (
+			value = "history_info",
+			doc = @doc ("For internal use only"),
+			internal = true)
+	@no_test
+	public static IMap<String, Integer> info(final IScope scope, final Object history) {
+		final SimulationHistory h = historyOf(scope, history);
+		final IMap<String, Integer> result = GamaMapFactory.create(Types.STRING, Types.INT);
+		result.put("size", h.size());
+		result.put("memory", (int) h.getMemory());
+		result.put("spilled", (int) h.getSpilledSize());
+		result.put("file", (int) h.getFileSize());
+		return result;
+	}
+
+	private static SimulationHistory historyOf(final IScope scope, final Object history) {
+		if (history instanceof SimulationHistory) { return (SimulationHistory) history; }
+		throw GamaRuntimeException.error("Not a simulation history: " + history, scope);
+	}
+
+}
@@ -12,6 +12,7 @@ package ummisco.gama.serializer.gaml;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Base64;
 
 import com.thoughtworks.xstream.XStream;
 
@@ -61,6 +62,14 @@ public class ReverseOperators {
 		return StreamConverter.convertObjectToStream(scope, new SavedAgent(scope, agent));
 	}
 
+	/**
+	 * Serializes the agent in the binary format, as the text saved in the saved simulation files
+	 */
+	public static String encodeAgent(final IScope scope, final IAgent agent) {
+		return Base64.getEncoder()
+				.encodeToString(StreamConverter.convertObjectToBytes(scope, new SavedAgent(scope, agent)));
+	}
+
 	@operator (
 			value = "restore_simulation_from_file")
 	@doc (
@@ -74,10 +83,16 @@ public class ReverseOperators {
 	@doc (
 			value = "restore_simulation")
 	public static int unSerializeSimulationFromXML(final IScope scope, final String simul) {
-		final ConverterScope cScope = new ConverterScope(scope);
-		final XStream xstream = StreamConverter.loadAndBuild(cScope);
-
-		final SavedAgent saveAgt = (SavedAgent) xstream.fromXML(simul);
+		final String data = simul.trim();
+		final SavedAgent saveAgt;
+		// The simulations used to be saved in XML
+		if (data.startsWith("<")) {
+			final ConverterScope cScope = new ConverterScope(scope);
+			final XStream xstream = StreamConverter.loadAndBuild(cScope);
+			saveAgt = (SavedAgent) xstream.fromXML(data);
+		} else {
+			saveAgt = (SavedAgent) StreamConverter.convertBytesToObject(scope, Base64.getDecoder().decode(data));
+		}
 		final ExperimentAgent expAgt = (ExperimentAgent) scope.getExperiment();
 		final SimulationAgent simAgent = expAgt.getSimulation();
 
@@ -94,7 +109,7 @@ public class ReverseOperators {
 	public static int saveAgent(final IScope scope, final IAgent agent, final String pathname) {
 		final String path = FileUtils.constructAbsoluteFilePath(scope, pathname, false);
 
-		final String serializedAgent = serializeAgent(scope, agent);
+		final String serializedAgent = encodeAgent(scope, agent);
 
 		final ExperimentAgent expAgt = (ExperimentAgent) scope.getExperiment();
 		final SimulationAgent simAgt = expAgt.getSimulation();